@@ -1627,19 +1627,40 @@ public void setTimeDuration(String name, long value, TimeUnit unit) {
    *         a number
    */
   public long getTimeDuration(String name, long defaultValue, TimeUnit unit) {
+    return getTimeDuration(name, defaultValue, unit, unit);
+  }
+
+  /**
+   * Return time duration in the given time unit. Valid units are encoded in
+   * properties as suffixes: nanoseconds (ns), microseconds (us), milliseconds
+   * (ms), seconds (s), minutes (m), hours (h), and days (d). Unlike
+   * {@link #getTimeDuration(String, long, TimeUnit)}, a property without a
+   * unit may use a coarser unit than the returned value, e.g. seconds for a
+   * duration returned in milliseconds.
+   * @param name Property name
+   * @param defaultValue Value returned if no mapping exists, in defaultUnit.
+   * @param defaultUnit Unit of the property if it has no suffix, and of
+   *        defaultValue.
+   * @param returnUnit Unit of the returned value.
+   * @throws NumberFormatException If the property stripped of its unit is not
+   *         a number
+   */
+  public long getTimeDuration(String name, long defaultValue,
+      TimeUnit defaultUnit, TimeUnit returnUnit) {
     String vStr = get(name);
     if (null == vStr) {
-      return defaultValue;
+      return returnUnit.convert(defaultValue, defaultUnit);
     }
     vStr = vStr.trim();
     ParsedTimeDuration vUnit = ParsedTimeDuration.unitFor(vStr);
     if (null == vUnit) {
-      LOG.warn("No unit for " + name + "(" + vStr + ") assuming " + unit);
-      vUnit = ParsedTimeDuration.unitFor(unit);
+      LOG.warn("No unit for " + name + "(" + vStr + ") assuming " +
+          defaultUnit);
+      vUnit = ParsedTimeDuration.unitFor(defaultUnit);
     } else {
       vStr = vStr.substring(0, vStr.lastIndexOf(vUnit.suffix()));
     }
-    return unit.convert(Long.parseLong(vStr), vUnit.unit());
+    return returnUnit.convert(Long.parseLong(vStr), vUnit.unit());
   }
 
   /**
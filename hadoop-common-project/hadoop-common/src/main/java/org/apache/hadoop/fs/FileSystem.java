@@ -707,6 +707,34 @@ public BlockLocation[] getFileBlockLocations(Path p,
     FileStatus file = getFileStatus(p);
     return getFileBlockLocations(file, start, len);
   }
+
+  /**
+   * Return the block locations of the given ranges of several files, as
+   * {@link #getFileBlockLocations(FileStatus, long, long)} does for one file.
+   * File systems that can look up many files with one request, such as
+   * DFS, override this; the default implementation asks for each file in
+   * turn.
+   *
+   * @param files FileStatus of each of the files to get the locations of
+   * @param starts offset into each of the files
+   * @param lens length for which to get locations for in each of the files
+   * @return the block locations of each file, in the order of
+   *         <code>files</code>
+   * @throws FileNotFoundException when one of the files does not exist;
+   *         IOException see specific implementation
+   */
+  public BlockLocation[][] getFileBlockLocations(FileStatus[] files,
+      long[] starts, long[] lens) throws IOException {
+    if (starts.length != files.length || lens.length != files.length) {
+      throw new IllegalArgumentException(
+          "Invalid number of start or len parameters");
+    }
+    BlockLocation[][] locations = new BlockLocation[files.length][];
+    for (int i = 0; i < files.length; i++) {
+      locations[i] = getFileBlockLocations(files[i], starts[i], lens[i]);
+    }
+    return locations;
+  }
   
   /**
    * Return a set of server default configuration values
@@ -2139,6 +2167,28 @@ public short getDefaultReplication(Path path) {
    */
   public abstract FileStatus getFileStatus(Path f) throws IOException;
 
+  /**
+   * Return the file status objects that represent several paths.
+   * File systems that can look up many paths with one request, such as
+   * DFS, override this; the default implementation calls
+   * {@link #getFileStatus(Path)} for each path in turn.
+   * @param paths The paths we want information from
+   * @return the FileStatus of each path, in the order of <code>paths</code>;
+   *         an element is null when the corresponding path does not exist
+   * @throws IOException see specific implementation
+   */
+  public FileStatus[] getFileStatuses(Path[] paths) throws IOException {
+    FileStatus[] results = new FileStatus[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      try {
+        results[i] = getFileStatus(paths[i]);
+      } catch (FileNotFoundException e) {
+        results[i] = null;
+      }
+    }
+    return results;
+  }
+
   /**
    * Checks if the user can access a path.  The mode specifies which access
    * checks to perform.  If the requested permissions are granted, then the
@@ -53,6 +53,7 @@
 import org.apache.htrace.TraceScope;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.protobuf.BlockingService;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors.MethodDescriptor;
@@ -93,14 +94,28 @@ public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
   }
 
   @Override
-  @SuppressWarnings("unchecked")
   public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
       InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
       SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
       AtomicBoolean fallbackToSimpleAuth) throws IOException {
+    return getProxy(protocol, clientVersion, addr, ticket, conf, factory,
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth, null);
+  }
+
+  /**
+   * Construct a client-side proxy object, whose calls are aligned with the
+   * state of the server by the given {@link AlignmentContext}.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> ProtocolProxy<T> getProxy(Class<T> protocol, long clientVersion,
+      InetSocketAddress addr, UserGroupInformation ticket, Configuration conf,
+      SocketFactory factory, int rpcTimeout, RetryPolicy connectionRetryPolicy,
+      AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+      throws IOException {
 
     final Invoker invoker = new Invoker(protocol, addr, ticket, conf, factory,
-        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+        rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth,
+        alignmentContext);
     return new ProtocolProxy<T>(protocol, (T) Proxy.newProxyInstance(
         protocol.getClassLoader(), new Class[]{protocol}, invoker), false);
   }
@@ -125,15 +140,18 @@ private static class Invoker implements RpcInvocationHandler {
     private final long clientProtocolVersion;
     private final String protocolName;
     private AtomicBoolean fallbackToSimpleAuth;
+    private AlignmentContext alignmentContext;
 
     private Invoker(Class<?> protocol, InetSocketAddress addr,
         UserGroupInformation ticket, Configuration conf, SocketFactory factory,
         int rpcTimeout, RetryPolicy connectionRetryPolicy,
-        AtomicBoolean fallbackToSimpleAuth) throws IOException {
+        AtomicBoolean fallbackToSimpleAuth, AlignmentContext alignmentContext)
+        throws IOException {
       this(protocol, Client.ConnectionId.getConnectionId(
           addr, protocol, ticket, rpcTimeout, connectionRetryPolicy, conf),
           conf, factory);
       this.fallbackToSimpleAuth = fallbackToSimpleAuth;
+      this.alignmentContext = alignmentContext;
     }
     
     /**
@@ -228,7 +246,7 @@ public Object invoke(Object proxy, Method method, Object[] args)
       try {
         val = (RpcResponseWrapper) client.call(RPC.RpcKind.RPC_PROTOCOL_BUFFER,
             new RpcRequestWrapper(rpcRequestHeader, theRequest), remoteId,
-            fallbackToSimpleAuth);
+            fallbackToSimpleAuth, alignmentContext);
 
       } catch (Throwable e) {
         if (LOG.isTraceEnabled()) {
@@ -512,6 +530,91 @@ public RPC.Server getServer(Class<?> protocol, Object protocolImpl,
   }
   
   public static class Server extends RPC.Server {
+
+    static final ThreadLocal<ProtobufRpcEngineCallback> currentCallback =
+        new ThreadLocal<ProtobufRpcEngineCallback>();
+
+    static final ThreadLocal<CallInfo> currentCallInfo =
+        new ThreadLocal<CallInfo>();
+
+    /** The server and method of the call served by the current handler. */
+    static class CallInfo {
+      private final RPC.Server server;
+      private final String methodName;
+
+      CallInfo(RPC.Server server, String methodName) {
+        this.server = server;
+        this.methodName = methodName;
+      }
+    }
+
+    static class ProtobufRpcEngineCallbackImpl
+        implements ProtobufRpcEngineCallback {
+
+      private final RPC.Server server;
+      private final Call call;
+      private final String methodName;
+      private final long setupTime;
+
+      ProtobufRpcEngineCallbackImpl() {
+        this.server = currentCallInfo.get().server;
+        this.call = Server.getCurCall().get();
+        this.methodName = currentCallInfo.get().methodName;
+        this.setupTime = Time.monotonicNow();
+        // flag the call right away, so that the handler does not send a
+        // second response if the implementation throws after registering
+        call.deferResponse();
+      }
+
+      @Override
+      public void setResponse(Message message) {
+        long processingTime = Time.monotonicNow() - setupTime;
+        if (call.setDeferredResponse(new RpcResponseWrapper(message))) {
+          server.updateDeferredMetrics(methodName, processingTime);
+        }
+      }
+
+      @Override
+      public void error(Throwable t) {
+        long processingTime = Time.monotonicNow() - setupTime;
+        String detailedMetricsName = t == null ? methodName :
+            t.getClass().getSimpleName();
+        if (call.setDeferredError(t)) {
+          server.updateDeferredMetrics(detailedMetricsName, processingTime);
+        }
+      }
+    }
+
+    /**
+     * Defer the response of the call served by the current handler. Called
+     * by a protocol implementation, which then returns <code>null</code>
+     * without throwing, so that the handler can serve the next call while
+     * the result is computed. The call is completed later, from any thread,
+     * through the returned callback.
+     *
+     * @return the callback completing the call
+     */
+    @InterfaceAudience.LimitedPrivate({"HDFS", "YARN"})
+    @InterfaceStability.Unstable
+    public static ProtobufRpcEngineCallback registerForDeferredResponse() {
+      Preconditions.checkState(currentCallInfo.get() != null,
+          "Not serving a protobuf RPC call");
+      ProtobufRpcEngineCallback callback = new ProtobufRpcEngineCallbackImpl();
+      currentCallback.set(callback);
+      return callback;
+    }
+
+    /**
+     * @return true if the current thread serves a protobuf RPC call, whose
+     *         response can be deferred by
+     *         {@link #registerForDeferredResponse()}
+     */
+    @InterfaceAudience.LimitedPrivate({"HDFS", "YARN"})
+    @InterfaceStability.Unstable
+    public static boolean canDeferResponse() {
+      return currentCallInfo.get() != null && currentCallback.get() == null;
+    }
+
     /**
      * Construct an RPC server.
      * 
@@ -611,9 +714,16 @@ public Writable call(RPC.Server server, String protocol,
         long startTime = Time.now();
         int qTime = (int) (startTime - receiveTime);
         Exception exception = null;
+        boolean isDeferred = false;
         try {
           server.rpcDetailedMetrics.init(protocolImpl.protocolClass);
+          currentCallInfo.set(new CallInfo(server, methodName));
           result = service.callBlockingMethod(methodDescriptor, null, param);
+          // the implementation deferred the response of the call
+          if (currentCallback.get() != null) {
+            isDeferred = true;
+            return null;
+          }
         } catch (ServiceException e) {
           exception = (Exception) e.getCause();
           throw (Exception) e.getCause();
@@ -621,6 +731,8 @@ public Writable call(RPC.Server server, String protocol,
           exception = e;
           throw e;
         } finally {
+          currentCallInfo.set(null);
+          currentCallback.set(null);
           int processingTime = (int) (Time.now() - startTime);
           if (LOG.isDebugEnabled()) {
             String msg = "Served: " + methodName + " queueTime= " + qTime +
@@ -634,11 +746,14 @@ public Writable call(RPC.Server server, String protocol,
               methodName :
               exception.getClass().getSimpleName();
           server.rpcMetrics.addRpcQueueTime(qTime);
-          server.rpcMetrics.addRpcProcessingTime(processingTime);
-          server.rpcDetailedMetrics.addProcessingTime(detailedMetricsName,
-              processingTime);
-          if (server.isLogSlowRPC()) {
-            server.logSlowRpcCalls(methodName, processingTime);
+          // the processing time of a deferred call is updated on completion
+          if (!isDeferred) {
+            server.rpcMetrics.addRpcProcessingTime(processingTime);
+            server.rpcDetailedMetrics.addProcessingTime(detailedMetricsName,
+                processingTime);
+            if (server.isLogSlowRPC()) {
+              server.logSlowRpcCalls(methodName, processingTime);
+            }
           }
         }
         return new RpcResponseWrapper(result);
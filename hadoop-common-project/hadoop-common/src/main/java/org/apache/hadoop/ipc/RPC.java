@@ -573,12 +573,62 @@ public static <T> ProtocolProxy<T> getProtocolProxy(Class<T> protocol,
                                 RetryPolicy connectionRetryPolicy,
                                 AtomicBoolean fallbackToSimpleAuth)
        throws IOException {
+    return getProtocolProxy(protocol, clientVersion, addr, ticket, conf,
+        factory, rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth,
+        null);
+  }
+
+  /**
+   * Get a protocol proxy that contains a proxy connection to a remote server
+   * and a set of methods that are supported by the server
+   *
+   * @param protocol protocol
+   * @param clientVersion client's version
+   * @param addr server address
+   * @param ticket security ticket
+   * @param conf configuration
+   * @param factory socket factory
+   * @param rpcTimeout max time for each rpc; 0 means no timeout
+   * @param connectionRetryPolicy retry policy
+   * @param fallbackToSimpleAuth set to true or false during calls to indicate if
+   *   a secure client falls back to simple auth
+   * @param alignmentContext state alignment context
+   * @return the proxy
+   * @throws IOException if any error occurs
+   */
+   public static <T> ProtocolProxy<T> getProtocolProxy(Class<T> protocol,
+                                long clientVersion,
+                                InetSocketAddress addr,
+                                UserGroupInformation ticket,
+                                Configuration conf,
+                                SocketFactory factory,
+                                int rpcTimeout,
+                                RetryPolicy connectionRetryPolicy,
+                                AtomicBoolean fallbackToSimpleAuth,
+                                AlignmentContext alignmentContext)
+       throws IOException {
     if (UserGroupInformation.isSecurityEnabled()) {
       SaslRpcServer.init(conf);
     }
-    return getProtocolEngine(protocol, conf).getProxy(protocol, clientVersion,
-        addr, ticket, conf, factory, rpcTimeout, connectionRetryPolicy,
-        fallbackToSimpleAuth);
+    RpcEngine engine = getProtocolEngine(protocol, conf);
+    if (alignmentContext == null) {
+      return engine.getProxy(protocol, clientVersion, addr, ticket, conf,
+          factory, rpcTimeout, connectionRetryPolicy, fallbackToSimpleAuth);
+    }
+    // only the built-in engines align their calls, so that the RpcEngine
+    // interface stays unchanged for the other implementations
+    if (engine instanceof ProtobufRpcEngine) {
+      return ((ProtobufRpcEngine) engine).getProxy(protocol, clientVersion,
+          addr, ticket, conf, factory, rpcTimeout, connectionRetryPolicy,
+          fallbackToSimpleAuth, alignmentContext);
+    }
+    if (engine instanceof WritableRpcEngine) {
+      return ((WritableRpcEngine) engine).getProxy(protocol, clientVersion,
+          addr, ticket, conf, factory, rpcTimeout, connectionRetryPolicy,
+          fallbackToSimpleAuth, alignmentContext);
+    }
+    throw new UnsupportedOperationException(engine.getClass().getName()
+        + " does not support an AlignmentContext");
   }
 
    /**
@@ -711,6 +761,7 @@ public static class Builder {
     private final Configuration conf;    
     private SecretManager<? extends TokenIdentifier> secretManager = null;
     private String portRangeConfig = null;
+    private AlignmentContext alignmentContext = null;
     
     public Builder(Configuration conf) {
       this.conf = conf;
@@ -776,6 +827,12 @@ public Builder setPortRangeConfig(String portRangeConfig) {
       this.portRangeConfig = portRangeConfig;
       return this;
     }
+
+    /** Default: null */
+    public Builder setAlignmentContext(AlignmentContext alignmentContext) {
+      this.alignmentContext = alignmentContext;
+      return this;
+    }
     
     /**
      * Build the RPC Server. 
@@ -793,10 +850,12 @@ public Server build() throws IOException, HadoopIllegalArgumentException {
         throw new HadoopIllegalArgumentException("instance is not set");
       }
       
-      return getProtocolEngine(this.protocol, this.conf).getServer(
+      Server server = getProtocolEngine(this.protocol, this.conf).getServer(
           this.protocol, this.instance, this.bindAddress, this.port,
           this.numHandlers, this.numReaders, this.queueSizePerHandler,
           this.verbose, this.conf, this.secretManager, this.portRangeConfig);
+      server.setAlignmentContext(alignmentContext);
+      return server;
     }
   }
   
@@ -62,6 +62,7 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -314,6 +315,15 @@ public static int getCallRetryCount() {
     return call != null ? call.retryCount : RpcConstants.INVALID_RETRY_COUNT;
   }
 
+  /**
+   * @return The state id sent by the client of the current active RPC call,
+   *         or a negative value if the call does not carry any state id.
+   */
+  public static long getClientStateId() {
+    Call call = CurCall.get();
+    return call != null ? call.clientStateId : -1;
+  }
+
   /** Returns the remote side ip address when invoked inside an RPC 
    *  Returns null incase of an error.
    */
@@ -378,6 +388,7 @@ public static boolean isRpcInvocation() {
 
   volatile private boolean running = true;         // true while server runs
   private CallQueueManager<Call> callQueue;
+  private AlignmentContext alignmentContext; // null if no state alignment
 
   // maintains the set of client connections and handles idle timeouts
   private ConnectionManager connectionManager;
@@ -441,6 +452,17 @@ void logSlowRpcCalls(String methodName, int processingTime) {
     }
   }
 
+  /**
+   * Update the processing time metrics of a call whose response has been
+   * deferred, once the call completes.
+   * @param name of the method or exception of the call
+   * @param processingTime time from the start of the call to its completion
+   */
+  void updateDeferredMetrics(String name, long processingTime) {
+    rpcMetrics.addDeferredRpcProcessingTime(processingTime);
+    rpcDetailedMetrics.addDeferredProcessingTime(name, processingTime);
+  }
+
   /**
    * A convenience method to bind to a given address and report 
    * better exceptions if the address is not a valid host.
@@ -581,10 +603,15 @@ public static class Call implements Schedulable {
     private final RPC.RpcKind rpcKind;
     private final byte[] clientId;
     private final Span traceSpan; // the tracing span on the server side
+    private volatile boolean deferredResponse = false;
+    // set by whoever sends the response of a deferred call
+    private final AtomicBoolean deferredCompleted = new AtomicBoolean(false);
+    private long clientStateId = -1;      // the last state id of the client
 
     private Call(Call call) {
       this(call.callId, call.retryCount, call.rpcRequest, call.connection,
           call.rpcKind, call.clientId, call.traceSpan);
+      this.clientStateId = call.clientStateId;
     }
 
     public Call(int id, int retryCount, Writable param, 
@@ -661,6 +688,115 @@ public void abortResponse(Throwable t) throws IOException {
       }
     }
 
+    /**
+     * Defer the response of this call. Unlike {@link #postponeResponse()},
+     * the handler does not set up any response when it returns: the call is
+     * completed later, from any thread, by
+     * {@link #setDeferredResponse(Writable)} or
+     * {@link #setDeferredError(Throwable)}, and the response is sent once
+     * both the handler and the completion released it through
+     * {@link #sendResponse()}. The intended use case is freeing up the
+     * handler thread while the result of the call is not known yet.
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public void deferResponse() {
+      this.deferredResponse = true;
+      postponeResponse();
+    }
+
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public boolean isResponseDeferred() {
+      return deferredResponse;
+    }
+
+    /**
+     * Send the successful result of a call whose response has been deferred.
+     * @return false if the call has already been completed, e.g. because the
+     *         handler failed after deferring it, and nothing was sent
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public boolean setDeferredResponse(Writable response) {
+      if (!setupDeferredResponse(RpcStatusProto.SUCCESS, null, response,
+          null, null)) {
+        return false;
+      }
+      sendDeferredResponse();
+      return true;
+    }
+
+    /**
+     * Send the failure of a call whose response has been deferred.
+     * @return false if the call has already been completed and nothing was
+     *         sent
+     */
+    @InterfaceStability.Unstable
+    @InterfaceAudience.LimitedPrivate({"HDFS"})
+    public boolean setDeferredError(Throwable t) {
+      if (t == null) {
+        t = new IOException("User code indicated an error without an " +
+            "exception");
+      }
+      RpcStatusProto status = RpcStatusProto.ERROR;
+      RpcErrorCodeProto detailedErr = RpcErrorCodeProto.ERROR_APPLICATION;
+      if (t instanceof RpcServerException) {
+        status = ((RpcServerException) t).getRpcStatusProto();
+        detailedErr = ((RpcServerException) t).getRpcErrorCodeProto();
+      }
+      String errorClass = t.getClass().getName();
+      String error = StringUtils.stringifyException(t);
+      // Remove redundant error class name from the beginning of the stack trace
+      String exceptionHdr = errorClass + ": ";
+      if (error.startsWith(exceptionHdr)) {
+        error = error.substring(exceptionHdr.length());
+      }
+      if (!setupDeferredResponse(status, detailedErr, null, errorClass,
+          error)) {
+        return false;
+      }
+      sendDeferredResponse();
+      return true;
+    }
+
+    /**
+     * Set up the response of a deferred call, unless the call has already
+     * been completed. Only the first completion sets up a response, so that
+     * exactly one response is sent even if the handler fails after the call
+     * has been deferred.
+     * @return true if the caller completed the call, and must release its
+     *         share of the response through {@link #sendResponse()}
+     */
+    private boolean setupDeferredResponse(RpcStatusProto status,
+        RpcErrorCodeProto detailedErr, Writable value, String errorClass,
+        String error) {
+      if (!deferredCompleted.compareAndSet(false, true)) {
+        LOG.debug("Dropping the deferred response of completed call " + this);
+        return false;
+      }
+      try {
+        // SASL wrapping is not thread safe, see the Handler
+        synchronized (connection.responseQueue) {
+          setupResponse(new ByteArrayOutputStream(), this, status,
+              detailedErr, value, errorClass, error);
+        }
+      } catch (IOException e) {
+        // like a synchronous call whose response cannot be set up, the
+        // call is completed without any response
+        LOG.warn("Failed to set up the deferred response of " + this, e);
+      }
+      return true;
+    }
+
+    private void sendDeferredResponse() {
+      try {
+        sendResponse();
+      } catch (IOException e) {
+        LOG.warn("Failed to send the deferred response of " + this, e);
+      }
+    }
+
     // For Schedulable
     @Override
     public UserGroupInformation getUserGroupInformation() {
@@ -1347,6 +1483,10 @@ public long getLastContact() {
       return lastContact;
     }
 
+    private AlignmentContext getAlignmentContext() {
+      return alignmentContext;
+    }
+
     /* Return true if the connection has no outstanding rpc */
     private boolean isIdle() {
       return rpcCount.get() == 0;
@@ -2012,6 +2152,9 @@ private void processRpcRequest(RpcRequestHeaderProto header,
       Call call = new Call(header.getCallId(), header.getRetryCount(),
           rpcRequest, this, ProtoUtil.convert(header.getRpcKind()),
           header.getClientId().toByteArray(), traceSpan);
+      if (alignmentContext != null) {
+        call.clientStateId = alignmentContext.receiveRequestState(header);
+      }
 
       if (callQueue.isClientBackoffEnabled()) {
         // if RPC queue is full, we will ask the RPC client to back off by
@@ -2254,6 +2397,18 @@ public Writable run() throws Exception {
             }
           }
           CurCall.set(null);
+          if (call.isResponseDeferred()) {
+            // the response is set up by whoever completes the call, unless
+            // the handler failed after deferring it: then the error
+            // completes it here, and a later completion is dropped
+            if (errorClass != null && call.setupDeferredResponse(
+                returnStatus, detailedErr, null, errorClass, error)) {
+              call.sendDeferredResponse();
+            }
+            // release the share of the handler, see deferResponse
+            call.sendDeferredResponse();
+            continue;
+          }
           synchronized (call.connection.responseQueue) {
             setupResponse(buf, call, returnStatus, detailedErr,
                 value, errorClass, error);
@@ -2477,6 +2632,12 @@ private static void setupResponse(ByteArrayOutputStream responseBuf,
     headerBuilder.setRetryCount(call.retryCount);
     headerBuilder.setStatus(status);
     headerBuilder.setServerIpcVersionNum(CURRENT_VERSION);
+    if (call.connection != null) {
+      AlignmentContext alignmentContext = call.connection.getAlignmentContext();
+      if (alignmentContext != null) {
+        alignmentContext.updateResponseState(headerBuilder);
+      }
+    }
 
     if (status == RpcStatusProto.SUCCESS) {
       RpcResponseHeaderProto header = headerBuilder.build();
@@ -2591,6 +2752,14 @@ Configuration getConf() {
   /** Sets the socket buffer size used for responding to RPCs */
   public void setSocketSendBufSize(int size) { this.socketSendBufferSize = size; }
 
+  /**
+   * Set the context used to align the state of the clients with the server.
+   * Must be called before the server is started.
+   */
+  public void setAlignmentContext(AlignmentContext alignmentContext) {
+    this.alignmentContext = alignmentContext;
+  }
+
   /** Starts the service.  Must be called before any calls will be handled. */
   public synchronized void start() {
     responder.start();
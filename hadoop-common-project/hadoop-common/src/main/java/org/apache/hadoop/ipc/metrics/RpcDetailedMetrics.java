@@ -35,6 +35,7 @@
 public class RpcDetailedMetrics {
 
   @Metric MutableRatesWithAggregation rates;
+  @Metric MutableRatesWithAggregation deferredRpcRates;
 
   static final Log LOG = LogFactory.getLog(RpcDetailedMetrics.class);
   final MetricsRegistry registry;
@@ -60,6 +61,7 @@ public static RpcDetailedMetrics create(int port) {
    */
   public void init(Class<?> protocol) {
     rates.init(protocol);
+    deferredRpcRates.init(protocol, "Deferred");
   }
 
   /**
@@ -72,6 +74,16 @@ public void addProcessingTime(String name, int processingTime) {
     rates.add(name, processingTime);
   }
 
+  /**
+   * Add the processing time sample of an RPC call whose response has been
+   * deferred
+   * @param name  of the RPC call
+   * @param processingTime  the processing time
+   */
+  public void addDeferredProcessingTime(String name, long processingTime) {
+    deferredRpcRates.add(name, processingTime);
+  }
+
   /**
    * Shutdown the instrumentation for the process
    */
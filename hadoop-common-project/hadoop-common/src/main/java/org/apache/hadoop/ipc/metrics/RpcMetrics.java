@@ -87,6 +87,7 @@ public static RpcMetrics create(Server server, Configuration conf) {
   MutableQuantiles[] rpcQueueTimeMillisQuantiles;
   @Metric("Processsing time") MutableRate rpcProcessingTime;
   MutableQuantiles[] rpcProcessingTimeMillisQuantiles;
+  @Metric("Deferred processing time") MutableRate deferredRpcProcessingTime;
   @Metric("Number of authentication failures")
   MutableCounterLong rpcAuthenticationFailures;
   @Metric("Number of authentication successes")
@@ -206,6 +207,15 @@ public void addRpcProcessingTime(int processingTime) {
     }
   }
 
+  /**
+   * Add the processing time sample of a call whose response has been
+   * deferred, from its start to the completion of its response
+   * @param processingTime the processing time
+   */
+  public void addDeferredRpcProcessingTime(long processingTime) {
+    deferredRpcProcessingTime.add(processingTime);
+  }
+
   /**
    * One client backoff event
    */
@@ -252,6 +262,14 @@ public double getProcessingStdDev() {
     return rpcProcessingTime.lastStat().stddev();
   }
 
+  /**
+   * Returns a MutableRate Counter.
+   * @return Mutable Rate
+   */
+  public MutableRate getDeferredRpcProcessingTime() {
+    return deferredRpcProcessingTime;
+  }
+
   /**
    * Returns the number of slow calls.
    * @return long
@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.Interns;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.UniqueNames;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Moves the formatting and the I/O of audit logging off the threads serving
+ * requests.
+ *
+ * The serving threads capture the details of an audit event and
+ * {@link #offer(Runnable)} a task formatting and logging it. The tasks are
+ * queued in a bounded ring buffer, which any number of threads can append to
+ * without locking, and are run in order by a single daemon thread. When the
+ * buffer is full the event is dropped rather than blocking the caller; the
+ * number of dropped events and the depth of the queue are published as
+ * metrics. Events offered while the pipeline is not running are logged
+ * synchronously by the caller, so that none is lost when it stops.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "YARN"})
+@InterfaceStability.Unstable
+public class AsyncAuditPipeline implements Runnable, MetricsSource {
+  private static final Log LOG = LogFactory.getLog(AsyncAuditPipeline.class);
+
+  /** How long the logging thread sleeps when it is not woken up. */
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /** Several daemons of the same kind may run in a JVM, e.g. in tests. */
+  private static final UniqueNames SOURCE_NAMES = new UniqueNames();
+
+  private final String name;
+  private final String sourceName;
+  private final int capacity;
+  private final AtomicReferenceArray<Runnable> buffer;
+  private final int mask;
+  /** The next slot to be claimed by a producer. */
+  private final AtomicLong tail = new AtomicLong();
+  /** The next slot to be logged, only advanced by the logging thread. */
+  private volatile long head = 0;
+
+  private volatile boolean running = false;
+  private volatile boolean waiting = false;
+  /** The number of producers between their running check and their append. */
+  private final AtomicInteger activeProducers = new AtomicInteger();
+  private volatile Daemon thread;
+
+  private final MetricsRegistry registry;
+  private final MutableCounterLong droppedEvents;
+  private final MutableCounterLong loggedEvents;
+
+  /**
+   * @param name the name of the logging thread and of the metrics source
+   * @param capacity the maximum number of pending events, rounded up to a
+   *                 power of two
+   */
+  public AsyncAuditPipeline(String name, int capacity) {
+    Preconditions.checkArgument(capacity > 0,
+        "The capacity of the audit log buffer must be positive: " + capacity);
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.name = name;
+    this.sourceName = SOURCE_NAMES.uniqueName(name);
+    this.capacity = size;
+    this.buffer = new AtomicReferenceArray<Runnable>(size);
+    this.mask = size - 1;
+    this.registry = new MetricsRegistry(name).setContext("audit");
+    this.droppedEvents = registry.newCounter("DroppedEvents",
+        "Number of audit events dropped because the buffer was full", 0L);
+    this.loggedEvents = registry.newCounter("LoggedEvents",
+        "Number of audit events logged", 0L);
+  }
+
+  /**
+   * Register the metrics and start the logging thread.
+   */
+  public synchronized void start() {
+    if (thread != null) {
+      return;
+    }
+    DefaultMetricsSystem.instance().register(sourceName,
+        "Asynchronous audit logging", this);
+    running = true;
+    thread = new Daemon(this);
+    thread.setName(name);
+    thread.start();
+  }
+
+  /**
+   * Log the pending events, stop the logging thread and unregister the
+   * metrics. Events offered afterwards are logged by the caller.
+   */
+  public void stop() {
+    final Daemon t;
+    synchronized (this) {
+      t = thread;
+      thread = null;
+      if (t == null) {
+        return;
+      }
+      running = false;
+    }
+    LockSupport.unpark(t);
+    try {
+      t.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    DefaultMetricsSystem.instance().unregisterSource(sourceName);
+  }
+
+  /**
+   * @return true if the pipeline accepts events
+   */
+  public boolean isRunning() {
+    return running;
+  }
+
+  @VisibleForTesting
+  String getSourceName() {
+    return sourceName;
+  }
+
+  /**
+   * Queue an audit event for the logging thread, or log it right away if
+   * the pipeline is not running.
+   * @param event the task formatting and logging the event
+   * @return false if the event was dropped
+   */
+  public boolean offer(Runnable event) {
+    // announce the producer before checking whether the pipeline runs: the
+    // logging thread does not exit while an event may still be appended
+    activeProducers.incrementAndGet();
+    try {
+      if (!running) {
+        logEvent(event);
+        return true;
+      }
+      long t;
+      do {
+        t = tail.get();
+        if (t - head >= capacity) {
+          droppedEvents.incr();
+          return false;
+        }
+      } while (!tail.compareAndSet(t, t + 1));
+      buffer.set((int) t & mask, event);
+    } finally {
+      activeProducers.decrementAndGet();
+    }
+    if (waiting) {
+      LockSupport.unpark(thread);
+    }
+    return true;
+  }
+
+  private void logEvent(Runnable event) {
+    try {
+      event.run();
+      loggedEvents.incr();
+    } catch (Throwable e) {
+      LOG.warn("Failed to log an audit event", e);
+    }
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      final int slot = (int) head & mask;
+      final Runnable event = buffer.get(slot);
+      if (event == null) {
+        // once stopped, a producer either saw the pipeline running and is
+        // still counted as active, or logs its event itself; the tail is
+        // read last so that no event appended meanwhile is missed
+        if (!running && activeProducers.get() == 0 && head == tail.get()) {
+          break;
+        }
+        if (head == tail.get()) {
+          if (!running) {
+            // wait for the active producers to append their events
+            Thread.yield();
+            continue;
+          }
+          waiting = true;
+          // recheck after announcing the wait, see offer()
+          if (buffer.get(slot) == null) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+          }
+          waiting = false;
+        } else {
+          // a producer claimed the slot but did not fill it yet
+          Thread.yield();
+        }
+        continue;
+      }
+      logEvent(event);
+      // the slot is released once the event is logged, so that an empty
+      // queue means that all the events have been logged
+      buffer.set(slot, null);
+      head++;
+    }
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info())
+        .addGauge(Interns.info("QueueDepth",
+            "Number of audit events waiting to be logged"), getQueueDepth()),
+        all);
+  }
+
+  /**
+   * @return the number of events waiting to be logged
+   */
+  public long getQueueDepth() {
+    return tail.get() - head;
+  }
+
+  @VisibleForTesting
+  public long getNumDroppedEvents() {
+    return droppedEvents.value();
+  }
+
+  @VisibleForTesting
+  public long getNumLoggedEvents() {
+    return loggedEvents.value();
+  }
+
+  @VisibleForTesting
+  public int getCapacity() {
+    return capacity;
+  }
+}
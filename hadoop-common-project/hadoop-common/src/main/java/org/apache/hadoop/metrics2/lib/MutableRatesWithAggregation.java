@@ -57,6 +57,8 @@ public class MutableRatesWithAggregation extends MutableMetric {
       weakReferenceQueue = new ConcurrentLinkedDeque<>();
   private final ThreadLocal<ConcurrentMap<String, ThreadSafeSampleStat>>
       threadLocalMetricsMap = new ThreadLocal<>();
+  // suffix of the metric names, before the NumOps/AvgTime suffixes
+  private String typeSuffix = "";
 
   /**
    * Initialize the registry with all the methods in a protocol
@@ -76,6 +78,18 @@ public void init(Class<?> protocol) {
     }
   }
 
+  /**
+   * Initialize the registry with all the methods in a protocol, each metric
+   * name being suffixed with the given type, so that several groups
+   * of rates can share one record.
+   * @param protocol the protocol class
+   * @param typeSuffix the type of the rates, e.g. "Deferred"
+   */
+  public void init(Class<?> protocol, String typeSuffix) {
+    this.typeSuffix = typeSuffix;
+    init(protocol);
+  }
+
   /**
    * Add a rate sample for a rate metric.
    * @param name of the rate metric
@@ -123,7 +137,7 @@ public synchronized void snapshot(MetricsRecordBuilder rb, boolean all) {
   private synchronized MutableRate addMetricIfNotExists(String name) {
     MutableRate metric = globalMetrics.get(name);
     if (metric == null) {
-      metric = new MutableRate(name, name, false);
+      metric = new MutableRate(name + typeSuffix, name + typeSuffix, false);
       globalMetrics.put(name, metric);
     }
     return metric;
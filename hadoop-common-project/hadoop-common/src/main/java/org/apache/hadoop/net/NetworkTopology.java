@@ -18,10 +18,14 @@
 package org.apache.hadoop.net;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -371,6 +375,99 @@ int getNumOfLeaves() {
     }
   } // end of InnerNode
 
+  /**
+   * An immutable copy of the tree, which the readers of the topology use
+   * without locking. The leaves are kept in an array in the order of the
+   * tree, so that the leaves below any inner node are a range of the array.
+   * The leaves of the same parent share the array of their ancestors, from
+   * which the distance between two leaves is computed without walking the
+   * tree.
+   */
+  private static final class Snapshot {
+    /** The leaves in the order of the tree. */
+    private final Node[] leaves;
+    /** The index of each leaf in the array of leaves. */
+    private final Map<Node, Integer> indexes =
+        new IdentityHashMap<Node, Integer>();
+    /** The inner nodes above each leaf, from the top of the tree. */
+    private final Map<Node, InnerNode[]> ancestors =
+        new IdentityHashMap<Node, InnerNode[]>();
+    /** The leaves, keyed by path. */
+    private final Map<String, Node> leavesByPath = new HashMap<String, Node>();
+    /** The range of the leaves below each inner node, keyed by path. */
+    private final Map<String, int[]> ranges = new HashMap<String, int[]>();
+
+    Snapshot(InnerNode root) {
+      List<Node> leafList = new ArrayList<Node>(root.getNumOfLeaves());
+      addLeaves(root, NodeBase.ROOT, new InnerNode[0], leafList);
+      leaves = leafList.toArray(new Node[leafList.size()]);
+    }
+
+    private void addLeaves(InnerNode node, String path,
+        InnerNode[] parents, List<Node> leafList) {
+      int start = leafList.size();
+      for (Node child : node.getChildren()) {
+        String childPath = path + NodeBase.PATH_SEPARATOR_STR +
+            child.getName();
+        if (child instanceof InnerNode) {
+          InnerNode[] childParents =
+              Arrays.copyOf(parents, parents.length + 1);
+          childParents[parents.length] = (InnerNode) child;
+          addLeaves((InnerNode) child, childPath, childParents, leafList);
+        } else {
+          indexes.put(child, leafList.size());
+          ancestors.put(child, parents);
+          leavesByPath.put(childPath, child);
+          leafList.add(child);
+        }
+      }
+      ranges.put(path, new int[] {start, leafList.size()});
+    }
+
+    /** @return the index of a leaf, or -1 if it is not in the snapshot */
+    int indexOf(Node node) {
+      Integer index = indexes.get(node);
+      return index == null ? -1 : index;
+    }
+
+    /** @return the ancestors of a leaf, or null if it is not in the snapshot */
+    InnerNode[] getAncestors(Node node) {
+      return ancestors.get(node);
+    }
+
+    /** @return the leaf at a location, or null */
+    Node getLeaf(String loc) {
+      return leavesByPath.get(NodeBase.normalize(loc));
+    }
+
+    /**
+     * @return the first and the last (exclusive) index of the leaves below
+     *         the inner node at a location, or null if there is no inner
+     *         node at the location
+     */
+    int[] getRange(String loc) {
+      return ranges.get(NodeBase.normalize(loc));
+    }
+
+    Node getLeaf(int index) {
+      return leaves[index];
+    }
+
+    int getNumOfLeaves() {
+      return leaves.length;
+    }
+
+    /** @return the distance between two leaves of the snapshot */
+    static int getDistance(InnerNode[] ancestors1, InnerNode[] ancestors2) {
+      int common = 0;
+      while (common < ancestors1.length && common < ancestors2.length &&
+          ancestors1[common] == ancestors2[common]) {
+        common++;
+      }
+      return ancestors1.length + ancestors2.length - 2 * common + 2;
+    }
+  } // end of Snapshot
+
   /**
    * the root cluster map
    */
@@ -389,6 +486,12 @@ int getNumOfLeaves() {
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock();
 
+  /**
+   * The snapshot of the tree used by the readers; null until a reader needs
+   * it after the tree changed.
+   */
+  private volatile Snapshot snapshot;
+
   public NetworkTopology() {
     clusterMap = new InnerNode(InnerNode.ROOT);
   }
@@ -436,10 +539,42 @@ public void add(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
 
+  /**
+   * Discard the snapshot of the tree, which is rebuilt when it is next
+   * needed. Must be called with the write lock held, after changing the
+   * tree.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /**
+   * Get the snapshot of the tree, building it if the tree changed since it
+   * was last built. The snapshot is published while holding the read lock,
+   * so that it cannot overwrite the invalidation of a later change.
+   */
+  private Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s == null) {
+      netlock.readLock().lock();
+      try {
+        s = snapshot;
+        if (s == null) {
+          s = new Snapshot(clusterMap);
+          snapshot = s;
+        }
+      } finally {
+        netlock.readLock().unlock();
+      }
+    }
+    return s;
+  }
+
   protected void incrementRacks() {
     numOfRacks++;
     if (!clusterEverBeenMultiRack && numOfRacks > 1) {
@@ -511,6 +646,7 @@ public void remove(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -522,6 +658,12 @@ public void remove(Node node) {
    */
   public boolean contains(Node node) {
     if (node == null) return false;
+    if (getSnapshot().indexOf(node) >= 0) {
+      return true;
+    }
+    if (!(node instanceof InnerNode)) {
+      return false;
+    }
     netlock.readLock().lock();
     try {
       Node parent = node.getParent();
@@ -610,6 +752,12 @@ public int getDistance(Node node1, Node node2) {
     if (node1 == node2) {
       return 0;
     }
+    Snapshot s = getSnapshot();
+    InnerNode[] ancestors1 = s.getAncestors(node1);
+    InnerNode[] ancestors2 = s.getAncestors(node2);
+    if (ancestors1 != null && ancestors2 != null) {
+      return Snapshot.getDistance(ancestors1, ancestors2);
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -655,7 +803,13 @@ public boolean isOnSameRack( Node node1,  Node node2) {
     if (node1 == null || node2 == null) {
       return false;
     }
-      
+    Snapshot s = getSnapshot();
+    if (s.indexOf(node1) >= 0 && s.indexOf(node2) >= 0) {
+      // the parents of the leaves of the snapshot were set before it was
+      // published
+      return isSameParents(node1, node2);
+    }
+
     netlock.readLock().lock();
     try {
       return isSameParents(node1, node2);
@@ -683,7 +837,9 @@ public boolean isOnSameNodeGroup(Node node1, Node node2) {
    * 
    * <p>To be overridden in subclasses for specific NetworkTopology 
    * implementations, as alternative to overriding the full 
-   * {@link #isOnSameRack(Node, Node)} method.
+   * {@link #isOnSameRack(Node, Node)} method. The default implementation of
+   * {@link #isOnSameRack(Node, Node)} calls it without holding the lock when
+   * both nodes are leaves of the tree.
    * 
    * @param node1 the first node to compare
    * @param node2 the second node to compare
@@ -709,15 +865,10 @@ void setRandomSeed(long seed) {
    * @return the chosen node
    */
   public Node chooseRandom(String scope) {
-    netlock.readLock().lock();
-    try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1));
-      } else {
-        return chooseRandom(scope, null);
-      }
-    } finally {
-      netlock.readLock().unlock();
+    if (scope.startsWith("~")) {
+      return chooseRandom(NodeBase.ROOT, scope.substring(1));
+    } else {
+      return chooseRandom(scope, null);
     }
   }
 
@@ -730,29 +881,37 @@ private Node chooseRandom(String scope, String excludedScope){
         excludedScope = null;
       }
     }
-    Node node = getNode(scope);
-    if (!(node instanceof InnerNode)) {
-      return node;
+    Snapshot s = getSnapshot();
+    int[] range = s.getRange(scope);
+    if (range == null) {
+      return s.getLeaf(scope);
     }
-    InnerNode innerNode = (InnerNode)node;
-    int numOfDatanodes = innerNode.getNumOfLeaves();
-    if (excludedScope == null) {
-      node = null;
-    } else {
-      node = getNode(excludedScope);
-      if (!(node instanceof InnerNode)) {
-        numOfDatanodes -= 1;
-      } else {
-        numOfDatanodes -= ((InnerNode)node).getNumOfLeaves();
+    // the excluded leaves are a range within the leaves of the scope
+    int excludedStart = range[1];
+    int numOfExcluded = 0;
+    if (excludedScope != null) {
+      int[] excludedRange = s.getRange(excludedScope);
+      if (excludedRange == null) {
+        int index = s.indexOf(s.getLeaf(excludedScope));
+        excludedRange = index < 0 ? null : new int[] {index, index + 1};
+      }
+      if (excludedRange != null && excludedRange[0] >= range[0] &&
+          excludedRange[1] <= range[1]) {
+        excludedStart = excludedRange[0];
+        numOfExcluded = excludedRange[1] - excludedRange[0];
       }
     }
+    int numOfDatanodes = range[1] - range[0] - numOfExcluded;
     if (numOfDatanodes == 0) {
       throw new InvalidTopologyException(
           "Failed to find datanode (scope=\"" + String.valueOf(scope) +
           "\" excludedScope=\"" + String.valueOf(excludedScope) + "\").");
     }
-    int leaveIndex = r.nextInt(numOfDatanodes);
-    return innerNode.getLeaf(leaveIndex, node);
+    int leaveIndex = range[0] + r.nextInt(numOfDatanodes);
+    if (leaveIndex >= excludedStart) {
+      leaveIndex += numOfExcluded;
+    }
+    return s.getLeaf(leaveIndex);
   }
 
   /** return leaves in <i>scope</i>
@@ -760,14 +919,14 @@ private Node chooseRandom(String scope, String excludedScope){
    * @return leaves nodes under specific scope
    */
   public List<Node> getLeaves(String scope) {
-    Node node = getNode(scope);
+    Snapshot s = getSnapshot();
+    int[] range = s.getRange(scope);
     List<Node> leafNodes = new ArrayList<Node>();
-    if (!(node instanceof InnerNode)) {
-      leafNodes.add(node);
+    if (range == null) {
+      leafNodes.add(s.getLeaf(scope));
     } else {
-      InnerNode innerNode = (InnerNode) node;
-      for (int i=0;i<innerNode.getNumOfLeaves();i++) {
-        leafNodes.add(innerNode.getLeaf(i, null));
+      for (int i = range[0]; i < range[1]; i++) {
+        leafNodes.add(s.getLeaf(i));
       }
     }
     return leafNodes;
@@ -790,36 +949,30 @@ public int countNumOfAvailableNodes(String scope,
     scope = NodeBase.normalize(scope);
     int excludedCountInScope = 0; // the number of nodes in both scope & excludedNodes
     int excludedCountOffScope = 0; // the number of nodes outside scope & excludedNodes
-    netlock.readLock().lock();
-    try {
-      for (Node node : excludedNodes) {
-        node = getNode(NodeBase.getPath(node));
-        if (node == null) {
-          continue;
-        }
-        if ((NodeBase.getPath(node) + NodeBase.PATH_SEPARATOR_STR)
-            .startsWith(scope + NodeBase.PATH_SEPARATOR_STR)) {
-          excludedCountInScope++;
-        } else {
-          excludedCountOffScope++;
-        }
-      }
-      Node n = getNode(scope);
-      int scopeNodeCount = 0;
-      if (n != null) {
-        scopeNodeCount++;
+    Snapshot s = getSnapshot();
+    for (Node node : excludedNodes) {
+      node = s.getLeaf(NodeBase.getPath(node));
+      if (node == null) {
+        continue;
       }
-      if (n instanceof InnerNode) {
-        scopeNodeCount=((InnerNode)n).getNumOfLeaves();
-      }
-      if (isExcluded) {
-        return clusterMap.getNumOfLeaves() - scopeNodeCount
-            - excludedCountOffScope;
+      if ((NodeBase.getPath(node) + NodeBase.PATH_SEPARATOR_STR)
+          .startsWith(scope + NodeBase.PATH_SEPARATOR_STR)) {
+        excludedCountInScope++;
       } else {
-        return scopeNodeCount - excludedCountInScope;
+        excludedCountOffScope++;
       }
-    } finally {
-      netlock.readLock().unlock();
+    }
+    int[] range = s.getRange(scope);
+    int scopeNodeCount = 0;
+    if (range != null) {
+      scopeNodeCount = range[1] - range[0];
+    } else if (s.getLeaf(scope) != null) {
+      scopeNodeCount++;
+    }
+    if (isExcluded) {
+      return s.getNumOfLeaves() - scopeNodeCount - excludedCountOffScope;
+    } else {
+      return scopeNodeCount - excludedCountInScope;
     }
   }
 
@@ -937,4 +1090,36 @@ public void sortByDistance(Node reader, Node[] nodes, int activeLen) {
     Preconditions.checkState(idx == activeLen,
         "Sorted the wrong number of nodes!");
   }
+
+  /**
+   * Shuffle the nodes at each network distance from <i>reader</i>, in a nodes
+   * array already sorted by distance to <i>reader</i>.
+   * <p/>
+   * This gives the same order as {@link #sortByDistance(Node, Node[], int)}
+   * without sorting the nodes again, so that the readers of a shared sorted
+   * array still spread their reads over the nodes at the same distance.
+   *
+   * @param reader    Node where data will be read
+   * @param nodes     Available replicas with the requested data, sorted by
+   *                  distance to the reader
+   * @param activeLen Number of active nodes at the front of the array
+   */
+  public void shuffleByDistance(Node reader, Node[] nodes, int activeLen) {
+    int[] weights = new int[activeLen];
+    for (int i = 0; i < activeLen; i++) {
+      weights[i] = getWeight(reader, nodes[i]);
+    }
+    List<Node> list = Arrays.asList(nodes);
+    int start = 0;
+    while (start < activeLen) {
+      int end = start + 1;
+      while (end < activeLen && weights[end] == weights[start]) {
+        end++;
+      }
+      if (end - start > 1) {
+        Collections.shuffle(list.subList(start, end), r);
+      }
+      start = end;
+    }
+  }
 }
@@ -217,6 +217,7 @@ public void add(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -249,6 +250,7 @@ public void remove(Node node) {
         LOG.debug("NetworkTopology became:\n" + this.toString());
       }
     } finally {
+      invalidateSnapshot();
       netlock.writeLock().unlock();
     }
   }
@@ -284,21 +286,50 @@ protected int getWeight(Node reader, Node node) {
    */
   @Override
   public void sortByDistance(Node reader, Node[] nodes, int activeLen) {
-    // If reader is not a datanode (not in NetworkTopology tree), we need to
-    // replace this reader with a sibling leaf node in tree.
-    if (reader != null && !this.contains(reader)) {
-      Node nodeGroup = getNode(reader.getNetworkLocation());
-      if (nodeGroup != null && nodeGroup instanceof InnerNode) {
-        InnerNode parentNode = (InnerNode) nodeGroup;
-        // replace reader with the first children of its parent in tree
-        reader = parentNode.getLeaf(0, null);
-      } else {
+    if (reader != null) {
+      reader = getReaderInTree(reader);
+      if (reader == null) {
         return;
       }
     }
     super.sortByDistance(reader, nodes, activeLen);
   }
 
+  /**
+   * Shuffle the nodes at each network distance from <i>reader</i>, in a nodes
+   * array already sorted by {@link #sortByDistance(Node, Node[], int)}.
+   */
+  @Override
+  public void shuffleByDistance(Node reader, Node[] nodes, int activeLen) {
+    if (reader != null) {
+      reader = getReaderInTree(reader);
+      if (reader == null) {
+        return;
+      }
+    }
+    super.shuffleByDistance(reader, nodes, activeLen);
+  }
+
+  /**
+   * If reader is not a datanode (not in NetworkTopology tree), we need to
+   * replace this reader with a sibling leaf node in tree.
+   *
+   * @return the reader, a leaf of its node group, or null if its node group
+   *         is not in the tree.
+   */
+  private Node getReaderInTree(Node reader) {
+    if (this.contains(reader)) {
+      return reader;
+    }
+    Node nodeGroup = getNode(reader.getNetworkLocation());
+    if (nodeGroup != null && nodeGroup instanceof InnerNode) {
+      InnerNode parentNode = (InnerNode) nodeGroup;
+      // replace reader with the first children of its parent in tree
+      return parentNode.getLeaf(0, null);
+    }
+    return null;
+  }
+
   /** InnerNodeWithNodeGroup represents a switch/router of a data center, rack
    * or physical host. Different from a leaf node, it has non-null children.
    */
@@ -795,6 +795,15 @@ public void testTimeDuration() {
     conf.set("test.time.X", "30");
     assertEquals(30L, conf.getTimeDuration("test.time.X", 40, SECONDS));
 
+    // a finer unit for the returned value
+    assertEquals(30000L,
+        conf.getTimeDuration("test.time.X", 40, SECONDS, MILLISECONDS));
+    assertEquals(40000L,
+        conf.getTimeDuration("test.time.Y", 40, SECONDS, MILLISECONDS));
+    conf.set("test.time.X", "250ms");
+    assertEquals(250L,
+        conf.getTimeDuration("test.time.X", 40, SECONDS, MILLISECONDS));
+
     for (Configuration.ParsedTimeDuration ptd :
          Configuration.ParsedTimeDuration.values()) {
       conf.setTimeDuration("test.time.unit", 1, ptd.unit());
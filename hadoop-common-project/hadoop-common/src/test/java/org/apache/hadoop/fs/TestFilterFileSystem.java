@@ -56,6 +56,9 @@ public static void setup() {
   public static class DontCheck {
     public BlockLocation[] getFileBlockLocations(Path p, 
         long start, long len) { return null; }
+    public BlockLocation[][] getFileBlockLocations(FileStatus[] files,
+        long[] starts, long[] lens) { return null; }
+    public FileStatus[] getFileStatuses(Path[] paths) { return null; }
     public FsServerDefaults getServerDefaults() { return null; }
     public long getLength(Path f) { return 0; }
     public FSDataOutputStream append(Path f) { return null; }
@@ -57,6 +57,9 @@ public class TestHarFileSystem {
   @SuppressWarnings("deprecation")
   private interface MustNotImplement {
     public BlockLocation[] getFileBlockLocations(Path p, long start, long len);
+    public BlockLocation[][] getFileBlockLocations(FileStatus[] files,
+        long[] starts, long[] lens);
+    public FileStatus[] getFileStatuses(Path[] paths);
     public long getLength(Path f);
     public FSDataOutputStream append(Path f, int bufferSize);
     public void rename(Path src, Path dst, Rename... options);
@@ -163,6 +163,36 @@ private void verifyFile(FileSystem fs, Path file, int bytesToVerify,
     }
   }
   
+  @Test(timeout = 10000)
+  public void testBatchedStatusAndLocations() throws IOException {
+    Path file1 = new Path(TEST_ROOT_DIR, "batch1");
+    Path file2 = new Path(TEST_ROOT_DIR, "batch2");
+    Path missing = new Path(TEST_ROOT_DIR, "missing");
+    writeFile(fileSys, file1, 1);
+    writeFile(fileSys, file2, 2);
+
+    FileStatus[] stats = fileSys.getFileStatuses(
+        new Path[] { file1, missing, file2 });
+    assertEquals(3, stats.length);
+    assertEquals(fileSys.getFileStatus(file1), stats[0]);
+    assertNull(stats[1]);
+    assertEquals(fileSys.getFileStatus(file2), stats[2]);
+
+    BlockLocation[][] locations = fileSys.getFileBlockLocations(
+        new FileStatus[] { stats[0], stats[2] }, new long[] { 0, 0 },
+        new long[] { stats[0].getLen(), stats[2].getLen() });
+    assertEquals(2, locations.length);
+    assertEquals(1, locations[0].length);
+    assertEquals(stats[2].getLen(), locations[1][0].getLength());
+    try {
+      fileSys.getFileBlockLocations(new FileStatus[] { stats[0] },
+          new long[] { 0, 0 }, new long[] { 1, 1 });
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
   @Test(timeout = 10000)
   public void testCopy() throws IOException {
     Path src = new Path(TEST_ROOT_DIR, "dingo");
@@ -25,11 +25,14 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.ipc.metrics.RpcMetrics;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
 import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto.RpcErrorCodeProto;
 import org.apache.hadoop.ipc.protobuf.TestProtos;
 import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
@@ -40,6 +43,7 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.Before;
@@ -275,6 +279,88 @@ public void testExtraLongRpc() throws Exception {
     }
   }
 
+  /** Alignment context keeping a single state id, for both sides. */
+  private static class TestAlignmentContext implements AlignmentContext {
+    private final AtomicLong stateId = new AtomicLong();
+    private volatile long lastRequestStateId = -1;
+
+    @Override
+    public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public void receiveResponseState(RpcResponseHeaderProto header) {
+      stateId.set(header.getStateId());
+    }
+
+    @Override
+    public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+      header.setStateId(stateId.get());
+    }
+
+    @Override
+    public long receiveRequestState(RpcRequestHeaderProto header) {
+      lastRequestStateId = header.hasStateId() ? header.getStateId() : -1;
+      return lastRequestStateId;
+    }
+
+    @Override
+    public long getLastSeenStateId() {
+      return stateId.get();
+    }
+  }
+
+  @Test(timeout = 5000)
+  public void testAlignmentContext() throws Exception {
+    final TestAlignmentContext serverContext = new TestAlignmentContext();
+    serverContext.stateId.set(42);
+    RPC.Server alignedServer = new RPC.Builder(conf)
+        .setProtocol(TestRpcService.class)
+        .setInstance(TestProtobufRpcProto.newReflectiveBlockingService(
+            new PBServerImpl()))
+        .setBindAddress(ADDRESS).setPort(PORT)
+        .setAlignmentContext(serverContext).build();
+    alignedServer.start();
+    try {
+      final InetSocketAddress alignedAddr =
+          NetUtils.getConnectAddress(alignedServer);
+      final EmptyRequestProto emptyRequest =
+          EmptyRequestProto.newBuilder().build();
+
+      // a client without alignment context does not send any state id
+      TestRpcService client = RPC.getProxy(TestRpcService.class, 0,
+          alignedAddr, conf);
+      client.ping(null, emptyRequest);
+      assertEquals(-1, serverContext.lastRequestStateId);
+
+      // the state id of the server is received by an aligned client, and
+      // sent back in the following requests, including failed ones
+      final TestAlignmentContext clientContext = new TestAlignmentContext();
+      TestRpcService alignedClient = RPC.getProtocolProxy(
+          TestRpcService.class, 0, alignedAddr,
+          UserGroupInformation.getCurrentUser(), conf,
+          NetUtils.getDefaultSocketFactory(conf), 0, null, null,
+          clientContext).getProxy();
+      alignedClient.ping(null, emptyRequest);
+      assertEquals(0, serverContext.lastRequestStateId);
+      assertEquals(42, clientContext.getLastSeenStateId());
+      serverContext.stateId.set(43);
+      try {
+        alignedClient.error(null, emptyRequest);
+        Assert.fail("Expected exception is not thrown");
+      } catch (ServiceException e) {
+        // expected
+      }
+      assertEquals(42, serverContext.lastRequestStateId);
+      assertEquals(43, clientContext.getLastSeenStateId());
+      RPC.stopProxy(client);
+      RPC.stopProxy(alignedClient);
+    } finally {
+      alignedServer.stop();
+    }
+  }
+
   @Test(timeout = 12000)
   public void testLogSlowRPC() throws IOException, ServiceException {
     TestRpcService2 client = getClient2();
@@ -0,0 +1,251 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EchoRequestProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EchoResponseProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EmptyRequestProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.EmptyResponseProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.SleepRequestProto;
+import org.apache.hadoop.ipc.protobuf.TestProtos.SleepResponseProto;
+import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpc2Proto;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.util.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.BlockingService;
+import com.google.protobuf.RpcController;
+import com.google.protobuf.ServiceException;
+
+/**
+ * Tests RPC calls whose responses are deferred by the server with
+ * {@link ProtobufRpcEngine.Server#registerForDeferredResponse()}.
+ */
+public class TestProtoBufRpcServerHandoff {
+  private static final int NUM_CALLS = 5;
+  private static final int SLEEP_MS = 1000;
+
+  private Configuration conf;
+  private RPC.Server server;
+  private InetSocketAddress addr;
+  private ExecutorService executor;
+
+  @ProtocolInfo(protocolName = "testProto2", protocolVersion = 1)
+  public interface TestProtoBufRpcServerHandoffProtocol
+      extends TestProtobufRpc2Proto.BlockingInterface {
+  }
+
+  /** Hands every call off to another thread. */
+  private class HandoffServerImpl
+      implements TestProtoBufRpcServerHandoffProtocol {
+
+    @Override
+    public EmptyResponseProto ping2(RpcController controller,
+        EmptyRequestProto request) throws ServiceException {
+      return EmptyResponseProto.newBuilder().build();
+    }
+
+    @Override
+    public EchoResponseProto echo2(RpcController controller,
+        final EchoRequestProto request) throws ServiceException {
+      final ProtobufRpcEngineCallback callback =
+          ProtobufRpcEngine.Server.registerForDeferredResponse();
+      final boolean fail = request.getMessage().equals("throw");
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (fail) {
+            // complete the call only after the handler failed it
+            try {
+              Thread.sleep(100);
+            } catch (InterruptedException e) {
+              return;
+            }
+            callback.setResponse(EchoResponseProto.newBuilder()
+                .setMessage("late").build());
+          } else if (request.getMessage().equals("error")) {
+            callback.error(new IOException("deferred error"));
+          } else {
+            callback.setResponse(EchoResponseProto.newBuilder()
+                .setMessage(request.getMessage()).build());
+          }
+        }
+      });
+      if (fail) {
+        throw new ServiceException(new IOException("handler failure"));
+      }
+      return null;
+    }
+
+    @Override
+    public SleepResponseProto sleep(RpcController controller,
+        final SleepRequestProto request) throws ServiceException {
+      final ProtobufRpcEngineCallback callback =
+          ProtobufRpcEngine.Server.registerForDeferredResponse();
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(request.getMilliSeconds());
+          } catch (InterruptedException e) {
+            callback.error(e);
+            return;
+          }
+          callback.setResponse(SleepResponseProto.newBuilder().build());
+        }
+      });
+      return null;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration();
+    RPC.setProtocolEngine(conf, TestProtoBufRpcServerHandoffProtocol.class,
+        ProtobufRpcEngine.class);
+    executor = Executors.newFixedThreadPool(NUM_CALLS);
+    BlockingService service = TestProtobufRpc2Proto
+        .newReflectiveBlockingService(new HandoffServerImpl());
+    // a single handler serves all the calls
+    server = new RPC.Builder(conf)
+        .setProtocol(TestProtoBufRpcServerHandoffProtocol.class)
+        .setInstance(service).setBindAddress("0.0.0.0").setPort(0)
+        .setNumHandlers(1).build();
+    server.start();
+    addr = NetUtils.getConnectAddress(server);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+    executor.shutdownNow();
+  }
+
+  private TestProtoBufRpcServerHandoffProtocol getClient()
+      throws IOException {
+    return RPC.getProxy(TestProtoBufRpcServerHandoffProtocol.class, 0, addr,
+        conf);
+  }
+
+  @Test(timeout = 20000)
+  public void testDeferredResponses() throws Exception {
+    final TestProtoBufRpcServerHandoffProtocol client = getClient();
+    ExecutorService clients = Executors.newFixedThreadPool(NUM_CALLS);
+    try {
+      long start = Time.monotonicNow();
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < NUM_CALLS; i++) {
+        futures.add(clients.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            client.sleep(null, SleepRequestProto.newBuilder()
+                .setMilliSeconds(SLEEP_MS).build());
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+      long elapsed = Time.monotonicNow() - start;
+      // the handler did not wait for the calls to complete
+      assertTrue("Calls took " + elapsed + " ms",
+          elapsed < NUM_CALLS * SLEEP_MS);
+    } finally {
+      clients.shutdownNow();
+      RPC.stopProxy(client);
+    }
+    assertCounter("DeferredRpcProcessingTimeNumOps", (long) NUM_CALLS,
+        getMetrics(server.getRpcMetrics().name()));
+    // deferred calls do not count as processed by the handler
+    assertCounter("RpcProcessingTimeNumOps", 0L,
+        getMetrics(server.getRpcMetrics().name()));
+    assertCounter("SleepDeferredNumOps", (long) NUM_CALLS,
+        getMetrics(server.getRpcDetailedMetrics().name()));
+  }
+
+  @Test(timeout = 20000)
+  public void testDeferredResponseAndError() throws Exception {
+    TestProtoBufRpcServerHandoffProtocol client = getClient();
+    try {
+      EchoResponseProto response = client.echo2(null,
+          EchoRequestProto.newBuilder().setMessage("hello").build());
+      assertEquals("hello", response.getMessage());
+      try {
+        client.echo2(null,
+            EchoRequestProto.newBuilder().setMessage("error").build());
+        fail("The deferred call should fail");
+      } catch (ServiceException e) {
+        assertTrue(e.getCause() instanceof RemoteException);
+        assertEquals(IOException.class.getName(),
+            ((RemoteException) e.getCause()).getClassName());
+        GenericTestUtils.assertExceptionContains("deferred error", e);
+      }
+      // non deferred calls are not affected
+      client.ping2(null, EmptyRequestProto.newBuilder().build());
+    } finally {
+      RPC.stopProxy(client);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testHandlerFailureAfterDeferral() throws Exception {
+    TestProtoBufRpcServerHandoffProtocol client = getClient();
+    try {
+      try {
+        client.echo2(null,
+            EchoRequestProto.newBuilder().setMessage("throw").build());
+        fail("The failed call should not be completed by the callback");
+      } catch (ServiceException e) {
+        GenericTestUtils.assertExceptionContains("handler failure", e);
+      }
+      // let the callback try to complete the call again
+      Thread.sleep(500);
+      // the connection still gets exactly one response per call
+      for (int i = 0; i < NUM_CALLS; i++) {
+        EchoResponseProto response = client.echo2(null,
+            EchoRequestProto.newBuilder().setMessage("hello" + i).build());
+        assertEquals("hello" + i, response.getMessage());
+      }
+    } finally {
+      RPC.stopProxy(client);
+    }
+    // only the calls completed by the callback are counted as deferred
+    assertCounter("DeferredRpcProcessingTimeNumOps", (long) NUM_CALLS,
+        getMetrics(server.getRpcMetrics().name()));
+  }
+}
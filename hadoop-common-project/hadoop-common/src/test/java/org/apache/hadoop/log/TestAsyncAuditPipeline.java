@@ -0,0 +1,231 @@
+/**
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.hadoop.log;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncAuditPipeline {
+  private AsyncAuditPipeline pipeline;
+
+  @Before
+  public void setUp() {
+    pipeline = new AsyncAuditPipeline("TestAsyncAuditPipeline", 10);
+  }
+
+  @After
+  public void tearDown() {
+    pipeline.stop();
+  }
+
+  @Test
+  public void testCapacity() {
+    assertEquals(16, pipeline.getCapacity());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentProducers() throws Exception {
+    final int numThreads = 8;
+    final int eventsPerThread = 10000;
+    pipeline = new AsyncAuditPipeline("TestConcurrentProducers", 64);
+    pipeline.start();
+    // the events of each producer are logged in order, nothing is lost
+    final long[] lastLogged = new long[numThreads];
+    final AtomicLong outOfOrder = new AtomicLong();
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int t = 0; t < numThreads; t++) {
+      final int producer = t;
+      producers.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 1; i <= eventsPerThread; i++) {
+            final int seq = i;
+            Runnable event = new Runnable() {
+              @Override
+              public void run() {
+                if (lastLogged[producer] != seq - 1) {
+                  outOfOrder.incrementAndGet();
+                }
+                lastLogged[producer] = seq;
+              }
+            };
+            while (!pipeline.offer(event)) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : producers) {
+      t.start();
+    }
+    for (Thread t : producers) {
+      t.join();
+    }
+    pipeline.stop();
+    assertEquals(0, outOfOrder.get());
+    for (int t = 0; t < numThreads; t++) {
+      assertEquals(eventsPerThread, lastLogged[t]);
+    }
+    assertEquals(numThreads * eventsPerThread, pipeline.getNumLoggedEvents());
+    assertEquals(0, pipeline.getQueueDepth());
+  }
+
+  @Test(timeout = 30000)
+  public void testDropWhenFull() throws Exception {
+    pipeline.start();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    assertTrue(pipeline.offer(new Runnable() {
+      @Override
+      public void run() {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }));
+    blocked.await();
+
+    Runnable noop = new Runnable() {
+      @Override
+      public void run() {
+      }
+    };
+    // the event being logged still holds its slot
+    for (int i = 1; i < pipeline.getCapacity(); i++) {
+      assertTrue(pipeline.offer(noop));
+    }
+    assertFalse(pipeline.offer(noop));
+    assertFalse(pipeline.offer(noop));
+
+    MetricsRecordBuilder rb = getMetrics(pipeline);
+    assertCounter("DroppedEvents", 2L, rb);
+    assertGauge("QueueDepth", (long) pipeline.getCapacity(), rb);
+
+    release.countDown();
+    pipeline.stop();
+    assertEquals(pipeline.getCapacity(), pipeline.getNumLoggedEvents());
+    assertEquals(2, pipeline.getNumDroppedEvents());
+  }
+
+  @Test(timeout = 30000)
+  public void testLogSynchronouslyOnceStopped() throws Exception {
+    pipeline.start();
+    pipeline.stop();
+    final AtomicLong logged = new AtomicLong();
+    assertTrue(pipeline.offer(new Runnable() {
+      @Override
+      public void run() {
+        logged.incrementAndGet();
+      }
+    }));
+    // the event was logged by the caller
+    assertEquals(1, logged.get());
+    assertEquals(1, pipeline.getNumLoggedEvents());
+    assertEquals(0, pipeline.getNumDroppedEvents());
+  }
+
+  @Test(timeout = 60000)
+  public void testNoEventLostOnStop() throws Exception {
+    final int numThreads = 8;
+    pipeline = new AsyncAuditPipeline("TestNoEventLostOnStop", 1024);
+    pipeline.start();
+    final AtomicLong offered = new AtomicLong();
+    final AtomicLong logged = new AtomicLong();
+    final Runnable event = new Runnable() {
+      @Override
+      public void run() {
+        logged.incrementAndGet();
+      }
+    };
+    final CountDownLatch started = new CountDownLatch(numThreads);
+    List<Thread> producers = new ArrayList<Thread>();
+    for (int t = 0; t < numThreads; t++) {
+      producers.add(new Thread() {
+        @Override
+        public void run() {
+          started.countDown();
+          // keep offering across the stop of the pipeline
+          for (int i = 0; i < 20000; i++) {
+            if (pipeline.offer(event)) {
+              offered.incrementAndGet();
+            }
+          }
+        }
+      });
+    }
+    for (Thread t : producers) {
+      t.start();
+    }
+    started.await();
+    pipeline.stop();
+    for (Thread t : producers) {
+      t.join();
+    }
+    // every accepted event was logged, either by the logging thread or by
+    // the producer after the stop
+    assertEquals(offered.get(), logged.get());
+  }
+
+  @Test
+  public void testUniqueSourceNames() {
+    AsyncAuditPipeline other = new AsyncAuditPipeline(
+        "TestAsyncAuditPipeline", 10);
+    assertFalse(pipeline.getSourceName().equals(other.getSourceName()));
+    // both can be started in the same JVM
+    pipeline.start();
+    other.start();
+    other.stop();
+  }
+
+  @Test(timeout = 30000)
+  public void testFailingEvent() throws Exception {
+    pipeline.start();
+    final CountDownLatch logged = new CountDownLatch(1);
+    assertTrue(pipeline.offer(new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("failing event");
+      }
+    }));
+    assertTrue(pipeline.offer(new Runnable() {
+      @Override
+      public void run() {
+        logged.countDown();
+      }
+    }));
+    logged.await();
+  }
+}
@@ -538,7 +538,7 @@ public void finalizeLogSegment(long firstTxId, long lastTxId)
 
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
-      long fromTxId, boolean inProgressOk)
+      long fromTxId, boolean inProgressOk, boolean onlyDurableTxns)
       throws IOException {
     List<EditLogLedgerMetadata> currentLedgerList = getLedgerList(fromTxId,
         inProgressOk);
@@ -335,7 +335,7 @@ public void testSimpleRead() throws Exception {
     bkjm.finalizeLogSegment(1, numTransactions);
 
     List<EditLogInputStream> in = new ArrayList<EditLogInputStream>();
-    bkjm.selectInputStreams(in, 1, true);
+    bkjm.selectInputStreams(in, 1, true, false);
     try {
       assertEquals(numTransactions, 
                    FSEditLogTestUtil.countTransactionsInStream(in.get(0)));
@@ -863,7 +863,7 @@ public void testDefaultAckQuorum() throws Exception {
       bkjm.finalizeLogSegment(1, numTransactions);
 
       List<EditLogInputStream> in = new ArrayList<EditLogInputStream>();
-      bkjm.selectInputStreams(in, 1, true);
+      bkjm.selectInputStreams(in, 1, true, false);
       try {
         assertEquals(numTransactions,
             FSEditLogTestUtil.countTransactionsInStream(in.get(0)));
@@ -924,7 +924,7 @@ public void testAckQuorum() throws Exception {
     bkjm.finalizeLogSegment(1, numTransactions);
 
     List<EditLogInputStream> in = new ArrayList<EditLogInputStream>();
-    bkjm.selectInputStreams(in, 1, true);
+    bkjm.selectInputStreams(in, 1, true, false);
     try {
       assertEquals(numTransactions,
           FSEditLogTestUtil.countTransactionsInStream(in.get(0)));
@@ -120,7 +120,7 @@ public void testSpeculativeRead() throws Exception {
     bkjm.finalizeLogSegment(1, numTransactions);
 
     List<EditLogInputStream> in = new ArrayList<EditLogInputStream>();
-    bkjm.selectInputStreams(in, 1, true);
+    bkjm.selectInputStreams(in, 1, true, false);
 
     // sleep 9 bk servers. Now only one server is running and responding to the
     // clients
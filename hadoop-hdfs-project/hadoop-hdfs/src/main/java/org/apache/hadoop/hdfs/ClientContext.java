@@ -76,6 +76,12 @@ public class ClientContext {
    * Caches key Providers for the DFSClient
    */
   private final KeyProviderCache keyProviderCache;
+
+  /**
+   * Caches the file status and block locations of paths, or null.
+   */
+  private final ClientMetadataCache metadataCache;
+
   /**
    * True if we should use the legacy BlockReaderLocal.
    */
@@ -113,6 +119,9 @@ private ClientContext(String name, Conf conf) {
     this.peerCache =
           new PeerCache(conf.socketCacheCapacity, conf.socketCacheExpiry);
     this.keyProviderCache = new KeyProviderCache(conf.keyProviderCacheExpiryMs);
+    this.metadataCache = conf.metadataCacheSize > 0 ?
+        new ClientMetadataCache(conf.metadataCacheSize,
+            conf.metadataCacheExpiryMs) : null;
     this.useLegacyBlockReaderLocal = conf.useLegacyBlockReaderLocal;
     this.domainSocketFactory = new DomainSocketFactory(conf);
 
@@ -146,7 +155,11 @@ public static String confAsString(Conf conf) {
       append(", shortCircuitSharedMemoryWatcherInterruptCheckMs = ").
       append(conf.shortCircuitSharedMemoryWatcherInterruptCheckMs).
       append(", keyProviderCacheExpiryMs = ").
-      append(conf.keyProviderCacheExpiryMs);
+      append(conf.keyProviderCacheExpiryMs).
+      append(", metadataCacheSize = ").
+      append(conf.metadataCacheSize).
+      append(", metadataCacheExpiryMs = ").
+      append(conf.metadataCacheExpiryMs);
 
     return builder.toString();
   }
@@ -207,6 +220,13 @@ public KeyProviderCache getKeyProviderCache() {
     return keyProviderCache;
   }
 
+  /**
+   * @return the metadata cache, or null if it is disabled.
+   */
+  public ClientMetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
   public boolean getUseLegacyBlockReaderLocal() {
     return useLegacyBlockReaderLocal;
   }
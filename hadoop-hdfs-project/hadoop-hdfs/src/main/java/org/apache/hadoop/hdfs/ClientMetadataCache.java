@@ -0,0 +1,391 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Caches the file status and the block locations of paths for the
+ * DFSClients sharing a {@link ClientContext}, so that the files opened again
+ * and again do not cost a getFileInfo and a getBlockLocations call to the
+ * NameNode each time.
+ * <p/>
+ * The metadata is cached per NameNode, path and user, since the users may
+ * not have the same permissions. A DFSClient invalidates the paths it
+ * changes. The changes made by other clients are only seen once the entries
+ * expire, or once the inotify events of the NameNode are read by an
+ * {@link Invalidator}. There is one invalidator per NameNode, shared by the
+ * DFSClients of the context.
+ */
+@InterfaceAudience.Private
+public class ClientMetadataCache {
+  private static final Log LOG = LogFactory.getLog(ClientMetadataCache.class);
+
+  /** The metadata of a path, per user. */
+  private static class Entry {
+    private final ConcurrentMap<String, HdfsFileStatus> fileInfos =
+        new ConcurrentHashMap<String, HdfsFileStatus>();
+    private final ConcurrentMap<String, LocatedBlocks> locatedBlocks =
+        new ConcurrentHashMap<String, LocatedBlocks>();
+  }
+
+  /** Entries keyed by NameNode authority followed by path. */
+  private final Cache<String, Entry> cache;
+  /**
+   * The entries of the cache sorted by key, so that the entries below a path
+   * are found without scanning the whole cache.
+   */
+  private final ConcurrentNavigableMap<String, Entry> index =
+      new ConcurrentSkipListMap<String, Entry>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /** The invalidators of the NameNodes, keyed by authority. */
+  private final Map<String, Invalidator> invalidators =
+      new HashMap<String, Invalidator>();
+
+  ClientMetadataCache(int maxSize, long expiryMs) {
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .removalListener(new RemovalListener<String, Entry>() {
+          @Override
+          public void onRemoval(RemovalNotification<String, Entry> n) {
+            // the key may already have a new entry
+            index.remove(n.getKey(), n.getValue());
+          }
+        })
+        .build();
+  }
+
+  private static String key(String authority, String path) {
+    return authority + path;
+  }
+
+  private Entry getEntry(String authority, String path) {
+    final String key = key(authority, path);
+    try {
+      return cache.get(key, new Callable<Entry>() {
+        @Override
+        public Entry call() {
+          Entry entry = new Entry();
+          index.put(key, entry);
+          return entry;
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private <T> T count(T value) {
+    if (value != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return value;
+  }
+
+  /** @return the cached status of the path, or null. */
+  public HdfsFileStatus getFileInfo(String authority, String user,
+      String path) {
+    Entry entry = cache.getIfPresent(key(authority, path));
+    return count(entry == null ? null : entry.fileInfos.get(user));
+  }
+
+  public void putFileInfo(String authority, String user, String path,
+      HdfsFileStatus status) {
+    if (status != null) {
+      getEntry(authority, path).fileInfos.put(user, status);
+    }
+  }
+
+  /**
+   * @return a copy of the cached block locations of the file, whose list of
+   *         blocks the caller may modify, or null.
+   */
+  public LocatedBlocks getLocatedBlocks(String authority, String user,
+      String path) {
+    Entry entry = cache.getIfPresent(key(authority, path));
+    LocatedBlocks blocks =
+        count(entry == null ? null : entry.locatedBlocks.get(user));
+    if (blocks == null) {
+      return null;
+    }
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(),
+        new ArrayList<LocatedBlock>(blocks.getLocatedBlocks()),
+        blocks.getLastLocatedBlock(), blocks.isLastBlockComplete(),
+        blocks.getFileEncryptionInfo());
+  }
+
+  /**
+   * Cache the block locations of a file read from its first block. The
+   * locations of the files being written are not cached.
+   */
+  public void putLocatedBlocks(String authority, String user, String path,
+      LocatedBlocks blocks) {
+    if (blocks != null && !blocks.isUnderConstruction()
+        && blocks.isLastBlockComplete()) {
+      getEntry(authority, path).locatedBlocks.put(user,
+          new LocatedBlocks(blocks.getFileLength(), false,
+              new ArrayList<LocatedBlock>(blocks.getLocatedBlocks()),
+              blocks.getLastLocatedBlock(), true,
+              blocks.getFileEncryptionInfo()));
+    }
+  }
+
+  /** Invalidate the metadata of a path, for all the users. */
+  public void invalidate(String authority, String path) {
+    cache.invalidate(key(authority, path));
+  }
+
+  /** Invalidate the metadata of a path and of all the paths below it. */
+  public void invalidateTree(String authority, String path) {
+    final String key = key(authority, path);
+    final String prefix = key.endsWith(Path.SEPARATOR) ?
+        key : key + Path.SEPARATOR;
+    cache.invalidate(key);
+    for (String k : index.tailMap(prefix).keySet()) {
+      if (!k.startsWith(prefix)) {
+        break;
+      }
+      cache.invalidate(k);
+    }
+  }
+
+  /** Invalidate the metadata of all the paths of a NameNode. */
+  public void invalidateAll(String authority) {
+    invalidateTree(authority, Path.SEPARATOR);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Read the inotify events of a NameNode with a DFSClient, starting the
+   * invalidator of the NameNode if no other client of the context did.
+   */
+  synchronized void addInvalidatorClient(String authority, DFSClient client) {
+    Invalidator invalidator = invalidators.get(authority);
+    if (invalidator == null) {
+      invalidator = new Invalidator(this, authority);
+      invalidators.put(authority, invalidator);
+      invalidator.clients.add(client);
+      invalidator.start();
+    } else {
+      invalidator.clients.add(client);
+    }
+  }
+
+  /**
+   * Stop reading the inotify events with a closed DFSClient. The invalidator
+   * of the NameNode switches to another client of the context, or stops if
+   * there is none.
+   */
+  synchronized void removeInvalidatorClient(String authority,
+      DFSClient client) {
+    Invalidator invalidator = invalidators.get(authority);
+    if (invalidator != null && invalidator.clients.remove(client)
+        && invalidator.clients.isEmpty()) {
+      invalidators.remove(authority);
+      invalidator.stop();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized Invalidator getInvalidator(String authority) {
+    return invalidators.get(authority);
+  }
+
+  /**
+   * @return a running client to read the events with, or null if there is
+   *         none, in which case the invalidator is removed.
+   */
+  private synchronized DFSClient getInvalidatorClient(
+      Invalidator invalidator) {
+    for (DFSClient client : invalidator.clients) {
+      if (client.isClientRunning()) {
+        return client;
+      }
+    }
+    if (invalidators.get(invalidator.authority) == invalidator) {
+      invalidators.remove(invalidator.authority);
+    }
+    return null;
+  }
+
+  /**
+   * Reads the inotify events of a NameNode with one of the DFSClients of the
+   * context, and invalidates the paths they change. Reading the events needs
+   * superuser privileges: once they are denied the invalidator stops, and the
+   * metadata of the NameNode only expires.
+   */
+  static class Invalidator implements Runnable {
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    private final ClientMetadataCache cache;
+    private final String authority;
+    private final Daemon daemon;
+    /** The clients of the NameNode, guarded by the cache. */
+    private final Set<DFSClient> clients = new LinkedHashSet<DFSClient>();
+    private volatile boolean denied = false;
+
+    Invalidator(ClientMetadataCache cache, String authority) {
+      this.cache = Preconditions.checkNotNull(cache);
+      this.authority = authority;
+      this.daemon = new Daemon(this);
+      daemon.setName("ClientMetadataCache invalidator for " + authority);
+    }
+
+    void start() {
+      daemon.start();
+    }
+
+    void stop() {
+      daemon.interrupt();
+    }
+
+    /** @return true if the events could not be read for lack of privileges */
+    boolean isDenied() {
+      return denied;
+    }
+
+    @Override
+    public void run() {
+      try {
+        DFSClient client;
+        while ((client = cache.getInvalidatorClient(this)) != null) {
+          try {
+            DFSInotifyEventInputStream events =
+                client.getInotifyEventStream();
+            // the paths cached before the first event may have changed
+            cache.invalidateAll(authority);
+            while (client.isClientRunning()) {
+              EventBatch batch = events.take();
+              for (Event event : batch.getEvents()) {
+                invalidate(event);
+              }
+            }
+          } catch (MissingEventsException e) {
+            LOG.info("Missed inotify events of " + authority, e);
+          } catch (IOException e) {
+            if (e instanceof RemoteException) {
+              e = ((RemoteException) e).unwrapRemoteException(
+                  AccessControlException.class);
+            }
+            if (e instanceof AccessControlException) {
+              LOG.warn("Not allowed to read the inotify events of " +
+                  authority + ", the metadata cache will only expire", e);
+              denied = true;
+              return;
+            }
+            if (client.isClientRunning()) {
+              LOG.warn("Failed to read the inotify events of " + authority,
+                  e);
+              Thread.sleep(RETRY_INTERVAL_MS);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        LOG.debug("Stopped reading the inotify events of " + authority);
+      }
+    }
+
+    private void invalidate(Event event) {
+      switch (event.getEventType()) {
+      case CREATE:
+        invalidateWithParent(((Event.CreateEvent) event).getPath(), false);
+        break;
+      case CLOSE:
+        cache.invalidate(authority, ((Event.CloseEvent) event).getPath());
+        break;
+      case APPEND:
+        cache.invalidate(authority, ((Event.AppendEvent) event).getPath());
+        break;
+      case METADATA:
+        cache.invalidate(authority,
+            ((Event.MetadataUpdateEvent) event).getPath());
+        break;
+      case RENAME:
+        Event.RenameEvent rename = (Event.RenameEvent) event;
+        invalidateWithParent(rename.getSrcPath(), true);
+        invalidateWithParent(rename.getDstPath(), true);
+        break;
+      case UNLINK:
+        invalidateWithParent(((Event.UnlinkEvent) event).getPath(), true);
+        break;
+      default:
+        cache.invalidateAll(authority);
+      }
+    }
+
+    /** The status of a directory changes with its children. */
+    private void invalidateWithParent(String path, boolean tree) {
+      if (tree) {
+        cache.invalidateTree(authority, path);
+      } else {
+        cache.invalidate(authority, path);
+      }
+      Path parent = new Path(path).getParent();
+      if (parent != null) {
+        cache.invalidate(authority, parent.toUri().getPath());
+      }
+    }
+  }
+}
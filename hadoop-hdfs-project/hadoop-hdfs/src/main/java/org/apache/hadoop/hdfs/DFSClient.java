@@ -79,6 +79,7 @@
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -140,6 +141,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.net.TcpPeerServer;
 import org.apache.hadoop.hdfs.protocol.AclException;
@@ -208,6 +210,7 @@
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.RpcNoSuchMethodException;
 import org.apache.hadoop.net.DNS;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
@@ -275,6 +278,8 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   private final CachingStrategy defaultReadCachingStrategy;
   private final CachingStrategy defaultWriteCachingStrategy;
   private final ClientContext clientContext;
+  private final ClientMetadataCache metadataCache;
+  private final boolean metadataCacheInotifyEnabled;
   private volatile long hedgedReadThresholdMillis;
   private static final DFSHedgedReadMetrics HEDGED_READ_METRIC =
       new DFSHedgedReadMetrics();
@@ -339,6 +344,15 @@ public static class Conf {
     final long shortCircuitCacheStaleThresholdMs;
 
     final long keyProviderCacheExpiryMs;
+
+    final int inotifyMaxEventsPerRpc;
+    final long inotifyWaitMs;
+
+    final int batchSize;
+
+    final int metadataCacheSize;
+    final long metadataCacheExpiryMs;
+    final boolean metadataCacheInotifyEnabled;
     public BlockReaderFactory.FailureInjector brfFailureInjector =
       new BlockReaderFactory.FailureInjector();
 
@@ -509,6 +523,27 @@ public Conf(Configuration conf) {
       keyProviderCacheExpiryMs = conf.getLong(
           DFSConfigKeys.DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_MS,
           DFSConfigKeys.DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT);
+
+      inotifyMaxEventsPerRpc = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_INOTIFY_MAX_EVENTS_PER_RPC_KEY,
+          DFSConfigKeys.DFS_CLIENT_INOTIFY_MAX_EVENTS_PER_RPC_DEFAULT);
+      inotifyWaitMs = conf.getLong(
+          DFSConfigKeys.DFS_CLIENT_INOTIFY_WAIT_MS_KEY,
+          DFSConfigKeys.DFS_CLIENT_INOTIFY_WAIT_MS_DEFAULT);
+
+      batchSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_BATCH_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_BATCH_SIZE_DEFAULT);
+
+      metadataCacheSize = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_SIZE_DEFAULT);
+      metadataCacheExpiryMs = conf.getLong(
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY,
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_DEFAULT);
+      metadataCacheInotifyEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_INOTIFY_ENABLED_KEY,
+          DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_INOTIFY_ENABLED_DEFAULT);
     }
 
     public boolean isUseLegacyBlockReaderLocal() {
@@ -715,6 +750,12 @@ public DFSClient(URI nameNodeUri, ClientProtocol rpcNamenode,
     this.saslClient = new SaslDataTransferClient(
       conf, DataTransferSaslUtil.getSaslPropertiesResolver(conf),
       TrustedChannelResolver.getInstance(conf), nnFallbackToSimpleAuth);
+    this.metadataCache = clientContext.getMetadataCache();
+    this.metadataCacheInotifyEnabled = metadataCache != null
+        && dfsClientConf.metadataCacheInotifyEnabled;
+    if (metadataCacheInotifyEnabled) {
+      metadataCache.addInvalidatorClient(authority, this);
+    }
   }
   
   /**
@@ -953,6 +994,9 @@ public synchronized void close() throws IOException {
     if(clientRunning) {
       closeAllFilesBeingWritten(false);
       clientRunning = false;
+      if (metadataCacheInotifyEnabled) {
+        metadataCache.removeInvalidatorClient(authority, this);
+      }
       getLeaseRenewer().closeClient(this);
       // close connections to the namenode
       closeConnectionToNamenode();
@@ -1216,6 +1260,78 @@ public LocatedBlocks getLocatedBlocks(String src, long start, long length)
     }
   }
 
+  /**
+   * Get the block locations of a file from its first block, to open it. They
+   * come from the metadata cache if it is enabled, unless they are refreshed.
+   */
+  LocatedBlocks getLocatedBlocksToOpen(String src, boolean refresh)
+      throws IOException {
+    if (metadataCache != null && !refresh) {
+      LocatedBlocks blocks = metadataCache.getLocatedBlocks(authority,
+          ugi.getUserName(), src);
+      if (blocks != null) {
+        return blocks;
+      }
+    }
+    LocatedBlocks blocks = getLocatedBlocks(src, 0);
+    if (metadataCache != null) {
+      metadataCache.putLocatedBlocks(authority, ugi.getUserName(), src,
+          blocks);
+    }
+    return blocks;
+  }
+
+  /**
+   * Invalidate the cached metadata of paths changed by this client, and of
+   * their parent directories, whose status changes with their children.
+   */
+  void invalidateMetadata(String... srcs) {
+    if (metadataCache != null) {
+      for (String src : srcs) {
+        metadataCache.invalidate(authority, src);
+        invalidateParentMetadata(src);
+      }
+    }
+  }
+
+  /**
+   * Invalidate the cached metadata of paths changed by this client, of all
+   * the paths below them, and of their parent directories.
+   */
+  private void invalidateMetadataTree(String... srcs) {
+    if (metadataCache != null) {
+      for (String src : srcs) {
+        metadataCache.invalidateTree(authority, src);
+        invalidateParentMetadata(src);
+      }
+    }
+  }
+
+  private void invalidateParentMetadata(String src) {
+    int i = src.lastIndexOf(Path.SEPARATOR_CHAR);
+    if (i > 0) {
+      metadataCache.invalidate(authority, src.substring(0, i));
+    } else if (i == 0 && src.length() > 1) {
+      metadataCache.invalidate(authority, Path.SEPARATOR);
+    }
+  }
+
+  /**
+   * @return the number of lookups served from the metadata cache of the
+   *         client context, or 0 if it is disabled.
+   */
+  public long getMetadataCacheHits() {
+    return metadataCache == null ? 0 : metadataCache.getHits();
+  }
+
+  /**
+   * @return the number of lookups missing the metadata cache of the client
+   *         context, or 0 if it is disabled.
+   */
+  public long getMetadataCacheMisses() {
+    return metadataCache == null ? 0 : metadataCache.getMisses();
+  }
+
   /**
    * @see ClientProtocol#getBlockLocations(String, long, long)
    */
@@ -1269,16 +1385,60 @@ public BlockLocation[] getBlockLocations(String src, long start,
     TraceScope scope = getPathTraceScope("getBlockLocations", src);
     try {
       LocatedBlocks blocks = getLocatedBlocks(src, start, length);
-      BlockLocation[] locations =  DFSUtil.locatedBlocks2Locations(blocks);
-      HdfsBlockLocation[] hdfsLocations = new HdfsBlockLocation[locations.length];
-      for (int i = 0; i < locations.length; i++) {
-        hdfsLocations[i] = new HdfsBlockLocation(locations[i], blocks.get(i));
+      return toHdfsBlockLocations(blocks);
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Get block location info about several files, with one RPC to the
+   * namenode for each {@link DFSConfigKeys#DFS_CLIENT_BATCH_SIZE_KEY} files.
+   * @see ClientProtocol#getBlockLocationsBatch(String[], long[], long[])
+   *
+   * @return the block locations of each file, as returned by
+   *         {@link #getBlockLocations(String, long, long)}
+   * @throws RpcNoSuchMethodException if the namenode does not support
+   *         batched requests
+   */
+  public BlockLocation[][] getBlockLocations(String[] srcs, long[] starts,
+      long[] lengths) throws IOException, UnresolvedLinkException {
+    checkOpen();
+    TraceScope scope = Trace.startSpan("getBlockLocationsBatch",
+        traceSampler);
+    try {
+      final int batchSize = Math.max(1, dfsClientConf.batchSize);
+      BlockLocation[][] locations = new BlockLocation[srcs.length][];
+      for (int from = 0; from < srcs.length; from += batchSize) {
+        final int to = Math.min(from + batchSize, srcs.length);
+        LocatedBlocks[] blocks = namenode.getBlockLocationsBatch(
+            Arrays.copyOfRange(srcs, from, to),
+            Arrays.copyOfRange(starts, from, to),
+            Arrays.copyOfRange(lengths, from, to));
+        for (int i = 0; i < blocks.length; i++) {
+          locations[from + i] = toHdfsBlockLocations(blocks[i]);
+        }
       }
-      return hdfsLocations;
+      return locations;
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     FileNotFoundException.class,
+                                     UnresolvedPathException.class,
+                                     RpcNoSuchMethodException.class);
     } finally {
       scope.close();
     }
   }
+
+  private static BlockLocation[] toHdfsBlockLocations(LocatedBlocks blocks)
+      throws IOException {
+    BlockLocation[] locations =  DFSUtil.locatedBlocks2Locations(blocks);
+    HdfsBlockLocation[] hdfsLocations = new HdfsBlockLocation[locations.length];
+    for (int i = 0; i < locations.length; i++) {
+      hdfsLocations[i] = new HdfsBlockLocation(locations[i], blocks.get(i));
+    }
+    return hdfsLocations;
+  }
   
   /**
    * Get block location information about a list of {@link HdfsBlockLocation}.
@@ -1690,6 +1850,7 @@ public DFSOutputStream create(String src,
         src, masked, flag, createParent, replication, blockSize, progress,
         buffersize, dfsClientConf.createChecksum(checksumOpt),
         getFavoredNodesStr(favoredNodes));
+    invalidateMetadata(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1751,6 +1912,7 @@ public DFSOutputStream primitiveCreate(String src,
           flag, createParent, replication, blockSize, progress, buffersize,
           checksum, null);
     }
+    invalidateMetadata(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1777,6 +1939,7 @@ public void createSymlink(String target, String link, boolean createParent)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(link);
       scope.close();
     }
   }
@@ -1876,6 +2039,7 @@ private DFSOutputStream append(String src, int buffersize,
     checkOpen();
     final DFSOutputStream result = callAppend(src, buffersize, flag, progress,
         favoredNodes);
+    invalidateMetadata(src);
     beginFileLease(result.getFileId(), result);
     return result;
   }
@@ -1900,6 +2064,7 @@ public boolean setReplication(String src, short replication)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -1922,6 +2087,7 @@ public void setStoragePolicy(String src, String policyName)
                                     UnresolvedPathException.class,
                                     SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -1956,6 +2122,7 @@ public boolean rename(String src, String dst) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadataTree(src, dst);
       scope.close();
     }
   }
@@ -1974,6 +2141,8 @@ public void concat(String trg, String [] srcs) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(trg);
+      invalidateMetadata(srcs);
       scope.close();
     }
   }
@@ -1998,6 +2167,7 @@ public void rename(String src, String dst, Options.Rename... options)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadataTree(src, dst);
       scope.close();
     }
   }
@@ -2017,6 +2187,8 @@ public boolean truncate(String src, long newLength) throws IOException {
     } catch (RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
           UnresolvedPathException.class);
+    } finally {
+      invalidateMetadata(src);
     }
   }
 
@@ -2049,6 +2221,7 @@ public boolean delete(String src, boolean recursive) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadataTree(src);
       scope.close();
     }
   }
@@ -2103,9 +2276,20 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
    */
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     checkOpen();
+    if (metadataCache != null) {
+      HdfsFileStatus status = metadataCache.getFileInfo(authority,
+          ugi.getUserName(), src);
+      if (status != null) {
+        return status;
+      }
+    }
     TraceScope scope = getPathTraceScope("getFileInfo", src);
     try {
-      return namenode.getFileInfo(src);
+      HdfsFileStatus status = namenode.getFileInfo(src);
+      if (metadataCache != null) {
+        metadataCache.putFileInfo(authority, ugi.getUserName(), src, status);
+      }
+      return status;
     } catch(RemoteException re) {
       throw re.unwrapRemoteException(AccessControlException.class,
                                      FileNotFoundException.class,
@@ -2114,6 +2298,41 @@ public HdfsFileStatus getFileInfo(String src) throws IOException {
       scope.close();
     }
   }
+
+  /**
+   * Get the file info for several files or directories, with one RPC to the
+   * namenode for each {@link DFSConfigKeys#DFS_CLIENT_BATCH_SIZE_KEY} paths.
+   * @param srcs The string representations of the paths
+   * @return the file info of each path; an element is null if the
+   *         corresponding path is not found
+   * @throws RpcNoSuchMethodException if the namenode does not support
+   *         batched requests
+   * @see ClientProtocol#getFileInfos(String[])
+   */
+  public HdfsFileStatus[] getFileInfos(String[] srcs) throws IOException {
+    checkOpen();
+    TraceScope scope = Trace.startSpan("getFileInfos", traceSampler);
+    try {
+      final int batchSize = Math.max(1, dfsClientConf.batchSize);
+      if (srcs.length <= batchSize) {
+        return namenode.getFileInfos(srcs);
+      }
+      HdfsFileStatus[] stats = new HdfsFileStatus[srcs.length];
+      for (int from = 0; from < srcs.length; from += batchSize) {
+        final int to = Math.min(from + batchSize, srcs.length);
+        HdfsFileStatus[] batch =
+            namenode.getFileInfos(Arrays.copyOfRange(srcs, from, to));
+        System.arraycopy(batch, 0, stats, from, batch.length);
+      }
+      return stats;
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     UnresolvedPathException.class,
+                                     RpcNoSuchMethodException.class);
+    } finally {
+      scope.close();
+    }
+  }
   
   /**
    * Close status of a file
@@ -2453,6 +2672,7 @@ public void setPermission(String src, FsPermission permission)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -2478,6 +2698,7 @@ public void setOwner(String src, String username, String groupname)
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);                                   
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3015,6 +3236,7 @@ public boolean primitiveMkdir(String src, FsPermission absPermission,
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3117,6 +3339,7 @@ public void setTimes(String src, long mtime, long atime) throws IOException {
                                      UnresolvedPathException.class,
                                      SnapshotAccessControlException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3181,6 +3404,7 @@ public void modifyAclEntries(String src, List<AclEntry> aclSpec)
                                      SnapshotAccessControlException.class,
                                      UnresolvedPathException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3200,6 +3424,7 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
                                      SnapshotAccessControlException.class,
                                      UnresolvedPathException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3218,6 +3443,7 @@ public void removeDefaultAcl(String src) throws IOException {
                                      SnapshotAccessControlException.class,
                                      UnresolvedPathException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3236,6 +3462,7 @@ public void removeAcl(String src) throws IOException {
                                      SnapshotAccessControlException.class,
                                      UnresolvedPathException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3254,6 +3481,7 @@ public void setAcl(String src, List<AclEntry> aclSpec) throws IOException {
                                      SnapshotAccessControlException.class,
                                      UnresolvedPathException.class);
     } finally {
+      invalidateMetadata(src);
       scope.close();
     }
   }
@@ -3421,12 +3649,24 @@ public void checkAccess(String src, FsAction mode) throws IOException {
   }
 
   public DFSInotifyEventInputStream getInotifyEventStream() throws IOException {
-    return new DFSInotifyEventInputStream(traceSampler, namenode);
+    return getInotifyEventStream((EventFilter) null);
   }
 
   public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid)
       throws IOException {
-    return new DFSInotifyEventInputStream(traceSampler, namenode, lastReadTxid);
+    return getInotifyEventStream(lastReadTxid, null);
+  }
+
+  public DFSInotifyEventInputStream getInotifyEventStream(EventFilter filter)
+      throws IOException {
+    return getInotifyEventStream(namenode.getCurrentEditLogTxid(), filter);
+  }
+
+  public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid,
+      EventFilter filter) throws IOException {
+    return new DFSInotifyEventInputStream(traceSampler, namenode, lastReadTxid,
+        filter, dfsClientConf.inotifyMaxEventsPerRpc,
+        dfsClientConf.inotifyWaitMs);
   }
 
   @Override // RemotePeerFactory
@@ -183,6 +183,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_RPC_BIND_HOST_KEY = "dfs.namenode.rpc-bind-host";
   public static final String  DFS_NAMENODE_SERVICE_RPC_ADDRESS_KEY = "dfs.namenode.servicerpc-address";
   public static final String  DFS_NAMENODE_SERVICE_RPC_BIND_HOST_KEY = "dfs.namenode.servicerpc-bind-host";
+  public static final String  DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY = "dfs.namenode.lifeline.rpc-address";
+  public static final String  DFS_NAMENODE_LIFELINE_RPC_BIND_HOST_KEY = "dfs.namenode.lifeline.rpc-bind-host";
   public static final String  DFS_NAMENODE_MAX_OBJECTS_KEY = "dfs.namenode.max.objects";
   public static final long    DFS_NAMENODE_MAX_OBJECTS_DEFAULT = 0;
   public static final String  DFS_NAMENODE_SAFEMODE_EXTENSION_KEY = "dfs.namenode.safemode.extension";
@@ -210,6 +212,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_CHECKPOINT_MAX_RETRIES_DEFAULT = 3;
   public static final String  DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_KEY = "dfs.namenode.heartbeat.recheck-interval";
   public static final int     DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_DEFAULT = 5*60*1000;
+  public static final String  DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY = "dfs.namenode.lease-recheck-interval-ms";
+  public static final long    DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_DEFAULT = 2000;
+  public static final String  DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY = "dfs.namenode.max-lock-hold-to-release-lease-ms";
+  public static final long    DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT = 25;
   public static final String  DFS_NAMENODE_TOLERATE_HEARTBEAT_MULTIPLIER_KEY = "dfs.namenode.tolerate.heartbeat.multiplier";
   public static final int     DFS_NAMENODE_TOLERATE_HEARTBEAT_MULTIPLIER_DEFAULT = 4;
   public static final String  DFS_CLIENT_HTTPS_KEYSTORE_RESOURCE_KEY = "dfs.client.https.keystore.resource";
@@ -220,6 +226,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CLIENT_CACHED_CONN_RETRY_DEFAULT = 3;
   public static final String  DFS_NAMENODE_ACCESSTIME_PRECISION_KEY = "dfs.namenode.accesstime.precision";
   public static final long    DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT = 3600000;
+  public static final String  DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_KEY = "dfs.namenode.located.blocks.cache.size";
+  public static final int     DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY = "dfs.namenode.located.blocks.cache.expiry.ms";
+  public static final long    DFS_NAMENODE_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT = 5000;
   public static final String  DFS_NAMENODE_REPLICATION_CONSIDERLOAD_KEY = "dfs.namenode.replication.considerLoad";
   public static final boolean DFS_NAMENODE_REPLICATION_CONSIDERLOAD_DEFAULT = true;
   public static final String  DFS_NAMENODE_REPLICATION_INTERVAL_KEY = "dfs.namenode.replication.interval";
@@ -283,13 +293,31 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   
   public static final String  DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH = "dfs.namenode.edits.noeditlogchannelflush";
   public static final boolean DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY = "dfs.namenode.edits.asynclogging";
+  public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_KEY = "dfs.namenode.edits.asynclogging.pending.queue.size";
+  public static final int     DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_DEFAULT = 4096;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOADING_KEY = "dfs.namenode.edits.asyncloading";
+  public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOADING_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_ASYNC_LOADING_QUEUE_SIZE_KEY = "dfs.namenode.edits.asyncloading.queue.size";
+  public static final int     DFS_NAMENODE_EDITS_ASYNC_LOADING_QUEUE_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_EDITS_COMPACT_KEY = "dfs.namenode.edits.compact";
+  public static final boolean DFS_NAMENODE_EDITS_COMPACT_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_COMPRESS_KEY = "dfs.namenode.edits.compress";
+  public static final boolean DFS_NAMENODE_EDITS_COMPRESS_DEFAULT = false;
   
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
+  public static final String  DFS_NAMENODE_BATCH_MAX_SIZE_KEY = "dfs.namenode.batch.max.size";
+  public static final int     DFS_NAMENODE_BATCH_MAX_SIZE_DEFAULT = 1000;
+  public static final String  DFS_CLIENT_BATCH_SIZE_KEY = "dfs.client.batch.size";
+  public static final int     DFS_CLIENT_BATCH_SIZE_DEFAULT = 1000;
   public static final String  DFS_CONTENT_SUMMARY_LIMIT_KEY = "dfs.content-summary.limit";
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY = "dfs.namenode.content-summary.cache.enabled";
+  public static final boolean DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT = false;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String  DFS_DATANODE_SYNCONCLOSE_KEY = "dfs.datanode.synconclose";
@@ -317,6 +345,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS =
       "dfs.namenode.path.based.cache.refresh.interval.ms";
   public static final long    DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT = 30000L;
+  public static final String  DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN =
+      "dfs.namenode.path.based.cache.incremental.rescan";
+  public static final boolean DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN_DEFAULT = false;
+  public static final String  DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS =
+      "dfs.namenode.path.based.cache.full.rescan.interval.ms";
+  public static final long    DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT = 600000L;
 
   /** Pending period of block deletion since NameNode startup */
   public static final String  DFS_NAMENODE_STARTUP_DELAY_BLOCK_DELETION_SEC_KEY = "dfs.namenode.startup.delay.block.deletion.sec";
@@ -352,6 +386,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION =
       "dfs.namenode.replication.work.multiplier.per.iteration";
   public static final int DFS_NAMENODE_REPLICATION_WORK_MULTIPLIER_PER_ITERATION_DEFAULT = 2;
+  public static final String DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY =
+      "dfs.namenode.replication.work.threads";
+  public static final int DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT = 0;
 
   //Delegation token related keys
   public static final String  DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY = "dfs.namenode.delegation.key.update-interval";
@@ -380,11 +417,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_FSLOCK_FAIR_KEY =
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
+  public static final String  DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY =
+      "dfs.namenode.fine-grained-locking.enabled";
+  public static final boolean DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_KEY =
+      "dfs.namenode.fine-grained-locking.inode-lock-stripes";
+  public static final int     DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_DEFAULT =
+      1024;
 
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
   public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT =
       false;
+  public static final String  DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY =
+      "dfs.namenode.lock.profiling.sample.rate";
+  public static final float   DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_DEFAULT =
+      0;
   // Threshold for how long namenode locks must be held for the
   // event to be logged
   public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY =
@@ -432,6 +481,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_KEY = "dfs.namenode.audit.log.async.pipeline.enabled";
+  public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_CAPACITY_KEY = "dfs.namenode.audit.log.async.pipeline.capacity";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_CAPACITY_DEFAULT = 16384;
 
   // Much code in hdfs is not yet updated to use these keys.
   public static final String  DFS_CLIENT_BLOCK_WRITE_LOCATEFOLLOWINGBLOCK_RETRIES_KEY = "dfs.client.block.write.locateFollowingBlock.retries";
@@ -511,6 +564,7 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_DATANODE_TRANSFERTO_ALLOWED_DEFAULT = true;
   public static final String  DFS_HEARTBEAT_INTERVAL_KEY = "dfs.heartbeat.interval";
   public static final long    DFS_HEARTBEAT_INTERVAL_DEFAULT = 3;
+  public static final String  DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY = "dfs.datanode.lifeline.interval.seconds";
   public static final String  DFS_NAMENODE_PATH_BASED_CACHE_RETRY_INTERVAL_MS = "dfs.namenode.path.based.cache.retry.interval.ms";
   public static final long    DFS_NAMENODE_PATH_BASED_CACHE_RETRY_INTERVAL_MS_DEFAULT = 30000L;
   public static final String  DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY = "dfs.namenode.decommission.interval";
@@ -523,6 +577,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_HANDLER_COUNT_DEFAULT = 10;
   public static final String  DFS_NAMENODE_SERVICE_HANDLER_COUNT_KEY = "dfs.namenode.service.handler.count";
   public static final int     DFS_NAMENODE_SERVICE_HANDLER_COUNT_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_LIFELINE_HANDLER_COUNT_KEY = "dfs.namenode.lifeline.handler.count";
+  public static final int     DFS_NAMENODE_LIFELINE_HANDLER_COUNT_DEFAULT = 1;
   public static final String  DFS_SUPPORT_APPEND_KEY = "dfs.support.append";
   public static final boolean DFS_SUPPORT_APPEND_DEFAULT = true;
   public static final String  DFS_HTTPS_ENABLE_KEY = "dfs.https.enable";
@@ -562,12 +618,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       = "dfs.blockreport.incremental.intervalMsec";
   public static final long    DFS_BLOCKREPORT_INCREMENTAL_INTERVAL_MSEC_DEFAULT
       = 0;
+  public static final String  DFS_BLOCKREPORT_INCREMENTAL_MAX_INTERVAL_MSEC_KEY
+      = "dfs.blockreport.incremental.max.intervalMsec";
+  public static final long    DFS_BLOCKREPORT_INCREMENTAL_MAX_INTERVAL_MSEC_DEFAULT
+      = 0;
   public static final String  DFS_BLOCKREPORT_INTERVAL_MSEC_KEY = "dfs.blockreport.intervalMsec";
   public static final long    DFS_BLOCKREPORT_INTERVAL_MSEC_DEFAULT = 6 * 60 * 60 * 1000;
   public static final String  DFS_BLOCKREPORT_INITIAL_DELAY_KEY = "dfs.blockreport.initialDelay";
   public static final int     DFS_BLOCKREPORT_INITIAL_DELAY_DEFAULT = 0;
   public static final String  DFS_BLOCKREPORT_SPLIT_THRESHOLD_KEY = "dfs.blockreport.split.threshold";
   public static final long    DFS_BLOCKREPORT_SPLIT_THRESHOLD_DEFAULT = 1000 * 1000;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY = "dfs.namenode.blockreport.diff.threads";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_KEY = "dfs.namenode.blockreport.apply.batch.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_DEFAULT = 1000;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY = "dfs.namenode.blockreport.queue.size";
+  public static final int     DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_BLOCKREPORT_QUEUE_MAX_LOCK_HOLD_MS_KEY = "dfs.namenode.blockreport.queue.max.lock.hold.ms";
+  public static final long    DFS_NAMENODE_BLOCKREPORT_QUEUE_MAX_LOCK_HOLD_MS_DEFAULT = 4;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -608,6 +676,20 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_IMAGE_COMPRESSION_CODEC_DEFAULT =
                                    "org.apache.hadoop.io.compress.DefaultCodec";
 
+  // parallel fsimage loading and saving
+  public static final String DFS_IMAGE_PARALLEL_LOAD_KEY =
+      "dfs.image.parallel.load";
+  public static final boolean DFS_IMAGE_PARALLEL_LOAD_DEFAULT = false;
+  public static final String DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY =
+      "dfs.image.parallel.target.sections";
+  public static final int DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT = 12;
+  public static final String DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY =
+      "dfs.image.parallel.inode.threshold";
+  public static final int DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT = 1000000;
+  public static final String DFS_IMAGE_PARALLEL_THREADS_KEY =
+      "dfs.image.parallel.threads";
+  public static final int DFS_IMAGE_PARALLEL_THREADS_DEFAULT = 4;
+
   public static final String DFS_IMAGE_TRANSFER_RATE_KEY =
                                            "dfs.image.transfer.bandwidthPerSec";
   public static final long DFS_IMAGE_TRANSFER_RATE_DEFAULT = 0;  //no throttling
@@ -678,6 +760,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.available-space-block-placement-policy.balanced-space-preference-fraction";
   public static final float   DFS_NAMENODE_AVAILABLE_SPACE_BLOCK_PLACEMENT_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT =
       0.6f;
+  public static final String  DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY =
+      "dfs.namenode.load-aware-block-placement-policy.load-preference-fraction";
+  public static final float   DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_DEFAULT =
+      0.9f;
   public static final String  DFS_NAMENODE_BLOCKPLACEMENTPOLICY_DEFAULT_PREFER_LOCAL_NODE_KEY =
       "dfs.namenode.block-placement-policy.default.prefer-local-node";
   public static final boolean  DFS_NAMENODE_BLOCKPLACEMENTPOLICY_DEFAULT_PREFER_LOCAL_NODE_DEFAULT = true;
@@ -701,6 +787,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String  DFS_HA_TAILEDITS_INPROGRESS_KEY = "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String  DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY = "dfs.namenode.state.context.enabled";
+  public static final boolean DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT = false;
   public static final String DFS_HA_LOGROLL_RPC_TIMEOUT_KEY = "dfs.ha.log-roll.rpc.timeout";
   public static final int DFS_HA_LOGROLL_RPC_TIMEOUT_DEFAULT = 20000; // 20s
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
@@ -741,6 +831,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_KERBEROS_PRINCIPAL_KEY = "dfs.journalnode.kerberos.principal";
   public static final String  DFS_JOURNALNODE_KERBEROS_INTERNAL_SPNEGO_PRINCIPAL_KEY = "dfs.journalnode.kerberos.internal.spnego.principal";
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final int     DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -761,6 +853,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_QJOURNAL_ACCEPT_RECOVERY_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_FINALIZE_SEGMENT_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_SELECT_INPUT_STREAMS_TIMEOUT_DEFAULT = 20000;
+  public static final String  DFS_QJOURNAL_RPC_MAX_TXNS_KEY = "dfs.qjournal.rpc.max-txns";
+  public static final int     DFS_QJOURNAL_RPC_MAX_TXNS_DEFAULT = 5000;
   public static final int     DFS_QJOURNAL_GET_JOURNAL_STATE_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_NEW_EPOCH_TIMEOUT_DEFAULT = 120000;
   public static final int     DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT = 20000;
@@ -832,6 +926,22 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.inotify.max.events.per.rpc";
   public static final int DFS_NAMENODE_INOTIFY_MAX_EVENTS_PER_RPC_DEFAULT =
       1000;
+  public static final String DFS_NAMENODE_INOTIFY_MAX_TXNS_PER_RPC_KEY =
+      "dfs.namenode.inotify.max.txns.per.rpc";
+  public static final int DFS_NAMENODE_INOTIFY_MAX_TXNS_PER_RPC_DEFAULT =
+      100000;
+  public static final String DFS_NAMENODE_INOTIFY_MAX_WAIT_MS_KEY =
+      "dfs.namenode.inotify.max.wait.ms";
+  public static final long DFS_NAMENODE_INOTIFY_MAX_WAIT_MS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_INOTIFY_MAX_WAITING_RPCS_KEY =
+      "dfs.namenode.inotify.max.waiting.rpcs";
+  public static final int DFS_NAMENODE_INOTIFY_MAX_WAITING_RPCS_DEFAULT = 4;
+  public static final String DFS_CLIENT_INOTIFY_MAX_EVENTS_PER_RPC_KEY =
+      "dfs.client.inotify.max.events.per.rpc";
+  public static final int DFS_CLIENT_INOTIFY_MAX_EVENTS_PER_RPC_DEFAULT = 0;
+  public static final String DFS_CLIENT_INOTIFY_WAIT_MS_KEY =
+      "dfs.client.inotify.wait.ms";
+  public static final long DFS_CLIENT_INOTIFY_WAIT_MS_DEFAULT = 30000;
 
   public static final String DFS_DATANODE_BLOCK_ID_LAYOUT_UPGRADE_THREADS_KEY =
       "dfs.datanode.block.id.layout.upgrade.threads";
@@ -863,6 +973,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   // 10 days
   public static final long DFS_CLIENT_KEY_PROVIDER_CACHE_EXPIRY_DEFAULT =
       TimeUnit.DAYS.toMillis(10);
+
+  // Client metadata cache
+  public static final String DFS_CLIENT_METADATA_CACHE_SIZE_KEY =
+      "dfs.client.metadata.cache.size";
+  public static final int DFS_CLIENT_METADATA_CACHE_SIZE_DEFAULT = 0;
+  public static final String DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY =
+      "dfs.client.metadata.cache.expiry.ms";
+  public static final long DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_DEFAULT = 5000;
+  public static final String DFS_CLIENT_METADATA_CACHE_INOTIFY_ENABLED_KEY =
+      "dfs.client.metadata.cache.inotify.enabled";
+  public static final boolean DFS_CLIENT_METADATA_CACHE_INOTIFY_ENABLED_DEFAULT =
+      false;
   public static final String DFS_DATANODE_BLOCK_PINNING_ENABLED = 
     "dfs.datanode.block-pinning.enabled";
   public static final boolean DFS_DATANODE_BLOCK_PINNING_ENABLED_DEFAULT =
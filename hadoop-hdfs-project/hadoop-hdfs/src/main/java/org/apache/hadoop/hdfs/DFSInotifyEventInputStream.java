@@ -23,6 +23,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.hdfs.inotify.EventBatch;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.inotify.MissingEventsException;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.util.Time;
@@ -40,6 +41,10 @@
 /**
  * Stream for reading inotify events. DFSInotifyEventInputStreams should not
  * be shared among multiple threads.
+ * <p/>
+ * A stream may be restricted to some paths and event types by an
+ * {@link EventFilter}. The NameNode then only sends the selected events, and
+ * blocking reads may ask it to wait for new edits instead of polling.
  */
 @InterfaceAudience.Public
 @InterfaceStability.Unstable
@@ -64,6 +69,20 @@ public class DFSInotifyEventInputStream {
    * Used to generate wait times in {@link DFSInotifyEventInputStream#take()}.
    */
   private Random rng = new Random();
+  /**
+   * The events to return, or null for all the events.  The events received
+   * are filtered again, in case the NameNode does not support filtering.
+   */
+  private final EventFilter filter;
+  /**
+   * The maximum number of events to ask for in an RPC, or 0 for the maximum
+   * of the NameNode.
+   */
+  private final int maxEventsPerRpc;
+  /**
+   * How long blocking reads ask the NameNode to wait for new edits.
+   */
+  private final long waitMs;
 
   private static final int INITIAL_WAIT_MS = 10;
 
@@ -75,10 +94,19 @@ public class DFSInotifyEventInputStream {
 
   DFSInotifyEventInputStream(Sampler traceSampler, ClientProtocol namenode,
         long lastReadTxid) throws IOException {
+    this(traceSampler, namenode, lastReadTxid, null, 0, 0);
+  }
+
+  DFSInotifyEventInputStream(Sampler traceSampler, ClientProtocol namenode,
+        long lastReadTxid, EventFilter filter, int maxEventsPerRpc,
+        long waitMs) throws IOException {
     this.traceSampler = traceSampler;
     this.namenode = namenode;
     this.it = Iterators.emptyIterator();
     this.lastReadTxid = lastReadTxid;
+    this.filter = filter == null || filter.isEmpty() ? null : filter;
+    this.maxEventsPerRpc = maxEventsPerRpc;
+    this.waitMs = waitMs;
   }
 
   /**
@@ -101,43 +129,59 @@ public EventBatch poll() throws IOException, MissingEventsException {
     TraceScope scope =
         Trace.startSpan("inotifyPoll", traceSampler);
     try {
-      // need to keep retrying until the NN sends us the latest committed txid
-      if (lastReadTxid == -1) {
-        LOG.debug("poll(): lastReadTxid is -1, reading current txid from NN");
-        lastReadTxid = namenode.getCurrentEditLogTxid();
-        return null;
-      }
-      if (!it.hasNext()) {
-        EventBatchList el = namenode.getEditsFromTxid(lastReadTxid + 1);
-        if (el.getLastTxid() != -1) {
-          // we only want to set syncTxid when we were actually able to read some
-          // edits on the NN -- otherwise it will seem like edits are being
-          // generated faster than we can read them when the problem is really
-          // that we are temporarily unable to read edits
-          syncTxid = el.getSyncTxid();
-          it = el.getBatches().iterator();
-          long formerLastReadTxid = lastReadTxid;
-          lastReadTxid = el.getLastTxid();
-          if (el.getFirstTxid() != formerLastReadTxid + 1) {
-            throw new MissingEventsException(formerLastReadTxid + 1,
-                el.getFirstTxid());
-          }
-        } else {
-          LOG.debug("poll(): read no edits from the NN when requesting edits " +
-            "after txid {}", lastReadTxid);
-          return null;
-        }
-      }
+      return pollOnce(0);
+    } finally {
+      scope.close();
+    }
+  }
 
-      if (it.hasNext()) { // can be empty if el.getLastTxid != -1 but none of the
-        // newly seen edit log ops actually got converted to events
-        return it.next();
+  /**
+   * Returns the next batch of events, asking the NameNode to wait up to
+   * rpcWaitMs for new edits if there are none.
+   */
+  private EventBatch pollOnce(long rpcWaitMs)
+      throws IOException, MissingEventsException {
+    // need to keep retrying until the NN sends us the latest committed txid
+    if (lastReadTxid == -1) {
+      LOG.debug("poll(): lastReadTxid is -1, reading current txid from NN");
+      lastReadTxid = namenode.getCurrentEditLogTxid();
+      return null;
+    }
+    if (!it.hasNext()) {
+      EventBatchList el = namenode.getEditsFromTxid(lastReadTxid + 1,
+          filter, maxEventsPerRpc, rpcWaitMs);
+      if (el.getLastTxid() != -1) {
+        // we only want to set syncTxid when we were actually able to read some
+        // edits on the NN -- otherwise it will seem like edits are being
+        // generated faster than we can read them when the problem is really
+        // that we are temporarily unable to read edits
+        syncTxid = el.getSyncTxid();
+        it = el.getBatches().iterator();
+        long formerLastReadTxid = lastReadTxid;
+        lastReadTxid = el.getLastTxid();
+        if (el.getFirstTxid() != formerLastReadTxid + 1) {
+          throw new MissingEventsException(formerLastReadTxid + 1,
+              el.getFirstTxid());
+        }
       } else {
+        LOG.debug("poll(): read no edits from the NN when requesting edits " +
+          "after txid {}", lastReadTxid);
         return null;
       }
-    } finally {
-      scope.close();
     }
+
+    // can be empty if el.getLastTxid != -1 but none of the newly seen edit
+    // log ops actually got converted to events, or selected by the filter
+    while (it.hasNext()) {
+      EventBatch next = it.next();
+      if (filter != null) {
+        next = filter.filter(next);
+      }
+      if (next != null) {
+        return next;
+      }
+    }
+    return null;
   }
 
   /**
@@ -186,11 +230,21 @@ public EventBatch poll(long time, TimeUnit tu) throws IOException,
       long initialTime = Time.monotonicNow();
       long totalWait = TimeUnit.MILLISECONDS.convert(time, tu);
       long nextWait = INITIAL_WAIT_MS;
-      while ((next = poll()) == null) {
+      while (true) {
         long timeLeft = totalWait - (Time.monotonicNow() - initialTime);
+        long rpcWait = Math.max(0, Math.min(waitMs, timeLeft));
+        long rpcStart = Time.monotonicNow();
+        if ((next = pollOnce(rpcWait)) != null) {
+          break;
+        }
+        long now = Time.monotonicNow();
+        timeLeft = totalWait - (now - initialTime);
         if (timeLeft <= 0) {
           LOG.debug("timed poll(): timed out");
           break;
+        } else if (rpcWait > 0 && now - rpcStart >= rpcWait) {
+          // the NameNode already waited for new edits
+          continue;
         } else if (timeLeft < nextWait * 2) {
           nextWait = timeLeft;
         } else {
@@ -221,7 +275,16 @@ public EventBatch take() throws IOException, InterruptedException,
     EventBatch next = null;
     try {
       int nextWaitMin = INITIAL_WAIT_MS;
-      while ((next = poll()) == null) {
+      while (true) {
+        long rpcStart = Time.monotonicNow();
+        if ((next = pollOnce(waitMs)) != null) {
+          break;
+        }
+        if (waitMs > 0 && Time.monotonicNow() - rpcStart >= waitMs) {
+          // the NameNode already waited for new edits
+          nextWaitMin = INITIAL_WAIT_MS;
+          continue;
+        }
         // sleep for a random period between nextWaitMin and nextWaitMin * 2
         // to avoid stampedes at the NN if there are multiple clients
         int sleepTime = nextWaitMin + rng.nextInt(nextWaitMin);
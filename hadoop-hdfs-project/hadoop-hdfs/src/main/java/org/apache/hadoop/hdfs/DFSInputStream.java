@@ -303,7 +303,8 @@ private void waitFor(int waitTime) throws IOException {
   }
 
   private long fetchLocatedBlocksAndGetLastBlockLength() throws IOException {
-    final LocatedBlocks newInfo = dfsClient.getLocatedBlocks(src, 0);
+    final LocatedBlocks newInfo = dfsClient.getLocatedBlocksToOpen(src,
+        locatedBlocks != null);
     if (DFSClient.LOG.isDebugEnabled()) {
       DFSClient.LOG.debug("newInfo = " + newInfo);
     }
@@ -2481,6 +2481,7 @@ private synchronized void closeImpl() throws IOException {
       } finally {
         scope.close();
       }
+      dfsClient.invalidateMetadata(src);
     } catch (ClosedChannelException e) {
     } finally {
       // Failures may happen when flushing data.
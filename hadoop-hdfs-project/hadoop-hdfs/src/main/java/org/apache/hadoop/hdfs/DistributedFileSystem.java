@@ -63,6 +63,7 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.client.HdfsAdmin;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -84,6 +85,7 @@
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RpcNoSuchMethodException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.Credentials;
@@ -228,6 +230,32 @@ public BlockLocation[] next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Get the block locations of all the files with a single request to the
+   * namenode. When the path of one of the files contains a symlink, or the namenode does
+   * not support batched requests, the files are looked up one at a time.
+   */
+  @Override
+  public BlockLocation[][] getFileBlockLocations(FileStatus[] files,
+      long[] starts, long[] lens) throws IOException {
+    if (starts.length != files.length || lens.length != files.length) {
+      throw new IllegalArgumentException(
+          "Invalid number of start or len parameters");
+    }
+    String[] srcs = new String[files.length];
+    for (int i = 0; i < files.length; i++) {
+      srcs[i] = getPathName(fixRelativePart(files[i].getPath()));
+    }
+    statistics.incrementReadOps(1);
+    try {
+      return dfs.getBlockLocations(srcs, starts, lens);
+    } catch (UnresolvedLinkException e) {
+      return super.getFileBlockLocations(files, starts, lens);
+    } catch (RpcNoSuchMethodException e) {
+      return super.getFileBlockLocations(files, starts, lens);
+    }
+  }
+
   /**
    * Used to query storage location information for a list of blocks. This list
    * of blocks is normally constructed via a series of calls to
@@ -1317,6 +1345,37 @@ public FileStatus next(final FileSystem fs, final Path p)
     }.resolve(this, absF);
   }
 
+  /**
+   * Get the file status of all the paths with a single request to the
+   * namenode. When one of the paths contains a symlink, or the namenode does
+   * not support batched requests, the paths are looked up one at a time.
+   */
+  @Override
+  public FileStatus[] getFileStatuses(Path[] paths) throws IOException {
+    Path[] absPaths = new Path[paths.length];
+    String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      absPaths[i] = fixRelativePart(paths[i]);
+      srcs[i] = getPathName(absPaths[i]);
+    }
+    statistics.incrementReadOps(1);
+    HdfsFileStatus[] stats;
+    try {
+      stats = dfs.getFileInfos(srcs);
+    } catch (UnresolvedLinkException e) {
+      return super.getFileStatuses(paths);
+    } catch (RpcNoSuchMethodException e) {
+      return super.getFileStatuses(paths);
+    }
+    FileStatus[] results = new FileStatus[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      if (stats[i] != null) {
+        results[i] = stats[i].makeQualified(getUri(), absPaths[i]);
+      }
+    }
+    return results;
+  }
+
   @SuppressWarnings("deprecation")
   @Override
   public void createSymlink(final Path target, final Path link,
@@ -2252,4 +2311,14 @@ public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid)
       throws IOException {
     return dfs.getInotifyEventStream(lastReadTxid);
   }
+
+  public DFSInotifyEventInputStream getInotifyEventStream(EventFilter filter)
+      throws IOException {
+    return dfs.getInotifyEventStream(filter);
+  }
+
+  public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid,
+      EventFilter filter) throws IOException {
+    return dfs.getInotifyEventStream(lastReadTxid, filter);
+  }
 }
@@ -24,6 +24,7 @@
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeLifelineProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.InterDatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
@@ -49,6 +50,9 @@ public class HDFSPolicyProvider extends PolicyProvider {
         ClientDatanodeProtocol.class),
     new Service(CommonConfigurationKeys.SECURITY_DATANODE_PROTOCOL_ACL,
         DatanodeProtocol.class),
+    // The lifelines are sent by the same DataNodes as the heartbeats.
+    new Service(CommonConfigurationKeys.SECURITY_DATANODE_PROTOCOL_ACL,
+        DatanodeLifelineProtocol.class),
     new Service(CommonConfigurationKeys.SECURITY_INTER_DATANODE_PROTOCOL_ACL, 
         InterDatanodeProtocol.class),
     new Service(CommonConfigurationKeys.SECURITY_NAMENODE_PROTOCOL_ACL,
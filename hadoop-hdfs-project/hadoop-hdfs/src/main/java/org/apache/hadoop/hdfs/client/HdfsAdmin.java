@@ -32,6 +32,7 @@
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSInotifyEventInputStream;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
 import org.apache.hadoop.hdfs.protocol.CachePoolEntry;
@@ -353,6 +354,26 @@ public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid)
     return dfs.getInotifyEventStream(lastReadTxid);
   }
 
+  /**
+   * A version of {@link HdfsAdmin#getInotifyEventStream()} which only returns
+   * the events selected by the filter, e.g. the events under some
+   * directories. The NameNode filters the events before sending them, which
+   * is much cheaper than reading and filtering all the events.
+   */
+  public DFSInotifyEventInputStream getInotifyEventStream(EventFilter filter)
+      throws IOException {
+    return dfs.getInotifyEventStream(filter);
+  }
+
+  /**
+   * A version of {@link HdfsAdmin#getInotifyEventStream(long)} which only
+   * returns the events selected by the filter.
+   */
+  public DFSInotifyEventInputStream getInotifyEventStream(long lastReadTxid,
+      EventFilter filter) throws IOException {
+    return dfs.getInotifyEventStream(lastReadTxid, filter);
+  }
+
   /**
    * Set the source path to the specified storage policy.
    *
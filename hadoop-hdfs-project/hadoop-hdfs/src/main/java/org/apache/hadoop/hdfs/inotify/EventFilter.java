@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.inotify;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the inotify events of interest to a client, by path prefix and by
+ * event type. The NameNode applies the filter before sending events, so that
+ * clients interested in a few directories do not receive the events of the
+ * whole namespace.
+ * <p/>
+ * An event matches a path prefix if one of its paths is the prefix or is
+ * below it; a rename matches if either its source or its destination does.
+ * An empty set of prefixes or of event types matches all events.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Unstable
+public class EventFilter {
+  private final List<String> pathPrefixes;
+  private final Set<Event.EventType> eventTypes;
+
+  /**
+   * @param pathPrefixes absolute paths whose events to select, or an empty
+   *                     collection for all paths
+   * @param eventTypes the types of the events to select, or an empty
+   *                   collection for all types
+   */
+  public EventFilter(Collection<String> pathPrefixes,
+      Collection<Event.EventType> eventTypes) {
+    List<String> prefixes = new ArrayList<String>(pathPrefixes.size());
+    for (String prefix : pathPrefixes) {
+      if (!prefix.startsWith(Path.SEPARATOR)) {
+        throw new IllegalArgumentException("Path prefix " + prefix +
+            " is not absolute");
+      }
+      // "/a/b/" selects the same events as "/a/b"
+      while (prefix.length() > 1 && prefix.endsWith(Path.SEPARATOR)) {
+        prefix = prefix.substring(0, prefix.length() - 1);
+      }
+      prefixes.add(prefix);
+    }
+    this.pathPrefixes = Collections.unmodifiableList(prefixes);
+    this.eventTypes = eventTypes.isEmpty() ?
+        Collections.<Event.EventType>emptySet() :
+        Collections.unmodifiableSet(EnumSet.copyOf(eventTypes));
+  }
+
+  public List<String> getPathPrefixes() {
+    return pathPrefixes;
+  }
+
+  public Set<Event.EventType> getEventTypes() {
+    return eventTypes;
+  }
+
+  /**
+   * @return whether this filter selects all events.
+   */
+  public boolean isEmpty() {
+    return pathPrefixes.isEmpty() && eventTypes.isEmpty();
+  }
+
+  /**
+   * @return whether the event is selected by this filter.
+   */
+  public boolean accept(Event event) {
+    if (!eventTypes.isEmpty() && !eventTypes.contains(event.getEventType())) {
+      return false;
+    }
+    if (pathPrefixes.isEmpty()) {
+      return true;
+    }
+    switch (event.getEventType()) {
+    case CREATE:
+      return matches(((Event.CreateEvent) event).getPath());
+    case CLOSE:
+      return matches(((Event.CloseEvent) event).getPath());
+    case APPEND:
+      return matches(((Event.AppendEvent) event).getPath());
+    case RENAME:
+      Event.RenameEvent rename = (Event.RenameEvent) event;
+      return matches(rename.getSrcPath()) || matches(rename.getDstPath());
+    case METADATA:
+      return matches(((Event.MetadataUpdateEvent) event).getPath());
+    case UNLINK:
+      return matches(((Event.UnlinkEvent) event).getPath());
+    default:
+      return true;
+    }
+  }
+
+  /**
+   * Get the events of a batch which are selected by this filter.
+   *
+   * @return the batch itself if all its events are selected, a new batch of
+   *         the selected events, or null if no event is selected.
+   */
+  public EventBatch filter(EventBatch batch) {
+    if (isEmpty()) {
+      return batch;
+    }
+    Event[] events = batch.getEvents();
+    List<Event> selected = new ArrayList<Event>(events.length);
+    for (Event event : events) {
+      if (accept(event)) {
+        selected.add(event);
+      }
+    }
+    if (selected.isEmpty()) {
+      return null;
+    } else if (selected.size() == events.length) {
+      return batch;
+    }
+    return new EventBatch(batch.getTxid(),
+        selected.toArray(new Event[selected.size()]));
+  }
+
+  private boolean matches(String path) {
+    for (String prefix : pathPrefixes) {
+      if (path.startsWith(prefix) && (path.length() == prefix.length() ||
+          prefix.length() == 1 || path.charAt(prefix.length()) == '/')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "EventFilter(pathPrefixes=" + pathPrefixes + ", eventTypes=" +
+        eventTypes + ")";
+  }
+}
@@ -45,6 +45,7 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
@@ -132,6 +133,30 @@ public LocatedBlocks getBlockLocations(String src,
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Get locations of the blocks of several files within the specified ranges.
+   * The files are resolved under a single acquisition of the namespace lock,
+   * and each element of the result is the same as the one returned by
+   * {@link #getBlockLocations(String, long, long)} for the file.
+   *
+   * @param srcs file names
+   * @param offsets range start offset of each file
+   * @param lengths range length of each file
+   *
+   * @return file length and array of blocks with their locations for each
+   *         file, in the order of <code>srcs</code>
+   *
+   * @throws AccessControlException If access is denied to one of the files
+   * @throws FileNotFoundException If one of the files does not exist
+   * @throws UnresolvedLinkException If one of <code>srcs</code> contains a
+   *           symlink
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  public LocatedBlocks[] getBlockLocationsBatch(String[] srcs, long[] offsets,
+      long[] lengths) throws AccessControlException, FileNotFoundException,
+      UnresolvedLinkException, IOException;
+
   /**
    * Get server default values for a number of configuration params.
    * @return a set of server default configuration values
@@ -624,6 +649,7 @@ public boolean mkdirs(String src, FsPermission masked, boolean createParent)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public DirectoryListing getListing(String src,
                                      byte[] startAfter,
                                      boolean needLocation)
@@ -731,6 +757,7 @@ public DatanodeStorageReport[] getDatanodeStorageReport(
    * @throws UnresolvedLinkException if the path contains a symlink. 
    */
   @Idempotent
+  @ReadOnly
   public long getPreferredBlockSize(String filename) 
       throws IOException, UnresolvedLinkException;
 
@@ -900,8 +927,26 @@ public CorruptFileBlocks listCorruptFileBlocks(String path, String cookie)
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
+
+  /**
+   * Get the file info for several files or directories, resolved under a
+   * single acquisition of the namespace lock.
+   * @param srcs The string representations of the paths
+   *
+   * @return objects containing information regarding each of the files, in
+   *         the order of <code>srcs</code>; an element is null if the file is
+   *         not found
+   * @throws AccessControlException permission denied
+   * @throws UnresolvedLinkException if one of the paths contains a symlink.
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly
+  public HdfsFileStatus[] getFileInfos(String[] srcs)
+      throws AccessControlException, UnresolvedLinkException, IOException;
   
   /**
    * Get the close status of a file
@@ -914,6 +959,7 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred     
    */
   @Idempotent
+  @ReadOnly
   public boolean isFileClosed(String src) throws AccessControlException,
       FileNotFoundException, UnresolvedLinkException, IOException;
   
@@ -930,6 +976,7 @@ public boolean isFileClosed(String src) throws AccessControlException,
    * @throws IOException If an I/O error occurred        
    */
   @Idempotent
+  @ReadOnly
   public HdfsFileStatus getFileLinkInfo(String src)
       throws AccessControlException, UnresolvedLinkException, IOException;
   
@@ -943,6 +990,7 @@ public HdfsFileStatus getFileLinkInfo(String src)
    * @throws IOException If an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public ContentSummary getContentSummary(String path)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
@@ -1060,6 +1108,7 @@ public void createSymlink(String target, String link, FsPermission dirPerm,
    *           or an I/O error occurred
    */
   @Idempotent
+  @ReadOnly
   public String getLinkTarget(String path) throws AccessControlException,
       FileNotFoundException, IOException; 
   
@@ -1331,6 +1380,7 @@ public void removeAclEntries(String src, List<AclEntry> aclSpec)
    * Gets the ACLs of files and directories.
    */
   @Idempotent
+  @ReadOnly
   public AclStatus getAclStatus(String src) throws IOException;
   
   /**
@@ -1388,6 +1438,7 @@ public void setXAttr(String src, XAttr xAttr, EnumSet<XAttrSetFlag> flag)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs) 
       throws IOException;
 
@@ -1403,6 +1454,7 @@ public List<XAttr> getXAttrs(String src, List<XAttr> xAttrs)
    * @throws IOException
    */
   @Idempotent
+  @ReadOnly
   public List<XAttr> listXAttrs(String src)
       throws IOException;
   
@@ -1452,4 +1504,24 @@ public List<XAttr> listXAttrs(String src)
    */
   @Idempotent
   public EventBatchList getEditsFromTxid(long txid) throws IOException;
+
+  /**
+   * Get an ordered list of batches of the events selected by a filter,
+   * corresponding to the edit log transactions for txids equal to or greater
+   * than txid. The first and last txids of the list still cover all the
+   * transactions read, including those without selected events.
+   * <p/>
+   * NameNodes which do not support filtering return all the events, so
+   * callers must also apply the filter to the events they receive.
+   *
+   * @param txid the first txid to read
+   * @param filter the events to return, or null for all the events
+   * @param maxEvents the maximum number of events to return, or 0 for the
+   *                  maximum of the NameNode
+   * @param waitMs how long the NameNode may wait for new transactions if
+   *               there are none after txid, up to a maximum of its own
+   */
+  @Idempotent
+  public EventBatchList getEditsFromTxid(long txid, EventFilter filter,
+      int maxEvents, long waitMs) throws IOException;
 }
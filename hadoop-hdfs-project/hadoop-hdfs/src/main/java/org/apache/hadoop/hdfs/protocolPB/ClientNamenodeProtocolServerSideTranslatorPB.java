@@ -29,6 +29,7 @@
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.Options.Rename;
+import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -93,6 +94,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FsyncResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsBatchRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsBatchResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto.Builder;
@@ -110,6 +113,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfosRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfosResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatsResponseProto;
@@ -376,6 +381,38 @@ public GetBlockLocationsResponseProto getBlockLocations(
     }
   }
 
+  @Override
+  public GetBlockLocationsBatchResponseProto getBlockLocationsBatch(
+      RpcController controller, GetBlockLocationsBatchRequestProto req)
+      throws ServiceException {
+    final int n = req.getRequestsCount();
+    String[] srcs = new String[n];
+    long[] offsets = new long[n];
+    long[] lengths = new long[n];
+    for (int i = 0; i < n; i++) {
+      GetBlockLocationsRequestProto r = req.getRequests(i);
+      srcs[i] = r.getSrc();
+      offsets[i] = r.getOffset();
+      lengths[i] = r.getLength();
+    }
+    try {
+      LocatedBlocks[] blocks = server.getBlockLocationsBatch(srcs, offsets,
+          lengths);
+      GetBlockLocationsBatchResponseProto.Builder builder =
+          GetBlockLocationsBatchResponseProto.newBuilder();
+      for (LocatedBlocks b : blocks) {
+        Builder response = GetBlockLocationsResponseProto.newBuilder();
+        if (b != null) {
+          response.setLocations(PBHelper.convert(b));
+        }
+        builder.addResponses(response);
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetServerDefaultsResponseProto getServerDefaults(
       RpcController controller, GetServerDefaultsRequestProto req)
@@ -864,6 +901,28 @@ public GetFileInfoResponseProto getFileInfo(RpcController controller,
     }
   }
 
+  @Override
+  public GetFileInfosResponseProto getFileInfos(RpcController controller,
+      GetFileInfosRequestProto req) throws ServiceException {
+    try {
+      HdfsFileStatus[] result = server.getFileInfos(
+          req.getSrcsList().toArray(new String[req.getSrcsCount()]));
+      GetFileInfosResponseProto.Builder builder =
+          GetFileInfosResponseProto.newBuilder();
+      for (HdfsFileStatus stat : result) {
+        if (stat != null) {
+          builder.addFileInfos(GetFileInfoResponseProto.newBuilder().setFs(
+              PBHelper.convert(stat)));
+        } else {
+          builder.addFileInfos(VOID_GETFILEINFO_RESPONSE);
+        }
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetFileLinkInfoResponseProto getFileLinkInfo(RpcController controller,
       GetFileLinkInfoRequestProto req) throws ServiceException {
@@ -1505,8 +1564,11 @@ public GetCurrentEditLogTxidResponseProto getCurrentEditLogTxid(RpcController co
   public GetEditsFromTxidResponseProto getEditsFromTxid(RpcController controller,
       GetEditsFromTxidRequestProto req) throws ServiceException {
     try {
-      return PBHelper.convertEditsResponse(server.getEditsFromTxid(
-          req.getTxid()));
+      EventBatchList el = server.getEditsFromTxid(req.getTxid(),
+          PBHelper.convertEventFilter(req), req.getMaxEvents(),
+          req.getWaitMs());
+      // null if the response has been deferred until new edits are synced
+      return el == null ? null : PBHelper.convertEditsResponse(el);
     } catch (IOException e) {
       throw new ServiceException(e);
     }
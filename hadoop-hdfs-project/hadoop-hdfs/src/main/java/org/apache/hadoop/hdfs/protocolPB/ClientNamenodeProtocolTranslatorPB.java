@@ -45,7 +45,9 @@
 import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
@@ -98,6 +100,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FinalizeUpgradeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FsyncRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsBatchRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsBatchResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetContentSummaryRequestProto;
@@ -109,6 +113,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfosRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileInfosResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFileLinkInfoResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatusRequestProto;
@@ -261,6 +267,33 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
     }
   }
 
+  @Override
+  public LocatedBlocks[] getBlockLocationsBatch(String[] srcs, long[] offsets,
+      long[] lengths) throws AccessControlException, FileNotFoundException,
+      UnresolvedLinkException, IOException {
+    GetBlockLocationsBatchRequestProto.Builder req =
+        GetBlockLocationsBatchRequestProto.newBuilder();
+    for (int i = 0; i < srcs.length; i++) {
+      req.addRequests(GetBlockLocationsRequestProto.newBuilder()
+          .setSrc(srcs[i])
+          .setOffset(offsets[i])
+          .setLength(lengths[i]));
+    }
+    try {
+      GetBlockLocationsBatchResponseProto resp =
+          rpcProxy.getBlockLocationsBatch(null, req.build());
+      LocatedBlocks[] blocks = new LocatedBlocks[resp.getResponsesCount()];
+      for (int i = 0; i < blocks.length; i++) {
+        GetBlockLocationsResponseProto r = resp.getResponses(i);
+        blocks[i] = r.hasLocations() ?
+            PBHelper.convert(r.getLocations()) : null;
+      }
+      return blocks;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public FsServerDefaults getServerDefaults() throws IOException {
     GetServerDefaultsRequestProto req = VOID_GET_SERVER_DEFAULT_REQUEST;
@@ -780,6 +813,24 @@ public HdfsFileStatus getFileInfo(String src) throws AccessControlException,
     }
   }
 
+  @Override
+  public HdfsFileStatus[] getFileInfos(String[] srcs)
+      throws AccessControlException, UnresolvedLinkException, IOException {
+    GetFileInfosRequestProto req = GetFileInfosRequestProto.newBuilder()
+        .addAllSrcs(Arrays.asList(srcs)).build();
+    try {
+      GetFileInfosResponseProto res = rpcProxy.getFileInfos(null, req);
+      HdfsFileStatus[] result = new HdfsFileStatus[res.getFileInfosCount()];
+      for (int i = 0; i < result.length; i++) {
+        GetFileInfoResponseProto info = res.getFileInfos(i);
+        result[i] = info.hasFs() ? PBHelper.convert(info.getFs()) : null;
+      }
+      return result;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public HdfsFileStatus getFileLinkInfo(String src)
       throws AccessControlException, UnresolvedLinkException, IOException {
@@ -1518,4 +1569,28 @@ public EventBatchList getEditsFromTxid(long txid) throws IOException {
       throw ProtobufHelper.getRemoteException(e);
     }
   }
+
+  @Override
+  public EventBatchList getEditsFromTxid(long txid, EventFilter filter,
+      int maxEvents, long waitMs) throws IOException {
+    GetEditsFromTxidRequestProto.Builder builder =
+        GetEditsFromTxidRequestProto.newBuilder().setTxid(txid);
+    if (filter != null) {
+      builder.addAllPathPrefixes(filter.getPathPrefixes());
+      for (Event.EventType type : filter.getEventTypes()) {
+        builder.addEventTypes(PBHelper.eventTypeConvert(type));
+      }
+    }
+    if (maxEvents > 0) {
+      builder.setMaxEvents(maxEvents);
+    }
+    if (waitMs > 0) {
+      builder.setWaitMs(waitMs);
+    }
+    try {
+      return PBHelper.convert(rpcProxy.getEditsFromTxid(null, builder.build()));
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
 }
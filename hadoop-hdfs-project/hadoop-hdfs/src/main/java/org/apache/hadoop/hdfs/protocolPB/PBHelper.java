@@ -52,6 +52,7 @@
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -104,6 +105,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CreateFlagProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DatanodeReportTypeProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.DatanodeStorageReportProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetEditsFromTxidResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetFsStatsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.RollingUpgradeActionProto;
@@ -1920,7 +1922,10 @@ public static StorageReportProto convert(StorageReport r) {
         .setDfsUsed(r.getDfsUsed()).setRemaining(r.getRemaining())
         .setStorageUuid(r.getStorage().getStorageID())
         .setStorage(convert(r.getStorage()))
-        .setNonDfsUsed(r.getNonDfsUsed());
+        .setNonDfsUsed(r.getNonDfsUsed())
+        .setIoLatencyMicros(r.getIOLatencyMicros())
+        .setPendingIOs(r.getPendingIOs())
+        .setTransferRate(r.getTransferRate());
     return builder.build();
   }
 
@@ -1931,7 +1936,8 @@ public static StorageReport convert(StorageReportProto p) {
     return new StorageReport(p.hasStorage() ?
         convert(p.getStorage()) :
         new DatanodeStorage(p.getStorageUuid()), p.getFailed(), p.getCapacity(),
-        p.getDfsUsed(), p.getRemaining(), p.getBlockPoolUsed(), nonDfsUsed);
+        p.getDfsUsed(), p.getRemaining(), p.getBlockPoolUsed(), nonDfsUsed,
+        p.getIoLatencyMicros(), p.getPendingIOs(), p.getTransferRate());
   }
 
   public static StorageReport[] convertStorageReports(
@@ -2599,6 +2605,59 @@ private static Event.MetadataUpdateEvent.MetadataType metadataUpdateTypeConvert(
     }
   }
 
+  public static InotifyProtos.EventType eventTypeConvert(Event.EventType type) {
+    switch (type) {
+    case CREATE:
+      return InotifyProtos.EventType.EVENT_CREATE;
+    case CLOSE:
+      return InotifyProtos.EventType.EVENT_CLOSE;
+    case APPEND:
+      return InotifyProtos.EventType.EVENT_APPEND;
+    case RENAME:
+      return InotifyProtos.EventType.EVENT_RENAME;
+    case METADATA:
+      return InotifyProtos.EventType.EVENT_METADATA;
+    case UNLINK:
+      return InotifyProtos.EventType.EVENT_UNLINK;
+    default:
+      return null;
+    }
+  }
+
+  public static Event.EventType eventTypeConvert(InotifyProtos.EventType type) {
+    switch (type) {
+    case EVENT_CREATE:
+      return Event.EventType.CREATE;
+    case EVENT_CLOSE:
+      return Event.EventType.CLOSE;
+    case EVENT_APPEND:
+      return Event.EventType.APPEND;
+    case EVENT_RENAME:
+      return Event.EventType.RENAME;
+    case EVENT_METADATA:
+      return Event.EventType.METADATA;
+    case EVENT_UNLINK:
+      return Event.EventType.UNLINK;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * @return the filter of the request, or null if it selects all events.
+   */
+  public static EventFilter convertEventFilter(
+      GetEditsFromTxidRequestProto req) {
+    if (req.getPathPrefixesCount() == 0 && req.getEventTypesCount() == 0) {
+      return null;
+    }
+    List<Event.EventType> types = Lists.newArrayList();
+    for (InotifyProtos.EventType type : req.getEventTypesList()) {
+      types.add(eventTypeConvert(type));
+    }
+    return new EventFilter(req.getPathPrefixesList(), types);
+  }
+
   private static InotifyProtos.INodeType createTypeConvert(Event.CreateEvent.INodeType
       type) {
     switch (type) {
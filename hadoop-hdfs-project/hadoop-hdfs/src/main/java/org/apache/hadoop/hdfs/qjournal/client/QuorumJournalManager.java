@@ -21,6 +21,7 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -35,7 +36,9 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -46,6 +49,7 @@
 import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
 import org.apache.hadoop.hdfs.server.namenode.JournalManager;
 import org.apache.hadoop.hdfs.server.namenode.JournalSet;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
@@ -99,6 +103,16 @@ public class QuorumJournalManager implements JournalManager {
 
   private int outputBufferCapacity = 512 * 1024;
   private final URLConnectionFactory connectionFactory;
+
+  /**
+   * Whether the in-progress segments are read through the edit caches of the
+   * JournalNodes, and limited to the transactions which are durable, i.e.
+   * written to a quorum of JournalNodes.
+   */
+  private final boolean inProgressTailingEnabled;
+  /** Maximum number of transactions to fetch from an edit cache at once. */
+  private final int maxTxnsPerRpc;
+  private final boolean compressEdits;
   
   public QuorumJournalManager(Configuration conf,
       URI uri, NamespaceInfo nsInfo) throws IOException {
@@ -142,6 +156,17 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+    this.inProgressTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_DEFAULT);
+    Preconditions.checkArgument(maxTxnsPerRpc > 0,
+        "%s must be positive", DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY);
+    this.compressEdits = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_DEFAULT);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -402,8 +427,13 @@ public EditLogOutputStream startLogSegment(long txId, int layoutVersion)
         layoutVersion);
     loggers.waitForWriteQuorum(q, startSegmentTimeoutMs,
         "startLogSegment(" + txId + ")");
-    return new QuorumOutputStream(loggers, txId,
+    QuorumOutputStream stream = new QuorumOutputStream(loggers, txId,
         outputBufferCapacity, writeTxnsTimeoutMs);
+    if (NameNodeLayoutVersion.supports(
+        NameNodeLayoutVersion.Feature.COMPACT_EDITS, layoutVersion)) {
+      stream.setCompactEncoding(compressEdits);
+    }
+    return stream;
   }
 
   @Override
@@ -462,9 +492,84 @@ public void close() throws IOException {
     loggers.close();
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * If only the durable transactions are asked for and in-progress tailing
+   * is enabled, they are first read from the edit caches of the
+   * JournalNodes, at most {@link DFSConfigKeys#DFS_QJOURNAL_RPC_MAX_TXNS_KEY}
+   * of them at once, then from the segments over HTTP if the caches no
+   * longer have them.
+   */
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
-      long fromTxnId, boolean inProgressOk) throws IOException {
+      long fromTxnId, boolean inProgressOk, boolean onlyDurableTxns)
+      throws IOException {
+    if (inProgressOk && onlyDurableTxns && inProgressTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        LOG.info("Could not read the edits since txid " + fromTxnId +
+            " from the edit caches, reading them from the segments: " + ioe);
+      }
+    }
+    selectStreamingInputStreams(streams, fromTxnId, inProgressOk,
+        onlyDurableTxns);
+  }
+
+  /**
+   * Select the durable edits since fromTxnId from the edit caches of the
+   * JournalNodes.
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> resps =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    // The batches of edits are the same on every JournalNode, so the counts
+    // can be compared: the transactions returned by a quorum are durable.
+    List<Integer> txnCounts = new ArrayList<Integer>();
+    for (GetJournaledEditsResponseProto resp : resps.values()) {
+      txnCounts.add(resp.getTxnCount());
+    }
+    Collections.sort(txnCounts);
+    int durableTxnCount =
+        txnCounts.get(txnCounts.size() - loggers.getMajoritySize());
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("selectRpcInputStreams since txid " + fromTxnId +
+          ": transaction counts " + txnCounts + ", " + durableTxnCount +
+          " durable");
+    }
+    if (durableTxnCount == 0) {
+      return;
+    }
+
+    for (Map.Entry<AsyncLogger, GetJournaledEditsResponseProto> e :
+        resps.entrySet()) {
+      if (e.getValue().getTxnCount() >= durableTxnCount) {
+        EditLogInputStream stream = EditLogFileInputStream.fromByteString(
+            e.getValue().getEditLog(), "edit cache of " + e.getKey(),
+            fromTxnId, fromTxnId + durableTxnCount - 1, true);
+        // The edits start at the batch which holds fromTxnId, which may hold
+        // earlier transactions too if it is in the compact encoding.
+        stream.skipUntil(fromTxnId);
+        streams.add(stream);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Select the edit log segments since fromTxnId, which are read from the
+   * JournalNodes over HTTP.
+   */
+  private void selectStreamingInputStreams(
+      Collection<EditLogInputStream> streams, long fromTxnId,
+      boolean inProgressOk, boolean onlyDurableTxns) throws IOException {
 
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId, inProgressOk);
@@ -474,6 +579,22 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
     
     LOG.debug("selectInputStream manifests:\n" +
         Joiner.on("\n").withKeyValueSeparator(": ").join(resps));
+
+    long durableTxId = Long.MAX_VALUE;
+    if (inProgressOk && onlyDurableTxns) {
+      // The highest transaction written to a quorum of the JournalNodes
+      List<Long> highestTxIds = new ArrayList<Long>();
+      for (RemoteEditLogManifest manifest : resps.values()) {
+        long highestTxId = HdfsConstants.INVALID_TXID;
+        for (RemoteEditLog remoteLog : manifest.getLogs()) {
+          highestTxId = Math.max(highestTxId, remoteLog.getEndTxId());
+        }
+        highestTxIds.add(highestTxId);
+      }
+      Collections.sort(highestTxIds);
+      durableTxId =
+          highestTxIds.get(highestTxIds.size() - loggers.getMajoritySize());
+    }
     
     final PriorityQueue<EditLogInputStream> allStreams = 
         new PriorityQueue<EditLogInputStream>(64,
@@ -485,9 +606,17 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
       for (RemoteEditLog remoteLog : manifest.getLogs()) {
         URL url = logger.buildURLToFetchLogs(remoteLog.getStartTxId());
 
+        long endTxId = remoteLog.getEndTxId();
+        // The transactions of the finalized segments are all durable
+        if (remoteLog.isInProgress() && endTxId > durableTxId) {
+          if (durableTxId < remoteLog.getStartTxId()) {
+            continue;
+          }
+          endTxId = durableTxId;
+        }
         EditLogInputStream elis = EditLogFileInputStream.fromUrl(
             connectionFactory, url, remoteLog.getStartTxId(),
-            remoteLog.getEndTxId(), remoteLog.isInProgress());
+            endTxId, remoteLog.isInProgress());
         allStreams.add(elis);
       }
     }
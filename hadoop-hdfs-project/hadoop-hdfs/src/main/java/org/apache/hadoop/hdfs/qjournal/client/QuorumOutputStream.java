@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs.qjournal.client;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
 import org.apache.hadoop.hdfs.server.namenode.EditsDoubleBuffer;
@@ -54,6 +55,14 @@ public void writeRaw(byte[] bytes, int offset, int length) throws IOException {
     buf.writeRaw(bytes, offset, length);
   }
 
+  /**
+   * Send the edits in the compact encoding.
+   * @see EditsDoubleBuffer#setCompactEncoding(boolean)
+   */
+  void setCompactEncoding(boolean compress) {
+    buf.setCompactEncoding(compress);
+  }
+
   @Override
   public void create(int layoutVersion) throws IOException {
     throw new UnsupportedOperationException();
@@ -97,9 +106,11 @@ protected void flushAndSync(boolean durable) throws IOException {
       //    before it is sent.
       DataOutputBuffer bufToSend = new DataOutputBuffer(numReadyBytes);
       buf.flushTo(bufToSend);
-      assert bufToSend.getLength() == numReadyBytes;
       byte[] data = bufToSend.getData();
-      assert data.length == bufToSend.getLength();
+      if (data.length != bufToSend.getLength()) {
+        // the edits were re-encoded to a different length
+        data = Arrays.copyOf(data, bufToSend.getLength());
+      }
 
       QuorumCall<AsyncLogger, Void> qcall = loggers.sendEdits(
           segmentTxId, firstTxToFlush,
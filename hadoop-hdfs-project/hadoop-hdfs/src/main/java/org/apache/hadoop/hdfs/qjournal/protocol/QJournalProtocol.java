@@ -24,6 +24,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -133,6 +134,24 @@ public void purgeLogsOlderThan(RequestInfo requestInfo, long minTxIdToKeep)
   public GetEditLogManifestResponseProto getEditLogManifest(String jid,
       long sinceTxId, boolean inProgressOk)
       throws IOException;
+
+  /**
+   * Fetch the recent edits from the in-memory cache of the journal. Unlike
+   * {@link #getEditLogManifest(String, long, boolean)}, this includes the
+   * transactions of the in-progress log segment, and does not need a
+   * separate HTTP request to read them.
+   *
+   * @param jid the journal from which to fetch the edits
+   * @param sinceTxId the first transaction which the client cares about
+   * @param maxTxns the maximum number of transactions to return; more may
+   *        be returned to complete the last batch of edits written together
+   * @return the number of transactions since sinceTxId, and the serialized
+   *         edit log, starting with its header, which contains them.
+   * @throws IOException if the edits starting at sinceTxId are no longer,
+   *         or not yet, in the cache; or if the cache is disabled.
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException;
   
   /**
    * Begin the recovery process for a given segment. See the HDFS-3077
@@ -34,11 +34,13 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PersistedRecoveryPaxosData;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -68,6 +70,7 @@
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.TextFormat;
 
 /**
@@ -82,6 +85,7 @@ public class Journal implements Closeable {
   // Current writing state
   private EditLogOutputStream curSegment;
   private long curSegmentTxId = HdfsConstants.INVALID_TXID;
+  private int curSegmentLayoutVersion = 0;
   private long nextTxId = HdfsConstants.INVALID_TXID;
   private long highestWrittenTxId = 0;
   
@@ -132,6 +136,12 @@ public class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /**
+   * The recent edits, for readers tailing the in-progress segment; null
+   * unless {@link DFSConfigKeys#DFS_HA_TAILEDITS_INPROGRESS_KEY} is set.
+   */
+  private final JournaledEditsCache cache;
+
   /**
    * Time threshold for sync calls, beyond which a warning should be logged to the console.
    */
@@ -148,6 +158,15 @@ public class Journal implements Closeable {
     this.fjm = storage.getJournalManager();
     
     this.metrics = JournalMetrics.create(this);
+
+    if (conf.getBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT)) {
+      this.cache = new JournaledEditsCache(conf.getInt(
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT));
+    } else {
+      this.cache = null;
+    }
     
     EditLogFile latest = scanStorageForLatestEdits();
     if (latest != null) {
@@ -216,6 +235,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    invalidateEditsCache();
   }
 
   /**
@@ -297,6 +317,8 @@ synchronized NewEpochResponseProto newEpoch(
     
     updateLastPromisedEpoch(epoch);
     abortCurSegment();
+    // The new writer may recover the last segment to a different length
+    invalidateEditsCache();
     
     NewEpochResponseProto.Builder builder =
         NewEpochResponseProto.newBuilder();
@@ -401,6 +423,11 @@ synchronized void journal(RequestInfo reqInfo,
     
     highestWrittenTxId = lastTxnId;
     nextTxId = lastTxnId + 1;
+
+    if (cache != null) {
+      cache.storeEdits(records, firstTxnId, lastTxnId,
+          curSegmentLayoutVersion);
+    }
   }
 
   public void heartbeat(RequestInfo reqInfo) throws IOException {
@@ -547,6 +574,7 @@ public synchronized void startLogSegment(RequestInfo reqInfo, long txid,
     
     curSegment = fjm.startLogSegment(txid, layoutVersion);
     curSegmentTxId = txid;
+    curSegmentLayoutVersion = layoutVersion;
     nextTxId = txid;
   }
   
@@ -663,6 +691,33 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId,
     return new RemoteEditLogManifest(logs);
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(long sinceTxId,
+      int maxTxns) throws IOException {
+    // Not synchronized, so that the readers do not wait for the writer to
+    // sync its edits. Like getEditLogManifest(), it needs no checkRequest().
+    if (cache == null) {
+      throw new IOException("The edits cache of journal " + journalId +
+          " is disabled, see " + DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY);
+    }
+    final ByteString.Output out = ByteString.newOutput();
+    final int txnCount = cache.retrieveEdits(sinceTxId, maxTxns, out);
+    final GetJournaledEditsResponseProto.Builder builder =
+        GetJournaledEditsResponseProto.newBuilder().setTxnCount(txnCount);
+    if (txnCount > 0) {
+      builder.setEditLog(out.toByteString());
+    }
+    return builder.build();
+  }
+
+  private void invalidateEditsCache() {
+    if (cache != null) {
+      cache.invalidate();
+    }
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
@@ -747,6 +802,7 @@ public synchronized void acceptRecovery(RequestInfo reqInfo,
     checkRequest(reqInfo);
     
     abortCurSegment();
+    invalidateEditsCache();
 
     long segmentTxId = segment.getStartTxId();
 
@@ -993,6 +1049,7 @@ private void persistPaxosData(long segmentTxId,
 
   synchronized void discardSegments(long startTxId) throws IOException {
     storage.getJournalManager().discardSegments(startTxId);
+    invalidateEditsCache();
     // we delete all the segments after the startTxId. let's reset committedTxnId 
     committedTxnId.set(startTxId - 1);
   }
@@ -1066,6 +1123,7 @@ public synchronized void doRollback() throws IOException {
     // directory will be renamed.  It will be reopened lazily on next access.
     IOUtils.cleanup(LOG, committedTxnId);
     storage.getJournalManager().doRollback();
+    invalidateEditsCache();
   }
 
   public Long getJournalCTime() throws IOException {
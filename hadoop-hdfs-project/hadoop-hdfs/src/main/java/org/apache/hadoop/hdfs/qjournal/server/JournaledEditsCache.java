@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An in-memory cache of the most recent edits written to a {@link Journal}.
+ * The edits are kept as the serialized batches received from the writer,
+ * keyed by the first transaction ID of each batch, so that storing them
+ * never decodes them. The batches are contiguous: when a batch does not
+ * follow the last one, e.g. after the recovery of a segment, or when the
+ * layout version changes, the cache is emptied first. The oldest batches are
+ * evicted once the total size exceeds the capacity.
+ * <p>
+ * Reading the edits from a transaction ID only decodes the first batch, to
+ * skip the transactions before that ID.
+ */
+class JournaledEditsCache {
+  private static final Log LOG = LogFactory.getLog(JournaledEditsCache.class);
+
+  /** Thrown when the requested edits are not in the cache. */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  private final int capacity;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** First transaction ID of each batch -> serialized batch. */
+  private final TreeMap<Long, byte[]> dataMap = new TreeMap<Long, byte[]>();
+  private long totalSize = 0;
+  private long lowestTxnId = HdfsConstants.INVALID_TXID;
+  private long highestTxnId = HdfsConstants.INVALID_TXID;
+  private int layoutVersion = 0;
+  /** Edit log header for {@link #layoutVersion}. */
+  private byte[] layoutHeader = null;
+
+  JournaledEditsCache(int capacity) {
+    Preconditions.checkArgument(capacity > 0,
+        "The capacity of the edits cache must be positive");
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a batch of edits to the cache.
+   *
+   * @param data the serialized transactions
+   * @param firstTxnId the ID of the first transaction of the batch
+   * @param lastTxnId the ID of the last transaction of the batch
+   * @param newLayoutVersion the layout version of the transactions
+   */
+  void storeEdits(byte[] data, long firstTxnId, long lastTxnId,
+      int newLayoutVersion) throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (newLayoutVersion != layoutVersion) {
+        clear();
+        layoutVersion = newLayoutVersion;
+        layoutHeader = createHeader(newLayoutVersion);
+      } else if (highestTxnId != HdfsConstants.INVALID_TXID &&
+          firstTxnId != highestTxnId + 1) {
+        LOG.info("Clearing the edits cache: got transactions " + firstTxnId +
+            "-" + lastTxnId + " after " + highestTxnId);
+        clear();
+      }
+      if (data.length > capacity) {
+        LOG.warn("A batch of " + data.length + " bytes, for transactions " +
+            firstTxnId + "-" + lastTxnId + ", does not fit in the edits " +
+            "cache of " + capacity + " bytes");
+        clear();
+        return;
+      }
+      dataMap.put(firstTxnId, data);
+      totalSize += data.length;
+      if (lowestTxnId == HdfsConstants.INVALID_TXID) {
+        lowestTxnId = firstTxnId;
+      }
+      highestTxnId = lastTxnId;
+      while (totalSize > capacity) {
+        totalSize -= dataMap.pollFirstEntry().getValue().length;
+        lowestTxnId = dataMap.firstKey();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Get the edits starting at the given transaction ID.
+   *
+   * @param sinceTxId the ID of the first transaction to return
+   * @param maxTxns the maximum number of transactions to return, rounded up
+   *        to the end of the last batch
+   * @param out the edit log header followed by the transactions are
+   *        written to this stream, if there are any
+   * @return the number of transactions written to out
+   * @throws CacheMissException if the transactions since sinceTxId are not,
+   *         or no longer, in the cache.
+   */
+  int retrieveEdits(long sinceTxId, int maxTxns, OutputStream out)
+      throws IOException {
+    final List<byte[]> batches = new ArrayList<byte[]>();
+    final long firstBatchTxId;
+    final int txnCount;
+    final byte[] header;
+    final int logVersion;
+    lock.readLock().lock();
+    try {
+      if (lowestTxnId == HdfsConstants.INVALID_TXID ||
+          sinceTxId < lowestTxnId) {
+        throw new CacheMissException("Transaction " + sinceTxId + " is not " +
+            "in the edits cache, which has " + (dataMap.isEmpty() ?
+                "no transactions" : lowestTxnId + "-" + highestTxnId));
+      }
+      if (sinceTxId > highestTxnId) {
+        return 0;
+      }
+      firstBatchTxId = dataMap.floorKey(sinceTxId);
+      long endTxId = highestTxnId;
+      for (Map.Entry<Long, byte[]> e :
+          dataMap.tailMap(firstBatchTxId, true).entrySet()) {
+        if (e.getKey() - sinceTxId >= maxTxns) {
+          endTxId = e.getKey() - 1;
+          break;
+        }
+        batches.add(e.getValue());
+      }
+      txnCount = (int) (endTxId - sinceTxId + 1);
+      header = layoutHeader;
+      logVersion = layoutVersion;
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // The batches are never modified, so they can be copied without the lock
+    out.write(header);
+    final byte[] first = batches.get(0);
+    final int offset = firstBatchTxId == sinceTxId ? 0 :
+        findTransactionPosition(first, sinceTxId, logVersion);
+    out.write(first, offset, first.length - offset);
+    for (int i = 1; i < batches.size(); i++) {
+      out.write(batches.get(i));
+    }
+    return txnCount;
+  }
+
+  /** @return the offset of the given transaction in a batch. */
+  private static int findTransactionPosition(byte[] batch, long txId,
+      int logVersion) throws IOException {
+    final FSEditLogLoader.PositionTrackingInputStream tracker =
+        new FSEditLogLoader.PositionTrackingInputStream(
+            new ByteArrayInputStream(batch));
+    final FSEditLogOp.Reader reader = new FSEditLogOp.Reader(
+        new DataInputStream(tracker), tracker, logVersion);
+    long pos = 0;
+    while (true) {
+      final long scanned = reader.scanOp();
+      if (scanned == HdfsConstants.INVALID_TXID) {
+        throw new IOException("Transaction " + txId + " not found in a " +
+            "cached batch of " + batch.length + " bytes");
+      } else if (scanned >= txId) {
+        return (int) pos;
+      }
+      pos = tracker.getPos();
+    }
+  }
+
+  private static byte[] createHeader(int layoutVersion) throws IOException {
+    final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    EditLogFileOutputStream.writeHeader(layoutVersion,
+        new DataOutputStream(buf));
+    return buf.toByteArray();
+  }
+
+  /** Remove all the transactions from the cache. */
+  void invalidate() {
+    lock.writeLock().lock();
+    try {
+      clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void clear() {
+    dataMap.clear();
+    totalSize = 0;
+    lowestTxnId = HdfsConstants.INVALID_TXID;
+    highestTxnId = HdfsConstants.INVALID_TXID;
+  }
+
+  @VisibleForTesting
+  long getTotalSize() {
+    lock.readLock().lock();
+    try {
+      return totalSize;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -22,6 +22,7 @@
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -39,7 +40,11 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
@@ -84,6 +89,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
 import org.apache.hadoop.hdfs.server.protocol.KeyUpdateCommand;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
 import org.apache.hadoop.hdfs.util.LightWeightLinkedSet;
 import org.apache.hadoop.net.Node;
@@ -95,7 +101,10 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -180,8 +189,30 @@ public int getPendingDataNodeMessageCount() {
   final Daemon replicationThread = new Daemon(new ReplicationMonitor());
   
   /** Block report thread for handling async reports. */
-  private final BlockReportProcessingThread blockReportThread =
-      new BlockReportProcessingThread();
+  private final BlockReportProcessingThread blockReportThread;
+
+  /**
+   * Computes the differences between the full block reports and the stored
+   * blocks outside of the write lock; null if the reports are processed
+   * entirely under the write lock.
+   */
+  private final ExecutorService blockReportDiffExecutor;
+
+  /**
+   * Chooses the targets of the replication work in parallel; null if the
+   * replication monitor chooses them itself.
+   */
+  private final ExecutorService replicationWorkExecutor;
+  private final int replicationWorkThreads;
+
+  /**
+   * The time at which some blocks became under-replicated, or 0 if no block
+   * needs replication.
+   */
+  private long underReplicatedSince = 0L;
+
+  /** Max number of block report changes applied per write lock hold. */
+  private final int blockReportApplyBatchSize;
 
   /** Store blocks -> datanodedescriptor(s) map of corrupt replicas */
   final CorruptReplicasMap corruptReplicas = new CorruptReplicasMap();
@@ -362,6 +393,32 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+    final int blockReportDiffThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_DEFAULT);
+    this.blockReportDiffExecutor = blockReportDiffThreads <= 0 ? null :
+        Executors.newFixedThreadPool(blockReportDiffThreads,
+            new ThreadFactoryBuilder().setNameFormat("Block report diff #%d")
+                .setDaemon(true).build());
+    this.replicationWorkThreads = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT);
+    this.replicationWorkExecutor = replicationWorkThreads <= 0 ? null :
+        Executors.newFixedThreadPool(replicationWorkThreads,
+            new ThreadFactoryBuilder().setNameFormat("Replication work #%d")
+                .setDaemon(true).build());
+    this.blockReportThread = new BlockReportProcessingThread(
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_SIZE_DEFAULT),
+        conf.getLong(
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_MAX_LOCK_HOLD_MS_KEY,
+            DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_QUEUE_MAX_LOCK_HOLD_MS_DEFAULT));
+    this.blockReportApplyBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_DEFAULT);
+    Preconditions.checkArgument(blockReportApplyBatchSize > 0,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_KEY
+        + " must be positive");
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
@@ -376,6 +433,7 @@ public BlockManager(final Namesystem namesystem, final Configuration conf)
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
     LOG.info("maxNumBlocksToLog          = " + maxNumBlocksToLog);
+    LOG.info("blockReportDiffThreads     = " + blockReportDiffThreads);
   }
 
   private static BlockTokenSecretManager createBlockTokenSecretManager(
@@ -459,7 +517,8 @@ void enableRMTerminationForTesting() {
     checkNSRunning = false;
   }
 
-  private boolean isBlockTokenEnabled() {
+  /** @return whether the block access tokens are enabled. */
+  public boolean isBlockTokenEnabled() {
     return blockTokenSecretManager != null;
   }
 
@@ -484,6 +543,12 @@ public void close() {
       blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (blockReportDiffExecutor != null) {
+      blockReportDiffExecutor.shutdownNow();
+    }
+    if (replicationWorkExecutor != null) {
+      replicationWorkExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -988,10 +1053,10 @@ public void setBlockToken(final LocatedBlock b,
 
   void addKeyUpdateCommand(final List<DatanodeCommand> cmds,
       final DatanodeDescriptor nodeinfo) {
-    // check access key update
-    if (isBlockTokenEnabled() && nodeinfo.needKeyUpdate) {
+    // check access key update; clear it first, so that keys updated
+    // concurrently are sent with the next heartbeat
+    if (isBlockTokenEnabled() && nodeinfo.clearNeedKeyUpdate()) {
       cmds.add(new KeyUpdateCommand(blockTokenSecretManager.exportKeys()));
-      nodeinfo.needKeyUpdate = false;
     }
   }
   
@@ -1334,6 +1399,21 @@ void updateState() {
     pendingReplicationBlocksCount = pendingReplications.size();
     underReplicatedBlocksCount = neededReplications.size();
     corruptReplicaBlocksCount = corruptReplicas.size();
+
+    // the missing blocks cannot be replicated, so they are not waited for
+    final long now = Time.monotonicNow();
+    if (pendingReplicationBlocksCount > 0 ||
+        neededReplications.getUnderReplicatedBlockCount() > 0) {
+      if (underReplicatedSince == 0L) {
+        underReplicatedSince = now;
+      }
+    } else if (underReplicatedSince != 0L) {
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.addFullReplication(now - underReplicatedSince);
+      }
+      underReplicatedSince = 0L;
+    }
   }
 
   /** Return number of under-replicated but not missing blocks */
@@ -1401,7 +1481,7 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
     int additionalReplRequired;
 
     int scheduledWork = 0;
-    List<ReplicationWork> work = new LinkedList<ReplicationWork>();
+    List<ReplicationWork> work = new ArrayList<ReplicationWork>();
 
     namesystem.writeLock();
     try {
@@ -1466,19 +1546,17 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
       namesystem.writeUnlock();
     }
 
-    final Set<Node> excludedNodes = new HashSet<Node>();
-    for(ReplicationWork rw : work){
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      excludedNodes.clear();
-      for (DatanodeDescriptor dn : rw.containingNodes) {
-        excludedNodes.add(dn);
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    try {
+      if (replicationWorkExecutor == null || work.size() < 2) {
+        chooseTargets(work);
+      } else {
+        chooseTargetsInParallel(work);
+      }
+    } finally {
+      for (ReplicationWork rw : work) {
+        rw.srcNode.decrementPendingReplicationWithoutTargets();
       }
-
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      // It is costly to extract the filename for which chooseTargets is called,
-      // so for now we pass in the block collection itself.
-      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
     }
 
     namesystem.writeLock();
@@ -1578,6 +1656,72 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
     return scheduledWork;
   }
 
+  /**
+   * Choose the targets of some replication work, from the replicas found
+   * under the namesystem lock.
+   */
+  private void chooseTargets(List<ReplicationWork> work) {
+    final Set<Node> excludedNodes = new HashSet<Node>();
+    for(ReplicationWork rw : work){
+      // Exclude all of the containing nodes from being targets.
+      // This list includes decommissioning or corrupt nodes.
+      excludedNodes.clear();
+      for (DatanodeDescriptor dn : rw.containingNodes) {
+        excludedNodes.add(dn);
+      }
+
+      // It is costly to extract the filename for which chooseTargets is called,
+      // so for now we pass in the block collection itself.
+      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
+    }
+  }
+
+  /**
+   * Split the replication work between the worker threads, and wait until
+   * they chose all the targets. The placement policy is already used
+   * concurrently by the handlers adding blocks, and each worker sets the
+   * targets of its own part of the work only.
+   */
+  private void chooseTargetsInParallel(List<ReplicationWork> work) {
+    final int numParts = Math.min(replicationWorkThreads, work.size());
+    final int partSize = (work.size() + numParts - 1) / numParts;
+    final List<Future<?>> parts = new ArrayList<Future<?>>(numParts);
+    try {
+      for (int i = 0; i < work.size(); i += partSize) {
+        final List<ReplicationWork> part =
+            work.subList(i, Math.min(i + partSize, work.size()));
+        parts.add(replicationWorkExecutor.submit(new Runnable() {
+          @Override
+          public void run() {
+            chooseTargets(part);
+          }
+        }));
+      }
+    } catch (RejectedExecutionException e) {
+      // the executor is shut down with the namesystem; choose the targets
+      // which are left here so that all the parts are done on return
+      for (int i = parts.size() * partSize; i < work.size(); i += partSize) {
+        chooseTargets(work.subList(i, Math.min(i + partSize, work.size())));
+      }
+    }
+
+    // wait for all the parts even if interrupted, since the work is
+    // scheduled with the targets the workers set
+    Throwable failure = null;
+    for (Future<?> part : parts) {
+      try {
+        Uninterruptibles.getUninterruptibly(part);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure != null) {
+      throw Throwables.propagate(failure);
+    }
+  }
+
   /** Choose target for WebHDFS redirection. */
   public DatanodeStorageInfo[] chooseTarget4WebHDFS(String src,
       DatanodeDescriptor clientnode, Set<Node> excludes, long blocksize) {
@@ -1939,6 +2083,323 @@ public boolean processReport(final DatanodeID nodeID,
     return !node.hasStaleStorages();
   }
 
+  /**
+   * @return true if the full block reports are compared against the stored
+   *         blocks outside of the namesystem write lock.
+   */
+  public boolean isParallelBlockReportEnabled() {
+    return blockReportDiffExecutor != null;
+  }
+
+  /**
+   * All the given storages of a datanode are reporting all their blocks.
+   * The reports are compared against the stored blocks in parallel, under
+   * the namesystem read lock; the differences are then applied through the
+   * block report processing thread, in batches of at most
+   * {@link #blockReportApplyBatchSize} blocks, so that the write lock is
+   * released between the batches.
+   *
+   * The reported replicas that need a change are processed again under the
+   * write lock, and the unreported blocks are removed only if they are still
+   * on the storage. Other changes made to the stored blocks between the two
+   * phases are reconciled by the next block report.
+   *
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean processReports(final DatanodeID nodeID,
+      final StorageBlockReport[] reports,
+      final BlockReportContext context) throws IOException {
+    Preconditions.checkState(isParallelBlockReportEnabled());
+    final List<Future<ReportDiff>> diffs =
+        new ArrayList<Future<ReportDiff>>(reports.length);
+    try {
+      for (final StorageBlockReport report : reports) {
+        diffs.add(blockReportDiffExecutor.submit(new Callable<ReportDiff>() {
+          @Override
+          public ReportDiff call() throws IOException {
+            return computeReportDiff(nodeID, report.getStorage(),
+                report.getBlocks());
+          }
+        }));
+      }
+    } catch (RejectedExecutionException e) {
+      throw new IOException("ProcessReport from " + nodeID
+          + " rejected: the block report diff executor is shut down", e);
+    }
+
+    boolean noStaleStorages = false;
+    for (int r = 0; r < reports.length; r++) {
+      final DatanodeStorage storage = reports[r].getStorage();
+      final BlockListAsLongs blocks = reports[r].getBlocks();
+      final ReportDiff diff = getReportDiff(diffs.get(r));
+      if (diff == null) {
+        // the first report of a storage, or a report received in the startup
+        // safe mode, is processed entirely under the write lock.
+        noStaleStorages = runBlockOp(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return processReport(nodeID, storage, blocks, context);
+          }
+        });
+      } else {
+        noStaleStorages = applyReportDiff(diff, blocks, context);
+      }
+    }
+    return noStaleStorages;
+  }
+
+  private static ReportDiff getReportDiff(Future<ReportDiff> future)
+      throws IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause == null) {
+        cause = ee;
+      }
+      if (!(cause instanceof IOException)) {
+        cause = new IOException(cause);
+      }
+      throw (IOException)cause;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException(ie);
+    }
+  }
+
+  /**
+   * The differences between a full block report of a storage and the blocks
+   * stored for it, computed under the namesystem read lock.
+   */
+  private static class ReportDiff {
+    final DatanodeID nodeID;
+    final DatanodeStorageInfo storageInfo;
+    /** Reported replicas which may need a change of the stored blocks. */
+    final List<BlockReportReplica> toProcess =
+        new ArrayList<BlockReportReplica>();
+    /** Stored blocks which were not reported. */
+    final List<Block> toRemove = new ArrayList<Block>();
+    long diffTime;
+
+    ReportDiff(DatanodeID nodeID, DatanodeStorageInfo storageInfo) {
+      this.nodeID = nodeID;
+      this.storageInfo = storageInfo;
+    }
+  }
+
+  /**
+   * Compare a full block report with the blocks stored for the storage,
+   * without modifying them.
+   * @return the differences, or null if the report has to be processed by
+   *         {@link #processReport(DatanodeID, DatanodeStorage,
+   *         BlockListAsLongs, BlockReportContext)}.
+   */
+  private ReportDiff computeReportDiff(final DatanodeID nodeID,
+      final DatanodeStorage storage, BlockListAsLongs report)
+      throws IOException {
+    namesystem.readLock();
+    final long startTime = Time.monotonicNow();
+    try {
+      final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()) {
+        throw new IOException(
+            "ProcessReport from dead or unregistered node: " + nodeID);
+      }
+      final DatanodeStorageInfo storageInfo =
+          node.getStorageInfo(storage.getStorageID());
+      if (storageInfo == null || storageInfo.getBlockReportCount() == 0
+          || namesystem.isInStartupSafeMode()) {
+        return null;
+      }
+
+      if (report == null) {
+        report = BlockListAsLongs.EMPTY;
+      }
+      final ReportDiff diff = new ReportDiff(nodeID, storageInfo);
+      long[] reportedIds = new long[report.getNumberOfBlocks()];
+      int numReported = 0;
+      for (BlockReportReplica iblk : report) {
+        if (shouldPostponeBlocksFromFuture &&
+            namesystem.isGenStampInFuture(iblk)) {
+          diff.toProcess.add(new BlockReportReplica(iblk));
+          continue;
+        }
+        final BlockInfoContiguous storedBlock = blocksMap.getStoredBlock(iblk);
+        if (storedBlock == null) {
+          diff.toProcess.add(new BlockReportReplica(iblk));
+          continue;
+        }
+        if (numReported == reportedIds.length) {
+          reportedIds = Arrays.copyOf(reportedIds, 2 * numReported + 1);
+        }
+        reportedIds[numReported++] = iblk.getBlockId();
+        if (isReportedBlockChanged(storageInfo, iblk, iblk.getState(),
+            storedBlock)) {
+          diff.toProcess.add(new BlockReportReplica(iblk));
+        }
+      }
+
+      // collect the stored blocks that have not been reported
+      Arrays.sort(reportedIds, 0, numReported);
+      final Iterator<BlockInfoContiguous> it = storageInfo.getBlockIterator();
+      while (it.hasNext()) {
+        final BlockInfoContiguous b = it.next();
+        if (Arrays.binarySearch(reportedIds, 0, numReported,
+            b.getBlockId()) < 0) {
+          diff.toRemove.add(new Block(b));
+        }
+      }
+      diff.diffTime = Time.monotonicNow() - startTime;
+      return diff;
+    } finally {
+      namesystem.readUnlock();
+    }
+  }
+
+  /**
+   * Check, without side effects, if a reported replica of a stored block
+   * leads {@link #processReportedBlock} to change the stored blocks.
+   */
+  private boolean isReportedBlockChanged(final DatanodeStorageInfo storageInfo,
+      final Block block, final ReplicaState reportedState,
+      final BlockInfoContiguous storedBlock) {
+    final DatanodeDescriptor dn = storageInfo.getDatanodeDescriptor();
+    if (invalidateBlocks.contains(dn, block)) {
+      return false;
+    }
+    final BlockUCState ucState = storedBlock.getBlockUCState();
+    if (checkReplicaCorrupt(block, reportedState, storedBlock, ucState, dn)
+        != null) {
+      return true;
+    }
+    if (isBlockUnderConstruction(storedBlock, ucState, reportedState)) {
+      return true;
+    }
+    return reportedState == ReplicaState.FINALIZED
+        && (storedBlock.findStorageInfo(storageInfo) == -1 ||
+            corruptReplicas.isReplicaCorrupt(storedBlock, dn));
+  }
+
+  /**
+   * Apply the differences computed by {@link #computeReportDiff} in batches,
+   * each of them under the write lock of the block report processing thread.
+   * @return true if all known storages of the given DN have finished reporting.
+   */
+  private boolean applyReportDiff(final ReportDiff diff,
+      final BlockListAsLongs report, final BlockReportContext context)
+      throws IOException {
+    final DatanodeStorageInfo storageInfo = diff.storageInfo;
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    final String strBlockReportId =
+        context != null ? Long.toHexString(context.getReportId()) : "";
+    final Collection<Block> invalidatedBlocks = new ArrayList<Block>();
+    final int[] numBlocksLogged = new int[1];
+    long lockTime = 0;
+    int numBatches = 0;
+
+    final int numChanges = diff.toRemove.size() + diff.toProcess.size();
+    int next = 0;
+    boolean noStaleStorages;
+    do {
+      final int start = next;
+      final int end = Math.min(start + blockReportApplyBatchSize, numChanges);
+      final boolean last = end == numChanges;
+      final long[] batchTime = new long[1];
+      noStaleStorages = runBlockOp(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws IOException {
+          namesystem.writeLock();
+          final long startTime = Time.monotonicNow();
+          try {
+            if (datanodeManager.getDatanode(diff.nodeID) != node
+                || !node.isRegistered()
+                || node.getStorageInfo(storageInfo.getStorageID())
+                    != storageInfo) {
+              throw new IOException("ProcessReport from dead or unregistered"
+                  + " node: " + diff.nodeID);
+            }
+            applyReportDiffBatch(diff, start, end, invalidatedBlocks,
+                numBlocksLogged);
+            if (last) {
+              storageInfo.receivedBlockReport();
+            }
+            return !node.hasStaleStorages();
+          } finally {
+            batchTime[0] = Time.monotonicNow() - startTime;
+            namesystem.writeUnlock();
+          }
+        }
+      });
+      lockTime += batchTime[0];
+      numBatches++;
+      next = end;
+    } while (next < numChanges);
+
+    if (numBlocksLogged[0] > maxNumBlocksToLog) {
+      blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
+          "reported.", strBlockReportId, maxNumBlocksToLog,
+          numBlocksLogged[0]);
+    }
+    for (Block b : invalidatedBlocks) {
+      blockLog.info("BLOCK* processReport 0x{}: {} on node {} size {} " +
+          "does not belong to any file", strBlockReportId,
+          b, node, b.getNumBytes());
+    }
+
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addBlockReport((int) lockTime);
+    }
+    blockLog.info("BLOCK* processReport 0x{}: from storage {} node {}, " +
+        "blocks: {}, hasStaleStorage: {}, processing time: {} msecs " +
+        "(diff: {} msecs, {} changes applied in {} batches)",
+        strBlockReportId, storageInfo.getStorageID(), diff.nodeID,
+        report == null ? 0 : report.getNumberOfBlocks(),
+        node.hasStaleStorages(), lockTime, diff.diffTime,
+        numChanges, numBatches);
+    return noStaleStorages;
+  }
+
+  /**
+   * Apply the changes [start, end) of a report diff, where the unreported
+   * blocks come before the reported replicas.
+   */
+  private void applyReportDiffBatch(final ReportDiff diff, final int start,
+      final int end, final Collection<Block> invalidatedBlocks,
+      final int[] numBlocksLogged) throws IOException {
+    assert namesystem.hasWriteLock();
+    final DatanodeStorageInfo storageInfo = diff.storageInfo;
+    final Collection<BlockInfoContiguous> toAdd =
+        new LinkedList<BlockInfoContiguous>();
+    final Collection<Block> toRemove = new LinkedList<Block>();
+    final Collection<Block> toInvalidate = new LinkedList<Block>();
+    final Collection<BlockToMarkCorrupt> toCorrupt =
+        new LinkedList<BlockToMarkCorrupt>();
+    final Collection<StatefulBlockInfo> toUC =
+        new LinkedList<StatefulBlockInfo>();
+
+    final int numToRemove = diff.toRemove.size();
+    for (int i = start; i < end; i++) {
+      if (i < numToRemove) {
+        // the block may have been removed or moved since the diff
+        final BlockInfoContiguous storedBlock =
+            blocksMap.getStoredBlock(diff.toRemove.get(i));
+        if (storedBlock != null &&
+            storedBlock.findStorageInfo(storageInfo) >= 0) {
+          toRemove.add(storedBlock);
+        }
+      } else {
+        final BlockReportReplica iblk = diff.toProcess.get(i - numToRemove);
+        processReportedBlock(storageInfo, iblk, iblk.getState(),
+            toAdd, toInvalidate, toCorrupt, toUC);
+      }
+    }
+    numBlocksLogged[0] = applyBlockChanges(storageInfo, toAdd, toRemove,
+        toInvalidate, toCorrupt, toUC, numBlocksLogged[0]);
+    invalidatedBlocks.addAll(toInvalidate);
+  }
+
   /**
    * Rescan the list of blocks which were previously postponed.
    */
@@ -2006,6 +2467,29 @@ private Collection<Block> processReport(
       strBlockReportId = Long.toHexString(context.getReportId());
     }
    
+    int numBlocksLogged = applyBlockChanges(storageInfo,
+        toAdd, toRemove, toInvalidate, toCorrupt, toUC, 0);
+    if (numBlocksLogged > maxNumBlocksToLog) {
+      blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
+          "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
+    }
+
+    return toInvalidate;
+  }
+
+  /**
+   * Apply the differences between a block report and the stored blocks.
+   * @param numBlocksLogged the number of added blocks already logged for
+   *        the report
+   * @return the number of added blocks logged for the report so far
+   */
+  private int applyBlockChanges(final DatanodeStorageInfo storageInfo,
+      final Collection<BlockInfoContiguous> toAdd,
+      final Collection<? extends Block> toRemove,
+      final Collection<Block> toInvalidate,
+      final Collection<BlockToMarkCorrupt> toCorrupt,
+      final Collection<StatefulBlockInfo> toUC,
+      int numBlocksLogged) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
@@ -2014,23 +2498,17 @@ private Collection<Block> processReport(
     for (Block b : toRemove) {
       removeStoredBlock(b, node);
     }
-    int numBlocksLogged = 0;
     for (BlockInfoContiguous b : toAdd) {
       addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
     }
-    if (numBlocksLogged > maxNumBlocksToLog) {
-      blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
-          "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
-    }
     for (Block b : toInvalidate) {
       addToInvalidates(b, node);
     }
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
+    return numBlocksLogged;
   }
 
   /**
@@ -3739,17 +4217,18 @@ public ReplicationWork(Block block,
       this.targets = null;
     }
     
+    /**
+     * The caller decrements the replications without targets of the source
+     * once the targets of all the work are chosen, since the counter of a
+     * source is not thread safe.
+     */
     private void chooseTargets(BlockPlacementPolicy blockplacement,
         BlockStoragePolicySuite storagePolicySuite,
         Set<Node> excludedNodes) {
-      try {
-        targets = blockplacement.chooseTarget(bc.getName(),
-            additionalReplRequired, srcNode, liveReplicaStorages, false,
-            excludedNodes, block.getNumBytes(),
-            storagePolicySuite.getPolicy(bc.getStoragePolicyID()));
-      } finally {
-        srcNode.decrementPendingReplicationWithoutTargets();
-      }
+      targets = blockplacement.chooseTarget(bc.getName(),
+          additionalReplRequired, srcNode, liveReplicaStorages, false,
+          excludedNodes, block.getNumBytes(),
+          storagePolicySuite.getPolicy(bc.getStoragePolicyID()));
     }
   }
 
@@ -3826,16 +4305,21 @@ public int getBlockOpQueueLength() {
     return blockReportThread.queue.size();
   }
 
+  /**
+   * Processes the queued block reports, coalescing the reports of many
+   * datanodes under each acquisition of the write lock.
+   */
   private class BlockReportProcessingThread extends Thread {
-    private static final long MAX_LOCK_HOLD_MS = 4;
+    private final long maxLockHoldMs;
     private long lastFull = 0;
 
-    private final BlockingQueue<Runnable> queue =
-        new ArrayBlockingQueue<Runnable>(1024);
+    private final BlockingQueue<Runnable> queue;
 
-    BlockReportProcessingThread() {
+    BlockReportProcessingThread(int queueSize, long maxLockHoldMs) {
       super("Block report processor");
       setDaemon(true);
+      this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+      this.maxLockHoldMs = maxLockHoldMs;
     }
 
     @Override
@@ -3856,21 +4340,24 @@ private void processQueue() {
           // batch as many operations in the write lock until the queue
           // runs dry, or the max lock hold is reached.
           int processed = 0;
+          long start = 0;
           namesystem.writeLock();
           metrics.setBlockOpsQueued(queue.size() + 1);
           try {
-            long start = Time.monotonicNow();
+            start = Time.monotonicNow();
             do {
               processed++;
               action.run();
-              if (Time.monotonicNow() - start > MAX_LOCK_HOLD_MS) {
+              if (Time.monotonicNow() - start > maxLockHoldMs) {
                 break;
               }
               action = queue.poll();
             } while (action != null);
           } finally {
+            final long lockHeld = Time.monotonicNow() - start;
             namesystem.writeUnlock();
             metrics.addBlockOpsBatched(processed - 1);
+            metrics.addBlockOpsBatch(processed, lockHeld);
           }
         } catch (InterruptedException e) {
           // ignore unless thread was specifically interrupted.
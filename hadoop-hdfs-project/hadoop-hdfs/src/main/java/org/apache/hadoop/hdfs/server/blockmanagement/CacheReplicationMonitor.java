@@ -24,10 +24,12 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -36,6 +38,8 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.inotify.Event;
+import org.apache.hadoop.hdfs.inotify.EventBatch;
 import org.apache.hadoop.hdfs.protocol.CacheDirective;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor.CachedBlocksList.Type;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
@@ -43,10 +47,12 @@
 import org.apache.hadoop.hdfs.server.namenode.CachePool;
 import org.apache.hadoop.hdfs.server.namenode.CachedBlock;
 import org.apache.hadoop.hdfs.server.namenode.FSDirectory;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.INode;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.apache.hadoop.hdfs.server.namenode.InotifyFSEditLogOpTranslator;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.util.GSet;
@@ -54,6 +60,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 ;
 
@@ -62,6 +69,13 @@
  *
  * The CacheReplicationMonitor does a full scan when the NameNode first
  * starts up, and at configurable intervals afterwards.
+ *
+ * If incremental rescans are enabled, the monitor is notified of the
+ * namespace changes written to the edit log, and the scans between full scans
+ * only recompute the directives affected by those changes, and the directives
+ * which are not fully cached yet.  Changes which may take files away from a
+ * directive, like renames and deletes, need a full scan, since only a full
+ * scan can tell which blocks are no longer needed.
  */
 @InterfaceAudience.LimitedPrivate({"HDFS"})
 public class CacheReplicationMonitor extends Thread implements Closeable {
@@ -87,6 +101,17 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private final long intervalMs;
 
+  /**
+   * The interval at which we do full scans, or 0 if every scan is a full scan.
+   */
+  private final long fullIntervalMs;
+
+  /**
+   * Maximum number of namespace changes to track between scans.  If there are
+   * more, the next scan is a full scan.
+   */
+  private static final int MAX_PENDING_CHANGES = 10000;
+
   /**
    * The CacheReplicationMonitor (CRM) lock. Used to synchronize starting and
    * waiting for rescan operations.
@@ -140,13 +165,61 @@ public class CacheReplicationMonitor extends Thread implements Closeable {
    */
   private long scannedBlocks;
 
+  /**
+   * Number of full scans done.
+   */
+  private volatile long numFullScans = 0;
+
+  /**
+   * Number of incremental scans done which scanned at least one directive.
+   */
+  private volatile long numIncrementalScans = 0;
+
+  /**
+   * Cache directives found by the incremental scans.
+   */
+  private volatile long numIncrementallyScannedDirectives = 0;
+
+  /**
+   * Monotonic start time of the last full scan, or -1 before the first one.
+   */
+  private long lastFullScanTimeMs = -1;
+
+  /**
+   * Wall clock time at which the last full scan checked directive expiry.
+   */
+  private long lastFullScanDate = 0;
+
+  /**
+   * Protects the namespace changes pending for the next scan.  Notifications
+   * come from the edit log, so they must not wait for the CRM lock.
+   */
+  private final Object pendingChangesLock = new Object();
+
+  /**
+   * Paths which may have gained files or blocks since the last scan.
+   */
+  private Set<String> changedPaths = new HashSet<String>();
+
+  /**
+   * Paths which may have lost files since the last scan.
+   */
+  private Set<String> removedPaths = new HashSet<String>();
+
+  /**
+   * True if too many changes were made since the last scan to track them.
+   */
+  private boolean tooManyChanges = false;
+
   public CacheReplicationMonitor(FSNamesystem namesystem,
-      CacheManager cacheManager, long intervalMs, ReentrantLock lock) {
+      CacheManager cacheManager, long intervalMs, long fullIntervalMs,
+      ReentrantLock lock) {
     this.namesystem = namesystem;
     this.blockManager = namesystem.getBlockManager();
     this.cacheManager = cacheManager;
     this.cachedBlocks = cacheManager.getCachedBlocks();
     this.intervalMs = intervalMs;
+    this.fullIntervalMs = fullIntervalMs;
     this.lock = lock;
     this.doRescan = this.lock.newCondition();
     this.scanFinished = this.lock.newCondition();
@@ -158,10 +231,13 @@ public void run() {
     Thread.currentThread().setName("CacheReplicationMonitor(" +
         System.identityHashCode(this) + ")");
     LOG.info("Starting CacheReplicationMonitor with interval " +
-             intervalMs + " milliseconds");
+             intervalMs + " milliseconds" + (fullIntervalMs > 0 ?
+             " and full scan interval " + fullIntervalMs + " milliseconds" :
+             ""));
     try {
       long curTimeMs = Time.monotonicNow();
       while (true) {
+        boolean fullScan;
         lock.lock();
         try {
           while (true) {
@@ -171,11 +247,14 @@ public void run() {
             }
             if (completedScanCount < neededScanCount) {
               LOG.debug("Rescanning because of pending operations");
+              fullScan = true;
               break;
             }
             long delta = (startTimeMs + intervalMs) - curTimeMs;
             if (delta <= 0) {
               LOG.debug("Rescanning after {} milliseconds", (curTimeMs - startTimeMs));
+              fullScan = fullIntervalMs <= 0 || lastFullScanTimeMs < 0 ||
+                  curTimeMs - lastFullScanTimeMs >= fullIntervalMs;
               break;
             }
             doRescan.await(delta, TimeUnit.MILLISECONDS);
@@ -185,8 +264,13 @@ public void run() {
           lock.unlock();
         }
         startTimeMs = curTimeMs;
-        mark = !mark;
-        rescan();
+        fullScan = rescan(fullScan);
+        if (fullScan) {
+          numFullScans++;
+        } else if (scannedDirectives > 0) {
+          numIncrementalScans++;
+          numIncrementallyScannedDirectives += scannedDirectives;
+        }
         curTimeMs = Time.monotonicNow();
         // Update synchronization-related variables.
         lock.lock();
@@ -197,8 +281,9 @@ public void run() {
         } finally {
           lock.unlock();
         }
-        LOG.debug("Scanned {} directive(s) and {} block(s) in {} millisecond(s).",
-            scannedDirectives, scannedBlocks, (curTimeMs - startTimeMs));
+        LOG.debug("Scanned {} directive(s) and {} block(s) in {} millisecond(s)"
+            + " ({} scan).", scannedDirectives, scannedBlocks,
+            (curTimeMs - startTimeMs), fullScan ? "full" : "incremental");
       }
     } catch (InterruptedException e) {
       LOG.info("Shutting down CacheReplicationMonitor.");
@@ -241,6 +326,21 @@ public void waitForRescanIfNeeded() {
     }
   }
 
+  @VisibleForTesting
+  public long getNumFullScans() {
+    return numFullScans;
+  }
+
+  @VisibleForTesting
+  public long getNumIncrementalScans() {
+    return numIncrementalScans;
+  }
+
+  @VisibleForTesting
+  public long getNumIncrementallyScannedDirectives() {
+    return numIncrementallyScannedDirectives;
+  }
+
   /**
    * Indicates to the CacheReplicationMonitor that there have been CacheManager
    * changes that require a rescan.
@@ -258,6 +358,57 @@ public void setNeedsRescan() {
     }
   }
 
+  /**
+   * Notifies the CacheReplicationMonitor of a namespace change written to the
+   * edit log, for incremental rescans.  Called with the edit log locked, so
+   * this only records the changed paths; they are matched against the cache
+   * directives by the next scan.
+   */
+  public void namespaceChanged(FSEditLogOp op) {
+    EventBatch batch = InotifyFSEditLogOpTranslator.translate(op);
+    if (batch == null) {
+      return;
+    }
+    synchronized (pendingChangesLock) {
+      for (Event event : batch.getEvents()) {
+        switch (event.getEventType()) {
+        case CREATE:
+          addPendingChange(((Event.CreateEvent) event).getPath(), false);
+          break;
+        case CLOSE:
+          addPendingChange(((Event.CloseEvent) event).getPath(), false);
+          break;
+        case APPEND:
+          addPendingChange(((Event.AppendEvent) event).getPath(), false);
+          break;
+        case RENAME:
+          Event.RenameEvent rename = (Event.RenameEvent) event;
+          addPendingChange(rename.getSrcPath(), true);
+          addPendingChange(rename.getDstPath(), false);
+          break;
+        case UNLINK:
+          addPendingChange(((Event.UnlinkEvent) event).getPath(), true);
+          break;
+        default:
+          // metadata updates do not change which blocks are cached
+          break;
+        }
+      }
+    }
+  }
+
+  private void addPendingChange(String path, boolean removed) {
+    if (tooManyChanges) {
+      return;
+    }
+    (removed ? removedPaths : changedPaths).add(path);
+    if (changedPaths.size() + removedPaths.size() > MAX_PENDING_CHANGES) {
+      tooManyChanges = true;
+      changedPaths.clear();
+      removedPaths.clear();
+    }
+  }
+
   /**
    * Shut down the monitor thread.
    */
@@ -281,7 +432,15 @@ public void close() throws IOException {
     }
   }
 
-  private void rescan() throws InterruptedException {
+  /**
+   * Rescan the directives and the cached blocks.
+   *
+   * @param fullScan Whether to scan all the directives.  If false, only the
+   *        directives affected by namespace changes are scanned, unless the
+   *        changes need a full scan.
+   * @return whether the scan was a full scan.
+   */
+  private boolean rescan(boolean fullScan) throws InterruptedException {
     scannedDirectives = 0;
     scannedBlocks = 0;
     try {
@@ -297,13 +456,87 @@ private void rescan() throws InterruptedException {
         lock.unlock();
       }
 
-      resetStatistics();
-      rescanCacheDirectives();
+      final long now = new Date().getTime();
+      Collection<CacheDirective> changedDirectives = null;
+      if (!fullScan) {
+        changedDirectives = getChangedDirectives(now);
+        fullScan = changedDirectives == null;
+      }
+      if (fullScan) {
+        clearPendingChanges();
+        lastFullScanTimeMs = Time.monotonicNow();
+        lastFullScanDate = now;
+        mark = !mark;
+        resetStatistics();
+        rescanCacheDirectives(cacheManager.getCacheDirectives(), now);
+      } else {
+        for (CacheDirective directive : changedDirectives) {
+          resetStatistics(directive);
+        }
+        rescanCacheDirectives(changedDirectives, now);
+      }
       rescanCachedBlockMap();
       blockManager.getDatanodeManager().resetLastCachingDirectiveSentTime();
     } finally {
       namesystem.writeUnlock();
     }
+    return fullScan;
+  }
+
+  private void clearPendingChanges() {
+    synchronized (pendingChangesLock) {
+      changedPaths.clear();
+      removedPaths.clear();
+      tooManyChanges = false;
+    }
+  }
+
+  /**
+   * Get the directives affected by the namespace changes since the last scan,
+   * and clear the changes.
+   *
+   * @param now The current time, to check directive expiry.
+   * @return the affected directives, or null if the changes need a full scan.
+   */
+  private Collection<CacheDirective> getChangedDirectives(long now) {
+    final Set<String> changed;
+    final Set<String> removed;
+    synchronized (pendingChangesLock) {
+      if (tooManyChanges) {
+        return null;
+      }
+      changed = changedPaths;
+      removed = removedPaths;
+      changedPaths = new HashSet<String>();
+      removedPaths = new HashSet<String>();
+    }
+    Set<CacheDirective> directives = new HashSet<CacheDirective>();
+    for (String path : removed) {
+      cacheManager.addCacheDirectivesAffectedBy(path, directives);
+      if (!directives.isEmpty()) {
+        LOG.debug("Full rescan needed because {} was removed or renamed",
+            path);
+        return null;
+      }
+    }
+    for (CacheDirective directive : cacheManager.getCacheDirectives()) {
+      // The blocks of expired directives are only dropped by a full scan.
+      long expiryTime = directive.getExpiryTime();
+      if (expiryTime > lastFullScanDate && expiryTime <= now) {
+        LOG.debug("Full rescan needed because directive {} expired",
+            directive.getId());
+        return null;
+      }
+      // Keep the statistics of directives which are still being cached
+      // up to date.
+      if (directive.getBytesCached() < directive.getBytesNeeded()) {
+        directives.add(directive);
+      }
+    }
+    for (String path : changed) {
+      cacheManager.addCacheDirectivesAffectedBy(path, directives);
+    }
+    return directives;
   }
 
   private void resetStatistics() {
@@ -316,13 +549,24 @@ private void resetStatistics() {
   }
 
   /**
-   * Scan all CacheDirectives.  Use the information to figure out
+   * Reset the statistics of a directive before scanning it again, taking its
+   * share out of the statistics of its pool.
+   */
+  private static void resetStatistics(CacheDirective directive) {
+    directive.addBytesNeeded(-directive.getBytesNeeded());
+    directive.addBytesCached(-directive.getBytesCached());
+    directive.addFilesNeeded(-directive.getFilesNeeded());
+    directive.addFilesCached(-directive.getFilesCached());
+  }
+
+  /**
+   * Scan the given CacheDirectives.  Use the information to figure out
    * what cache replication factor each block should have.
    */
-  private void rescanCacheDirectives() {
+  private void rescanCacheDirectives(Collection<CacheDirective> directives,
+      long now) {
     FSDirectory fsDir = namesystem.getFSDirectory();
-    final long now = new Date().getTime();
-    for (CacheDirective directive : cacheManager.getCacheDirectives()) {
+    for (CacheDirective directive : directives) {
       scannedDirectives++;
       // Skip processing this entry if it has expired
       if (directive.getExpiryTime() > 0 && directive.getExpiryTime() <= now) {
@@ -28,6 +28,9 @@
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -184,10 +187,19 @@ public CachedBlocksList getPendingUncached() {
 
   // isAlive == heartbeats.contains(this)
   // This is an optimization, because contains takes O(n) time on Arraylist
-  public boolean isAlive = false;
-  public boolean needKeyUpdate = false;
+  public volatile boolean isAlive = false;
+  /**
+   * Whether the node needs the new block keys. It is set by the heartbeat
+   * monitor and cleared by the heartbeats, which do not exclude each other.
+   */
+  private final AtomicBoolean needKeyUpdate = new AtomicBoolean(false);
+
+  private volatile boolean forceRegistration = false;
 
-  private boolean forceRegistration = false;
+  /** The statistics of this node counted in the cluster aggregates. */
+  private final AtomicReference<DatanodeStats.Contribution> countedStats =
+      new AtomicReference<DatanodeStats.Contribution>(
+          DatanodeStats.Contribution.NONE);
 
   // A system administrator can tune the balancer bandwidth parameter
   // (dfs.balance.bandwidthPerSec) dynamically by calling
@@ -195,7 +207,7 @@ public CachedBlocksList getPendingUncached() {
   // following 'bandwidth' variable gets updated with the new value for each
   // node. Once the heartbeat command is issued to update the value on the
   // specified datanode, this value will be set back to 0.
-  private long bandwidth;
+  private final AtomicLong bandwidth = new AtomicLong();
 
   /** A queue of blocks to be replicated by this datanode */
   private final BlockQueue<BlockTargetPair> replicateBlocks = new BlockQueue<BlockTargetPair>();
@@ -218,12 +230,18 @@ public CachedBlocksList getPendingUncached() {
   private static final int BLOCKS_SCHEDULED_ROLL_INTERVAL = 600*1000; //10min
   private int volumeFailures = 0;
   private VolumeFailureSummary volumeFailureSummary = null;
+
+  // The I/O load reported with the storages in the last heartbeat. Written
+  // by heartbeats and read by block placement without holding a lock.
+  private volatile long ioLatencyMicros = 0;
+  private volatile int pendingIOs = 0;
+  private volatile long networkTransferRate = 0;
   
   /** 
    * When set to true, the node is not in include list and is not allowed
    * to communicate with the namenode
    */
-  private boolean disallowed = false;
+  private volatile boolean disallowed = false;
 
   // The number of replication work pending before targets are determined
   private int PendingReplicationWithoutTargets = 0;
@@ -347,10 +365,14 @@ public boolean isHeartbeatedSinceRegistration() {
     return heartbeatedSinceRegistration;
   }
 
+  AtomicReference<DatanodeStats.Contribution> getCountedStats() {
+    return countedStats;
+  }
+
   /**
    * Updates stats from datanode heartbeat.
    */
-  public void updateHeartbeat(StorageReport[] reports, long cacheCapacity,
+  public synchronized void updateHeartbeat(StorageReport[] reports, long cacheCapacity,
       long cacheUsed, int xceiverCount, int volFailures,
       VolumeFailureSummary volumeFailureSummary) {
     updateHeartbeatState(reports, cacheCapacity, cacheUsed, xceiverCount,
@@ -360,8 +382,10 @@ public void updateHeartbeat(StorageReport[] reports, long cacheCapacity,
 
   /**
    * process datanode heartbeat or stats initialization.
+   * The heartbeats and lifelines of a node may be processed concurrently, so
+   * they are serialized by the node.
    */
-  public void updateHeartbeatState(StorageReport[] reports, long cacheCapacity,
+  public synchronized void updateHeartbeatState(StorageReport[] reports, long cacheCapacity,
       long cacheUsed, int xceiverCount, int volFailures,
       VolumeFailureSummary volumeFailureSummary) {
     updateStorageStats(reports, cacheCapacity, cacheUsed, xceiverCount,
@@ -379,6 +403,9 @@ private void updateStorageStats(StorageReport[] reports, long cacheCapacity,
     long totalBlockPoolUsed = 0;
     long totalDfsUsed = 0;
     long totalNonDfsUsed = 0;
+    long totalIOLatencyMicros = 0;
+    int totalPendingIOs = 0;
+    long totalTransferRate = 0;
     Set<DatanodeStorageInfo> failedStorageInfos = null;
 
     // Decide if we should check for any missing StorageReport and mark it as
@@ -434,6 +461,9 @@ private void updateStorageStats(StorageReport[] reports, long cacheCapacity,
       totalBlockPoolUsed += report.getBlockPoolUsed();
       totalDfsUsed += report.getDfsUsed();
       totalNonDfsUsed += report.getNonDfsUsed();
+      totalIOLatencyMicros += report.getIOLatencyMicros();
+      totalPendingIOs += report.getPendingIOs();
+      totalTransferRate += report.getTransferRate();
     }
 
     // Update total metrics for the node.
@@ -442,6 +472,12 @@ private void updateStorageStats(StorageReport[] reports, long cacheCapacity,
     setBlockPoolUsed(totalBlockPoolUsed);
     setDfsUsed(totalDfsUsed);
     setNonDfsUsed(totalNonDfsUsed);
+    // a block may be written to any of the storages
+    this.ioLatencyMicros = reports.length == 0 ? 0 :
+        totalIOLatencyMicros / reports.length;
+    this.pendingIOs = totalPendingIOs;
+    // the block transfers of the storages go through the network
+    this.networkTransferRate = totalTransferRate;
     if (checkFailedStorages) {
       updateFailedStorage(failedStorageInfos);
     }
@@ -608,6 +644,14 @@ int getNumberOfBlocksToBeReplicated() {
     return PendingReplicationWithoutTargets + replicateBlocks.size();
   }
 
+  /**
+   * The number of blocks whose recovery is pending to be sent to the
+   * datanode
+   */
+  int getNumberOfBlocksToBeRecovered() {
+    return recoverBlocks.size();
+  }
+
   /**
    * The number of block invalidation items that are pending to 
    * be sent to the datanode
@@ -781,6 +825,30 @@ public boolean isDisallowed() {
     return disallowed;
   }
 
+  /**
+   * @return the average of the I/O latencies of the storages reported in the
+   *         last heartbeat, in microseconds.
+   */
+  public long getIOLatencyMicros() {
+    return ioLatencyMicros;
+  }
+
+  /**
+   * @return the number of I/Os in progress on the storages reported in the
+   *         last heartbeat.
+   */
+  public int getPendingIOs() {
+    return pendingIOs;
+  }
+
+  /**
+   * @return the bytes per second recently sent and received by the block
+   *         transfers of the datanode.
+   */
+  public long getNetworkTransferRate() {
+    return networkTransferRate;
+  }
+
   /**
    * @return number of failed volumes in the datanode.
    */
@@ -816,14 +884,37 @@ public void updateRegInfo(DatanodeID nodeReg) {
    * @return balancer bandwidth in bytes per second for this datanode
    */
   public long getBalancerBandwidth() {
-    return this.bandwidth;
+    return this.bandwidth.get();
   }
 
   /**
    * @param bandwidth balancer bandwidth in bytes per second for this datanode
    */
   public void setBalancerBandwidth(long bandwidth) {
-    this.bandwidth = bandwidth;
+    this.bandwidth.set(bandwidth);
+  }
+
+  /**
+   * Get the balancer bandwidth to send to this datanode and set it back to 0,
+   * so that a bandwidth set concurrently is sent with the next heartbeat.
+   *
+   * @return balancer bandwidth in bytes per second for this datanode
+   */
+  long getAndClearBalancerBandwidth() {
+    return bandwidth.getAndSet(0);
+  }
+
+  void setNeedKeyUpdate() {
+    needKeyUpdate.set(true);
+  }
+
+  /**
+   * Clear the need of a key update, so that the keys are sent once.
+   *
+   * @return true if the node needed a key update
+   */
+  boolean clearNeedKeyUpdate() {
+    return needKeyUpdate.compareAndSet(true, false);
   }
 
   @Override
@@ -52,6 +52,7 @@
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Manage datanodes, include decommission and other activities.
@@ -83,9 +84,12 @@ public class DatanodeManager {
    * </ul> <br> 
    * <p>
    * Mapping: StorageID -> DatanodeDescriptor
+   * <p>
+   * The map is changed while synchronized on it, but the heartbeats look
+   * nodes up without any lock.
    */
   private final NavigableMap<String, DatanodeDescriptor> datanodeMap
-      = new TreeMap<String, DatanodeDescriptor>();
+      = new ConcurrentSkipListMap<String, DatanodeDescriptor>();
 
   /** Cluster network topology */
   private final NetworkTopology networktopology;
@@ -362,10 +366,12 @@ private boolean isInactive(DatanodeInfo datanode) {
     return false;
   }
   
-  /** Sort the located blocks by the distance to the target host. */
-  public void sortLocatedBlocks(final String targethost,
-      final List<LocatedBlock> locatedblocks) {
-    //sort the blocks
+  /**
+   * @return the node to sort block locations for when they are read from the
+   * target host: the datanode of the host if any, otherwise a node of the
+   * rack the host resolves to, or null if it does not resolve.
+   */
+  public Node getClientNode(final String targethost) {
     // As it is possible for the separation of node manager and datanode, 
     // here we should get node but not datanode only .
     Node client = getDatanodeByHost(targethost);
@@ -376,7 +382,18 @@ public void sortLocatedBlocks(final String targethost,
       if (rName != null)
         client = new NodeBase(rName + NodeBase.PATH_SEPARATOR_STR + targethost);
     }
-    
+    return client;
+  }
+
+  /** Sort the located blocks by the distance to the target host. */
+  public void sortLocatedBlocks(final String targethost,
+      final List<LocatedBlock> locatedblocks) {
+    sortLocatedBlocks(getClientNode(targethost), locatedblocks);
+  }
+
+  /** Sort the located blocks by the distance to the client node. */
+  public void sortLocatedBlocks(final Node client,
+      final List<LocatedBlock> locatedblocks) {
     Comparator<DatanodeInfo> comparator = avoidStaleDataNodesForRead ?
         new DFSUtil.DecomStaleComparator(staleInterval) : 
         DFSUtil.DECOM_COMPARATOR;
@@ -396,6 +413,43 @@ public void sortLocatedBlocks(final String targethost,
       b.updateCachedStorageInfo();
     }
   }
+
+  /**
+   * Move the client to the front of the locations of a block, if it holds an
+   * active replica. This turns locations sorted for another node of the rack
+   * of the client into locations sorted for the client.
+   */
+  public void moveClientFirst(final Node client, final LocatedBlock b) {
+    DatanodeInfo[] di = b.getLocations();
+    for (int i = 0; i < di.length; i++) {
+      if (di[i].equals(client)) {
+        if (i > 0 && !isInactive(di[i])) {
+          DatanodeInfo local = di[i];
+          System.arraycopy(di, 0, di, 1, i);
+          di[0] = local;
+          // must update cache since we modified locations array
+          b.updateCachedStorageInfo();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Shuffle the active replicas of a block which are at the same distance
+   * from the client, as {@link #sortLocatedBlocks(Node, List)} does. The
+   * locations must already be sorted by distance to the client.
+   */
+  public void shuffleLocations(final Node client, final LocatedBlock b) {
+    DatanodeInfo[] di = b.getLocations();
+    int lastActiveIndex = di.length - 1;
+    while (lastActiveIndex > 0 && isInactive(di[lastActiveIndex])) {
+      --lastActiveIndex;
+    }
+    networktopology.shuffleByDistance(client, di, lastActiveIndex + 1);
+    // must update cache since we modified locations array
+    b.updateCachedStorageInfo();
+  }
   
   CyclicIteration<String, DatanodeDescriptor> getDatanodeCyclicIteration(
       final String firstkey) {
@@ -573,7 +627,11 @@ public void removeDatanode(final DatanodeID node
     }
   }
 
-  /** Remove a dead datanode. */
+  /**
+   * Remove a dead datanode. The heartbeats do not lock the map, so the node
+   * is checked again while holding the node, which serializes its
+   * heartbeats: a node whose heartbeat is being processed is not removed.
+   */
   void removeDeadDatanode(final DatanodeID nodeID) {
       synchronized(datanodeMap) {
         DatanodeDescriptor d;
@@ -582,10 +640,15 @@ void removeDeadDatanode(final DatanodeID nodeID) {
         } catch(IOException e) {
           d = null;
         }
-        if (d != null && isDatanodeDead(d)) {
-          NameNode.stateChangeLog.info(
-              "BLOCK* removeDeadDatanode: lost heartbeat from " + d);
-          removeDatanode(d);
+        if (d == null) {
+          return;
+        }
+        synchronized(d) {
+          if (isDatanodeDead(d)) {
+            NameNode.stateChangeLog.info(
+                "BLOCK* removeDeadDatanode: lost heartbeat from " + d);
+            removeDatanode(d);
+          }
         }
       }
   }
@@ -1319,148 +1382,229 @@ private void setDatanodeDead(DatanodeDescriptor node) {
     node.setLastUpdateMonotonic(0);
   }
 
-  /** Handle heartbeat from datanodes. */
+  /**
+   * Handles a lifeline message sent by a DataNode.
+   *
+   * @param nodeReg registration info for DataNode sending the lifeline
+   * @param reports storage reports from DataNode
+   * @param cacheCapacity cache capacity at DataNode
+   * @param cacheUsed cache used at DataNode
+   * @param xceiverCount estimated count of transfer threads running at DataNode
+   * @param failedVolumes count of failed volumes at DataNode
+   * @param volumeFailureSummary info on failed volumes at DataNode
+   * @throws IOException if there is an error
+   */
+  public void handleLifeline(DatanodeRegistration nodeReg,
+      StorageReport[] reports, long cacheCapacity, long cacheUsed,
+      int xceiverCount, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary) throws IOException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Received handleLifeline from nodeReg = " + nodeReg);
+    }
+    DatanodeDescriptor nodeinfo = getDatanode(nodeReg);
+    if (nodeinfo == null || !nodeinfo.isRegistered()) {
+      // The DataNode is not registered, or it was declared dead and must
+      // register again. A lifeline cannot ask it to register, only the next
+      // heartbeat can, so the lifeline is ignored.
+      return;
+    }
+    if (nodeinfo.isDisallowed()) {
+      // The next heartbeat will shut the DataNode down.
+      return;
+    }
+    heartbeatManager.updateLifeline(nodeinfo, reports, cacheCapacity,
+        cacheUsed, xceiverCount, failedVolumes, volumeFailureSummary);
+  }
+
+  /**
+   * Handle heartbeat from datanodes. The statistics of the node are updated
+   * without the heartbeat manager lock, and the commands are generated from
+   * the queues of the node, which the replication, invalidation and caching
+   * monitors fill in the background. The namesystem read lock is only taken
+   * for the lease recovery and caching commands, when the node has some.
+   */
   public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, final String blockPoolId,
       long cacheCapacity, long cacheUsed, int xceiverCount, 
       int maxTransfers, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary) throws IOException {
-    synchronized (heartbeatManager) {
-      synchronized (datanodeMap) {
-        DatanodeDescriptor nodeinfo = null;
-        try {
-          nodeinfo = getDatanode(nodeReg);
-        } catch(UnregisteredNodeException e) {
-          return new DatanodeCommand[]{RegisterCommand.REGISTER};
-        }
-        
-        // Check if this datanode should actually be shutdown instead. 
-        if (nodeinfo != null && nodeinfo.isDisallowed()) {
-          setDatanodeDead(nodeinfo);
-          throw new DisallowedDatanodeException(nodeinfo);
-        }
+    DatanodeDescriptor nodeinfo = null;
+    try {
+      nodeinfo = getDatanode(nodeReg);
+    } catch(UnregisteredNodeException e) {
+      return new DatanodeCommand[]{RegisterCommand.REGISTER};
+    }
 
-        if (nodeinfo == null || !nodeinfo.isRegistered()) {
-          return new DatanodeCommand[]{RegisterCommand.REGISTER};
-        }
+    // Check if this datanode should actually be shutdown instead. 
+    if (nodeinfo != null && nodeinfo.isDisallowed()) {
+      setDatanodeDead(nodeinfo);
+      throw new DisallowedDatanodeException(nodeinfo);
+    }
 
-        heartbeatManager.updateHeartbeat(nodeinfo, reports,
-                                         cacheCapacity, cacheUsed,
-                                         xceiverCount, failedVolumes,
-                                         volumeFailureSummary);
+    if (nodeinfo == null || !nodeinfo.isRegistered()) {
+      return new DatanodeCommand[]{RegisterCommand.REGISTER};
+    }
 
-        // If we are in safemode, do not send back any recovery / replication
-        // requests. Don't even drain the existing queue of work.
-        if(namesystem.isInSafeMode()) {
-          return new DatanodeCommand[0];
-        }
+    heartbeatManager.updateHeartbeat(nodeinfo, reports,
+                                     cacheCapacity, cacheUsed,
+                                     xceiverCount, failedVolumes,
+                                     volumeFailureSummary);
+    if (!nodeinfo.isRegistered()) {
+      // the node was removed as dead while its heartbeat was processed
+      return new DatanodeCommand[]{RegisterCommand.REGISTER};
+    }
 
-        //check lease recovery
-        BlockInfoContiguousUnderConstruction[] blocks = nodeinfo
-            .getLeaseRecoveryCommand(Integer.MAX_VALUE);
-        if (blocks != null) {
-          BlockRecoveryCommand brCommand = new BlockRecoveryCommand(
-              blocks.length);
-          for (BlockInfoContiguousUnderConstruction b : blocks) {
-            final DatanodeStorageInfo[] storages = b.getExpectedStorageLocations();
-            // Skip stale nodes during recovery - not heart beated for some time (30s by default).
-            final List<DatanodeStorageInfo> recoveryLocations =
-                new ArrayList<DatanodeStorageInfo>(storages.length);
-            for (int i = 0; i < storages.length; i++) {
-              if (!storages[i].getDatanodeDescriptor().isStale(staleInterval)) {
-                recoveryLocations.add(storages[i]);
-              }
-            }
-            // If we are performing a truncate recovery than set recovery fields
-            // to old block.
-            boolean truncateRecovery = b.getTruncateBlock() != null;
-            boolean copyOnTruncateRecovery = truncateRecovery &&
-                b.getTruncateBlock().getBlockId() != b.getBlockId();
-            ExtendedBlock primaryBlock = (copyOnTruncateRecovery) ?
-                new ExtendedBlock(blockPoolId, b.getTruncateBlock()) :
-                new ExtendedBlock(blockPoolId, b);
-            // If we only get 1 replica after eliminating stale nodes, then choose all
-            // replicas for recovery and let the primary data node handle failures.
-            DatanodeInfo[] recoveryInfos;
-            if (recoveryLocations.size() > 1) {
-              if (recoveryLocations.size() != storages.length) {
-                LOG.info("Skipped stale nodes for recovery : " +
-                    (storages.length - recoveryLocations.size()));
-              }
-              recoveryInfos =
-                  DatanodeStorageInfo.toDatanodeInfos(recoveryLocations);
-            } else {
-              // If too many replicas are stale, then choose all replicas to participate
-              // in block recovery.
-              recoveryInfos = DatanodeStorageInfo.toDatanodeInfos(storages);
-            }
-            if(truncateRecovery) {
-              Block recoveryBlock = (copyOnTruncateRecovery) ? b :
-                  b.getTruncateBlock();
-              brCommand.add(new RecoveringBlock(primaryBlock, recoveryInfos,
-                                                recoveryBlock));
-            } else {
-              brCommand.add(new RecoveringBlock(primaryBlock, recoveryInfos,
-                                                b.getBlockRecoveryId()));
-            }
-          }
-          return new DatanodeCommand[] { brCommand };
-        }
+    // If we are in safemode, do not send back any recovery / replication
+    // requests. Don't even drain the existing queue of work.
+    if(namesystem.isInSafeMode()) {
+      return new DatanodeCommand[0];
+    }
+    return getDatanodeCommands(nodeinfo, blockPoolId, maxTransfers);
+  }
 
-        final List<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
-        //check pending replication
-        List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
-              maxTransfers);
-        if (pendingList != null) {
-          cmds.add(new BlockCommand(DatanodeProtocol.DNA_TRANSFER, blockPoolId,
-              pendingList));
-        }
-        //check block invalidation
-        Block[] blks = nodeinfo.getInvalidateBlocks(blockInvalidateLimit);
-        if (blks != null) {
-          cmds.add(new BlockCommand(DatanodeProtocol.DNA_INVALIDATE,
-              blockPoolId, blks));
-        }
-        boolean sendingCachingCommands = false;
-        long nowMs = monotonicNow();
-        if (shouldSendCachingCommands && 
-            ((nowMs - nodeinfo.getLastCachingDirectiveSentTimeMs()) >=
-                timeBetweenResendingCachingDirectivesMs)) {
-          DatanodeCommand pendingCacheCommand =
-              getCacheCommand(nodeinfo.getPendingCached(), nodeinfo,
-                DatanodeProtocol.DNA_CACHE, blockPoolId);
-          if (pendingCacheCommand != null) {
-            cmds.add(pendingCacheCommand);
-            sendingCachingCommands = true;
-          }
-          DatanodeCommand pendingUncacheCommand =
-              getCacheCommand(nodeinfo.getPendingUncached(), nodeinfo,
-                DatanodeProtocol.DNA_UNCACHE, blockPoolId);
-          if (pendingUncacheCommand != null) {
-            cmds.add(pendingUncacheCommand);
-            sendingCachingCommands = true;
-          }
-          if (sendingCachingCommands) {
-            nodeinfo.setLastCachingDirectiveSentTimeMs(nowMs);
-          }
-        }
+  /** @return the commands pending for a datanode. */
+  private DatanodeCommand[] getDatanodeCommands(DatanodeDescriptor nodeinfo,
+      String blockPoolId, int maxTransfers) {
+    //check lease recovery
+    if (nodeinfo.getNumberOfBlocksToBeRecovered() > 0) {
+      BlockRecoveryCommand brCommand;
+      namesystem.readLock();
+      try {
+        brCommand = getBlockRecoveryCommand(nodeinfo, blockPoolId);
+      } finally {
+        namesystem.readUnlock();
+      }
+      if (brCommand != null) {
+        return new DatanodeCommand[] { brCommand };
+      }
+    }
+
+    final List<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
+    //check pending replication
+    List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
+          maxTransfers);
+    if (pendingList != null) {
+      cmds.add(new BlockCommand(DatanodeProtocol.DNA_TRANSFER, blockPoolId,
+          pendingList));
+    }
+    //check block invalidation
+    Block[] blks = nodeinfo.getInvalidateBlocks(blockInvalidateLimit);
+    if (blks != null) {
+      cmds.add(new BlockCommand(DatanodeProtocol.DNA_INVALIDATE,
+          blockPoolId, blks));
+    }
+    long nowMs = monotonicNow();
+    if (shouldSendCachingCommands && 
+        ((nowMs - nodeinfo.getLastCachingDirectiveSentTimeMs()) >=
+            timeBetweenResendingCachingDirectivesMs) &&
+        (!nodeinfo.getPendingCached().isEmpty() ||
+            !nodeinfo.getPendingUncached().isEmpty())) {
+      namesystem.readLock();
+      try {
+        addCacheCommands(cmds, nodeinfo, blockPoolId, nowMs);
+      } finally {
+        namesystem.readUnlock();
+      }
+    }
 
-        blockManager.addKeyUpdateCommand(cmds, nodeinfo);
+    blockManager.addKeyUpdateCommand(cmds, nodeinfo);
 
-        // check for balancer bandwidth update
-        if (nodeinfo.getBalancerBandwidth() > 0) {
-          cmds.add(new BalancerBandwidthCommand(nodeinfo.getBalancerBandwidth()));
-          // set back to 0 to indicate that datanode has been sent the new value
-          nodeinfo.setBalancerBandwidth(0);
-        }
+    // check for balancer bandwidth update, setting it back to 0 to indicate
+    // that the datanode has been sent the new value
+    final long bandwidth = nodeinfo.getAndClearBalancerBandwidth();
+    if (bandwidth > 0) {
+      cmds.add(new BalancerBandwidthCommand(bandwidth));
+    }
 
-        if (!cmds.isEmpty()) {
-          return cmds.toArray(new DatanodeCommand[cmds.size()]);
+    if (!cmds.isEmpty()) {
+      return cmds.toArray(new DatanodeCommand[cmds.size()]);
+    }
+    return new DatanodeCommand[0];
+  }
+
+  /**
+   * @return the command to recover the blocks of the leases expired on a
+   *         datanode, or null. The caller must hold the namesystem lock.
+   */
+  private BlockRecoveryCommand getBlockRecoveryCommand(
+      DatanodeDescriptor nodeinfo, String blockPoolId) {
+    BlockInfoContiguousUnderConstruction[] blocks = nodeinfo
+        .getLeaseRecoveryCommand(Integer.MAX_VALUE);
+    if (blocks == null) {
+      return null;
+    }
+    BlockRecoveryCommand brCommand = new BlockRecoveryCommand(
+        blocks.length);
+    for (BlockInfoContiguousUnderConstruction b : blocks) {
+      final DatanodeStorageInfo[] storages = b.getExpectedStorageLocations();
+      // Skip stale nodes during recovery - not heart beated for some time (30s by default).
+      final List<DatanodeStorageInfo> recoveryLocations =
+          new ArrayList<DatanodeStorageInfo>(storages.length);
+      for (int i = 0; i < storages.length; i++) {
+        if (!storages[i].getDatanodeDescriptor().isStale(staleInterval)) {
+          recoveryLocations.add(storages[i]);
         }
       }
+      // If we are performing a truncate recovery than set recovery fields
+      // to old block.
+      boolean truncateRecovery = b.getTruncateBlock() != null;
+      boolean copyOnTruncateRecovery = truncateRecovery &&
+          b.getTruncateBlock().getBlockId() != b.getBlockId();
+      ExtendedBlock primaryBlock = (copyOnTruncateRecovery) ?
+          new ExtendedBlock(blockPoolId, b.getTruncateBlock()) :
+          new ExtendedBlock(blockPoolId, b);
+      // If we only get 1 replica after eliminating stale nodes, then choose all
+      // replicas for recovery and let the primary data node handle failures.
+      DatanodeInfo[] recoveryInfos;
+      if (recoveryLocations.size() > 1) {
+        if (recoveryLocations.size() != storages.length) {
+          LOG.info("Skipped stale nodes for recovery : " +
+              (storages.length - recoveryLocations.size()));
+        }
+        recoveryInfos =
+            DatanodeStorageInfo.toDatanodeInfos(recoveryLocations);
+      } else {
+        // If too many replicas are stale, then choose all replicas to participate
+        // in block recovery.
+        recoveryInfos = DatanodeStorageInfo.toDatanodeInfos(storages);
+      }
+      if(truncateRecovery) {
+        Block recoveryBlock = (copyOnTruncateRecovery) ? b :
+            b.getTruncateBlock();
+        brCommand.add(new RecoveringBlock(primaryBlock, recoveryInfos,
+                                          recoveryBlock));
+      } else {
+        brCommand.add(new RecoveringBlock(primaryBlock, recoveryInfos,
+                                          b.getBlockRecoveryId()));
+      }
     }
+    return brCommand;
+  }
 
-    return new DatanodeCommand[0];
+  /**
+   * Add the commands to cache and uncache the pending blocks of a datanode.
+   * The caller must hold the namesystem lock.
+   */
+  private void addCacheCommands(List<DatanodeCommand> cmds,
+      DatanodeDescriptor nodeinfo, String blockPoolId, long nowMs) {
+    boolean sendingCachingCommands = false;
+    DatanodeCommand pendingCacheCommand =
+        getCacheCommand(nodeinfo.getPendingCached(), nodeinfo,
+          DatanodeProtocol.DNA_CACHE, blockPoolId);
+    if (pendingCacheCommand != null) {
+      cmds.add(pendingCacheCommand);
+      sendingCachingCommands = true;
+    }
+    DatanodeCommand pendingUncacheCommand =
+        getCacheCommand(nodeinfo.getPendingUncached(), nodeinfo,
+          DatanodeProtocol.DNA_UNCACHE, blockPoolId);
+    if (pendingUncacheCommand != null) {
+      cmds.add(pendingUncacheCommand);
+      sendingCachingCommands = true;
+    }
+    if (sendingCachingCommands) {
+      nodeinfo.setLastCachingDirectiveSentTimeMs(nowMs);
+    }
   }
 
   /**
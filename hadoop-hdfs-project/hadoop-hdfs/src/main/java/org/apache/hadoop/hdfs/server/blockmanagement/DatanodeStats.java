@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Datanode statistics, aggregated over the live datanodes without any lock.
+ * <p/>
+ * Each datanode holds the immutable {@link Contribution} it last made to the
+ * aggregates. Updating a node atomically swaps its contribution, and adds
+ * the difference between the new and the old contributions to striped
+ * counters, so that the heartbeats of different nodes do not contend.
+ * Since additions commute, the aggregates are always the sum of the
+ * contributions of the nodes, whatever the order of the updates.
+ * <p/>
+ * For decommissioning/decommissioned nodes, only used capacity is counted.
+ */
+class DatanodeStats {
+  // the indices of the counters
+  private static final int CAPACITY_TOTAL = 0;
+  private static final int CAPACITY_USED = 1;
+  private static final int CAPACITY_USED_NON_DFS = 2;
+  private static final int CAPACITY_REMAINING = 3;
+  private static final int BLOCK_POOL_USED = 4;
+  private static final int XCEIVER_COUNT = 5;
+  private static final int CACHE_CAPACITY = 6;
+  private static final int CACHE_USED = 7;
+  private static final int NODES_IN_SERVICE = 8;
+  private static final int NODES_IN_SERVICE_XCEIVER_COUNT = 9;
+  private static final int NUM_COUNTERS = 10;
+
+  /** The statistics a datanode contributes to the aggregates. */
+  static final class Contribution {
+    static final Contribution NONE = new Contribution(new long[NUM_COUNTERS]);
+
+    private final long[] values;
+
+    private Contribution(long[] values) {
+      this.values = values;
+    }
+
+    private static Contribution of(DatanodeDescriptor node) {
+      if (!node.isAlive) {
+        return NONE;
+      }
+      final long[] values = new long[NUM_COUNTERS];
+      values[CAPACITY_USED] = node.getDfsUsed();
+      values[CAPACITY_USED_NON_DFS] = node.getNonDfsUsed();
+      values[BLOCK_POOL_USED] = node.getBlockPoolUsed();
+      values[XCEIVER_COUNT] = node.getXceiverCount();
+      if (!(node.isDecommissionInProgress() || node.isDecommissioned())) {
+        values[NODES_IN_SERVICE] = 1;
+        values[NODES_IN_SERVICE_XCEIVER_COUNT] = node.getXceiverCount();
+        values[CAPACITY_TOTAL] = node.getCapacity();
+        values[CAPACITY_REMAINING] = node.getRemaining();
+      } else {
+        values[CAPACITY_TOTAL] = node.getDfsUsed();
+      }
+      values[CACHE_CAPACITY] = node.getCacheCapacity();
+      values[CACHE_USED] = node.getCacheUsed();
+      return new Contribution(values);
+    }
+  }
+
+  /**
+   * The counters of each stripe. A thread always updates the same stripe,
+   * and the stripes are summed when the aggregates are read.
+   */
+  private final AtomicLongArray[] stripes;
+
+  private final AtomicInteger expiredHeartbeats = new AtomicInteger();
+
+  DatanodeStats() {
+    this(2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  DatanodeStats(int numStripes) {
+    stripes = new AtomicLongArray[Math.max(1, numStripes)];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new AtomicLongArray(NUM_COUNTERS);
+    }
+  }
+
+  /**
+   * Recount the statistics of a node in the aggregates, after they or the
+   * liveness or the admin state of the node changed. A dead node counts for
+   * nothing.
+   */
+  void recount(DatanodeDescriptor node) {
+    final AtomicReference<Contribution> counted = node.getCountedStats();
+    Contribution oldContribution;
+    Contribution newContribution;
+    do {
+      oldContribution = counted.get();
+      newContribution = Contribution.of(node);
+    } while (!counted.compareAndSet(oldContribution, newContribution));
+
+    final AtomicLongArray stripe = stripes[
+        (int) (Thread.currentThread().getId() % stripes.length)];
+    for (int i = 0; i < NUM_COUNTERS; i++) {
+      final long delta = newContribution.values[i] - oldContribution.values[i];
+      if (delta != 0) {
+        stripe.addAndGet(i, delta);
+      }
+    }
+  }
+
+  private long sum(int counter) {
+    long sum = 0;
+    for (AtomicLongArray stripe : stripes) {
+      sum += stripe.get(counter);
+    }
+    return sum;
+  }
+
+  long getCapacityTotal() {
+    return sum(CAPACITY_TOTAL);
+  }
+
+  long getCapacityUsed() {
+    return sum(CAPACITY_USED);
+  }
+
+  long getCapacityUsedNonDfs() {
+    return sum(CAPACITY_USED_NON_DFS);
+  }
+
+  long getCapacityRemaining() {
+    return sum(CAPACITY_REMAINING);
+  }
+
+  long getBlockPoolUsed() {
+    return sum(BLOCK_POOL_USED);
+  }
+
+  int getXceiverCount() {
+    return (int) sum(XCEIVER_COUNT);
+  }
+
+  long getCacheCapacity() {
+    return sum(CACHE_CAPACITY);
+  }
+
+  long getCacheUsed() {
+    return sum(CACHE_USED);
+  }
+
+  int getNodesInService() {
+    return (int) sum(NODES_IN_SERVICE);
+  }
+
+  int getNodesInServiceXceiverCount() {
+    return (int) sum(NODES_IN_SERVICE_XCEIVER_COUNT);
+  }
+
+  /** Increment expired heartbeat counter. */
+  void incrExpiredHeartbeats() {
+    expiredHeartbeats.incrementAndGet();
+  }
+
+  int getExpiredHeartbeats() {
+    return expiredHeartbeats.get();
+  }
+}
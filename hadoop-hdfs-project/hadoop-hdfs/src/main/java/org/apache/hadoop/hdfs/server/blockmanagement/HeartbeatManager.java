@@ -34,8 +34,9 @@
 
 /**
  * Manage the heartbeats received from datanodes.
- * The datanode list and statistics are synchronized
- * by the heartbeat manager lock.
+ * The datanode list is synchronized by the heartbeat manager lock.
+ * The statistics are updated without any lock, so that the heartbeats of
+ * different datanodes are processed concurrently.
  */
 class HeartbeatManager implements DatanodeStatistics {
   static final Logger LOG = LoggerFactory.getLogger(HeartbeatManager.class);
@@ -49,8 +50,8 @@ class HeartbeatManager implements DatanodeStatistics {
    */
   private final List<DatanodeDescriptor> datanodes = new ArrayList<DatanodeDescriptor>();
 
-  /** Statistics, which are synchronized by the heartbeat manager lock. */
-  private final Stats stats = new Stats();
+  /** Statistics, which are updated without any lock. */
+  private final DatanodeStats stats = new DatanodeStats();
 
   /** The time period to check for expired datanodes */
   private final long heartbeatRecheckInterval;
@@ -104,74 +105,76 @@ synchronized int getLiveDatanodeCount() {
   }
 
   @Override
-  public synchronized long getCapacityTotal() {
-    return stats.capacityTotal;
+  public long getCapacityTotal() {
+    return stats.getCapacityTotal();
   }
 
   @Override
-  public synchronized long getCapacityUsed() {
-    return stats.capacityUsed;
+  public long getCapacityUsed() {
+    return stats.getCapacityUsed();
   }
 
   @Override
-  public synchronized float getCapacityUsedPercent() {
-    return DFSUtil.getPercentUsed(stats.capacityUsed, stats.capacityTotal);
+  public float getCapacityUsedPercent() {
+    return DFSUtil.getPercentUsed(stats.getCapacityUsed(),
+        stats.getCapacityTotal());
   }
 
   @Override
-  public synchronized long getCapacityRemaining() {
-    return stats.capacityRemaining;
+  public long getCapacityRemaining() {
+    return stats.getCapacityRemaining();
   }
 
   @Override
-  public synchronized float getCapacityRemainingPercent() {
+  public float getCapacityRemainingPercent() {
     return DFSUtil.getPercentRemaining(
-        stats.capacityRemaining, stats.capacityTotal);
+        stats.getCapacityRemaining(), stats.getCapacityTotal());
   }
 
   @Override
-  public synchronized long getBlockPoolUsed() {
-    return stats.blockPoolUsed;
+  public long getBlockPoolUsed() {
+    return stats.getBlockPoolUsed();
   }
 
   @Override
-  public synchronized float getPercentBlockPoolUsed() {
-    return DFSUtil.getPercentUsed(stats.blockPoolUsed, stats.capacityTotal);
+  public float getPercentBlockPoolUsed() {
+    return DFSUtil.getPercentUsed(stats.getBlockPoolUsed(),
+        stats.getCapacityTotal());
   }
 
   @Override
-  public synchronized long getCapacityUsedNonDFS() {
-    return stats.capacityUsedNonDfs;
+  public long getCapacityUsedNonDFS() {
+    return stats.getCapacityUsedNonDfs();
   }
 
   @Override
-  public synchronized int getXceiverCount() {
-    return stats.xceiverCount;
+  public int getXceiverCount() {
+    return stats.getXceiverCount();
   }
   
   @Override
-  public synchronized int getInServiceXceiverCount() {
-    return stats.nodesInServiceXceiverCount;
+  public int getInServiceXceiverCount() {
+    return stats.getNodesInServiceXceiverCount();
   }
   
   @Override
-  public synchronized int getNumDatanodesInService() {
-    return stats.nodesInService;
+  public int getNumDatanodesInService() {
+    return stats.getNodesInService();
   }
   
   @Override
-  public synchronized long getCacheCapacity() {
-    return stats.cacheCapacity;
+  public long getCacheCapacity() {
+    return stats.getCacheCapacity();
   }
 
   @Override
-  public synchronized long getCacheUsed() {
-    return stats.cacheUsed;
+  public long getCacheUsed() {
+    return stats.getCacheUsed();
   }
   
 
   @Override
-  public synchronized long[] getStats() {
+  public long[] getStats() {
     return new long[] {getCapacityTotal(),
                        getCapacityUsed(),
                        getCapacityRemaining(),
@@ -182,8 +185,8 @@ public synchronized long[] getStats() {
   }
 
   @Override
-  public synchronized int getExpiredHeartbeats() {
-    return stats.expiredHeartbeats;
+  public int getExpiredHeartbeats() {
+    return stats.getExpiredHeartbeats();
   }
 
   synchronized void register(final DatanodeDescriptor d) {
@@ -199,28 +202,44 @@ synchronized DatanodeDescriptor[] getDatanodes() {
   }
 
   synchronized void addDatanode(final DatanodeDescriptor d) {
-    // update in-service node count
-    stats.add(d);
     datanodes.add(d);
     d.isAlive = true;
+    // update in-service node count
+    stats.recount(d);
   }
 
   synchronized void removeDatanode(DatanodeDescriptor node) {
     if (node.isAlive) {
-      stats.subtract(node);
       datanodes.remove(node);
       node.isAlive = false;
+      stats.recount(node);
     }
   }
 
-  synchronized void updateHeartbeat(final DatanodeDescriptor node,
+  /**
+   * Update the statistics of a node from its heartbeat. This does not take
+   * the heartbeat manager lock: only the heartbeats of the same node are
+   * serialized.
+   */
+  void updateHeartbeat(final DatanodeDescriptor node,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary) {
-    stats.subtract(node);
     node.updateHeartbeat(reports, cacheCapacity, cacheUsed,
       xceiverCount, failedVolumes, volumeFailureSummary);
-    stats.add(node);
+    stats.recount(node);
+  }
+
+  void updateLifeline(final DatanodeDescriptor node,
+      StorageReport[] reports, long cacheCapacity, long cacheUsed,
+      int xceiverCount, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary) {
+    // This intentionally calls updateHeartbeatState instead of
+    // updateHeartbeat, because a lifeline does not count as the first
+    // heartbeat of the node since its registration.
+    node.updateHeartbeatState(reports, cacheCapacity, cacheUsed,
+        xceiverCount, failedVolumes, volumeFailureSummary);
+    stats.recount(node);
   }
 
   synchronized void startDecommission(final DatanodeDescriptor node) {
@@ -228,22 +247,16 @@ synchronized void startDecommission(final DatanodeDescriptor node) {
       LOG.info("Dead node {} is decommissioned immediately.", node);
       node.setDecommissioned();
     } else {
-      stats.subtract(node);
       node.startDecommission();
-      stats.add(node);
+      stats.recount(node);
     }
   }
 
   synchronized void stopDecommission(final DatanodeDescriptor node) {
     LOG.info("Stopping decommissioning of {} node {}",
         node.isAlive ? "live" : "dead", node);
-    if (!node.isAlive) {
-      node.stopDecommission();
-    } else {
-      stats.subtract(node);
-      node.stopDecommission();
-      stats.add(node);
-    }
+    node.stopDecommission();
+    stats.recount(node);
   }
   
   /**
@@ -369,7 +382,7 @@ public void run() {
           if (blockManager.shouldUpdateBlockKey(now - lastBlockKeyUpdate)) {
             synchronized(HeartbeatManager.this) {
               for(DatanodeDescriptor d : datanodes) {
-                d.needKeyUpdate = true;
+                d.setNeedKeyUpdate();
               }
             }
             lastBlockKeyUpdate = now;
@@ -384,63 +397,4 @@ public void run() {
       }
     }
   }
-
-  /** Datanode statistics.
-   * For decommissioning/decommissioned nodes, only used capacity is counted.
-   */
-  private static class Stats {
-    private long capacityTotal = 0L;
-    private long capacityUsed = 0L;
-    private long capacityUsedNonDfs = 0L;
-    private long capacityRemaining = 0L;
-    private long blockPoolUsed = 0L;
-    private int xceiverCount = 0;
-    private long cacheCapacity = 0L;
-    private long cacheUsed = 0L;
-
-    private int nodesInService = 0;
-    private int nodesInServiceXceiverCount = 0;
-
-    private int expiredHeartbeats = 0;
-
-    private void add(final DatanodeDescriptor node) {
-      capacityUsed += node.getDfsUsed();
-      capacityUsedNonDfs += node.getNonDfsUsed();
-      blockPoolUsed += node.getBlockPoolUsed();
-      xceiverCount += node.getXceiverCount();
-      if (!(node.isDecommissionInProgress() || node.isDecommissioned())) {
-        nodesInService++;
-        nodesInServiceXceiverCount += node.getXceiverCount();
-        capacityTotal += node.getCapacity();
-        capacityRemaining += node.getRemaining();
-      } else {
-        capacityTotal += node.getDfsUsed();
-      }
-      cacheCapacity += node.getCacheCapacity();
-      cacheUsed += node.getCacheUsed();
-    }
-
-    private void subtract(final DatanodeDescriptor node) {
-      capacityUsed -= node.getDfsUsed();
-      capacityUsedNonDfs -= node.getNonDfsUsed();
-      blockPoolUsed -= node.getBlockPoolUsed();
-      xceiverCount -= node.getXceiverCount();
-      if (!(node.isDecommissionInProgress() || node.isDecommissioned())) {
-        nodesInService--;
-        nodesInServiceXceiverCount -= node.getXceiverCount();
-        capacityTotal -= node.getCapacity();
-        capacityRemaining -= node.getRemaining();
-      } else {
-        capacityTotal -= node.getDfsUsed();
-      }
-      cacheCapacity -= node.getCacheCapacity();
-      cacheUsed -= node.getCacheUsed();
-    }
-    
-    /** Increment expired heartbeat counter. */
-    private void incrExpiredHeartbeats() {
-      expiredHeartbeats++;
-    }
-  }
 }
-
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY;
+
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.net.NetworkTopology;
+
+/**
+ * Load aware block placement policy. The replicas are placed on the racks
+ * chosen by the default policy, but within a rack the datanodes whose
+ * volumes are slow or busy, as reported by their heartbeats, are avoided:
+ * two random datanodes are compared for each replica, and the less loaded
+ * one is preferred.
+ * <p/>
+ * The disk load of a datanode is the latency of its I/Os multiplied by the
+ * number of I/Os queued behind them. The datanodes with about the same disk
+ * load are compared by the bytes per second their volumes transfer.
+ */
+public class LoadAwareBlockPlacementPolicy extends
+    BlockPlacementPolicyDefault {
+  private static final Log LOG = LogFactory
+      .getLog(LoadAwareBlockPlacementPolicy.class);
+  private static final Random RAND = new Random();
+
+  /** The relative difference below which two loads are considered equal. */
+  private static final double LOAD_TOLERANCE = 0.25;
+
+  private int loadPreference =
+      (int) (100 * DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_DEFAULT);
+
+  @Override
+  public void initialize(Configuration conf, FSClusterStats stats,
+      NetworkTopology clusterMap, Host2NodesMap host2datanodeMap) {
+    super.initialize(conf, stats, clusterMap, host2datanodeMap);
+    float loadPreferenceFraction = conf.getFloat(
+        DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY,
+        DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_DEFAULT);
+
+    LOG.info("Load aware block placement policy initialized: "
+        + DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY
+        + " = " + loadPreferenceFraction);
+
+    if (loadPreferenceFraction > 1.0) {
+      LOG.warn("The value of "
+          + DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY
+          + " is greater than 1.0 but should be in the range 0.0 - 1.0");
+    }
+    if (loadPreferenceFraction < 0.5) {
+      LOG.warn("The value of "
+          + DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY
+          + " is less than 0.5 so the more loaded datanodes will"
+          + " receive more block allocations.");
+    }
+    loadPreference = (int) (100 * loadPreferenceFraction);
+  }
+
+  @Override
+  protected DatanodeDescriptor chooseDataNode(String scope) {
+    DatanodeDescriptor a = (DatanodeDescriptor) clusterMap.chooseRandom(scope);
+    DatanodeDescriptor b = (DatanodeDescriptor) clusterMap.chooseRandom(scope);
+    if (a != null && b != null) {
+      int ret = compareDataNode(a, b);
+      if (ret == 0) {
+        return a;
+      } else if (ret < 0) {
+        return (RAND.nextInt(100) < loadPreference) ? a : b;
+      } else {
+        return (RAND.nextInt(100) < loadPreference) ? b : a;
+      }
+    } else {
+      return a == null ? b : a;
+    }
+  }
+
+  /**
+   * Compare the load of the two data nodes.
+   */
+  protected int compareDataNode(final DatanodeDescriptor a,
+      final DatanodeDescriptor b) {
+    if (a.equals(b)) {
+      return 0;
+    }
+    int ret = compareLoad(getDiskLoad(a), getDiskLoad(b));
+    if (ret != 0) {
+      return ret;
+    }
+    return compareLoad(a.getNetworkTransferRate(), b.getNetworkTransferRate());
+  }
+
+  private static long getDiskLoad(DatanodeDescriptor node) {
+    return node.getIOLatencyMicros() * (1 + node.getPendingIOs());
+  }
+
+  private static int compareLoad(long a, long b) {
+    if (Math.abs(a - b) <= LOAD_TOLERANCE * Math.max(a, b)) {
+      return 0;
+    }
+    return a < b ? -1 : 1;
+  }
+}
@@ -29,6 +29,8 @@
 import java.util.Map;
 
 import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 import org.slf4j.Logger;
 
@@ -105,6 +107,11 @@ void decrement(Block block, DatanodeDescriptor dn) {
         found.decrementReplicas(dn);
         if (found.getNumReplicas() <= 0) {
           pendingReplications.remove(block);
+          final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+          if (metrics != null) {
+            metrics.addBlockReplication(
+                monotonicNow() - found.getTimeStamp());
+          }
         }
       }
     }
@@ -37,6 +37,7 @@
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -118,12 +119,26 @@ void writeUnlock() {
   }
 
   BPOfferService(List<InetSocketAddress> nnAddrs, DataNode dn) {
+    this(nnAddrs, Collections.<InetSocketAddress>nCopies(nnAddrs.size(), null),
+        dn);
+  }
+
+  /**
+   * @param lifelineNnAddrs the lifeline RPC addresses of the NameNodes, in
+   *                        the order of nnAddrs, null for the NameNodes which
+   *                        have no lifeline RPC server.
+   */
+  BPOfferService(List<InetSocketAddress> nnAddrs,
+      List<InetSocketAddress> lifelineNnAddrs, DataNode dn) {
     Preconditions.checkArgument(!nnAddrs.isEmpty(),
         "Must pass at least one NN.");
+    Preconditions.checkArgument(nnAddrs.size() == lifelineNnAddrs.size(),
+        "Must pass same number of NN addresses and lifeline addresses.");
     this.dn = dn;
 
-    for (InetSocketAddress addr : nnAddrs) {
-      this.bpServices.add(new BPServiceActor(addr, this));
+    for (int i = 0; i < nnAddrs.size(); ++i) {
+      this.bpServices.add(new BPServiceActor(nnAddrs.get(i),
+          lifelineNnAddrs.get(i), this));
     }
   }
 
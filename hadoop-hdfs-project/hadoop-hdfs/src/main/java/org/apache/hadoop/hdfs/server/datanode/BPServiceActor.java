@@ -19,6 +19,7 @@
 
 import static org.apache.hadoop.util.Time.monotonicNow;
 
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -40,6 +41,7 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeStatus;
 import org.apache.hadoop.hdfs.protocol.UnregisteredNodeException;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeLifelineProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.server.common.IncorrectVersionException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
@@ -69,6 +71,8 @@
  * <li> Registration with namenode</li>
  * <li> Send periodic heartbeats to the namenode</li>
  * <li> Handle commands received from the namenode</li>
+ * <li> Send lifelines to the namenode when the heartbeats are late, if the
+ * namenode has a lifeline RPC server</li>
  * </ul>
  */
 @InterfaceAudience.Private
@@ -101,14 +105,24 @@ static enum RunningState {
   private DatanodeRegistration bpRegistration;
   final LinkedList<BPServiceActorAction> bpThreadQueue 
       = new LinkedList<BPServiceActorAction>();
+  private final LifelineSender lifelineSender;
 
   BPServiceActor(InetSocketAddress nnAddr, BPOfferService bpos) {
+    this(nnAddr, null, bpos);
+  }
+
+  BPServiceActor(InetSocketAddress nnAddr, InetSocketAddress lifelineNnAddr,
+      BPOfferService bpos) {
     this.bpos = bpos;
     this.dn = bpos.getDataNode();
     this.nnAddr = nnAddr;
+    this.lifelineSender = lifelineNnAddr != null ?
+        new LifelineSender(lifelineNnAddr) : null;
     this.dnConf = dn.getDnConf();
-    this.ibrManager = new IncrementalBlockReportManager(dnConf.ibrInterval);
-    scheduler = new Scheduler(dnConf.heartBeatInterval, dnConf.blockReportInterval);
+    this.ibrManager = new IncrementalBlockReportManager(dnConf.ibrInterval,
+        dnConf.ibrMaxInterval);
+    scheduler = new Scheduler(dnConf.heartBeatInterval,
+        dnConf.lifelineIntervalMs, dnConf.blockReportInterval);
   }
 
   public DatanodeRegistration getBpRegistration() {
@@ -386,10 +400,19 @@ DatanodeCommand cacheReport() throws IOException {
     return cmd;
   }
   
-  HeartbeatResponse sendHeartBeat() throws IOException {
-    scheduler.scheduleNextHeartbeat();
+  /**
+   * @return the storage reports of the block pool, with the load of their
+   *         volumes
+   */
+  private StorageReport[] getStorageReports() throws IOException {
     StorageReport[] reports =
         dn.getFSDataset().getStorageReports(bpos.getBlockPoolId());
+    return dn.getVolumeLoadTracker().addLoads(reports);
+  }
+
+  HeartbeatResponse sendHeartBeat() throws IOException {
+    scheduler.scheduleNextHeartbeat();
+    StorageReport[] reports = getStorageReports();
     if (LOG.isDebugEnabled()) {
       LOG.debug("Sending heartbeat with " + reports.length +
                 " storage reports from service actor: " + this);
@@ -415,21 +438,24 @@ void start() {
       //Thread is started already
       return;
     }
-    bpThread = new Thread(this, formatThreadName());
+    bpThread = new Thread(this, formatThreadName("heartbeating", nnAddr));
     bpThread.setDaemon(true); // needed for JUnit testing
     bpThread.start();
   }
   
-  private String formatThreadName() {
+  private String formatThreadName(String action, InetSocketAddress addr) {
     Collection<StorageLocation> dataDirs =
         DataNode.getStorageLocations(dn.getConf());
     return "DataNode: [" + dataDirs.toString() + "] " +
-      " heartbeating to " + nnAddr;
+      " " + action + " to " + addr;
   }
   
   //This must be called only by blockPoolManager.
   void stop() {
     shouldServiceRun = false;
+    if (lifelineSender != null) {
+      lifelineSender.stop();
+    }
     if (bpThread != null) {
         bpThread.interrupt();
     }
@@ -438,6 +464,9 @@ void stop() {
   //This must be called only by blockPoolManager
   void join() {
     try {
+      if (lifelineSender != null) {
+        lifelineSender.join();
+      }
       if (bpThread != null) {
         bpThread.join();
       }
@@ -448,7 +477,7 @@ void join() {
   private synchronized void cleanUp() {
     
     shouldServiceRun = false;
-    IOUtils.cleanup(LOG, bpNamenode);
+    IOUtils.cleanup(LOG, bpNamenode, lifelineSender);
     bpos.shutdownActor(this);
   }
 
@@ -653,6 +682,9 @@ public void run() {
       }
 
       runningState = RunningState.RUNNING;
+      if (lifelineSender != null) {
+        lifelineSender.start();
+      }
 
       while (shouldRun()) {
         try {
@@ -771,6 +803,124 @@ Scheduler getScheduler() {
     return scheduler;
   }
 
+  /**
+   * Sends the lifelines of the actor to the lifeline RPC server of its
+   * namenode, with its own thread and connection, so that they do not wait
+   * behind the heartbeats and block reports of the actor.
+   */
+  private final class LifelineSender implements Runnable, Closeable {
+    private final InetSocketAddress lifelineNnAddr;
+    private Thread lifelineThread;
+    private DatanodeLifelineProtocolClientSideTranslatorPB lifelineNamenode;
+
+    LifelineSender(InetSocketAddress lifelineNnAddr) {
+      this.lifelineNnAddr = lifelineNnAddr;
+    }
+
+    @Override
+    public void close() {
+      stop();
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      IOUtils.cleanup(LOG, lifelineNamenode);
+    }
+
+    @Override
+    public void run() {
+      // The lifelines need the registration of the actor, so this thread is
+      // only started once the actor registered.
+      while (shouldRun()) {
+        try {
+          if (lifelineNamenode == null) {
+            lifelineNamenode = dn.connectToLifelineNN(lifelineNnAddr);
+          }
+          sendLifelineIfDue();
+          Thread.sleep(scheduler.getLifelineWaitTime());
+        } catch (InterruptedException e) {
+          break;
+        } catch (IOException e) {
+          LOG.warn("IOException in LifelineSender for " + BPServiceActor.this,
+              e);
+        }
+      }
+      LOG.info("LifelineSender for " + BPServiceActor.this + " exiting.");
+    }
+
+    synchronized void start() {
+      if (lifelineThread != null && lifelineThread.isAlive()) {
+        return;
+      }
+      lifelineThread = new Thread(this,
+          formatThreadName("lifeline", lifelineNnAddr));
+      lifelineThread.setDaemon(true);
+      lifelineThread.start();
+    }
+
+    synchronized void stop() {
+      if (lifelineThread != null) {
+        lifelineThread.interrupt();
+      }
+    }
+
+    void join() throws InterruptedException {
+      final Thread t;
+      synchronized (this) {
+        t = lifelineThread;
+      }
+      if (t != null && t != Thread.currentThread()) {
+        t.join();
+      }
+    }
+
+    private void sendLifelineIfDue() throws IOException {
+      final long startTime = scheduler.monotonicNow();
+      if (!scheduler.isLifelineDue(startTime)) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Skipping sending lifeline for " + BPServiceActor.this
+              + ", because it is not due.");
+        }
+        return;
+      }
+      if (dn.areHeartbeatsDisabledForTests()) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Skipping sending lifeline for " + BPServiceActor.this
+              + ", because heartbeats are disabled for tests.");
+        }
+        return;
+      }
+      try {
+        sendLifeline();
+        dn.getMetrics().addLifeline(scheduler.monotonicNow() - startTime);
+      } finally {
+        // Do not retry a failed lifeline before the next interval.
+        scheduler.scheduleNextLifeline(scheduler.monotonicNow());
+      }
+    }
+
+    private void sendLifeline() throws IOException {
+      StorageReport[] reports = getStorageReports();
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Sending lifeline with " + reports.length +
+            " storage reports from service actor: " + BPServiceActor.this);
+      }
+      VolumeFailureSummary volumeFailureSummary = dn.getFSDataset()
+          .getVolumeFailureSummary();
+      int numFailedVolumes = volumeFailureSummary != null ?
+          volumeFailureSummary.getFailedStorageLocations().length : 0;
+      lifelineNamenode.sendLifeline(bpRegistration,
+          reports,
+          dn.getFSDataset().getCacheCapacity(),
+          dn.getFSDataset().getCacheUsed(),
+          dn.getXmitsInProgress(),
+          dn.getXceiverCount(),
+          numFailedVolumes,
+          volumeFailureSummary);
+    }
+  }
+
   /**
    * Utility class that wraps the timestamp computations for scheduling
    * heartbeats and block reports.
@@ -785,15 +935,24 @@ static class Scheduler {
     @VisibleForTesting
     volatile long nextHeartbeatTime = monotonicNow();
 
+    // nextLifelineTime is assigned by the actor thread with the heartbeats,
+    // and by the lifeline thread.
+    @VisibleForTesting
+    volatile long nextLifelineTime;
+
     @VisibleForTesting
     boolean resetBlockReportTime = true;
 
     private final long heartbeatIntervalMs;
+    private final long lifelineIntervalMs;
     private final long blockReportIntervalMs;
 
-    Scheduler(long heartbeatIntervalMs, long blockReportIntervalMs) {
+    Scheduler(long heartbeatIntervalMs, long lifelineIntervalMs,
+        long blockReportIntervalMs) {
       this.heartbeatIntervalMs = heartbeatIntervalMs;
+      this.lifelineIntervalMs = lifelineIntervalMs;
       this.blockReportIntervalMs = blockReportIntervalMs;
+      scheduleNextLifeline(nextHeartbeatTime);
     }
 
     // This is useful to make sure NN gets Heartbeat before Blockreport
@@ -812,13 +971,27 @@ long scheduleHeartbeat() {
     long scheduleNextHeartbeat() {
       // Numerical overflow is possible here and is okay.
       nextHeartbeatTime = monotonicNow() + heartbeatIntervalMs;
+      scheduleNextLifeline(nextHeartbeatTime);
       return nextHeartbeatTime;
     }
 
+    /**
+     * A lifeline is only due when no heartbeat was sent for the lifeline
+     * interval after the time the last one was due.
+     */
+    void scheduleNextLifeline(long baseTime) {
+      // Numerical overflow is possible here and is okay.
+      nextLifelineTime = baseTime + lifelineIntervalMs;
+    }
+
     boolean isHeartbeatDue(long startTime) {
       return (nextHeartbeatTime - startTime <= 0);
     }
 
+    boolean isLifelineDue(long startTime) {
+      return (nextLifelineTime - startTime <= 0);
+    }
+
     boolean isBlockReportDue() {
       return nextBlockReportTime - monotonicNow() <= 0;
     }
@@ -869,6 +1042,10 @@ long getHeartbeatWaitTime() {
       return nextHeartbeatTime - monotonicNow();
     }
 
+    long getLifelineWaitTime() {
+      return Math.max(0L, nextLifelineTime - monotonicNow());
+    }
+
     /**
      * Wrapped for testing.
      * @return
@@ -695,7 +695,16 @@ private int receivePacket() throws IOException {
           
           // Write data to disk.
           long begin = Time.monotonicNow();
-          out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          final VolumeLoadTracker loads = datanode.getVolumeLoadTracker();
+          final String storageId = replicaInfo.getStorageUuid();
+          final long writeStartNanos = System.nanoTime();
+          loads.beginIO(storageId);
+          try {
+            out.write(dataBuf.array(), startByteToDisk, numBytesToDisk);
+          } finally {
+            loads.endIO(storageId, System.nanoTime() - writeStartNanos,
+                numBytesToDisk);
+          }
           long duration = Time.monotonicNow() - begin;
           if (duration > datanodeSlowLogThresholdMs) {
             LOG.warn("Slow BlockReceiver write data to disk cost:" + duration
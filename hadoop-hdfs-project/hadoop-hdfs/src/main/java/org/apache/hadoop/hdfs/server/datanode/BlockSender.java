@@ -573,8 +573,21 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
     }
     
     int dataOff = checksumOff + checksumDataLen;
+    final VolumeLoadTracker loads = datanode.getVolumeLoadTracker();
+    final String storageId = volumeRef == null ? null :
+        volumeRef.getVolume().getStorageID();
     if (!transferTo) { // normal transfer
-      IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      final long readStartNanos = System.nanoTime();
+      if (storageId != null) {
+        loads.beginIO(storageId);
+      }
+      try {
+        IOUtils.readFully(blockIn, buf, dataOff, dataLen);
+      } finally {
+        if (storageId != null) {
+          loads.endIO(storageId, System.nanoTime() - readStartNanos, dataLen);
+        }
+      }
 
       if (verifyChecksum) {
         verifyChecksum(buf, dataOff, dataLen, numChunks, checksumOff);
@@ -591,8 +604,17 @@ private int sendPacket(ByteBuffer pkt, int maxChunks, OutputStream out,
         FileChannel fileCh = ((FileInputStream)blockIn).getChannel();
         LongWritable waitTime = new LongWritable();
         LongWritable transferTime = new LongWritable();
-        sockOut.transferToFully(fileCh, blockInPosition, dataLen, 
-            waitTime, transferTime);
+        if (storageId != null) {
+          loads.beginIO(storageId);
+        }
+        try {
+          sockOut.transferToFully(fileCh, blockInPosition, dataLen,
+              waitTime, transferTime);
+        } finally {
+          if (storageId != null) {
+            loads.endIO(storageId, transferTime.get(), dataLen);
+          }
+        }
         datanode.metrics.addSendDataPacketBlockedOnNetworkNanos(waitTime.get());
         datanode.metrics.addSendDataPacketTransferNanos(transferTime.get());
         blockInPosition += dataLen;
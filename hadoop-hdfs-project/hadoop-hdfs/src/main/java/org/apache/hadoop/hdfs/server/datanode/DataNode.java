@@ -139,6 +139,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.InterDatanodeProtocolProtos.InterDatanodeProtocolService;
 import org.apache.hadoop.hdfs.protocolPB.ClientDatanodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.ClientDatanodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeLifelineProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.InterDatanodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.InterDatanodeProtocolServerSideTranslatorPB;
@@ -304,6 +305,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   private int infoSecurePort;
 
   DataNodeMetrics metrics;
+  private final VolumeLoadTracker volumeLoadTracker = new VolumeLoadTracker();
   private InetSocketAddress streamingAddr;
   
   // See the note below in incrDatanodeNetworkErrors re: concurrency.
@@ -1481,6 +1483,19 @@ DatanodeProtocolClientSideTranslatorPB connectToNN(
     return new DatanodeProtocolClientSideTranslatorPB(nnAddr, conf);
   }
 
+  /**
+   * Connect to the NN for the lifeline protocol. This is separated out for
+   * easier testing.
+   *
+   * @param lifelineNnAddr address of lifeline RPC server
+   * @return lifeline RPC proxy
+   */
+  DatanodeLifelineProtocolClientSideTranslatorPB connectToLifelineNN(
+      InetSocketAddress lifelineNnAddr) throws IOException {
+    return new DatanodeLifelineProtocolClientSideTranslatorPB(lifelineNnAddr,
+        conf);
+  }
+
   public static InterDatanodeProtocol createInterDataNodeProtocolProxy(
       DatanodeID datanodeid, final Configuration conf, final int socketTimeout,
       final boolean connectToDnViaHostname) throws IOException {
@@ -1507,6 +1522,10 @@ public InterDatanodeProtocol run() throws IOException {
   public DataNodeMetrics getMetrics() {
     return metrics;
   }
+
+  public VolumeLoadTracker getVolumeLoadTracker() {
+    return volumeLoadTracker;
+  }
   
   /** Ensure the authentication method is kerberos */
   private void checkKerberosAuthMethod(String msg) throws IOException {
@@ -109,14 +109,40 @@ int putMissing(ReceivedDeletedBlockInfo[] rdbis) {
    */
   private volatile boolean readyToSend = false;
 
-  /** The time interval between two IBRs. */
-  private final long ibrInterval;
+  /**
+   * When the IBR interval adapts to the NameNode load, the interval is this
+   * number of times the average duration of the recent IBR calls.
+   */
+  @VisibleForTesting
+  static final int ADAPTIVE_INTERVAL_FACTOR = 10;
+
+  /** The minimum time interval between two IBRs. */
+  private final long minIbrInterval;
+
+  /** The maximum time interval between two IBRs. */
+  private final long maxIbrInterval;
+
+  /** The current time interval between two IBRs. */
+  private volatile long ibrInterval;
+
+  /** The moving average of the durations of the IBR calls. */
+  private double avgIbrTime = 0;
 
   /** The timestamp of the last IBR. */
   private volatile long lastIBR;
 
-  IncrementalBlockReportManager(final long ibrInterval) {
-    this.ibrInterval = ibrInterval;
+  /**
+   * @param minIbrInterval the minimum interval between two IBRs.
+   * @param maxIbrInterval the maximum interval between two IBRs. When it is
+   *        greater than minIbrInterval, the interval adapts to the duration of
+   *        the IBR calls, so that the DN coalesces more blocks in each IBR
+   *        while the NN is loaded.
+   */
+  IncrementalBlockReportManager(final long minIbrInterval,
+      final long maxIbrInterval) {
+    this.minIbrInterval = minIbrInterval;
+    this.maxIbrInterval = Math.max(minIbrInterval, maxIbrInterval);
+    this.ibrInterval = minIbrInterval;
     this.lastIBR = monotonicNow() - ibrInterval;
   }
 
@@ -124,10 +150,33 @@ boolean sendImmediately() {
     return readyToSend && monotonicNow() - ibrInterval >= lastIBR;
   }
 
+  @VisibleForTesting
+  long getIbrInterval() {
+    return ibrInterval;
+  }
+
+  /** Adapt the IBR interval to the duration of the last IBR call. */
+  private void adaptIbrInterval(long ibrTime) {
+    if (maxIbrInterval == minIbrInterval) {
+      return;
+    }
+    avgIbrTime = avgIbrTime == 0 ? ibrTime : 0.75 * avgIbrTime + 0.25 * ibrTime;
+    final long interval = Math.min(maxIbrInterval, Math.max(minIbrInterval,
+        (long) (ADAPTIVE_INTERVAL_FACTOR * avgIbrTime)));
+    if (interval != ibrInterval) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("IBR interval changed from " + ibrInterval + " to "
+            + interval + " ms, average IBR time " + avgIbrTime + " ms");
+      }
+      ibrInterval = interval;
+    }
+  }
+
   synchronized void waitTillNextIBR(long waitTime) {
     if (waitTime > 0 && !sendImmediately()) {
+      final long interval = ibrInterval;
       try {
-        wait(ibrInterval > 0 && ibrInterval < waitTime? ibrInterval: waitTime);
+        wait(interval > 0 && interval < waitTime? interval: waitTime);
       } catch (InterruptedException ie) {
         LOG.warn(getClass().getSimpleName() + " interrupted");
       }
@@ -180,9 +229,11 @@ void sendIBRs(DatanodeProtocol namenode, DatanodeRegistration registration,
       namenode.blockReceivedAndDeleted(registration, bpid, reports);
       success = true;
     } finally {
-      metrics.addIncrementalBlockReport(monotonicNow() - startTime);
+      final long ibrTime = monotonicNow() - startTime;
+      metrics.addIncrementalBlockReport(ibrTime);
       if (success) {
         lastIBR = startTime;
+        adaptIbrInterval(ibrTime);
       } else {
         // If we didn't succeed in sending the report, put all of the
         // blocks back onto our queue, but only in the case where we
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Tracks the I/O load of the volumes of a DataNode: the latency of the I/Os
+ * of the block transfers, the number of those in progress and the rate of
+ * the bytes they transfer. The load is sent to the NameNodes with the
+ * storage reports of the heartbeats, so that the block placement policy can
+ * avoid the busy DataNodes.
+ * <p/>
+ * The latency and the transfer rate are measured over windows of at least
+ * {@link #MIN_WINDOW_MS}, so that the heartbeats sent to several NameNodes
+ * report the same load.
+ */
+@InterfaceAudience.Private
+public class VolumeLoadTracker {
+  static final long MIN_WINDOW_MS = 1000;
+
+  /** The load of a volume. */
+  private static class VolumeLoad {
+    private final AtomicInteger pendingIOs = new AtomicInteger();
+    private final AtomicLong ioCount = new AtomicLong();
+    private final AtomicLong ioNanos = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    // the values measured over the last window
+    private long windowStart = Time.monotonicNow();
+    private long ioLatencyMicros = 0;
+    private long transferRate = 0;
+
+    private synchronized void roll(long now) {
+      final long elapsed = now - windowStart;
+      if (elapsed < MIN_WINDOW_MS) {
+        return;
+      }
+      final long count = ioCount.getAndSet(0);
+      final long nanos = ioNanos.getAndSet(0);
+      ioLatencyMicros = count == 0 ? 0 : nanos / count / 1000;
+      transferRate = bytes.getAndSet(0) * 1000 / elapsed;
+      windowStart = now;
+    }
+  }
+
+  /** The load of the volumes, keyed by storage ID. */
+  private final ConcurrentMap<String, VolumeLoad> loads =
+      new ConcurrentHashMap<String, VolumeLoad>();
+
+  private VolumeLoad getLoad(String storageId) {
+    VolumeLoad load = loads.get(storageId);
+    if (load == null) {
+      final VolumeLoad newLoad = new VolumeLoad();
+      load = loads.putIfAbsent(storageId, newLoad);
+      if (load == null) {
+        load = newLoad;
+      }
+    }
+    return load;
+  }
+
+  /**
+   * An I/O on a volume begins. It must be ended with
+   * {@link #endIO(String, long, long)}.
+   */
+  public void beginIO(String storageId) {
+    getLoad(storageId).pendingIOs.incrementAndGet();
+  }
+
+  /**
+   * An I/O on a volume ended.
+   * @param nanos the time the I/O took
+   * @param bytes the bytes it read or wrote
+   */
+  public void endIO(String storageId, long nanos, long bytes) {
+    final VolumeLoad load = getLoad(storageId);
+    load.pendingIOs.decrementAndGet();
+    load.ioCount.incrementAndGet();
+    load.ioNanos.addAndGet(nanos);
+    load.bytes.addAndGet(bytes);
+  }
+
+  /**
+   * @return the storage reports with the load of their volumes
+   */
+  public StorageReport[] addLoads(StorageReport[] reports) {
+    final long now = Time.monotonicNow();
+    final StorageReport[] withLoads = new StorageReport[reports.length];
+    for (int i = 0; i < reports.length; i++) {
+      final StorageReport r = reports[i];
+      final VolumeLoad load = loads.get(r.getStorage().getStorageID());
+      if (load == null) {
+        withLoads[i] = r;
+        continue;
+      }
+      final long ioLatencyMicros;
+      final long transferRate;
+      synchronized (load) {
+        load.roll(now);
+        ioLatencyMicros = load.ioLatencyMicros;
+        transferRate = load.transferRate;
+      }
+      withLoads[i] = new StorageReport(r.getStorage(), r.isFailed(),
+          r.getCapacity(), r.getDfsUsed(), r.getRemaining(),
+          r.getBlockPoolUsed(), r.getNonDfsUsed(), ioLatencyMicros,
+          load.pendingIOs.get(), transferRate);
+    }
+    return withLoads;
+  }
+}
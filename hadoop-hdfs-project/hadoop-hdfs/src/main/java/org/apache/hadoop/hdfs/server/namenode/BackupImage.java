@@ -231,7 +231,8 @@ private synchronized void applyEdits(long firstTxId, int numTxns, byte[] data)
 
       FSImage.updateCountForQuota(
           getNamesystem().dir.getBlockStoragePolicySuite(),
-          getNamesystem().dir.rootDir); // inefficient!
+          getNamesystem().dir.rootDir,
+          getNamesystem().dir.isContentSummaryCacheEnabled()); // inefficient!
     } finally {
       backupInputStream.clear();
     }
@@ -107,6 +107,12 @@ protected InetSocketAddress getServiceRpcServerAddress(Configuration conf) {
     return NetUtils.createSocketAddr(addr);
   }
 
+  @Override // NameNode
+  protected InetSocketAddress getLifelineRpcServerAddress(Configuration conf) {
+    // The backup node does not receive the lifelines of the datanodes
+    return null;
+  }
+
   @Override // NameNode
   protected void setRpcServerAddress(Configuration conf,
       InetSocketAddress addr) {
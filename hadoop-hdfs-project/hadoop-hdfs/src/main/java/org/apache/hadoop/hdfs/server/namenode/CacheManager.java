@@ -25,6 +25,10 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIST_CACHE_POOLS_NUM_RESPONSES_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT;
 
 import java.io.DataInput;
 import java.io.DataOutputStream;
@@ -157,6 +161,18 @@ public final class CacheManager {
    */
   private final long scanIntervalMs;
 
+  /**
+   * Whether rescans only recompute the directives affected by namespace
+   * changes, between full rescans.
+   */
+  private final boolean incrementalRescan;
+
+  /**
+   * Interval between full scans in milliseconds, if incremental rescans are
+   * enabled.
+   */
+  private final long fullScanIntervalMs;
+
   /**
    * All cached blocks.
    */
@@ -201,6 +217,12 @@ public PersistState(CacheManagerSection section,
     scanIntervalMs = conf.getLong(
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS,
         DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS_DEFAULT);
+    incrementalRescan = conf.getBoolean(
+        DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN,
+        DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN_DEFAULT);
+    fullScanIntervalMs = conf.getLong(
+        DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS,
+        DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS_DEFAULT);
     float cachedBlocksPercent = conf.getFloat(
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT,
           DFS_NAMENODE_PATH_BASED_CACHE_BLOCK_MAP_ALLOCATION_PERCENT_DEFAULT);
@@ -231,7 +253,11 @@ public void startMonitorThread() {
     try {
       if (this.monitor == null) {
         this.monitor = new CacheReplicationMonitor(namesystem, this,
-            scanIntervalMs, crmLock);
+            scanIntervalMs, incrementalRescan ? fullScanIntervalMs : 0,
+            crmLock);
+        if (incrementalRescan) {
+          namesystem.getEditLog().setCacheReplicationMonitor(monitor);
+        }
         this.monitor.start();
       }
     } finally {
@@ -245,6 +271,9 @@ public void stopMonitorThread() {
       if (this.monitor != null) {
         CacheReplicationMonitor prevMonitor = this.monitor;
         this.monitor = null;
+        if (incrementalRescan) {
+          namesystem.getEditLog().setCacheReplicationMonitor(null);
+        }
         IOUtils.closeQuietly(prevMonitor);
       }
     } finally {
@@ -274,6 +303,40 @@ public Collection<CacheDirective> getCacheDirectives() {
     assert namesystem.hasReadLock();
     return Collections.unmodifiableCollection(directivesById.values());
   }
+
+  /**
+   * Add the CacheDirectives which may apply to different files after a change
+   * to the given path: the directives of the path itself, of its parent, and
+   * of the paths below it.
+   *
+   * @param path The changed path.
+   * @param directives The collection to add the directives to.
+   */
+  public void addCacheDirectivesAffectedBy(String path,
+      Collection<CacheDirective> directives) {
+    assert namesystem.hasReadLock();
+    if (path.equals(Path.SEPARATOR)) {
+      directives.addAll(directivesById.values());
+      return;
+    }
+    addCacheDirectivesOf(path, directives);
+    int lastSlash = path.lastIndexOf(Path.SEPARATOR_CHAR);
+    addCacheDirectivesOf(lastSlash <= 0 ? Path.SEPARATOR :
+        path.substring(0, lastSlash), directives);
+    for (List<CacheDirective> below : directivesByPath.subMap(
+        path + Path.SEPARATOR_CHAR, path + (char) (Path.SEPARATOR_CHAR + 1))
+        .values()) {
+      directives.addAll(below);
+    }
+  }
+
+  private void addCacheDirectivesOf(String path,
+      Collection<CacheDirective> directives) {
+    List<CacheDirective> ofPath = directivesByPath.get(path);
+    if (ofPath != null) {
+      directives.addAll(ofPath);
+    }
+  }
   
   @VisibleForTesting
   public GSet<CachedBlock, CachedBlock> getCachedBlocks() {
@@ -1194,6 +1257,16 @@ private void loadDirectives(DataInput in) throws IOException {
     }
   }
 
+  @VisibleForTesting
+  public CacheReplicationMonitor getCacheReplicationMonitor() {
+    crmLock.lock();
+    try {
+      return monitor;
+    } finally {
+      crmLock.unlock();
+    }
+  }
+
   public void waitForRescanIfNeeded() {
     crmLock.lock();
     try {
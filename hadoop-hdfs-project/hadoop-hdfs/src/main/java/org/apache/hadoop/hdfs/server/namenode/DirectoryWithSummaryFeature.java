@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.fs.ContentSummary;
+
+/**
+ * Content summary feature for {@link INodeDirectory}.
+ *
+ * It keeps the usage of the subtree rooted at the directory, like
+ * {@link DirectoryWithQuotaFeature} does for the directories with quota, so
+ * that the content summary of the directory can be returned without
+ * traversing the subtree. The usage is updated along with the quota usage on
+ * every change of the namespace. Since the quota usage counts the last block
+ * of a file under construction with the preferred block size, so do the
+ * length and the storage type usage kept here; the difference is removed when
+ * the summary is returned.
+ *
+ * The quota usage also counts the inodes and blocks only kept by snapshots,
+ * which the content summary does not count the same way. So the summary of a
+ * subtree which contains a snapshottable directory, or an inode renamed out of
+ * a snapshottable directory, is not kept exact; it is computed instead.
+ */
+public final class DirectoryWithSummaryFeature implements INode.Feature {
+  private QuotaCounts usage;
+  /**
+   * Whether the subtree may hold snapshot data. It is only reset when the
+   * summaries are computed again, when the namespace is loaded.
+   */
+  private boolean withSnapshotData = false;
+
+  DirectoryWithSummaryFeature(QuotaCounts usage, boolean withSnapshotData) {
+    this.usage = new QuotaCounts.Builder().quotaCount(usage).build();
+    this.withSnapshotData = withSnapshotData;
+  }
+
+  /** Update the usage of the subtree. */
+  void addSpaceConsumed(QuotaCounts delta) {
+    usage.add(delta);
+  }
+
+  /** Set the usage of the subtree. Only used when it is fully computed. */
+  void setSpaceConsumed(QuotaCounts c) {
+    usage = new QuotaCounts.Builder().quotaCount(c).build();
+  }
+
+  /** Mark the subtree as possibly holding snapshot data. */
+  void setWithSnapshotData() {
+    withSnapshotData = true;
+  }
+
+  /**
+   * @return true if the subtree may hold snapshot data, so that its usage
+   *         may differ from its content summary.
+   */
+  boolean isWithSnapshotData() {
+    return withSnapshotData;
+  }
+
+  /** @return the usage of the subtree rooted at the directory. */
+  public QuotaCounts getSpaceConsumed() {
+    return new QuotaCounts.Builder().quotaCount(usage).build();
+  }
+
+  /**
+   * @param quota the quota of the directory
+   * @param ucCorrection the usage of the last blocks under construction
+   *                     in the subtree beyond what the namenode knows of
+   * @return the content summary of the directory.
+   */
+  ContentSummary toContentSummary(QuotaCounts quota,
+      QuotaCounts ucCorrection) {
+    final QuotaCounts usage = getSpaceConsumed();
+    usage.subtract(ucCorrection);
+    return new ContentSummary.Builder().
+        length(usage.getLength()).
+        fileCount(usage.getNameSpace() - usage.getDirectoryCount()).
+        directoryCount(usage.getDirectoryCount()).
+        quota(quota.getNameSpace()).
+        spaceConsumed(usage.getStorageSpace()).
+        spaceQuota(quota.getStorageSpace()).
+        typeConsumed(usage.getTypeSpaces().asArray()).
+        typeQuota(quota.getTypeSpaces().asArray()).
+        build();
+  }
+
+  @Override
+  public String toString() {
+    return "Summary[namespace=" + usage.getNameSpace()
+        + ", directories=" + usage.getDirectoryCount()
+        + ", length=" + usage.getLength()
+        + ", storagespace=" + usage.getStorageSpace() + "]";
+  }
+}
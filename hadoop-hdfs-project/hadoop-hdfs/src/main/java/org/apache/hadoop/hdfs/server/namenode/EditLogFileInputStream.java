@@ -49,6 +49,7 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.protobuf.ByteString;
 
 /**
  * An implementation of the abstract class {@link EditLogInputStream}, which
@@ -62,6 +63,7 @@ public class EditLogFileInputStream extends EditLogInputStream {
   private final long lastTxId;
   private final boolean isInProgress;
   private int maxOpSize;
+  private boolean reuseOps = true;
   static private enum State {
     UNINIT,
     OPEN,
@@ -121,6 +123,28 @@ public static EditLogInputStream fromUrl(
     return new EditLogFileInputStream(new URLLog(connectionFactory, url),
         startTxId, endTxId, inProgress);
   }
+
+  /**
+   * Open an EditLogInputStream for serialized edits held in memory, e.g. the
+   * edits returned by a JournalNode from its cache.
+   *
+   * @param data
+   *          the edit log header followed by the transactions
+   * @param name
+   *          the name of the source of the edits
+   * @param startTxId
+   *          the expected starting txid
+   * @param endTxId
+   *          the last txid to read
+   * @param inProgress
+   *          whether the edits come from an in-progress log
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteString(ByteString data,
+      String name, long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteStringLog(data, name),
+        startTxId, endTxId, inProgress);
+  }
   
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
@@ -160,6 +184,9 @@ private void init(boolean verifyLayoutVersion)
       }
       reader = new FSEditLogOp.Reader(dataIn, tracker, logVersion);
       reader.setMaxOpSize(maxOpSize);
+      if (!reuseOps) {
+        reader.disableOpReuse();
+      }
       state = State.OPEN;
     } finally {
       if (reader == null) {
@@ -219,6 +246,7 @@ private FSEditLogOp nextOpImpl(boolean skipBrokenEdits) throws IOException {
           // we were supposed to read out of the stream.
           // So we force an EOF on all subsequent reads.
           //
+          reader.skipBatchedOps();
           long skipAmt = log.length() - tracker.getPos();
           if (skipAmt > 0) {
             if (LOG.isDebugEnabled()) {
@@ -383,7 +411,8 @@ static int readLogVersion(DataInputStream in, boolean verifyLayoutVersion)
           "Reached EOF when reading log header");
     }
     if (verifyLayoutVersion &&
-        (logVersion < HdfsConstants.NAMENODE_LAYOUT_VERSION || // future version
+        ((logVersion < HdfsConstants.NAMENODE_LAYOUT_VERSION && // future version
+          logVersion != NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION) ||
          logVersion > Storage.LAST_UPGRADABLE_LAYOUT_VERSION)) { // unsupported
       throw new LogHeaderCorruptException(
           "Unexpected version of the file system log file: "
@@ -436,6 +465,31 @@ public String getName() {
     }
   }
 
+  private static class ByteStringLog implements LogSource {
+    private final ByteString data;
+    private final String name;
+
+    public ByteStringLog(ByteString data, String name) {
+      this.data = data;
+      this.name = name;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return data.newInput();
+    }
+
+    @Override
+    public long length() {
+      return data.size();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
@@ -508,6 +562,15 @@ public void setMaxOpSize(int maxOpSize) {
     }
   }
 
+  @Override
+  public boolean disableOpReuse() {
+    this.reuseOps = false;
+    if (reader != null) {
+      reader.disableOpReuse();
+    }
+    return true;
+  }
+
   @Override
   public boolean isLocalLog() {
     return log instanceof FileLog;
@@ -51,6 +51,7 @@ public class EditLogFileOutputStream extends EditLogOutputStream {
   private EditsDoubleBuffer doubleBuf;
   static final ByteBuffer fill = ByteBuffer.allocateDirect(MIN_PREALLOCATION_LENGTH);
   private boolean shouldSyncWritesAndSkipFsync = false;
+  private final boolean compressEdits;
 
   private static boolean shouldSkipFsyncForTests = false;
 
@@ -78,6 +79,9 @@ public EditLogFileOutputStream(Configuration conf, File name, int size)
     shouldSyncWritesAndSkipFsync = conf.getBoolean(
             DFSConfigKeys.DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH,
             DFSConfigKeys.DFS_NAMENODE_EDITS_NOEDITLOGCHANNELFLUSH_DEFAULT);
+    compressEdits = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_DEFAULT);
 
     file = name;
     doubleBuf = new EditsDoubleBuffer(size);
@@ -120,6 +124,10 @@ public void create(int layoutVersion) throws IOException {
     writeHeader(layoutVersion, doubleBuf.getCurrentBuf());
     setReadyToFlush();
     flush();
+    if (NameNodeLayoutVersion.supports(
+        NameNodeLayoutVersion.Feature.COMPACT_EDITS, layoutVersion)) {
+      doubleBuf.setCompactEncoding(compressEdits);
+    }
   }
 
   /**
@@ -204,6 +204,16 @@ FSEditLogOp getCachedOp() {
    */
   public abstract void setMaxOpSize(int maxOpSize);
 
+  /**
+   * Return a new op from each call to {@link #readOp()}, instead of re-using
+   * the ops, so that an op can still be used after the next one is read.
+   *
+   * @return false if the stream does not support it
+   */
+  public boolean disableOpReuse() {
+    return false;
+  }
+
   /**
    * Returns true if we are currently reading the log from a local disk or an
    * even faster data source (e.g. a byte buffer).
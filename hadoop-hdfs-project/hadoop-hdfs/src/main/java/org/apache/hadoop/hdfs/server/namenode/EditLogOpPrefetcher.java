@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads the ops of an edit log in a separate thread, ahead of the
+ * {@link FSEditLogLoader} which applies them. Decoding the next ops, and
+ * verifying their checksums, overlaps with applying the current one, while
+ * the ops are still applied in order: they are handed over through a bounded
+ * queue.
+ * <p>
+ * The stream must return a new op from each read, see
+ * {@link EditLogInputStream#disableOpReuse()}, and must not be used by any
+ * other thread until the prefetcher is stopped.
+ */
+class EditLogOpPrefetcher implements Runnable {
+
+  /** An op read from the stream, the end of the stream, or an error. */
+  private static class Entry {
+    private final FSEditLogOp op;
+    private final long position;
+    private final int logVersion;
+    private final Throwable error;
+
+    Entry(FSEditLogOp op, long position, int logVersion, Throwable error) {
+      this.op = op;
+      this.position = position;
+      this.logVersion = logVersion;
+      this.error = error;
+    }
+  }
+
+  private final EditLogInputStream in;
+  private final BlockingQueue<Entry> queue;
+  private final Daemon thread;
+  private volatile boolean stopped = false;
+  /** The last entry returned by {@link #readOp()}. */
+  private Entry current = null;
+
+  EditLogOpPrefetcher(EditLogInputStream in, int queueSize) {
+    Preconditions.checkArgument(queueSize > 0,
+        "The queue size must be positive");
+    this.in = in;
+    this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+    this.thread = new Daemon(this);
+    this.thread.setName("EditLogOpPrefetcher for " + in.getName());
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!stopped) {
+        Entry entry;
+        try {
+          final FSEditLogOp op = in.readOp();
+          entry = op == null ? new Entry(null, in.getPosition(), 0, null) :
+              new Entry(op, in.getPosition(), in.getVersion(true), null);
+        } catch (Throwable t) {
+          entry = new Entry(null, -1, 0, t);
+        }
+        queue.put(entry);
+        if (entry.op == null) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // stopped by the loader
+    }
+  }
+
+  /**
+   * Get the next op of the stream, like {@link EditLogInputStream#readOp()}.
+   *
+   * @return the next op, or null at the end of the stream
+   * @throws IOException if the stream failed to read the op. The prefetcher
+   *         stops reading after the first error.
+   */
+  FSEditLogOp readOp() throws IOException {
+    Preconditions.checkState(current == null || current.op != null,
+        "Read past the end of the stream");
+    try {
+      current = queue.take();
+    } catch (InterruptedException e) {
+      throw (IOException) new InterruptedIOException(
+          "Interrupted while waiting for the next edit log op").initCause(e);
+    }
+    final Throwable error = current.error;
+    if (error == null) {
+      return current.op;
+    } else if (error instanceof IOException) {
+      throw (IOException) error;
+    } else if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error instanceof Error) {
+      throw (Error) error;
+    }
+    throw new IOException(error);
+  }
+
+  /** @return the position in the stream after the last op read. */
+  long getPosition() {
+    return current.position;
+  }
+
+  /** @return the layout version of the last op read. */
+  int getVersion() {
+    return current.logVersion;
+  }
+
+  /**
+   * Stop reading ahead, and wait for the reading thread to exit. The stream
+   * may be used again when this returns.
+   */
+  void stop() {
+    stopped = true;
+    thread.interrupt();
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    queue.clear();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -41,6 +41,7 @@ public class EditsDoubleBuffer {
   private TxnBuffer bufCurrent; // current buffer for writing
   private TxnBuffer bufReady; // buffer ready for flushing
   private final int initBufferSize;
+  private FSEditLogOp.CompactWriter compactWriter;
 
   public EditsDoubleBuffer(int defaultBufferSize) {
     initBufferSize = defaultBufferSize;
@@ -48,6 +49,20 @@ public EditsDoubleBuffer(int defaultBufferSize) {
     bufReady = new TxnBuffer(initBufferSize);
 
   }
+
+  /**
+   * Flush the ops written by {@link #writeOp(FSEditLogOp)} in the compact
+   * encoding of {@link NameNodeLayoutVersion.Feature#COMPACT_EDITS}, which
+   * the caller must check the layout version of the log supports, i.e. that
+   * it is {@link NameNodeLayoutVersion#COMPACT_EDITS_LAYOUT_VERSION}. Buffers
+   * holding any other data, such as the header of the log or edits written
+   * by {@link #writeRaw(byte[], int, int)}, are still flushed as they are.
+   *
+   * @param compress whether to compress the batches of ops
+   */
+  public void setCompactEncoding(boolean compress) {
+    compactWriter = new FSEditLogOp.CompactWriter(compress);
+  }
     
   public void writeOp(FSEditLogOp op) throws IOException {
     bufCurrent.writeOp(op);
@@ -83,7 +98,12 @@ public void setReadyToFlush() {
    * and resets it. Does not swap any buffers.
    */
   public void flushTo(OutputStream out) throws IOException {
-    bufReady.writeTo(out); // write data to file
+    if (compactWriter != null && bufReady.numTxns > 0 &&
+        bufReady.opsLength == bufReady.size()) {
+      compactWriter.writeOps(bufReady.getData(), bufReady.size(), out);
+    } else {
+      bufReady.writeTo(out); // write data to file
+    }
     bufReady.reset(); // erase all data in the buffer
   }
   
@@ -132,6 +152,8 @@ public int countReadyBytes() {
   private static class TxnBuffer extends DataOutputBuffer {
     long firstTxId;
     int numTxns;
+    /** The number of bytes written by {@link #writeOp(FSEditLogOp)}. */
+    int opsLength;
     private final Writer writer;
     
     public TxnBuffer(int initBufferSize) {
@@ -146,7 +168,9 @@ public void writeOp(FSEditLogOp op) throws IOException {
       } else {
         assert op.txid > firstTxId;
       }
+      final int start = size();
       writer.writeOp(op);
+      opsLength += size() - start;
       numTxns++;
     }
     
@@ -155,6 +179,7 @@ public DataOutputBuffer reset() {
       super.reset();
       firstTxId = HdfsConstants.INVALID_TXID;
       numTxns = 0;
+      opsLength = 0;
       return this;
     }
   }
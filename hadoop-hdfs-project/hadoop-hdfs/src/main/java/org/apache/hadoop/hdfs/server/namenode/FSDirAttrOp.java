@@ -418,6 +418,7 @@ static void unprotectedSetStoragePolicy(
           + iip.getPath());
     }
     final int snapshotId = iip.getLatestSnapshotId();
+    final QuotaCounts oldUsage = fsd.getUsageForSummaries(inode);
     if (inode.isFile()) {
       BlockStoragePolicy newPolicy = bm.getStoragePolicy(policyId);
       if (newPolicy.isCopyOnCreateFile()) {
@@ -440,6 +441,7 @@ static void unprotectedSetStoragePolicy(
       throw new FileNotFoundException(iip.getPath()
           + " is not a file or directory");
     }
+    fsd.updateSummariesForStoragePolicy(iip, oldUsage);
   }
 
   private static void setDirStoragePolicy(
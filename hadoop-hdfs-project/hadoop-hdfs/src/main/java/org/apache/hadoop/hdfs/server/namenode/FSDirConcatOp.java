@@ -170,6 +170,8 @@ private static QuotaCounts computeQuotaDeltas(FSDirectory fsd,
     QuotaCounts deltas = new QuotaCounts.Builder().build();
     final short targetRepl = target.getBlockReplication();
     for (INodeFile src : srcList) {
+      // the source files are removed
+      deltas.addNameSpace(-1);
       short srcRepl = src.getBlockReplication();
       long fileSize = src.computeFileSize();
       if (targetRepl != srcRepl) {
@@ -20,6 +20,7 @@
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.InvalidPathException;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.UnresolvedLinkException;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.FsAction;
@@ -50,7 +51,12 @@ static HdfsFileStatus mkdirs(FSNamesystem fsn, String src,
       throw new InvalidPathException(src);
     }
     FSPermissionChecker pc = fsd.getPermissionChecker();
-    fsd.writeLock();
+    // a fine-grained writer only takes the directory lock while it adds the
+    // new inodes, see createSingleDirectory
+    final boolean fineGrained = fsd.hasFineGrainedWriteLock();
+    if (!fineGrained) {
+      fsd.writeLock();
+    }
     try {
       INodesInPath iip = fsd.resolvePathForWrite(pc, src);
       src = iip.getPath();
@@ -99,7 +105,9 @@ static HdfsFileStatus mkdirs(FSNamesystem fsn, String src,
       }
       return fsd.getAuditFileInfo(existing);
     } finally {
-      fsd.writeUnlock();
+      if (!fineGrained) {
+        fsd.writeUnlock();
+      }
     }
   }
 
@@ -158,7 +166,7 @@ static Map.Entry<INodesInPath, String> createAncestorDirectories(
   private static INodesInPath createChildrenDirectories(FSDirectory fsd,
       INodesInPath existing, List<String> children, PermissionStatus perm)
       throws IOException {
-    assert fsd.hasWriteLock();
+    assert fsd.hasWriteLock() || fsd.hasFineGrainedWriteLock();
 
     for (String component : children) {
       existing = createSingleDirectory(fsd, existing, component, perm);
@@ -185,6 +193,45 @@ static void mkdirForEditLog(FSDirectory fsd, long inodeId, String src,
   private static INodesInPath createSingleDirectory(FSDirectory fsd,
       INodesInPath existing, String localName, PermissionStatus perm)
       throws IOException {
+    if (!fsd.hasFineGrainedWriteLock()) {
+      return createSingleDirectoryLocked(fsd, existing, localName, perm);
+    }
+    final INode parent = existing.getLastINode();
+    if (!parent.isDirectory()) {
+      throw new FileAlreadyExistsException("Parent path is not a directory: " +
+          existing.getPath() + " " + localName);
+    }
+    // Hold the parent's inode lock until the edit is logged, so that nobody
+    // can create a child of the new directory and log it before this mkdir.
+    final INodeLockManager inodeLocks = fsd.getINodeLockManager();
+    inodeLocks.writeLock(parent);
+    try {
+      // another fine-grained writer may have created the directory since the
+      // path was resolved
+      final byte[] name = DFSUtil.string2Bytes(localName);
+      final INode child = parent.asDirectory().getChild(name,
+          Snapshot.CURRENT_STATE_ID);
+      if (child != null) {
+        if (!child.isDirectory()) {
+          throw new FileAlreadyExistsException("Path is not a directory: " +
+              new Path(existing.getPath(), localName));
+        }
+        return INodesInPath.append(existing, child, name);
+      }
+      fsd.writeLock();
+      try {
+        return createSingleDirectoryLocked(fsd, existing, localName, perm);
+      } finally {
+        fsd.writeUnlock();
+      }
+    } finally {
+      inodeLocks.writeUnlock(parent);
+    }
+  }
+
+  private static INodesInPath createSingleDirectoryLocked(FSDirectory fsd,
+      INodesInPath existing, String localName, PermissionStatus perm)
+      throws IOException {
     assert fsd.hasWriteLock();
     existing = unprotectedMkdir(fsd, fsd.allocateNewInodeId(), existing,
         DFSUtil.string2Bytes(localName), perm, null, now());
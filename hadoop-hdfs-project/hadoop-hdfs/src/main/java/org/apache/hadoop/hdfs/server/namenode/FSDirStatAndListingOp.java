@@ -18,14 +18,18 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite.ID_UNSPECIFIED;
+
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.DirectoryListingStartAfterNotFoundException;
 import org.apache.hadoop.fs.FileEncryptionInfo;
 import org.apache.hadoop.fs.InvalidPathException;
+import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.FsPermissionExtension;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -34,6 +38,8 @@
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguousUnderConstruction;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectorySnapshottableFeature;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
@@ -498,6 +504,74 @@ private static FsPermission getPermissionForFileStatus(
     return perm;
   }
 
+  /**
+   * Get the content summary kept by a directory, see
+   * {@link DirectoryWithSummaryFeature}. It is not kept exact, and has to be
+   * computed, for the directories in or above a snapshottable directory, or
+   * above an inode renamed out of a snapshottable directory.
+   *
+   * @return the content summary of the directory, or null if it is not kept.
+   */
+  private static ContentSummary getCachedContentSummary(FSDirectory fsd,
+      INodesInPath iip) throws IOException {
+    final INode inode = iip.getLastINode();
+    if (!inode.isDirectory() || iip.isSnapshot()) {
+      return null;
+    }
+    for (int i = 0; i < iip.length(); i++) {
+      final INode ancestor = iip.getINode(i);
+      if (ancestor.isReference() || (ancestor.isDirectory()
+          && ancestor.asDirectory().isSnapshottable())) {
+        return null;
+      }
+    }
+    final INodeDirectory dir = inode.asDirectory();
+    final DirectoryWithSummaryFeature s = dir.getDirectoryWithSummaryFeature();
+    if (s == null || s.isWithSnapshotData()) {
+      return null;
+    }
+    return s.toContentSummary(dir.getQuotaCounts(),
+        getUsageOfUcBlocksBeyondLength(fsd, dir));
+  }
+
+  /**
+   * The summaries count the last block of a file under construction with the
+   * preferred block size, like the quota usage does, while the computed
+   * summary counts its length and storage type usage with the bytes known by
+   * the namenode. Get that difference for the files under construction of the
+   * tree rooted at dir, which the lease manager finds by path.
+   */
+  private static QuotaCounts getUsageOfUcBlocksBeyondLength(FSDirectory fsd,
+      INodeDirectory dir) throws IOException {
+    final QuotaCounts counts = new QuotaCounts.Builder().build();
+    final BlockStoragePolicySuite bsps = fsd.getBlockStoragePolicySuite();
+    for (String path : fsd.getFSNamesystem().getLeaseManager()
+        .getPathsUnderConstruction(dir.getFullPathName())) {
+      final INode inode = fsd.getINode(path);
+      if (inode == null || !inode.isFile()) {
+        continue;
+      }
+      final INodeFile file = inode.asFile();
+      final BlockInfoContiguous lastBlock = file.getLastBlock();
+      if (!(lastBlock instanceof BlockInfoContiguousUnderConstruction)) {
+        continue;
+      }
+      final long diff = file.getPreferredBlockSize() - lastBlock.getNumBytes();
+      counts.addLength(diff);
+      if (file.getStoragePolicyID() != ID_UNSPECIFIED) {
+        final BlockStoragePolicy bsp =
+            bsps.getPolicy(file.getStoragePolicyID());
+        for (StorageType t :
+            bsp.chooseStorageTypes(file.getFileReplication())) {
+          if (t.supportTypeQuota()) {
+            counts.addTypeSpace(t, diff);
+          }
+        }
+      }
+    }
+    return counts;
+  }
+
   private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       INodesInPath iip) throws IOException {
     fsd.readLock();
@@ -506,7 +580,10 @@ private static ContentSummary getContentSummaryInt(FSDirectory fsd,
       if (targetNode == null) {
         throw new FileNotFoundException("File does not exist: " + iip.getPath());
       }
-      else {
+      final ContentSummary cached = getCachedContentSummary(fsd, iip);
+      if (cached != null) {
+        return cached;
+      } else {
         // Make it relinquish locks everytime contentCountLimit entries are
         // processed. 0 means disabled. I.e. blocking for the entire duration.
         ContentSummaryComputationContext cscc =
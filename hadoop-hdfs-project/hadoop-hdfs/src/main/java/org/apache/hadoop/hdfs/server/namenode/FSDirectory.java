@@ -143,6 +143,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  // whether every directory keeps the content summary of its subtree
+  private final boolean contentSummaryCacheEnabled;
   private final INodeMap inodeMap; // Synchronized by dirLock
   private long yieldCount = 0; // keep track of lock yield count.
 
@@ -150,6 +152,8 @@ private static INodeDirectory createRoot(FSNamesystem namesystem) {
 
   // lock to protect the directory and BlockMap
   private final ReentrantReadWriteLock dirLock;
+  // per-inode locks for fine-grained writers, null if disabled
+  private final INodeLockManager inodeLocks;
 
   private final boolean isPermissionEnabled;
   /**
@@ -213,6 +217,20 @@ public int getWriteHoldCount() {
     return this.dirLock.getWriteHoldCount();
   }
 
+  /**
+   * @return true if the current thread modifies the namespace under the
+   *         fine-grained write lock of the namesystem. Such a thread does not
+   *         hold {@link #dirLock} for the whole operation, but only while it
+   *         updates the state shared by all directories.
+   */
+  boolean hasFineGrainedWriteLock() {
+    return inodeLocks != null && namesystem.hasFineGrainedWriteLock();
+  }
+
+  INodeLockManager getINodeLockManager() {
+    return inodeLocks;
+  }
+
   @VisibleForTesting
   public final EncryptionZoneManager ezManager;
 
@@ -224,6 +242,11 @@ public int getWriteHoldCount() {
 
   FSDirectory(FSNamesystem ns, Configuration conf) throws IOException {
     this.dirLock = new ReentrantReadWriteLock(true); // fair
+    this.inodeLocks = ns.isFineGrainedLockingEnabled() ?
+        new INodeLockManager(conf.getInt(
+            DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_KEY,
+            DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_DEFAULT)) :
+        null;
     this.inodeId = new INodeId();
     rootDir = createRoot(ns);
     inodeMap = INodeMap.newInstance(rootDir);
@@ -274,6 +297,9 @@ public int getWriteHoldCount() {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.contentSummaryCacheEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT);
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -359,6 +385,10 @@ long getContentSleepMicroSec() {
     return contentSleepMicroSec;
   }
 
+  boolean isContentSummaryCacheEnabled() {
+    return contentSummaryCacheEnabled;
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -584,7 +614,20 @@ INodesInPath resolvePath(FSPermissionChecker pc, String src,
       pc.checkSuperuserPrivilege();
     }
     components = resolveComponents(components, this);
-    return INodesInPath.resolve(rootDir, components, resolveLink);
+    if (inodeLocks == null || hasReadLock()) {
+      return INodesInPath.resolve(rootDir, components, resolveLink, null);
+    } else if (hasFineGrainedWriteLock()) {
+      return INodesInPath.resolve(rootDir, components, resolveLink,
+          inodeLocks);
+    }
+    // A reader of a path may run alongside fine-grained writers of other
+    // paths, which only modify the children lists under the write lock.
+    readLock();
+    try {
+      return INodesInPath.resolve(rootDir, components, resolveLink, null);
+    } finally {
+      readUnlock();
+    }
   }
 
   INodesInPath resolvePathForWrite(FSPermissionChecker pc, String src)
@@ -724,7 +767,7 @@ void updateCount(INodesInPath iip, long nsDelta, long ssDelta, short replication
           replication, replication);;
     updateCount(iip, iip.length() - 1,
       new QuotaCounts.Builder().nameSpace(nsDelta).storageSpace(ssDelta * replication).
-          typeSpaces(typeSpaceDeltas).build(),
+          typeSpaces(typeSpaceDeltas).length(ssDelta).build(),
         checkQuota);
   }
 
@@ -789,13 +832,114 @@ void updateCountNoQuotaCheck(INodesInPath inodesInPath,
   static void unprotectedUpdateCount(INodesInPath inodesInPath,
       int numOfINodes, QuotaCounts counts) {
     for(int i=0; i < numOfINodes; i++) {
-      if (inodesInPath.getINode(i).isQuotaSet()) { // a directory with quota
-        inodesInPath.getINode(i).asDirectory().getDirectoryWithQuotaFeature()
-            .addSpaceConsumed2Cache(counts);
+      final INode inode = inodesInPath.getINode(i);
+      if (inode.isDirectory()) { // a directory with quota or summary
+        inode.asDirectory().addSpaceConsumed2Cache(counts);
+      }
+    }
+  }
+
+  /**
+   * @return the usage of the subtree rooted at the inode, to be passed to
+   *         {@link #updateSummariesForStoragePolicy(INodesInPath, QuotaCounts)}
+   *         once its storage policy is changed; or null if the content
+   *         summaries are not kept.
+   */
+  QuotaCounts getUsageForSummaries(INode inode) {
+    if (!contentSummaryCacheEnabled || !namesystem.isImageLoaded()) {
+      return null;
+    }
+    return inode.computeQuotaUsage(getBlockStoragePolicySuite(),
+        new QuotaCounts.Builder().build(), false);
+  }
+
+  /**
+   * Update the content summaries after the storage policy of the last inode
+   * of iip has changed, which changes the storage type usage of its subtree.
+   * The quota usage is not updated.
+   *
+   * @param oldUsage the usage returned by {@link #getUsageForSummaries(INode)}
+   *                 before the change
+   */
+  void updateSummariesForStoragePolicy(INodesInPath iip,
+      QuotaCounts oldUsage) {
+    assert hasWriteLock();
+    if (oldUsage == null) {
+      return;
+    }
+    final INode inode = iip.getLastINode();
+    final QuotaCounts delta = inode.isDirectory() ?
+        resetSummaries(inode.asDirectory(), inode.getStoragePolicyID()) :
+        inode.computeQuotaUsage(getBlockStoragePolicySuite(),
+            new QuotaCounts.Builder().build(), false);
+    delta.subtract(oldUsage);
+    for (int i = 0; i < iip.length() - 1; i++) {
+      final DirectoryWithSummaryFeature s =
+          iip.getINode(i).asDirectory().getDirectoryWithSummaryFeature();
+      if (s != null) {
+        s.addSpaceConsumed(delta);
       }
     }
   }
 
+  /**
+   * @return whether the subtree rooted at the inode may hold snapshot data,
+   *         see {@link DirectoryWithSummaryFeature}
+   */
+  private static boolean holdsSnapshotData(INode inode) {
+    if (inode.isReference()) {
+      return true;
+    } else if (!inode.isDirectory()) {
+      return false;
+    }
+    final INodeDirectory dir = inode.asDirectory();
+    final DirectoryWithSummaryFeature s = dir.getDirectoryWithSummaryFeature();
+    return dir.isSnapshottable() || (s != null && s.isWithSnapshotData());
+  }
+
+  /**
+   * Mark the content summaries of the directories of iip, whose subtrees now
+   * hold snapshot data, so that their summaries are computed from then on.
+   */
+  public void markSummariesWithSnapshotData(INodesInPath iip) {
+    if (!contentSummaryCacheEnabled) {
+      return;
+    }
+    for (int i = 0; i < iip.length(); i++) {
+      final INode inode = iip.getINode(i);
+      if (inode != null && inode.isDirectory()) {
+        final DirectoryWithSummaryFeature s =
+            inode.asDirectory().getDirectoryWithSummaryFeature();
+        if (s != null) {
+          s.setWithSnapshotData();
+        }
+      }
+    }
+  }
+
+  /**
+   * Compute and set the content summaries of all the directories of a subtree.
+   *
+   * @param policyId the storage policy of the root of the subtree
+   * @return the usage of the subtree.
+   */
+  private QuotaCounts resetSummaries(INodeDirectory dir, byte policyId) {
+    final BlockStoragePolicySuite bsps = getBlockStoragePolicySuite();
+    final QuotaCounts counts = new QuotaCounts.Builder().build();
+    dir.computeQuotaUsage4CurrentDirectory(bsps, policyId, counts);
+    for (INode child : dir.getChildrenList(CURRENT_STATE_ID)) {
+      final byte childPolicyId = child.getStoragePolicyIDForQuota(policyId);
+      if (child.isDirectory()) {
+        counts.add(resetSummaries(child.asDirectory(), childPolicyId));
+      } else {
+        child.computeQuotaUsage(bsps, childPolicyId, counts, false,
+            CURRENT_STATE_ID);
+      }
+    }
+    dir.setSummary(counts);
+    return counts;
+  }
+
   /**
    * Update the cached quota space for a block that is being completed.
    * Must only be called once, as the block is being completed.
@@ -1014,10 +1158,18 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
     // always verify inode name
     verifyINodeName(inode.getLocalNameBytes());
 
-    final QuotaCounts counts = inode.computeQuotaUsage(getBlockStoragePolicySuite());
+    boolean isRename = (inode.getParent() != null);
+    // a renamed inode may inherit a different storage policy from its new
+    // parent, so compute the storage type usage with that policy
+    final byte policyId =
+        inode.getStoragePolicyIDForQuota(parent.getStoragePolicyID());
+    final boolean policyChanged =
+        isRename && !inode.isSymlink() && policyId != inode.getStoragePolicyID();
+    final QuotaCounts counts = inode.computeQuotaUsage(
+        getBlockStoragePolicySuite(), policyId,
+        new QuotaCounts.Builder().build(), true, CURRENT_STATE_ID);
     updateCount(existing, pos, counts, checkQuota);
 
-    boolean isRename = (inode.getParent() != null);
     boolean added;
     try {
       added = parent.addChild(inode, true, existing.getLatestSnapshotId());
@@ -1032,6 +1184,21 @@ public INodesInPath addLastINode(INodesInPath existing, INode inode,
       if (!isRename) {
         AclStorage.copyINodeDefaultAcl(inode);
       }
+      // the summaries are set for all the directories once the image and the
+      // edits are loaded
+      if (contentSummaryCacheEnabled && namesystem.isImageLoaded()) {
+        if (inode.isDirectory()) {
+          final INodeDirectory dir = inode.asDirectory();
+          if (dir.getDirectoryWithSummaryFeature() == null) {
+            dir.setSummary(counts);
+          } else if (policyChanged) {
+            resetSummaries(dir, policyId);
+          }
+        }
+        if (isRename && holdsSnapshotData(inode)) {
+          markSummariesWithSnapshotData(existing);
+        }
+      }
       addToInodeMap(inode);
     }
     return INodesInPath.append(existing, inode, inode.getLocalNameBytes());
@@ -1172,6 +1339,7 @@ private void verifyQuotaForTruncate(INodesInPath iip, INodeFile file,
     final long diff = file.computeQuotaDeltaForTruncate(newLength);
     final short repl = file.getBlockReplication();
     delta.addStorageSpace(diff * repl);
+    delta.addLength(diff);
     final BlockStoragePolicy policy = getBlockStoragePolicySuite()
         .getPolicy(file.getStoragePolicyID());
     List<StorageType> types = policy.chooseStorageTypes(repl);
@@ -46,6 +46,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.apache.hadoop.hdfs.server.blockmanagement.CacheReplicationMonitor;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.Storage.FormatConfirmable;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
@@ -181,6 +182,8 @@ private enum State {
 
   private final NNStorage storage;
   private final Configuration conf;
+  /** Whether new segments are written in the compact encoding. */
+  private final boolean compactEdits;
   
   private final List<URI> editsDirs;
 
@@ -204,6 +207,12 @@ protected OpInstanceCache initialValue() {
    */
   private final Object journalSetLock = new Object();
 
+  /**
+   * Notified of the namespace changes written to the log, when incremental
+   * path cache rescans are enabled.
+   */
+  private volatile CacheReplicationMonitor cacheReplicationMonitor;
+
   private static class TransactionId {
     public long txid;
 
@@ -240,6 +249,25 @@ protected synchronized TransactionId initialValue() {
     this.editsDirs = Lists.newArrayList(editsDirs);
 
     this.sharedEditsDirs = FSNamesystem.getSharedEditsDirs(conf);
+    this.compactEdits = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPACT_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_COMPACT_DEFAULT);
+  }
+
+  /**
+   * Create the edit log of a NameNode. The log syncs edits of RPC calls in a
+   * background thread if
+   * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY} is set.
+   */
+  static FSEditLog newInstance(Configuration conf, NNStorage storage,
+      List<URI> editsDirs) {
+    boolean asyncEditLogging = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT);
+    LOG.info("Edit logging is async:" + asyncEditLogging);
+    return asyncEditLogging
+        ? new FSEditLogAsync(conf, storage, editsDirs)
+        : new FSEditLog(conf, storage, editsDirs);
   }
   
   public synchronized void initJournalsForWrite() {
@@ -312,7 +340,7 @@ synchronized void openForWrite() throws IOException {
     // Safety check: we should never start a segment if there are
     // newer txids readable.
     List<EditLogInputStream> streams = new ArrayList<EditLogInputStream>();
-    journalSet.selectInputStreams(streams, segmentTxId, true);
+    journalSet.selectInputStreams(streams, segmentTxId, true, false);
     if (!streams.isEmpty()) {
       String error = String.format("Cannot start writing at txid %s " +
         "when there is a stream available for read: %s",
@@ -456,6 +484,10 @@ assert isOpenForWrite() :
       } catch (IOException ex) {
         // All journals failed, it is handled in logSync.
       } finally {
+        final CacheReplicationMonitor crm = cacheReplicationMonitor;
+        if (crm != null) {
+          crm.namespaceChanged(op);
+        }
         op.reset();
       }
 
@@ -474,6 +506,32 @@ assert isOpenForWrite() :
     }
   }
 
+  /**
+   * Wait until a transaction has been synced to the journals, or until the
+   * timeout elapses.
+   *
+   * @return whether the transaction has been synced.
+   */
+  synchronized boolean waitForSyncTxId(long txid, long timeoutMs)
+      throws InterruptedException {
+    final long deadline = monotonicNow() + timeoutMs;
+    long remaining = timeoutMs;
+    while (synctxid < txid && remaining > 0) {
+      // logSync() notifies all the waiters after each sync
+      wait(remaining);
+      remaining = deadline - monotonicNow();
+    }
+    return synctxid >= txid;
+  }
+
+  /**
+   * Set the monitor to notify of the namespace changes written to the log, or
+   * null to stop notifying.
+   */
+  void setCacheReplicationMonitor(CacheReplicationMonitor crm) {
+    this.cacheReplicationMonitor = crm;
+  }
+
   /**
    * Wait if an automatic sync is scheduled
    */
@@ -537,6 +595,14 @@ public synchronized long getLastWrittenTxId() {
     return txid;
   }
 
+  /**
+   * @return the ID of the last transaction written by the current thread, or
+   *         {@link Long#MAX_VALUE} if the thread has not written any.
+   */
+  long getMyTxId() {
+    return myTransactionId.get().txid;
+  }
+
   /**
    * Return the transaction ID of the last transaction written to the log.
    * This method is not synchronized and must be used only for metrics.
@@ -624,11 +690,17 @@ void logSyncAll() {
    * waitForSyncToFinish() before assuming they are running alone.
    */
   public void logSync() {
+    // Fetch the transactionId of this thread. 
+    logSync(myTransactionId.get().txid);
+  }
+
+  /**
+   * Sync all modifications up to the given transaction ID. Blocks until the
+   * edits are durable, see {@link #logSync()}.
+   */
+  protected void logSync(long mytxid) {
     long syncStart = 0;
 
-    // Fetch the transactionId of this thread. 
-    long mytxid = myTransactionId.get().txid;
-    
     boolean sync = false;
     try {
       EditLogOutputStream logStream = null;
@@ -1286,7 +1358,8 @@ synchronized void startLogSegment(final long segmentTxId,
     
     try {
       editLogStream = journalSet.startLogSegment(segmentTxId,
-          NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+          compactEdits ? NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION
+              : NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
     } catch (IOException ex) {
       throw new IOException("Unable to start log segment " +
           segmentTxId + ": too few journals successfully started.", ex);
@@ -1555,8 +1628,10 @@ public synchronized void discardSegments(long markerTxid)
 
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
-      long fromTxId, boolean inProgressOk) throws IOException {
-    journalSet.selectInputStreams(streams, fromTxId, inProgressOk);
+      long fromTxId, boolean inProgressOk, boolean onlyDurableTxns)
+      throws IOException {
+    journalSet.selectInputStreams(streams, fromTxId, inProgressOk,
+        onlyDurableTxns);
   }
 
   public Collection<EditLogInputStream> selectInputStreams(
@@ -1575,12 +1650,30 @@ public Collection<EditLogInputStream> selectInputStreams(
   public Collection<EditLogInputStream> selectInputStreams(
       long fromTxId, long toAtLeastTxId, MetaRecoveryContext recovery,
       boolean inProgressOk) throws IOException {
+    return selectInputStreams(fromTxId, toAtLeastTxId, recovery,
+        inProgressOk, false);
+  }
+
+  /**
+   * Select a list of input streams.
+   *
+   * @param fromTxId first transaction in the selected streams
+   * @param toAtLeastTxId the selected streams must contain this transaction
+   * @param recovery recovery context
+   * @param inProgressOk set to true if in-progress streams are OK
+   * @param onlyDurableTxns set to true if the in-progress streams should
+   *        only include the durable transactions, see
+   *        {@link LogsPurgeable#selectInputStreams}
+   */
+  public Collection<EditLogInputStream> selectInputStreams(
+      long fromTxId, long toAtLeastTxId, MetaRecoveryContext recovery,
+      boolean inProgressOk, boolean onlyDurableTxns) throws IOException {
 
     List<EditLogInputStream> streams = new ArrayList<EditLogInputStream>();
     synchronized(journalSetLock) {
       Preconditions.checkState(journalSet.isOpen(), "Cannot call " +
           "selectInputStreams() on closed FSEditLog");
-      selectInputStreams(streams, fromTxId, inProgressOk);
+      selectInputStreams(streams, fromTxId, inProgressOk, onlyDurableTxns);
     }
 
     try {
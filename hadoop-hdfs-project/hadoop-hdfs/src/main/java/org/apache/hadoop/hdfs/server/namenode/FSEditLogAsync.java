@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An edit log which takes the sync of edits off the RPC handler threads.
+ *
+ * Edits are still written to the in-memory buffer by the thread that makes
+ * the change, so the order of the transactions does not change. But when an
+ * RPC handler calls {@link #logSync()}, the response of its call is postponed
+ * and the call is queued for a dedicated sync thread, which syncs the edits of
+ * all the queued calls at once and then sends their responses. The handler
+ * returns immediately and can serve the next call while the edits are flushed
+ * to the journals.
+ *
+ * Threads that are not serving an RPC call, and syncs requested while holding
+ * the monitor of the edit log (e.g. when rolling the log), still sync
+ * synchronously.
+ */
+class FSEditLogAsync extends FSEditLog implements Runnable {
+
+  /** An RPC call waiting for its edits to become durable. */
+  private static class PendingSync {
+    private final long txid;
+    private final Server.Call call;
+
+    PendingSync(long txid, Server.Call call) {
+      this.txid = txid;
+      this.call = call;
+    }
+
+    void done(RuntimeException syncEx) {
+      try {
+        if (syncEx == null) {
+          call.sendResponse();
+        } else {
+          call.abortResponse(syncEx);
+        }
+      } catch (IOException e) {
+        // the client will retry or time out
+        LOG.debug("Failed to send the response of " + call, e);
+      }
+    }
+  }
+
+  private final BlockingQueue<PendingSync> pendingSyncs;
+  private volatile boolean running = false;
+  private Daemon syncThread;
+
+  FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
+    super(conf, storage, editsDirs);
+    pendingSyncs = new ArrayBlockingQueue<PendingSync>(conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_QUEUE_SIZE_DEFAULT));
+  }
+
+  @Override
+  synchronized void openForWrite() throws IOException {
+    super.openForWrite();
+    startSyncThread();
+  }
+
+  @Override
+  void close() {
+    // closing the log syncs all the edits written so far
+    super.close();
+    stopSyncThread();
+  }
+
+  private synchronized void startSyncThread() {
+    if (syncThread == null) {
+      running = true;
+      syncThread = new Daemon(this);
+      syncThread.setName("FSEditLogAsync");
+      syncThread.start();
+    }
+  }
+
+  private void stopSyncThread() {
+    final Daemon thread;
+    synchronized (this) {
+      thread = syncThread;
+      syncThread = null;
+      running = false;
+    }
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // answer the calls which have been queued after the thread stopped
+    final long syncTxId = getSyncTxId();
+    PendingSync pending;
+    while ((pending = pendingSyncs.poll()) != null) {
+      pending.done(pending.txid <= syncTxId ? null : new IllegalStateException(
+          "Edit log closed before transaction " + pending.txid + " was synced"));
+    }
+  }
+
+  @Override
+  public void logSync() {
+    final Server.Call call = Server.getCurCall().get();
+    if (call == null || !running || Thread.holdsLock(this)) {
+      super.logSync();
+      return;
+    }
+    final long mytxid = Math.min(getMyTxId(), getLastWrittenTxId());
+    if (mytxid <= getSyncTxId()) {
+      return;
+    }
+    // the response must be postponed before the sync thread can see the call
+    call.postponeResponse();
+    if (!pendingSyncs.offer(new PendingSync(mytxid, call))) {
+      // the sync thread is too far behind, sync in the handler instead
+      try {
+        call.sendResponse();
+      } catch (IOException e) {
+        // cannot happen, the handler still holds back the response
+      }
+      super.logSync();
+    }
+  }
+
+  @Override
+  public void run() {
+    final List<PendingSync> batch = new ArrayList<PendingSync>();
+    while (running) {
+      try {
+        batch.add(pendingSyncs.take());
+      } catch (InterruptedException e) {
+        continue;
+      }
+      // group commit all the calls that have queued up meanwhile
+      pendingSyncs.drainTo(batch);
+      long maxTxId = 0;
+      for (PendingSync pending : batch) {
+        maxTxId = Math.max(maxTxId, pending.txid);
+      }
+      // edit log failures normally terminate the NameNode, but tests relying
+      // on ExitUtil.terminate() get the exception instead
+      RuntimeException syncEx = null;
+      try {
+        logSync(maxTxId);
+      } catch (RuntimeException e) {
+        syncEx = e;
+      }
+      for (PendingSync pending : batch) {
+        pending.done(syncEx);
+      }
+      batch.clear();
+    }
+  }
+
+  @VisibleForTesting
+  boolean isSyncThreadAlive() {
+    final Daemon thread = syncThread;
+    return thread != null && thread.isAlive();
+  }
+}
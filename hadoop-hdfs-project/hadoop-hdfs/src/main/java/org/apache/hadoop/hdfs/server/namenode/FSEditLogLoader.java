@@ -115,10 +115,21 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /**
+   * The number of ops read ahead by an {@link EditLogOpPrefetcher}, or 0 to
+   * read the ops in the loading thread.
+   */
+  private final int prefetchQueueSize;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
+    this(fsNamesys, lastAppliedTxId, 0);
+  }
+
+  FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId,
+      int prefetchQueueSize) {
     this.fsNamesys = fsNamesys;
     this.lastAppliedTxId = lastAppliedTxId;
+    this.prefetchQueueSize = prefetchQueueSize;
   }
   
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
@@ -142,9 +153,11 @@ long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId,
       FSImage.LOG.info("Start loading edits file " + edits.getName());
       long numEdits = loadEditRecords(edits, false, expectedStartingTxId,
           startOpt, recovery);
+      long elapsed = monotonicNow() - startTime;
       FSImage.LOG.info("Edits file " + edits.getName() 
           + " of size " + edits.length() + " edits # " + numEdits 
-          + " loaded in " + (monotonicNow()-startTime)/1000 + " seconds");
+          + " loaded in " + elapsed/1000 + " seconds"
+          + (elapsed > 0 ? " (" + numEdits * 1000 / elapsed + " ops/s)" : ""));
       return numEdits;
     } finally {
       edits.close();
@@ -181,13 +194,21 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
     long lastLogTime = monotonicNow();
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+
+    // Recovery mode resyncs the stream after a bad op, so it reads the ops
+    // itself.
+    EditLogOpPrefetcher prefetcher = null;
+    if (prefetchQueueSize > 0 && recovery == null && in.disableOpReuse()) {
+      prefetcher = new EditLogOpPrefetcher(in, prefetchQueueSize);
+      prefetcher.start();
+    }
     
     try {
       while (true) {
         try {
           FSEditLogOp op;
           try {
-            op = in.readOp();
+            op = prefetcher != null ? prefetcher.readOp() : in.readOp();
             if (op == null) {
               break;
             }
@@ -209,7 +230,7 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
             continue;
           }
           recentOpcodeOffsets[(int)(numEdits % recentOpcodeOffsets.length)] =
-            in.getPosition();
+            prefetcher != null ? prefetcher.getPosition() : in.getPosition();
           if (op.hasTransactionId()) {
             if (op.getTransactionId() > expectedTxId) { 
               MetaRecoveryContext.editLogLoaderPrompt("There appears " +
@@ -232,7 +253,8 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
                   + ", numEdits=" + numEdits + ", totalEdits=" + totalEdits);
             }
             long inodeId = applyEditLogOp(op, fsDir, startOpt,
-                in.getVersion(true), lastInodeId);
+                prefetcher != null ? prefetcher.getVersion() :
+                    in.getVersion(true), lastInodeId);
             if (lastInodeId < inodeId) {
               lastInodeId = inodeId;
             }
@@ -280,6 +302,9 @@ long loadEditRecords(EditLogInputStream in, boolean closeOnExit,
         }
       }
     } finally {
+      if (prefetcher != null) {
+        prefetcher.stop();
+      }
       fsNamesys.dir.resetLastInodeId(lastInodeId);
       if(closeOnExit) {
         in.close();
@@ -66,18 +66,23 @@
 import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_SET_STORAGE_POLICY;
 import static org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes.OP_SET_QUOTA_BY_STORAGETYPE;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
@@ -119,6 +124,7 @@
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableFactories;
 import org.apache.hadoop.io.WritableFactory;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.ipc.ClientId;
 import org.apache.hadoop.ipc.RpcConstants;
 import org.apache.hadoop.security.token.delegation.DelegationKey;
@@ -159,66 +165,132 @@ final void reset() {
   final public static class OpInstanceCache {
     private final EnumMap<FSEditLogOpCodes, FSEditLogOp> inst =
         new EnumMap<FSEditLogOpCodes, FSEditLogOp>(FSEditLogOpCodes.class);
-    
+    private final boolean reuse;
+
     public OpInstanceCache() {
-      inst.put(OP_ADD, new AddOp());
-      inst.put(OP_CLOSE, new CloseOp());
-      inst.put(OP_SET_REPLICATION, new SetReplicationOp());
-      inst.put(OP_CONCAT_DELETE, new ConcatDeleteOp());
-      inst.put(OP_RENAME_OLD, new RenameOldOp());
-      inst.put(OP_DELETE, new DeleteOp());
-      inst.put(OP_MKDIR, new MkdirOp());
-      inst.put(OP_SET_GENSTAMP_V1, new SetGenstampV1Op());
-      inst.put(OP_SET_PERMISSIONS, new SetPermissionsOp());
-      inst.put(OP_SET_OWNER, new SetOwnerOp());
-      inst.put(OP_SET_NS_QUOTA, new SetNSQuotaOp());
-      inst.put(OP_CLEAR_NS_QUOTA, new ClearNSQuotaOp());
-      inst.put(OP_SET_QUOTA, new SetQuotaOp());
-      inst.put(OP_TIMES, new TimesOp());
-      inst.put(OP_SYMLINK, new SymlinkOp());
-      inst.put(OP_RENAME, new RenameOp());
-      inst.put(OP_REASSIGN_LEASE, new ReassignLeaseOp());
-      inst.put(OP_GET_DELEGATION_TOKEN, new GetDelegationTokenOp());
-      inst.put(OP_RENEW_DELEGATION_TOKEN, new RenewDelegationTokenOp());
-      inst.put(OP_CANCEL_DELEGATION_TOKEN, new CancelDelegationTokenOp());
-      inst.put(OP_UPDATE_MASTER_KEY, new UpdateMasterKeyOp());
-      inst.put(OP_START_LOG_SEGMENT, new LogSegmentOp(OP_START_LOG_SEGMENT));
-      inst.put(OP_END_LOG_SEGMENT, new LogSegmentOp(OP_END_LOG_SEGMENT));
-      inst.put(OP_UPDATE_BLOCKS, new UpdateBlocksOp());
-      inst.put(OP_TRUNCATE, new TruncateOp());
-
-      inst.put(OP_ALLOW_SNAPSHOT, new AllowSnapshotOp());
-      inst.put(OP_DISALLOW_SNAPSHOT, new DisallowSnapshotOp());
-      inst.put(OP_CREATE_SNAPSHOT, new CreateSnapshotOp());
-      inst.put(OP_DELETE_SNAPSHOT, new DeleteSnapshotOp());
-      inst.put(OP_RENAME_SNAPSHOT, new RenameSnapshotOp());
-      inst.put(OP_SET_GENSTAMP_V2, new SetGenstampV2Op());
-      inst.put(OP_ALLOCATE_BLOCK_ID, new AllocateBlockIdOp());
-      inst.put(OP_ADD_BLOCK, new AddBlockOp());
-      inst.put(OP_ADD_CACHE_DIRECTIVE,
-          new AddCacheDirectiveInfoOp());
-      inst.put(OP_MODIFY_CACHE_DIRECTIVE,
-          new ModifyCacheDirectiveInfoOp());
-      inst.put(OP_REMOVE_CACHE_DIRECTIVE,
-          new RemoveCacheDirectiveInfoOp());
-      inst.put(OP_ADD_CACHE_POOL, new AddCachePoolOp());
-      inst.put(OP_MODIFY_CACHE_POOL, new ModifyCachePoolOp());
-      inst.put(OP_REMOVE_CACHE_POOL, new RemoveCachePoolOp());
-
-      inst.put(OP_SET_ACL, new SetAclOp());
-      inst.put(OP_ROLLING_UPGRADE_START, new RollingUpgradeOp(
-          OP_ROLLING_UPGRADE_START, "start"));
-      inst.put(OP_ROLLING_UPGRADE_FINALIZE, new RollingUpgradeOp(
-          OP_ROLLING_UPGRADE_FINALIZE, "finalize"));
-      inst.put(OP_SET_XATTR, new SetXAttrOp());
-      inst.put(OP_REMOVE_XATTR, new RemoveXAttrOp());
-      inst.put(OP_SET_STORAGE_POLICY, new SetStoragePolicyOp());
-      inst.put(OP_APPEND, new AppendOp());
-      inst.put(OP_SET_QUOTA_BY_STORAGETYPE, new SetQuotaByStorageTypeOp());
+      this(true);
+    }
+
+    /**
+     * @param reuse if false, {@link #get(FSEditLogOpCodes)} returns a new op
+     *        each time, which can be kept while the next ops are read.
+     */
+    public OpInstanceCache(boolean reuse) {
+      this.reuse = reuse;
+      if (reuse) {
+        for (FSEditLogOpCodes opCode : FSEditLogOpCodes.values()) {
+          FSEditLogOp op = newInstance(opCode);
+          if (op != null) {
+            inst.put(opCode, op);
+          }
+        }
+      }
     }
     
     public FSEditLogOp get(FSEditLogOpCodes opcode) {
-      return inst.get(opcode);
+      return reuse ? inst.get(opcode) : newInstance(opcode);
+    }
+
+    private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
+      switch (opCode) {
+      case OP_ADD:
+        return new AddOp();
+      case OP_CLOSE:
+        return new CloseOp();
+      case OP_SET_REPLICATION:
+        return new SetReplicationOp();
+      case OP_CONCAT_DELETE:
+        return new ConcatDeleteOp();
+      case OP_RENAME_OLD:
+        return new RenameOldOp();
+      case OP_DELETE:
+        return new DeleteOp();
+      case OP_MKDIR:
+        return new MkdirOp();
+      case OP_SET_GENSTAMP_V1:
+        return new SetGenstampV1Op();
+      case OP_SET_PERMISSIONS:
+        return new SetPermissionsOp();
+      case OP_SET_OWNER:
+        return new SetOwnerOp();
+      case OP_SET_NS_QUOTA:
+        return new SetNSQuotaOp();
+      case OP_CLEAR_NS_QUOTA:
+        return new ClearNSQuotaOp();
+      case OP_SET_QUOTA:
+        return new SetQuotaOp();
+      case OP_TIMES:
+        return new TimesOp();
+      case OP_SYMLINK:
+        return new SymlinkOp();
+      case OP_RENAME:
+        return new RenameOp();
+      case OP_REASSIGN_LEASE:
+        return new ReassignLeaseOp();
+      case OP_GET_DELEGATION_TOKEN:
+        return new GetDelegationTokenOp();
+      case OP_RENEW_DELEGATION_TOKEN:
+        return new RenewDelegationTokenOp();
+      case OP_CANCEL_DELEGATION_TOKEN:
+        return new CancelDelegationTokenOp();
+      case OP_UPDATE_MASTER_KEY:
+        return new UpdateMasterKeyOp();
+      case OP_START_LOG_SEGMENT:
+        return new LogSegmentOp(OP_START_LOG_SEGMENT);
+      case OP_END_LOG_SEGMENT:
+        return new LogSegmentOp(OP_END_LOG_SEGMENT);
+      case OP_UPDATE_BLOCKS:
+        return new UpdateBlocksOp();
+      case OP_TRUNCATE:
+        return new TruncateOp();
+      case OP_ALLOW_SNAPSHOT:
+        return new AllowSnapshotOp();
+      case OP_DISALLOW_SNAPSHOT:
+        return new DisallowSnapshotOp();
+      case OP_CREATE_SNAPSHOT:
+        return new CreateSnapshotOp();
+      case OP_DELETE_SNAPSHOT:
+        return new DeleteSnapshotOp();
+      case OP_RENAME_SNAPSHOT:
+        return new RenameSnapshotOp();
+      case OP_SET_GENSTAMP_V2:
+        return new SetGenstampV2Op();
+      case OP_ALLOCATE_BLOCK_ID:
+        return new AllocateBlockIdOp();
+      case OP_ADD_BLOCK:
+        return new AddBlockOp();
+      case OP_ADD_CACHE_DIRECTIVE:
+        return new AddCacheDirectiveInfoOp();
+      case OP_MODIFY_CACHE_DIRECTIVE:
+        return new ModifyCacheDirectiveInfoOp();
+      case OP_REMOVE_CACHE_DIRECTIVE:
+        return new RemoveCacheDirectiveInfoOp();
+      case OP_ADD_CACHE_POOL:
+        return new AddCachePoolOp();
+      case OP_MODIFY_CACHE_POOL:
+        return new ModifyCachePoolOp();
+      case OP_REMOVE_CACHE_POOL:
+        return new RemoveCachePoolOp();
+      case OP_SET_ACL:
+        return new SetAclOp();
+      case OP_ROLLING_UPGRADE_START:
+        return new RollingUpgradeOp(OP_ROLLING_UPGRADE_START, "start");
+      case OP_ROLLING_UPGRADE_FINALIZE:
+        return new RollingUpgradeOp(OP_ROLLING_UPGRADE_FINALIZE,
+            "finalize");
+      case OP_SET_XATTR:
+        return new SetXAttrOp();
+      case OP_REMOVE_XATTR:
+        return new RemoveXAttrOp();
+      case OP_SET_STORAGE_POLICY:
+        return new SetStoragePolicyOp();
+      case OP_APPEND:
+        return new AppendOp();
+      case OP_SET_QUOTA_BY_STORAGETYPE:
+        return new SetQuotaByStorageTypeOp();
+      default:
+        return null;
+      }
     }
   }
 
@@ -4517,6 +4589,144 @@ public void writeOp(FSEditLogOp op) throws IOException {
     }
   }
 
+  /**
+   * The first byte of a batch of ops in the compact encoding of
+   * {@link NameNodeLayoutVersion.Feature#COMPACT_EDITS}. It is not an
+   * {@link FSEditLogOpCodes} value, since no single op is written with it.
+   */
+  static final byte COMPACT_BATCH_OPCODE = (byte) 0x7f;
+
+  /** The flag of a compact batch whose ops are compressed with DEFLATE. */
+  static final byte COMPACT_BATCH_DEFLATED = 0x01;
+
+  /**
+   * Re-encodes the ops written by a {@link Writer} into batches of the
+   * compact encoding. A batch is framed like an op, with its opcode, its
+   * length, the transaction ID of its first op and a checksum:
+   * <pre>
+   * COMPACT_BATCH_OPCODE | length | first txid | number of ops | flags |
+   * length of the ops | ops, possibly deflated | checksum
+   * </pre>
+   * Each op of the batch is stored as its opcode, the length of its fields
+   * as a variable-length integer, and its fields. The transaction IDs of the
+   * ops follow from the first one, and the checksum covers the whole batch.
+   * The fields keep the serialization of {@link Writer}: they are neither
+   * varint nor dictionary coded, and the repeated paths and names only
+   * shrink when the batch is deflated.
+   */
+  public static class CompactWriter {
+    /**
+     * The maximum length of the ops of a batch, unless the batch holds a
+     * single op, so that readers with a smaller max op size than the
+     * default can still read them.
+     */
+    static final int MAX_BATCH_LENGTH = 1024 * 1024;
+
+    private final Deflater deflater;
+    private final DataOutputBuffer ops = new DataOutputBuffer();
+    private final DataOutputBuffer batch = new DataOutputBuffer();
+    private final byte[] deflateBuf;
+    private final Checksum checksum = DataChecksum.newCrc32();
+    private long firstTxId;
+    private int numOps;
+
+    /**
+     * @param compress whether to compress the ops of the batches, when that
+     *        makes them smaller
+     */
+    public CompactWriter(boolean compress) {
+      this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+      this.deflateBuf = compress ? new byte[64 * 1024] : null;
+    }
+
+    /**
+     * Write the ops in data[0, length), as written by a {@link Writer}, to
+     * the output stream in the compact encoding.
+     *
+     * @throws IOException if the data is not a sequence of whole ops with
+     *         consecutive transaction IDs, or on error writing
+     */
+    public void writeOps(byte[] data, int length, OutputStream out)
+        throws IOException {
+      numOps = 0;
+      int pos = 0;
+      while (pos < length) {
+        if (length - pos < 17) {
+          throw new IOException("Truncated op at offset " + pos);
+        }
+        final byte opCode = data[pos];
+        final int opLength = readInt(data, pos + 1);
+        final long txid = readLong(data, pos + 5);
+        final int fieldsLength = opLength - 12;
+        if (fieldsLength < 0 || pos + opLength + 5 > length) {
+          throw new IOException("Invalid length " + opLength +
+              " of the op at offset " + pos);
+        }
+        if (numOps > 0 && (txid != firstTxId + numOps ||
+            ops.getLength() + fieldsLength > MAX_BATCH_LENGTH)) {
+          writeBatch(out);
+        }
+        if (numOps == 0) {
+          firstTxId = txid;
+          ops.reset();
+        }
+        ops.writeByte(opCode);
+        WritableUtils.writeVInt(ops, fieldsLength);
+        ops.write(data, pos + 13, fieldsLength);
+        numOps++;
+        pos += opLength + 5;
+      }
+      if (numOps > 0) {
+        writeBatch(out);
+      }
+    }
+
+    private void writeBatch(OutputStream out) throws IOException {
+      byte flags = 0;
+      byte[] stored = ops.getData();
+      int storedLength = ops.getLength();
+      if (deflater != null) {
+        batch.reset();
+        deflater.reset();
+        deflater.setInput(ops.getData(), 0, ops.getLength());
+        deflater.finish();
+        while (!deflater.finished() && batch.getLength() < ops.getLength()) {
+          batch.write(deflateBuf, 0, deflater.deflate(deflateBuf));
+        }
+        if (deflater.finished() && batch.getLength() < ops.getLength()) {
+          flags |= COMPACT_BATCH_DEFLATED;
+          stored = Arrays.copyOf(batch.getData(), batch.getLength());
+          storedLength = stored.length;
+        }
+      }
+
+      batch.reset();
+      batch.writeByte(COMPACT_BATCH_OPCODE);
+      batch.writeInt(0); // the length is written once known, as for ops
+      batch.writeLong(firstTxId);
+      batch.writeInt(numOps);
+      batch.writeByte(flags);
+      batch.writeInt(ops.getLength());
+      batch.write(stored, 0, storedLength);
+      final int end = batch.getLength();
+      batch.writeInt(end - 1, 1);
+      checksum.reset();
+      checksum.update(batch.getData(), 0, end);
+      batch.writeInt((int) checksum.getValue());
+      out.write(batch.getData(), 0, batch.getLength());
+      numOps = 0;
+    }
+
+    private static int readInt(byte[] b, int off) {
+      return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) |
+          ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static long readLong(byte[] b, int off) {
+      return ((long) readInt(b, off) << 32) | (readInt(b, off + 4) & 0xffffffffL);
+    }
+  }
+
   /**
    * Class for reading editlog ops from a stream
    */
@@ -4525,9 +4735,14 @@ public static class Reader {
     private final StreamLimiter limiter;
     private final int logVersion;
     private final Checksum checksum;
-    private final OpInstanceCache cache;
+    private OpInstanceCache cache;
     private int maxOpSize;
     private final boolean supportEditLogLength;
+    private final boolean supportCompactEdits;
+    /** The ops of the current compact batch, or null if none is pending. */
+    private DataInputStream batchIn;
+    private long batchNextTxId;
+    private int batchRemainingOps;
 
     /**
      * Construct the reader
@@ -4548,6 +4763,9 @@ public Reader(DataInputStream in, StreamLimiter limiter, int logVersion) {
       this.supportEditLogLength = NameNodeLayoutVersion.supports(
           NameNodeLayoutVersion.Feature.EDITLOG_LENGTH, logVersion)
           || logVersion < NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+      this.supportCompactEdits = NameNodeLayoutVersion.supports(
+          NameNodeLayoutVersion.Feature.COMPACT_EDITS, logVersion)
+          || logVersion < NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
 
       if (this.checksum != null) {
         this.in = new DataInputStream(
@@ -4564,6 +4782,14 @@ public void setMaxOpSize(int maxOpSize) {
       this.maxOpSize = maxOpSize;
     }
 
+    /**
+     * Return a new op from each call to {@link #readOp(boolean)}, instead of
+     * re-using the ops.
+     */
+    public void disableOpReuse() {
+      this.cache = new OpInstanceCache(false);
+    }
+
     /**
      * Read an operation from the input stream.
      * 
@@ -4656,6 +4882,10 @@ private void verifyTerminator() throws IOException {
      * problematic byte.  This usually means the beginning of the opcode.
      */
     private FSEditLogOp decodeOp() throws IOException {
+      if (batchIn != null) {
+        // The batch was read whole, so the stream and its mark stay put.
+        return decodeBatchedOp();
+      }
       limiter.setLimit(maxOpSize);
       in.mark(maxOpSize);
 
@@ -4671,6 +4901,11 @@ private FSEditLogOp decodeOp() throws IOException {
         return null;
       }
 
+      if (opCodeByte == COMPACT_BATCH_OPCODE && supportCompactEdits) {
+        readBatch();
+        return decodeBatchedOp();
+      }
+
       FSEditLogOpCodes opCode = FSEditLogOpCodes.fromByte(opCodeByte);
       if (opCode == OP_INVALID) {
         verifyTerminator();
@@ -4700,12 +4935,109 @@ private FSEditLogOp decodeOp() throws IOException {
       return op;
     }
 
+    /**
+     * Read a compact batch, after its opcode, and verify its checksum. The
+     * ops of the batch are then returned by {@link #decodeBatchedOp()}.
+     */
+    private void readBatch() throws IOException {
+      final int length = in.readInt();
+      final long firstTxId = in.readLong();
+      final int numOps = in.readInt();
+      final byte flags = in.readByte();
+      final int opsLength = in.readInt();
+      final int storedLength = length - 21;
+      if (numOps <= 0 || opsLength < 0 || opsLength > maxOpSize ||
+          storedLength < 0 || storedLength > maxOpSize) {
+        throw new IOException("Invalid compact batch of " + numOps +
+            " ops from transaction " + firstTxId + ", with length " + length +
+            " and " + opsLength + " bytes of ops");
+      }
+      final byte[] stored = new byte[storedLength];
+      in.readFully(stored);
+      validateChecksum(in, checksum, firstTxId);
+
+      final byte[] ops;
+      if ((flags & COMPACT_BATCH_DEFLATED) != 0) {
+        ops = new byte[opsLength];
+        final Inflater inflater = new Inflater();
+        try {
+          inflater.setInput(stored);
+          if (inflater.inflate(ops) != opsLength || !inflater.finished()) {
+            throw new IOException("The compact batch from transaction " +
+                firstTxId + " does not inflate to " + opsLength + " bytes");
+          }
+        } catch (DataFormatException e) {
+          throw new IOException("Failed to inflate the compact batch from " +
+              "transaction " + firstTxId, e);
+        } finally {
+          inflater.end();
+        }
+      } else if (storedLength == opsLength) {
+        ops = stored;
+      } else {
+        throw new IOException("The compact batch from transaction " +
+            firstTxId + " has " + storedLength + " bytes of ops instead of " +
+            opsLength);
+      }
+      batchIn = new DataInputStream(new ByteArrayInputStream(ops));
+      batchNextTxId = firstTxId;
+      batchRemainingOps = numOps;
+    }
+
+    /** Decode the next op of the current compact batch. */
+    private FSEditLogOp decodeBatchedOp() throws IOException {
+      final long txid = batchNextTxId;
+      try {
+        final FSEditLogOpCodes opCode =
+            FSEditLogOpCodes.fromByte(batchIn.readByte());
+        final FSEditLogOp op = opCode == null ? null : cache.get(opCode);
+        if (op == null) {
+          throw new IOException("Read invalid opcode " + opCode +
+              " for transaction " + txid + " in a compact batch");
+        }
+        final int length = WritableUtils.readVInt(batchIn);
+        final int available = batchIn.available();
+        op.setTransactionId(txid);
+        op.readFields(batchIn, logVersion);
+        if (available - batchIn.available() != length) {
+          throw new IOException("Transaction " + txid + " has " +
+              (available - batchIn.available()) + " bytes of fields " +
+              "instead of " + length + " in a compact batch");
+        }
+        batchNextTxId++;
+        if (--batchRemainingOps == 0) {
+          if (batchIn.available() != 0) {
+            throw new IOException("Read extra bytes after the last op of " +
+                "a compact batch, at transaction " + txid);
+          }
+          batchIn = null;
+        }
+        return op;
+      } catch (IOException e) {
+        batchIn = null;
+        throw e;
+      }
+    }
+
+    /**
+     * Skip the ops which remain in the current compact batch, if any, so
+     * that the next op is read from the underlying stream.
+     */
+    public void skipBatchedOps() {
+      batchIn = null;
+    }
+
     /**
      * Similar with decodeOp(), but instead of doing the real decoding, we skip
      * the content of the op if the length of the editlog is supported.
      * @return the last txid of the segment, or INVALID_TXID on exception
      */
     public long scanOp() throws IOException {
+      if (batchIn != null) {
+        final long lastTxId = batchNextTxId + batchRemainingOps - 1;
+        batchIn = null;
+        return lastTxId;
+      }
       if (supportEditLogLength) {
         limiter.setLimit(maxOpSize);
         in.mark(maxOpSize);
@@ -4726,6 +5058,13 @@ public long scanOp() throws IOException {
         int length = in.readInt(); // read the length of the op
         long txid = in.readLong(); // read the txid
 
+        if (opCodeByte == COMPACT_BATCH_OPCODE && supportCompactEdits) {
+          // a compact batch holds the transactions from txid
+          final int numOps = in.readInt();
+          IOUtils.skipFully(in, length - 12);
+          return txid + numOps - 1;
+        }
+
         // skip the remaining content
         IOUtils.skipFully(in, length - 8); 
         // TODO: do we want to verify checksum for JN? For now we don't.
@@ -153,7 +153,7 @@ protected FSImage(Configuration conf,
       storage.setRestoreFailedStorage(true);
     }
 
-    this.editLog = new FSEditLog(conf, storage, editsDirs);
+    this.editLog = FSEditLog.newInstance(conf, storage, editsDirs);
     
     archivalManager = new NNStorageRetentionManager(conf, storage, editLog);
   }
@@ -880,7 +880,15 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
     
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
-      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      int prefetchQueueSize = 0;
+      if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_KEY,
+          DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_DEFAULT)) {
+        prefetchQueueSize = conf.getInt(
+            DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_QUEUE_SIZE_KEY,
+            DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_QUEUE_SIZE_DEFAULT);
+      }
+      FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId,
+          prefetchQueueSize);
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
@@ -902,7 +910,7 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
       FSEditLog.closeAllStreams(editStreams);
       // update the counts
       updateCountForQuota(target.getBlockManager().getStoragePolicySuite(),
-          target.dir.rootDir);
+          target.dir.rootDir, target.dir.isContentSummaryCacheEnabled());
     }
     prog.endPhase(Phase.LOADING_EDITS);
     return lastAppliedTxId - prevLastAppliedTxId;
@@ -918,35 +926,59 @@ private long loadEdits(Iterable<EditLogInputStream> editStreams,
    */
   static void updateCountForQuota(BlockStoragePolicySuite bsps,
                                   INodeDirectory root) {
+    updateCountForQuota(bsps, root, false);
+  }
+
+  /**
+   * Update the count of each directory with quota, and if cacheSummaries is
+   * set, the content summary of every directory.
+   * See {@link #updateCountForQuota(BlockStoragePolicySuite, INodeDirectory)}
+   */
+  static void updateCountForQuota(BlockStoragePolicySuite bsps,
+      INodeDirectory root, boolean cacheSummaries) {
     updateCountForQuotaRecursively(bsps, root.getStoragePolicyID(), root,
-        new QuotaCounts.Builder().build());
+        new QuotaCounts.Builder().build(), cacheSummaries);
  }
 
-  private static void updateCountForQuotaRecursively(BlockStoragePolicySuite bsps,
-      byte blockStoragePolicyId, INodeDirectory dir, QuotaCounts counts) {
-    final long parentNamespace = counts.getNameSpace();
-    final long parentStoragespace = counts.getStorageSpace();
-    final EnumCounters<StorageType> parentTypeSpaces = counts.getTypeSpaces();
+  /**
+   * @return whether the tree rooted at dir holds snapshot data, i.e.
+   *         contains a snapshottable directory or a reference inode
+   */
+  private static boolean updateCountForQuotaRecursively(
+      BlockStoragePolicySuite bsps, byte blockStoragePolicyId,
+      INodeDirectory dir, QuotaCounts counts, boolean cacheSummaries) {
+    final QuotaCounts parentCounts =
+        new QuotaCounts.Builder().quotaCount(counts).build();
+    boolean withSnapshotData = dir.isSnapshottable();
 
     dir.computeQuotaUsage4CurrentDirectory(bsps, blockStoragePolicyId, counts);
     
     for (INode child : dir.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
       final byte childPolicyId = child.getStoragePolicyIDForQuota(blockStoragePolicyId);
+      withSnapshotData |= child.isReference();
       if (child.isDirectory()) {
-        updateCountForQuotaRecursively(bsps, childPolicyId,
-            child.asDirectory(), counts);
+        withSnapshotData |= updateCountForQuotaRecursively(bsps,
+            childPolicyId, child.asDirectory(), counts, cacheSummaries);
       } else {
         // file or symlink: count here to reduce recursive calls.
         child.computeQuotaUsage(bsps, childPolicyId, counts, false,
             Snapshot.CURRENT_STATE_ID);
       }
     }
-      
+
+    // the usage of the tree rooted at dir
+    final QuotaCounts usage = new QuotaCounts.Builder().quotaCount(counts)
+        .build();
+    usage.subtract(parentCounts);
+    if (cacheSummaries) {
+      dir.resetSummary(usage, withSnapshotData);
+    }
+
     if (dir.isQuotaSet()) {
       // check if quota is violated. It indicates a software bug.
       final QuotaCounts q = dir.getQuotaCounts();
 
-      final long namespace = counts.getNameSpace() - parentNamespace;
+      final long namespace = usage.getNameSpace();
       final long nsQuota = q.getNameSpace();
       if (Quota.isViolated(nsQuota, namespace)) {
         LOG.warn("Namespace quota violation in image for "
@@ -954,7 +986,7 @@ private static void updateCountForQuotaRecursively(BlockStoragePolicySuite bsps,
             + " quota = " + nsQuota + " < consumed = " + namespace);
       }
 
-      final long ssConsumed = counts.getStorageSpace() - parentStoragespace;
+      final long ssConsumed = usage.getStorageSpace();
       final long ssQuota = q.getStorageSpace();
       if (Quota.isViolated(ssQuota, ssConsumed)) {
         LOG.warn("Storagespace quota violation in image for "
@@ -962,9 +994,9 @@ private static void updateCountForQuotaRecursively(BlockStoragePolicySuite bsps,
             + " quota = " + ssQuota + " < consumed = " + ssConsumed);
       }
 
-      final EnumCounters<StorageType> typeSpaces = counts.getTypeSpaces();
+      final EnumCounters<StorageType> typeSpaces = usage.getTypeSpaces();
       for (StorageType t : StorageType.getTypesSupportingQuota()) {
-        final long typeSpace = typeSpaces.get(t) - parentTypeSpaces.get(t);
+        final long typeSpace = typeSpaces.get(t);
         final long typeQuota = q.getTypeSpaces().get(t);
         if (Quota.isViolated(typeQuota, typeSpace)) {
           LOG.warn("Storage type quota violation in image for "
@@ -977,6 +1009,7 @@ private static void updateCountForQuotaRecursively(BlockStoragePolicySuite bsps,
       dir.getDirectoryWithQuotaFeature().setSpaceConsumed(namespace, ssConsumed,
           typeSpaces);
     }
+    return withSnapshotData;
   }
 
   /**
@@ -1034,7 +1067,8 @@ void saveFSImage(SaveNamespaceContext context, StorageDirectory sd,
     File newFile = NNStorage.getStorageFile(sd, NameNodeFile.IMAGE_NEW, txid);
     File dstFile = NNStorage.getStorageFile(sd, dstType, txid);
     
-    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context);
+    FSImageFormatProtobuf.Saver saver = new FSImageFormatProtobuf.Saver(context,
+        conf);
     FSImageCompression compression = FSImageCompression.createCompression(conf);
     saver.save(newFile, compression);
     
@@ -20,11 +20,22 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +49,7 @@
 import org.apache.hadoop.fs.permission.PermissionStatus;
 import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.XAttr;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.BlockProto;
@@ -59,6 +71,8 @@
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -95,7 +109,9 @@ public final class FSImageFormatPBINode {
 
   private static final XAttr.NameSpace[] XATTR_NAMESPACE_VALUES =
       XAttr.NameSpace.values();
-  
+
+  /** Number of inodes added to the shared maps at once when loading. */
+  private static final int INODE_BATCH_SIZE = 1000;
 
   public final static class Loader {
     public static PermissionStatus loadPermission(long id,
@@ -226,12 +242,18 @@ public static void updateBlocksMap(INodeFile file, BlockManager bm) {
       this.fsn = fsn;
       this.dir = fsn.dir;
       this.parent = parent;
-      this.ucFiles = new ArrayList<INodeFile>();
+      this.ucFiles = Collections.synchronizedList(new ArrayList<INodeFile>());
     }
 
+    /**
+     * Load the INODE_DIR section. The children lists of distinct directories
+     * can be filled concurrently; the name cache and the blocks map are
+     * shared and only updated while holding the lock of this loader.
+     */
     void loadINodeDirectorySection(InputStream in) throws IOException {
       final List<INodeReference> refList = parent.getLoaderContext()
           .getRefList();
+      final List<INode> added = new ArrayList<INode>();
       while (true) {
         INodeDirectorySection.DirEntry e = INodeDirectorySection.DirEntry
             .parseDelimitedFrom(in);
@@ -242,20 +264,54 @@ void loadINodeDirectorySection(InputStream in) throws IOException {
         INodeDirectory p = dir.getInode(e.getParent()).asDirectory();
         for (long id : e.getChildrenList()) {
           INode child = dir.getInode(id);
-          addToParent(p, child);
+          if (addToParent(p, child)) {
+            added.add(child);
+          }
         }
         for (int refId : e.getRefChildrenList()) {
           INodeReference ref = refList.get(refId);
-          addToParent(p, ref);
+          if (addToParent(p, ref)) {
+            added.add(ref);
+          }
         }
+        addToCacheAndBlockMap(added);
+        added.clear();
+      }
+    }
+
+    void loadINodeDirectorySectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the INode directory section in parallel with "
+          + sections.size() + " sub-sections");
+      final CountDownLatch latch = new CountDownLatch(sections.size());
+      final List<IOException> exceptions =
+          new CopyOnWriteArrayList<IOException>();
+      for (FileSummary.Section s : sections) {
+        final InputStream in = parent.getInputStreamForSection(s,
+            compressionCodec);
+        service.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              loadINodeDirectorySection(in);
+            } catch (Throwable t) {
+              LOG.error("Failed to load an INode directory sub-section", t);
+              exceptions.add(toIOException(t));
+            } finally {
+              IOUtils.cleanup(LOG, in);
+              latch.countDown();
+            }
+          }
+        });
       }
+      awaitSubSections(latch, exceptions);
+      LOG.info("Completed loading the INode directory section in parallel");
     }
 
     void loadINodeSection(InputStream in) throws IOException {
-      INodeSection s = INodeSection.parseDelimitedFrom(in);
-      fsn.dir.resetLastInodeId(s.getLastInodeId());
-      LOG.info("Loading " + s.getNumInodes() + " INodes.");
-      for (int i = 0; i < s.getNumInodes(); ++i) {
+      long numInodes = loadINodeSectionHeader(in);
+      for (int i = 0; i < numInodes; ++i) {
         INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
         if (p.getId() == INodeId.ROOT_INODE_ID) {
           loadRootINode(p);
@@ -266,6 +322,111 @@ void loadINodeSection(InputStream in) throws IOException {
       }
     }
 
+    /**
+     * Load the INODE section from its sub-sections. Only the first one starts
+     * with the section header, and the others are read up to their end.
+     */
+    void loadINodeSectionInParallel(ExecutorService service,
+        List<FileSummary.Section> sections, String compressionCodec)
+        throws IOException {
+      LOG.info("Loading the INode section in parallel with "
+          + sections.size() + " sub-sections");
+      final CountDownLatch latch = new CountDownLatch(sections.size());
+      final AtomicLong totalLoaded = new AtomicLong();
+      final List<IOException> exceptions =
+          new CopyOnWriteArrayList<IOException>();
+      long expectedInodes = 0;
+      for (int i = 0; i < sections.size(); i++) {
+        final InputStream in = parent.getInputStreamForSection(
+            sections.get(i), compressionCodec);
+        if (i == 0) {
+          try {
+            expectedInodes = loadINodeSectionHeader(in);
+          } catch (IOException e) {
+            IOUtils.cleanup(LOG, in);
+            throw e;
+          }
+        }
+        service.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              totalLoaded.addAndGet(loadINodesInSection(in));
+            } catch (Throwable t) {
+              LOG.error("Failed to load an INode sub-section", t);
+              exceptions.add(toIOException(t));
+            } finally {
+              IOUtils.cleanup(LOG, in);
+              latch.countDown();
+            }
+          }
+        });
+      }
+      awaitSubSections(latch, exceptions);
+      if (totalLoaded.get() != expectedInodes) {
+        throw new IOException("Expected to load " + expectedInodes
+            + " INodes, but loaded " + totalLoaded.get()
+            + ". The image may be corrupt.");
+      }
+      LOG.info("Completed loading the INode section in parallel");
+    }
+
+    private long loadINodeSectionHeader(InputStream in) throws IOException {
+      INodeSection s = INodeSection.parseDelimitedFrom(in);
+      fsn.dir.resetLastInodeId(s.getLastInodeId());
+      LOG.info("Loading " + s.getNumInodes() + " INodes.");
+      return s.getNumInodes();
+    }
+
+    /** @return the number of inodes loaded from the sub-section. */
+    private long loadINodesInSection(InputStream in) throws IOException {
+      final List<INode> batch = new ArrayList<INode>(INODE_BATCH_SIZE);
+      long loaded = 0;
+      while (true) {
+        INodeSection.INode p = INodeSection.INode.parseDelimitedFrom(in);
+        if (p == null) {
+          break;
+        }
+        if (p.getId() == INodeId.ROOT_INODE_ID) {
+          synchronized (this) {
+            loadRootINode(p);
+          }
+        } else {
+          batch.add(loadINode(p));
+          if (batch.size() == INODE_BATCH_SIZE) {
+            addToInodeMap(batch);
+            batch.clear();
+          }
+        }
+        loaded++;
+      }
+      addToInodeMap(batch);
+      return loaded;
+    }
+
+    private synchronized void addToInodeMap(List<INode> inodes) {
+      for (INode n : inodes) {
+        dir.addToInodeMap(n);
+      }
+    }
+
+    private static IOException toIOException(Throwable t) {
+      return t instanceof IOException ? (IOException) t : new IOException(t);
+    }
+
+    private static void awaitSubSections(CountDownLatch latch,
+        List<IOException> exceptions) throws IOException {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        throw (InterruptedIOException) new InterruptedIOException(
+            "Interrupted while loading the image sub-sections").initCause(e);
+      }
+      if (!exceptions.isEmpty()) {
+        throw exceptions.get(0);
+      }
+    }
+
     /**
      * Load the under-construction files section, and update the lease map
      */
@@ -292,7 +453,8 @@ void loadFilesUnderConstructionSection(InputStream in) throws IOException {
       }
     }
 
-    private void addToParent(INodeDirectory parent, INode child) {
+    /** @return true if the child has been added. */
+    private boolean addToParent(INodeDirectory parent, INode child) {
       if (parent == dir.rootDir && FSDirectory.isReservedName(child)) {
         throw new HadoopIllegalArgumentException("File name \""
             + child.getLocalName() + "\" is reserved. Please "
@@ -300,13 +462,16 @@ private void addToParent(INodeDirectory parent, INode child) {
             + "name before upgrading to this release.");
       }
       // NOTE: This does not update space counts for parents
-      if (!parent.addChild(child)) {
-        return;
-      }
-      dir.cacheName(child);
+      return parent.addChild(child);
+    }
 
-      if (child.isFile()) {
-        updateBlocksMap(child.asFile(), fsn.getBlockManager());
+    private synchronized void addToCacheAndBlockMap(List<INode> children) {
+      for (INode child : children) {
+        dir.cacheName(child);
+
+        if (child.isFile()) {
+          updateBlocksMap(child.asFile(), fsn.getBlockManager());
+        }
       }
     }
 
@@ -530,13 +695,20 @@ public static INodeSection.INodeDirectory.Builder buildINodeDirectory(
     }
 
     void serializeINodeDirectorySection(OutputStream out) throws IOException {
-      Iterator<INodeWithAdditionalFields> iter = fsn.getFSDirectory()
-          .getINodeMap().getMapIterator();
+      final INodeMap inodesMap = fsn.getFSDirectory().getINodeMap();
+      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
       final ArrayList<INodeReference> refList = parent.getSaverContext()
           .getRefList();
+      final int inodesPerSubSection = parent.getINodesPerSubSection(
+          inodesMap.size());
       int i = 0;
+      int scanned = 0;
       while (iter.hasNext()) {
         INodeWithAdditionalFields n = iter.next();
+        if (++scanned % inodesPerSubSection == 0) {
+          parent.commitSubSection(summary,
+              FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
+        }
         if (!n.isDirectory()) {
           continue;
         }
@@ -563,6 +735,8 @@ void serializeINodeDirectorySection(OutputStream out) throws IOException {
           context.checkCancelled();
         }
       }
+      parent.commitSubSection(summary,
+          FSImageFormatProtobuf.SectionName.INODE_DIR_SUB);
       parent.commitSection(summary,
           FSImageFormatProtobuf.SectionName.INODE_DIR);
     }
@@ -575,19 +749,112 @@ void serializeINodeSection(OutputStream out) throws IOException {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
-      Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
+      if (parent.isWriteSubSections()) {
+        serializeINodesInParallel(out, inodesMap);
+      } else {
+        int i = 0;
+        Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
         }
       }
       parent.commitSection(summary, FSImageFormatProtobuf.SectionName.INODE);
     }
 
+    /** A batch of inodes serialized into a buffer by a worker thread. */
+    private class INodeBatch implements Callable<INodeBatch> {
+      private final List<INodeWithAdditionalFields> inodes;
+      private final DataOutputBuffer buffer = new DataOutputBuffer();
+
+      INodeBatch(List<INodeWithAdditionalFields> inodes) {
+        this.inodes = inodes;
+      }
+
+      @Override
+      public INodeBatch call() throws IOException {
+        for (INodeWithAdditionalFields n : inodes) {
+          save(buffer, n);
+        }
+        return this;
+      }
+    }
+
+    /**
+     * Serialize the inodes in batches on a thread pool, and write the batches
+     * in iteration order as INODE_SUB sub-sections. Only a bounded number of
+     * batches is buffered at any time.
+     */
+    private void serializeINodesInParallel(OutputStream out,
+        INodeMap inodesMap) throws IOException {
+      final int inodesPerSubSection = parent.getINodesPerSubSection(
+          inodesMap.size());
+      final ExecutorService service = FSImageFormatProtobuf
+          .newParallelExecutor(parent.getConf(), "FSImageSaver-%d");
+      final Deque<Future<INodeBatch>> pending =
+          new ArrayDeque<Future<INodeBatch>>();
+      final int maxPending = 4 * parent.getConf().getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+      int inodesInSubSection = 0;
+      try {
+        Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
+        while (iter.hasNext()) {
+          // batches never span two sub-sections
+          final int batchSize = Math.min(
+              inodesPerSubSection - inodesInSubSection,
+              FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL);
+          List<INodeWithAdditionalFields> inodes =
+              new ArrayList<INodeWithAdditionalFields>(batchSize);
+          while (iter.hasNext() && inodes.size() < batchSize) {
+            inodes.add(iter.next());
+          }
+          context.checkCancelled();
+          pending.add(service.submit(new INodeBatch(inodes)));
+          inodesInSubSection += inodes.size();
+          if (inodesInSubSection >= inodesPerSubSection) {
+            // write out the whole sub-section
+            while (!pending.isEmpty()) {
+              writeBatch(out, pending.poll());
+            }
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_SUB);
+            inodesInSubSection = 0;
+          } else if (pending.size() >= maxPending) {
+            writeBatch(out, pending.poll());
+          }
+        }
+        while (!pending.isEmpty()) {
+          writeBatch(out, pending.poll());
+        }
+        parent.commitSubSection(summary,
+            FSImageFormatProtobuf.SectionName.INODE_SUB);
+      } finally {
+        service.shutdownNow();
+      }
+    }
+
+    private static void writeBatch(OutputStream out, Future<INodeBatch> f)
+        throws IOException {
+      final INodeBatch batch;
+      try {
+        batch = f.get();
+      } catch (InterruptedException e) {
+        throw (InterruptedIOException) new InterruptedIOException(
+            "Interrupted while saving the INode section").initCause(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+      out.write(batch.buffer.getData(), 0, batch.buffer.getLength());
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Map<String, INodeFile> ucMap = fsn.getFilesUnderConstruction();
       for (Map.Entry<String, INodeFile> entry : ucMap.entrySet()) {
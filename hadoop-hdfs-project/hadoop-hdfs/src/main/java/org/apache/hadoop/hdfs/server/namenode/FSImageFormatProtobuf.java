@@ -36,15 +36,19 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.hadoop.io.compress.CompressionOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CachePoolInfoProto;
@@ -68,6 +72,7 @@
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.CodedOutputStream;
 
 /**
@@ -100,7 +105,8 @@ static <T> DeduplicationMap<T> newMap() {
         return new DeduplicationMap<T>();
       }
 
-      int getId(E value) {
+      // synchronized as the inodes may be serialized by several threads
+      synchronized int getId(E value) {
         if (value == null) {
           return 0;
         }
@@ -113,7 +119,7 @@ int getId(E value) {
         return v;
       }
 
-      int size() {
+      synchronized int size() {
         return map.size();
       }
 
@@ -150,6 +156,8 @@ public static final class Loader implements FSImageFormat.AbstractLoader {
      * when we're doing (rollingUpgrade rollback).
      */
     private final boolean requireSameLayoutVersion;
+    /** The image file, which is reopened for each sub-section */
+    private File file;
 
     Loader(Configuration conf, FSNamesystem fsn,
         boolean requireSameLayoutVersion) {
@@ -175,6 +183,7 @@ public LoaderContext getLoaderContext() {
 
     void load(File file) throws IOException {
       long start = Time.monotonicNow();
+      this.file = file;
       imgDigest = MD5FileUtils.computeMd5ForFile(file);
       RandomAccessFile raFile = new RandomAccessFile(file, "r");
       FileInputStream fin = new FileInputStream(file);
@@ -225,6 +234,27 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         }
       });
 
+      ExecutorService executorService = null;
+      if (hasSubSections(sections) && conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT)) {
+        executorService = newParallelExecutor(conf, "FSImageLoader-%d");
+      }
+      try {
+        loadSections(sections, summary, channel, fin, inodeLoader,
+            snapshotLoader, executorService);
+      } finally {
+        if (executorService != null) {
+          executorService.shutdownNow();
+        }
+      }
+    }
+
+    private void loadSections(List<FileSummary.Section> sections,
+        FileSummary summary, FileChannel channel, FileInputStream fin,
+        FSImageFormatPBINode.Loader inodeLoader,
+        FSImageFormatPBSnapshot.Loader snapshotLoader,
+        ExecutorService executorService) throws IOException {
       StartupProgress prog = NameNode.getStartupProgress();
       /**
        * beginStep() and the endStep() calls do not match the boundary of the
@@ -242,8 +272,13 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
             summary.getCodec(), in);
 
         String n = s.getName();
+        SectionName name = SectionName.fromString(n);
+        if (name == null) {
+          LOG.warn("Unrecognized section {}", n);
+          continue;
+        }
 
-        switch (SectionName.fromString(n)) {
+        switch (name) {
         case NS_INFO:
           loadNameSystemSection(in);
           break;
@@ -253,14 +288,29 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
         case INODE: {
           currentStep = new Step(StepType.INODES);
           prog.beginStep(Phase.LOADING_FSIMAGE, currentStep);
-          inodeLoader.loadINodeSection(in);
+          List<FileSummary.Section> subSections = getSubSections(sections,
+              SectionName.INODE_SUB);
+          if (executorService != null && !subSections.isEmpty()) {
+            inodeLoader.loadINodeSectionInParallel(executorService,
+                subSections, summary.getCodec());
+          } else {
+            inodeLoader.loadINodeSection(in);
+          }
         }
           break;
         case INODE_REFERENCE:
           snapshotLoader.loadINodeReferenceSection(in);
           break;
-        case INODE_DIR:
-          inodeLoader.loadINodeDirectorySection(in);
+        case INODE_DIR: {
+          List<FileSummary.Section> subSections = getSubSections(sections,
+              SectionName.INODE_DIR_SUB);
+          if (executorService != null && !subSections.isEmpty()) {
+            inodeLoader.loadINodeDirectorySectionInParallel(executorService,
+                subSections, summary.getCodec());
+          } else {
+            inodeLoader.loadINodeDirectorySection(in);
+          }
+        }
           break;
         case FILES_UNDERCONSTRUCTION:
           inodeLoader.loadFilesUnderConstructionSection(in);
@@ -286,6 +336,10 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
           prog.endStep(Phase.LOADING_FSIMAGE, step);
         }
           break;
+        case INODE_SUB:
+        case INODE_DIR_SUB:
+          // the sub-sections are also covered by their parent section
+          break;
         default:
           LOG.warn("Unrecognized section {}", n);
           break;
@@ -293,6 +347,47 @@ public int compare(FileSummary.Section s1, FileSummary.Section s2) {
       }
     }
 
+    /**
+     * Open a new stream for the given (sub-)section, so that several sections
+     * can be read at the same time.
+     */
+    InputStream getInputStreamForSection(FileSummary.Section section,
+        String compressionCodec) throws IOException {
+      FileInputStream fin = new FileInputStream(file);
+      try {
+        fin.getChannel().position(section.getOffset());
+        InputStream in = new BufferedInputStream(new LimitInputStream(fin,
+            section.getLength()));
+        return FSImageUtil.wrapInputStreamForCompression(conf,
+            compressionCodec, in);
+      } catch (IOException e) {
+        fin.close();
+        throw e;
+      }
+    }
+
+    private static boolean hasSubSections(List<FileSummary.Section> sections) {
+      for (FileSummary.Section s : sections) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == SectionName.INODE_SUB || name == SectionName.INODE_DIR_SUB) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** @return the sub-sections of the given name, in file order. */
+    private static List<FileSummary.Section> getSubSections(
+        List<FileSummary.Section> sections, SectionName subSectionName) {
+      List<FileSummary.Section> subSections = Lists.newArrayList();
+      for (FileSummary.Section s : sections) {
+        if (SectionName.fromString(s.getName()) == subSectionName) {
+          subSections.add(s);
+        }
+      }
+      return subSections;
+    }
+
     private void loadNameSystemSection(InputStream in) throws IOException {
       NameSystemSection s = NameSystemSection.parseDelimitedFrom(in);
       BlockIdManager blockIdManager = fsn.getBlockIdManager();
@@ -366,9 +461,27 @@ public static final class Saver {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
 
-    Saver(SaveNamespaceContext context) {
+    private final boolean parallelEnabled;
+    private final int parallelTargetSections;
+    private final int parallelINodeThreshold;
+    private final Configuration conf;
+    /** Whether the large sections are split into sub-sections */
+    private boolean writeSubSections = false;
+    private long subSectionOffset = currentOffset;
+
+    Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
       this.saverContext = new SaverContext();
+      this.conf = conf;
+      this.parallelEnabled = conf.getBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_DEFAULT);
+      this.parallelTargetSections = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_DEFAULT));
+      this.parallelINodeThreshold = conf.getInt(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY,
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_DEFAULT);
     }
 
     public MD5Hash getSavedDigest() {
@@ -397,6 +510,40 @@ public void commitSection(FileSummary.Builder summary, SectionName name)
       summary.addSections(FileSummary.Section.newBuilder().setName(name.name)
           .setLength(length).setOffset(currentOffset));
       currentOffset += length;
+      subSectionOffset = currentOffset;
+    }
+
+    /**
+     * Record the data written since the last (sub-)section as a sub-section
+     * of the current section. Each sub-section holds whole entries, so that
+     * they can be loaded independently of each other. This is a no-op if the
+     * image is not written in sub-sections.
+     */
+    public void commitSubSection(FileSummary.Builder summary, SectionName name)
+        throws IOException {
+      if (!writeSubSections) {
+        return;
+      }
+      sectionOutputStream.flush();
+      long length = fileChannel.position() - subSectionOffset;
+      if (length > 0) {
+        summary.addSections(FileSummary.Section.newBuilder()
+            .setName(name.name).setLength(length).setOffset(subSectionOffset));
+        subSectionOffset += length;
+      }
+    }
+
+    boolean isWriteSubSections() {
+      return writeSubSections;
+    }
+
+    /** @return the number of inodes to put into each sub-section. */
+    int getINodesPerSubSection(int numINodes) {
+      return Math.max(1, numINodes / parallelTargetSections);
+    }
+
+    Configuration getConf() {
+      return conf;
     }
 
     private void flushSectionOutputStream() throws IOException {
@@ -474,6 +621,22 @@ private void saveInternal(FileOutputStream fout,
         sectionOutputStream = underlyingOutputStream;
       }
 
+      if (parallelEnabled) {
+        if (codec != null) {
+          // the sub-sections would have to be compressed independently
+          LOG.warn("Not writing the image in sub-sections as {} is set",
+              DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY);
+        } else if (context.getSourceNamesystem().isRollingUpgrade()) {
+          // the NameNodes being rolled back or downgraded to cannot load
+          // the image if it has sub-sections
+          LOG.warn("Not writing the image in sub-sections during a rolling "
+              + "upgrade");
+        } else {
+          writeSubSections = context.getSourceNamesystem().dir.getINodeMap()
+              .size() > parallelINodeThreshold;
+        }
+      }
+
       saveNameSystemSection(b);
       // Check for cancellation right after serializing the name system section.
       // Some unit tests, such as TestSaveNamespace#testCancelSaveNameSpace
@@ -595,7 +758,10 @@ public enum SectionName {
     FILES_UNDERCONSTRUCTION("FILES_UNDERCONSTRUCTION"),
     SNAPSHOT_DIFF("SNAPSHOT_DIFF"),
     SECRET_MANAGER("SECRET_MANAGER"),
-    CACHE_MANAGER("CACHE_MANAGER");
+    CACHE_MANAGER("CACHE_MANAGER"),
+    // the sub-sections are loaded along with their parent section
+    INODE_SUB("INODE_SUB"),
+    INODE_DIR_SUB("INODE_DIR_SUB");
 
     private static final SectionName[] values = SectionName.values();
 
@@ -614,6 +780,19 @@ private SectionName(String name) {
     }
   }
 
+  /**
+   * @return a thread pool of {@link DFSConfigKeys#DFS_IMAGE_PARALLEL_THREADS_KEY}
+   * daemon threads to process the image sub-sections.
+   */
+  static ExecutorService newParallelExecutor(Configuration conf,
+      String nameFormat) {
+    int threads = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+        DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT));
+    return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+        .setNameFormat(nameFormat).setDaemon(true).build());
+  }
+
   private static int getOndiskTrunkSize(com.google.protobuf.GeneratedMessage s) {
     return CodedOutputStream.computeRawVarint32Size(s.getSerializedSize())
         + s.getSerializedSize();
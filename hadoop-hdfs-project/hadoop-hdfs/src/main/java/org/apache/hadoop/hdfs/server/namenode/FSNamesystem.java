@@ -264,6 +264,7 @@
 import org.apache.hadoop.ipc.RetryCache;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.ipc.StandbyException;
+import org.apache.hadoop.log.AsyncAuditPipeline;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
 import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
@@ -481,6 +482,14 @@ private void logAuditEvent(boolean succeeded,
   // precision of access times.
   private final long accessTimePrecision;
 
+  // block locations of the closed files read by many clients, or null
+  private final LocatedBlocksCache locatedBlocksCache;
+
+  // interval between the checks of the expired leases
+  private final long leaseRecheckIntervalMs;
+  // time after which the lease monitor releases the lock to let other ops in
+  private final long maxLockHoldToReleaseLeaseMs;
+
   /** Lock to protect FSNamesystem. */
   private final FSNamesystemLock fsLock;
 
@@ -602,6 +611,19 @@ void clear() {
   LeaseManager getLeaseManager() {
     return leaseManager;
   }
+
+  /** @return the interval between the checks of the expired leases */
+  long getLeaseRecheckIntervalMs() {
+    return leaseRecheckIntervalMs;
+  }
+
+  /**
+   * @return the time for which the lease monitor may hold the write lock to
+   *         release expired leases
+   */
+  long getMaxLockHoldToReleaseLeaseMs() {
+    return maxLockHoldToReleaseLeaseMs;
+  }
   
   boolean isHaEnabled() {
     return haEnabled;
@@ -794,6 +816,20 @@ static FSNamesystem loadFromDisk(Configuration conf) throws IOException {
           DFSConfigKeys.DFS_NAMENODE_MAX_BLOCKS_PER_FILE_DEFAULT);
       this.accessTimePrecision = conf.getLong(DFS_NAMENODE_ACCESSTIME_PRECISION_KEY,
           DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT);
+      final int locatedBlocksCacheSize = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_DEFAULT);
+      this.locatedBlocksCache = locatedBlocksCacheSize > 0 ?
+          new LocatedBlocksCache(locatedBlocksCacheSize, conf.getLong(
+              DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY,
+              DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_EXPIRY_MS_DEFAULT))
+          : null;
+      this.leaseRecheckIntervalMs = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_LEASE_RECHECK_INTERVAL_MS_DEFAULT);
+      this.maxLockHoldToReleaseLeaseMs = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT);
       this.supportAppends = conf.getBoolean(DFS_SUPPORT_APPEND_KEY, DFS_SUPPORT_APPEND_DEFAULT);
       LOG.info("Append Enabled: " + supportAppends);
 
@@ -861,6 +897,20 @@ public List<AuditLogger> getAuditLoggers() {
     return auditLoggers;
   }
 
+  /**
+   * @return the pipeline of the default audit logger, or null if the events
+   *         are logged synchronously
+   */
+  @VisibleForTesting
+  AsyncAuditPipeline getAuditPipeline() {
+    for (AuditLogger logger : auditLoggers) {
+      if (logger instanceof DefaultAuditLogger) {
+        return ((DefaultAuditLogger) logger).getPipeline();
+      }
+    }
+    return null;
+  }
+
   @VisibleForTesting
   public RetryCache getRetryCache() {
     return retryCache;
@@ -1072,6 +1122,11 @@ void startCommonServices(Configuration conf, HAContext haContext) throws IOExcep
     
     registerMXBean();
     DefaultMetricsSystem.instance().register(this);
+    if (getLockProfiler() != null) {
+      DefaultMetricsSystem.instance().register(
+          LockProfiler.METRICS_SOURCE_NAME, "FSNamesystem lock profile",
+          getLockProfiler());
+    }
     if (inodeAttributeProvider != null) {
       inodeAttributeProvider.start();
       dir.setINodeAttributeProvider(inodeAttributeProvider);
@@ -1478,6 +1533,14 @@ public static List<URI> getSharedEditsDirs(Configuration conf) {
   public void readLock() {
     this.fsLock.readLock();
   }
+  /**
+   * Acquire the read lock for an operation which only reads src. With
+   * fine-grained locking enabled, it does not wait for the fine-grained
+   * writers of other paths.
+   */
+  void readLock(String src) {
+    this.fsLock.readLock(src);
+  }
   @Override
   public void readUnlock() {
     this.fsLock.readUnlock();
@@ -1500,6 +1563,27 @@ public void writeUnlock() {
   public void writeUnlock(String opName) {
     this.fsLock.writeUnlock(opName);
   }
+  /**
+   * Acquire the lock for a mutation of src which supports fine-grained
+   * locking. This is the regular write lock unless
+   * {@link DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY} is set.
+   */
+  void fineGrainedWriteLock(String src) {
+    this.fsLock.fineGrainedWriteLock(src);
+  }
+  void fineGrainedWriteUnlock(String opName) {
+    this.fsLock.fineGrainedWriteUnlock(opName);
+  }
+  /** @return the lock profiler, or null if lock profiling is disabled. */
+  LockProfiler getLockProfiler() {
+    return this.fsLock.getProfiler();
+  }
+  boolean hasFineGrainedWriteLock() {
+    return this.fsLock.hasFineGrainedWriteLock();
+  }
+  boolean isFineGrainedLockingEnabled() {
+    return this.fsLock.isFineGrainedLockingEnabled();
+  }
   @Override
   public boolean hasWriteLock() {
     return this.fsLock.isWriteLockedByCurrentThread();
@@ -1570,6 +1654,18 @@ void close() {
       } finally {
         IOUtils.cleanup(LOG, dir);
         IOUtils.cleanup(LOG, fsImage);
+        stopAuditLoggers();
+      }
+    }
+  }
+
+  private void stopAuditLoggers() {
+    if (auditLoggers == null) {
+      return;
+    }
+    for (AuditLogger logger : auditLoggers) {
+      if (logger instanceof DefaultAuditLogger) {
+        ((DefaultAuditLogger) logger).close();
       }
     }
   }
@@ -1696,14 +1792,21 @@ void setOwner(String src, String username, String group)
 
   static class GetBlockLocationsResult {
     final boolean updateAccessTime;
+    /**
+     * The block locations. They are shared with the other readers, and do
+     * not have block tokens, when they come from the located blocks cache.
+     */
     final LocatedBlocks blocks;
+    /** The cache entry of the block locations, or null. */
+    final LocatedBlocksCache.Entry cached;
     boolean updateAccessTime() {
       return updateAccessTime;
     }
-    private GetBlockLocationsResult(
-        boolean updateAccessTime, LocatedBlocks blocks) {
+    private GetBlockLocationsResult(boolean updateAccessTime,
+        LocatedBlocks blocks, LocatedBlocksCache.Entry cached) {
       this.updateAccessTime = updateAccessTime;
       this.blocks = blocks;
+      this.cached = cached;
     }
   }
 
@@ -1717,10 +1820,10 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
     checkOperation(OperationCategory.READ);
     GetBlockLocationsResult res = null;
     FSPermissionChecker pc = getPermissionChecker();
-    readLock();
+    readLock(srcArg);
     try {
       checkOperation(OperationCategory.READ);
-      res = getBlockLocations(pc, srcArg, offset, length, true, true);
+      res = getBlockLocations(pc, srcArg, offset, length, true, true, true);
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, srcArg);
       throw e;
@@ -1731,49 +1834,128 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
     logAuditEvent(true, operationName, srcArg);
 
     if (res.updateAccessTime()) {
-      String src = srcArg;
       writeLock();
-      final long now = now();
       try {
-        checkOperation(OperationCategory.WRITE);
-        /**
-         * Resolve the path again and update the atime only when the file
-         * exists.
-         *
-         * XXX: Races can still occur even after resolving the path again.
-         * For example:
-         *
-         * <ul>
-         *   <li>Get the block location for "/a/b"</li>
-         *   <li>Rename "/a/b" to "/c/b"</li>
-         *   <li>The second resolution still points to "/a/b", which is
-         *   wrong.</li>
-         * </ul>
-         *
-         * The behavior is incorrect but consistent with the one before
-         * HDFS-7463. A better fix is to change the edit log of SetTime to
-         * use inode id instead of a path.
-         */
-        final INodesInPath iip = dir.resolvePath(pc, src);
-        src = iip.getPath();
-        INode inode = iip.getLastINode();
-        boolean updateAccessTime = inode != null &&
-            now > inode.getAccessTime() + getAccessTimePrecision();
-        if (!isInSafeMode() && updateAccessTime) {
-          boolean changed = FSDirAttrOp.setTimes(dir,
-              inode, -1, now, false, iip.getLatestSnapshotId());
-          if (changed) {
-            getEditLog().logTimes(src, -1, now);
-          }
+        updateAccessTime(pc, srcArg, now());
+      } finally {
+        writeUnlock(operationName);
+      }
+    }
+
+    return sortLocatedBlocks(clientMachine, res);
+  }
+
+  /**
+   * Get block locations of several files within the specified ranges. All
+   * the files are resolved under a single acquisition of the read lock, and
+   * the access times are then updated under a single acquisition of the
+   * write lock.
+   * @see ClientProtocol#getBlockLocationsBatch(String[], long[], long[])
+   */
+  LocatedBlocks[] getBlockLocationsBatch(String clientMachine, String[] srcs,
+      long[] offsets, long[] lengths) throws IOException {
+    final String operationName = "open";
+    checkOperation(OperationCategory.READ);
+    final GetBlockLocationsResult[] results =
+        new GetBlockLocationsResult[srcs.length];
+    final List<String> accessed = new ArrayList<String>();
+    FSPermissionChecker pc = getPermissionChecker();
+    int i = 0;
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      for (; i < srcs.length; i++) {
+        GetBlockLocationsResult res = getBlockLocations(pc, srcs[i],
+            offsets[i], lengths[i], true, true, true);
+        results[i] = res;
+        if (res.updateAccessTime()) {
+          accessed.add(srcs[i]);
+        }
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, srcs[i]);
+      throw e;
+    } finally {
+      readUnlock(operationName);
+    }
+
+    for (String src : srcs) {
+      logAuditEvent(true, operationName, src);
+    }
+
+    if (!accessed.isEmpty()) {
+      writeLock();
+      try {
+        final long now = now();
+        for (String src : accessed) {
+          updateAccessTime(pc, src, now);
         }
-      } catch (Throwable e) {
-        LOG.warn("Failed to update the access time of " + src, e);
       } finally {
         writeUnlock(operationName);
       }
     }
 
-    LocatedBlocks blocks = res.blocks;
+    final LocatedBlocks[] blocks = new LocatedBlocks[srcs.length];
+    for (i = 0; i < srcs.length; i++) {
+      blocks[i] = sortLocatedBlocks(clientMachine, results[i]);
+    }
+    return blocks;
+  }
+
+  /**
+   * Update the access time of a file whose block locations were read.
+   * Failures are only logged. The caller must hold the write lock.
+   */
+  private void updateAccessTime(FSPermissionChecker pc, String src,
+      long now) {
+    try {
+      checkOperation(OperationCategory.WRITE);
+      /**
+       * Resolve the path again and update the atime only when the file
+       * exists.
+       *
+       * XXX: Races can still occur even after resolving the path again.
+       * For example:
+       *
+       * <ul>
+       *   <li>Get the block location for "/a/b"</li>
+       *   <li>Rename "/a/b" to "/c/b"</li>
+       *   <li>The second resolution still points to "/a/b", which is
+       *   wrong.</li>
+       * </ul>
+       *
+       * The behavior is incorrect but consistent with the one before
+       * HDFS-7463. A better fix is to change the edit log of SetTime to
+       * use inode id instead of a path.
+       */
+      final INodesInPath iip = dir.resolvePath(pc, src);
+      src = iip.getPath();
+      INode inode = iip.getLastINode();
+      boolean updateAccessTime = inode != null &&
+          now > inode.getAccessTime() + getAccessTimePrecision();
+      if (!isInSafeMode() && updateAccessTime) {
+        boolean changed = FSDirAttrOp.setTimes(dir,
+            inode, -1, now, false, iip.getLatestSnapshotId());
+        if (changed) {
+          getEditLog().logTimes(src, -1, now);
+        }
+      }
+    } catch (Throwable e) {
+      LOG.warn("Failed to update the access time of " + src, e);
+    }
+  }
+
+  /**
+   * Sort the locations of the blocks by their distance to the client.
+   * @return the sorted block locations, with block tokens if needed
+   */
+  private LocatedBlocks sortLocatedBlocks(String clientMachine,
+      GetBlockLocationsResult res) throws IOException {
+    if (res.cached != null) {
+      return locatedBlocksCache.getSortedBlocks(res.cached, clientMachine,
+          blockManager);
+    }
+    final LocatedBlocks blocks = res.blocks;
     if (blocks != null) {
       blockManager.getDatanodeManager().sortLocatedBlocks(
           clientMachine, blocks.getLocatedBlocks());
@@ -1797,6 +1979,20 @@ LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
   GetBlockLocationsResult getBlockLocations(
       FSPermissionChecker pc, String src, long offset, long length,
       boolean needBlockToken, boolean checkSafeMode) throws IOException {
+    return getBlockLocations(pc, src, offset, length, needBlockToken,
+        checkSafeMode, false);
+  }
+
+  /**
+   * Get block locations within the specified range, possibly from the
+   * located blocks cache.
+   * @see ClientProtocol#getBlockLocations(String, long, long)
+   * @throws IOException
+   */
+  private GetBlockLocationsResult getBlockLocations(
+      FSPermissionChecker pc, String src, long offset, long length,
+      boolean needBlockToken, boolean checkSafeMode, boolean useCache)
+      throws IOException {
     if (offset < 0) {
       throw new HadoopIllegalArgumentException(
           "Negative offset is not supported. File: " + src);
@@ -1806,7 +2002,7 @@ GetBlockLocationsResult getBlockLocations(
           "Negative length is not supported. File: " + src);
     }
     final GetBlockLocationsResult ret = getBlockLocationsInt(
-        pc, src, offset, length, needBlockToken);
+        pc, src, offset, length, needBlockToken, useCache);
 
     if (checkSafeMode && isInSafeMode()) {
       for (LocatedBlock b : ret.blocks.getLocatedBlocks()) {
@@ -1828,7 +2024,7 @@ GetBlockLocationsResult getBlockLocations(
 
   private GetBlockLocationsResult getBlockLocationsInt(
       FSPermissionChecker pc, final String srcArg, long offset, long length,
-      boolean needBlockToken)
+      boolean needBlockToken, boolean useCache)
       throws IOException {
     String src = srcArg;
     final INodesInPath iip = dir.resolvePath(pc, src);
@@ -1850,24 +2046,43 @@ private GetBlockLocationsResult getBlockLocationsInt(
       isUc = false;
     }
 
-    final FileEncryptionInfo feInfo =
-        FSDirectory.isReservedRawName(srcArg) ? null
-            : dir.getFileEncryptionInfo(inode, iip.getPathSnapshotId(), iip);
+    // Only the locations of closed files are cached, and not while the
+    // datanodes are still reporting their replicas.
+    final boolean cacheable = useCache && locatedBlocksCache != null
+        && !isUc && !iip.isSnapshot() && !FSDirectory.isReservedRawName(srcArg)
+        && !isInSafeMode();
+    LocatedBlocksCache.Entry cached = cacheable ?
+        locatedBlocksCache.get(inode, fileSize, offset, length) : null;
+    final LocatedBlocks blocks;
+    if (cached != null) {
+      blocks = cached.getBlocks();
+    } else {
+      final FileEncryptionInfo feInfo =
+          FSDirectory.isReservedRawName(srcArg) ? null
+              : dir.getFileEncryptionInfo(inode, iip.getPathSnapshotId(), iip);
 
-    final LocatedBlocks blocks = blockManager.createLocatedBlocks(
-        inode.getBlocks(iip.getPathSnapshotId()), fileSize,
-        isUc, offset, length, needBlockToken, iip.isSnapshot(), feInfo);
+      // The tokens of the cached locations are set for each reader.
+      blocks = blockManager.createLocatedBlocks(
+          inode.getBlocks(iip.getPathSnapshotId()), fileSize,
+          isUc, offset, length, needBlockToken && !cacheable,
+          iip.isSnapshot(), feInfo);
 
-    // Set caching information for the located blocks.
-    for (LocatedBlock lb : blocks.getLocatedBlocks()) {
-      cacheManager.setCachedLocations(lb);
+      // Set caching information for the located blocks.
+      for (LocatedBlock lb : blocks.getLocatedBlocks()) {
+        cacheManager.setCachedLocations(lb);
+      }
+      if (cacheable) {
+        cached = locatedBlocksCache.put(inode, fileSize, offset, length,
+            blocks);
+      }
     }
 
     final long now = now();
+    // a Standby NameNode serving the read cannot log the access time
     boolean updateAccessTime = isAccessTimeSupported() && !isInSafeMode()
-        && !iip.isSnapshot()
+        && !isInStandbyState() && !iip.isSnapshot()
         && now > inode.getAccessTime() + getAccessTimePrecision();
-    return new GetBlockLocationsResult(updateAccessTime, blocks);
+    return new GetBlockLocationsResult(updateAccessTime, blocks, cached);
   }
 
   /**
@@ -2451,6 +2666,20 @@ private HdfsFileStatus startFileInt(final String srcArg,
       EncryptionFaultInjector.getInstance().startFileAfterGenerateKey();
     }
 
+    // A file which does not exist yet is created in fine-grained write mode.
+    // Overwriting or recovering an existing file removes its blocks and
+    // leases, which needs the write lock.
+    if (create && isFineGrainedLockingEnabled()
+        && !FSDirectory.isReservedName(src)) {
+      stat = startNewFileFineGrained(pc, src, srcArg, permissions, holder,
+          clientMachine, createParent, replication, blockSize, isLazyPersist,
+          suite, protocolVersion, edek, logRetryCache);
+      if (stat != null) {
+        logAuditEvent(true, operationName, srcArg, null, stat);
+        return stat;
+      }
+    }
+
     // Proceed with the create, using the computed cipher suite and 
     // generated EDEK
     BlocksMapUpdateInfo toRemoveBlocks = null;
@@ -2533,25 +2762,8 @@ private BlocksMapUpdateInfo startFileInternal(FSPermissionChecker pc,
       dir.verifyParentDir(iip, src);
     }
 
-    FileEncryptionInfo feInfo = null;
-
-    final EncryptionZone zone = dir.getEZForPath(iip);
-    if (zone != null) {
-      // The path is now within an EZ, but we're missing encryption parameters
-      if (suite == null || edek == null) {
-        throw new RetryStartFileException();
-      }
-      // Path is within an EZ and we have provided encryption parameters.
-      // Make sure that the generated EDEK matches the settings of the EZ.
-      final String ezKeyName = zone.getKeyName();
-      if (!ezKeyName.equals(edek.getEncryptionKeyName())) {
-        throw new RetryStartFileException();
-      }
-      feInfo = new FileEncryptionInfo(suite, version,
-          edek.getEncryptedKeyVersion().getMaterial(),
-          edek.getEncryptedKeyIv(),
-          ezKeyName, edek.getEncryptionKeyVersionName());
-    }
+    final FileEncryptionInfo feInfo =
+        getFileEncryptionInfo(iip, suite, version, edek);
 
     try {
       BlocksMapUpdateInfo toRemoveBlocks = null;
@@ -2618,6 +2830,129 @@ private BlocksMapUpdateInfo startFileInternal(FSPermissionChecker pc,
     }
   }
 
+  /**
+   * Create a file which does not exist yet in fine-grained write mode, see
+   * {@link FSNamesystemLock}. The file is added, and its edit is logged,
+   * under the inode lock of its parent directory, so that the creates of the
+   * same path are serialized.
+   *
+   * @return the status of the new file; or null if the path exists, in which
+   *         case the create has to be done under the write lock.
+   */
+  private HdfsFileStatus startNewFileFineGrained(FSPermissionChecker pc,
+      String src, String srcArg, PermissionStatus permissions, String holder,
+      String clientMachine, boolean createParent, short replication,
+      long blockSize, boolean isLazyPersist, CipherSuite suite,
+      CryptoProtocolVersion version, EncryptedKeyVersion edek,
+      boolean logRetryEntry) throws IOException {
+    boolean skipSync = false;
+    fineGrainedWriteLock(src);
+    try {
+      checkOperation(OperationCategory.WRITE);
+      checkNameNodeSafeMode("Cannot create file" + src);
+      final INodesInPath iip = dir.resolvePathForWrite(pc, src);
+      src = iip.getPath();
+      if (iip.getLastINode() != null) {
+        return null;
+      }
+      final FileEncryptionInfo feInfo;
+      dir.readLock();
+      try {
+        if (isPermissionEnabled) {
+          dir.checkAncestorAccess(pc, iip, FsAction.WRITE);
+        }
+        if (!createParent) {
+          dir.verifyParentDir(iip, src);
+        }
+        feInfo = getFileEncryptionInfo(iip, suite, version, edek);
+      } finally {
+        dir.readUnlock();
+      }
+      checkFsObjectLimit();
+
+      final Map.Entry<INodesInPath, String> parent = FSDirMkdirOp
+          .createAncestorDirectories(dir, iip, permissions);
+      if (parent == null) {
+        throw new IOException("Unable to add " + src +  " to namespace");
+      }
+      final INode parentINode = parent.getKey().getLastINode();
+      final INodeLockManager inodeLocks = dir.getINodeLockManager();
+      inodeLocks.writeLock(parentINode);
+      try {
+        // another fine-grained writer may have created the file since the
+        // path was resolved
+        if (!parentINode.isDirectory() || parentINode.asDirectory().getChild(
+            DFSUtil.string2Bytes(parent.getValue()),
+            Snapshot.CURRENT_STATE_ID) != null) {
+          return null;
+        }
+        dir.writeLock();
+        try {
+          final INodesInPath newIIP = dir.addFile(parent.getKey(),
+              parent.getValue(), permissions, replication, blockSize, holder,
+              clientMachine);
+          if (newIIP == null) {
+            throw new IOException("Unable to add " + src +  " to namespace");
+          }
+          INodeFile newNode = newIIP.getLastINode().asFile();
+          leaseManager.addLease(newNode.getFileUnderConstructionFeature()
+              .getClientName(), src);
+          if (feInfo != null) {
+            dir.setFileEncryptionInfo(src, feInfo);
+            newNode = dir.getInode(newNode.getId()).asFile();
+          }
+          setNewINodeStoragePolicy(newNode, newIIP, isLazyPersist);
+          getEditLog().logOpenFile(src, newNode, false, logRetryEntry);
+          NameNode.stateChangeLog.debug("DIR* NameSystem.startFile: added {}" +
+              " inode {} holder {}", src, newNode.getId(), holder);
+          return FSDirStatAndListingOp.getFileInfo(
+              dir, src, false, FSDirectory.isReservedRawName(srcArg));
+        } finally {
+          dir.writeUnlock();
+        }
+      } finally {
+        inodeLocks.writeUnlock(parentINode);
+      }
+    } catch (StandbyException se) {
+      skipSync = true;
+      throw se;
+    } finally {
+      fineGrainedWriteUnlock("create");
+      if (!skipSync) {
+        getEditLog().logSync();
+      }
+    }
+  }
+
+  /**
+   * @return the encryption info of a file created at iip, or null if iip is
+   *         not in an encryption zone.
+   * @throws RetryStartFileException if the encryption parameters do not
+   *         match the encryption zone of iip.
+   */
+  private FileEncryptionInfo getFileEncryptionInfo(INodesInPath iip,
+      CipherSuite suite, CryptoProtocolVersion version,
+      EncryptedKeyVersion edek) throws IOException {
+    final EncryptionZone zone = dir.getEZForPath(iip);
+    if (zone == null) {
+      return null;
+    }
+    // The path is now within an EZ, but we're missing encryption parameters
+    if (suite == null || edek == null) {
+      throw new RetryStartFileException();
+    }
+    // Path is within an EZ and we have provided encryption parameters.
+    // Make sure that the generated EDEK matches the settings of the EZ.
+    final String ezKeyName = zone.getKeyName();
+    if (!ezKeyName.equals(edek.getEncryptionKeyName())) {
+      throw new RetryStartFileException();
+    }
+    return new FileEncryptionInfo(suite, version,
+        edek.getEncryptedKeyVersion().getMaterial(),
+        edek.getEncryptedKeyIv(),
+        ezKeyName, edek.getEncryptionKeyVersionName());
+  }
+
   private void setNewINodeStoragePolicy(INodeFile inode,
                                         INodesInPath iip,
                                         boolean isLazyPersist)
@@ -2801,6 +3136,7 @@ private QuotaCounts computeQuotaDeltaForUCBlock(INodeFile file) {
       final long diff = file.getPreferredBlockSize() - lastBlock.getNumBytes();
       final short repl = file.getBlockReplication();
       delta.addStorageSpace(diff * repl);
+      delta.addLength(diff);
       final BlockStoragePolicy policy = dir.getBlockStoragePolicySuite()
           .getPolicy(file.getStoragePolicyID());
       List<StorageType> types = policy.chooseStorageTypes(repl);
@@ -3814,7 +4150,7 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
     final String operationName = "getfileinfo";
     checkOperation(OperationCategory.READ);
     HdfsFileStatus stat = null;
-    readLock();
+    readLock(src);
     try {
       checkOperation(OperationCategory.READ);
       stat = FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink);
@@ -3828,13 +4164,52 @@ HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
     return stat;
   }
 
+  /**
+   * Get the file info for several files or directories, under a single
+   * acquisition of the read lock.
+   * @param srcs The string representations of the paths
+   * @param resolveLink whether to throw UnresolvedLinkException
+   *        if src refers to a symlink
+   *
+   * @throws AccessControlException if access is denied
+   * @throws UnresolvedLinkException if a symlink is encountered.
+   *
+   * @return the file info of each path; an element is null if the file
+   *         does not exist.
+   * @throws StandbyException
+   */
+  HdfsFileStatus[] getFileInfos(final String[] srcs, boolean resolveLink)
+    throws IOException {
+    final String operationName = "getfileinfo";
+    checkOperation(OperationCategory.READ);
+    final HdfsFileStatus[] stats = new HdfsFileStatus[srcs.length];
+    int i = 0;
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      for (; i < srcs.length; i++) {
+        stats[i] = FSDirStatAndListingOp.getFileInfo(dir, srcs[i],
+            resolveLink);
+      }
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, srcs[i]);
+      throw e;
+    } finally {
+      readUnlock(operationName);
+    }
+    for (String src : srcs) {
+      logAuditEvent(true, operationName, src);
+    }
+    return stats;
+  }
+
   /**
    * Returns true if the file is closed
    */
   boolean isFileClosed(final String src) throws IOException {
     final String operationName = "isFileClosed";
     checkOperation(OperationCategory.READ);
-    readLock();
+    readLock(src);
     try {
       checkOperation(OperationCategory.READ);
       return FSDirStatAndListingOp.isFileClosed(dir, src);
@@ -3854,7 +4229,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
     final String operationName = "mkdirs";
     HdfsFileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    fineGrainedWriteLock(src);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -3863,7 +4238,7 @@ boolean mkdirs(String src, PermissionStatus permissions,
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      fineGrainedWriteUnlock(operationName);
     }
     getEditLog().logSync();
     logAuditEvent(true, operationName, src, null, auditStat);
@@ -4439,7 +4814,7 @@ DirectoryListing getListing(String src, byte[] startAfter,
     checkOperation(OperationCategory.READ);
     final String operationName = "listStatus";
     DirectoryListing dl = null;
-    readLock();
+    readLock(src);
     try {
       checkOperation(NameNode.OperationCategory.READ);
       dl = FSDirStatAndListingOp.getListingInt(dir, src, startAfter,
@@ -4510,6 +4885,9 @@ String getRegistrationID() {
    * If a substantial amount of time passed since the last datanode 
    * heartbeat then request an immediate block report.  
    * 
+   * The heartbeat does not take the namesystem lock: the DatanodeManager
+   * only takes the read lock for the commands which need it.
+   * 
    * @return an array of datanode commands 
    * @throws IOException
    */
@@ -4517,24 +4895,44 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
       StorageReport[] reports, long cacheCapacity, long cacheUsed,
       int xceiverCount, int xmitsInProgress, int failedVolumes,
       VolumeFailureSummary volumeFailureSummary) throws IOException {
-    readLock();
-    try {
-      //get datanode commands
-      final int maxTransfer = blockManager.getMaxReplicationStreams()
-          - xmitsInProgress;
-      DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
-          nodeReg, reports, blockPoolId, cacheCapacity, cacheUsed,
-          xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary);
-      
-      //create ha status
-      final NNHAStatusHeartbeat haState = new NNHAStatusHeartbeat(
-          haContext.getState().getServiceState(),
-          getFSImage().getCorrectLastAppliedOrWrittenTxId());
+    //get datanode commands
+    final int maxTransfer = blockManager.getMaxReplicationStreams()
+        - xmitsInProgress;
+    DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
+        nodeReg, reports, blockPoolId, cacheCapacity, cacheUsed,
+        xceiverCount, maxTransfer, failedVolumes, volumeFailureSummary);
 
-      return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo);
-    } finally {
-      readUnlock("handleHeartbeat");
-    }
+    //create ha status
+    final NNHAStatusHeartbeat haState = new NNHAStatusHeartbeat(
+        haContext.getState().getServiceState(),
+        getFSImage().getCorrectLastAppliedOrWrittenTxId());
+
+    return new HeartbeatResponse(cmds, haState, rollingUpgradeInfo);
+  }
+
+  /**
+   * Handles a lifeline message sent by a DataNode. This method updates
+   * contact information and statistics for the DataNode, so that it doesn't
+   * time out. Unlike a heartbeat, this method does not dispatch any commands
+   * back to the DataNode, so it does not need the namesystem lock.
+   *
+   * @param nodeReg registration info for DataNode sending the lifeline
+   * @param reports storage reports from DataNode
+   * @param cacheCapacity cache capacity at DataNode
+   * @param cacheUsed cache used at DataNode
+   * @param xceiverCount estimated count of transfer threads running at DataNode
+   * @param xmitsInProgress count of transfers running at DataNode
+   * @param failedVolumes count of failed volumes at DataNode
+   * @param volumeFailureSummary info on failed volumes at DataNode
+   * @throws IOException if there is an error
+   */
+  void handleLifeline(DatanodeRegistration nodeReg, StorageReport[] reports,
+      long cacheCapacity, long cacheUsed, int xceiverCount,
+      int xmitsInProgress, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary) throws IOException {
+    blockManager.getDatanodeManager().handleLifeline(nodeReg, reports,
+        cacheCapacity, cacheUsed, xceiverCount, failedVolumes,
+        volumeFailureSummary);
   }
 
   /**
@@ -4777,6 +5175,18 @@ public long getMissingReplOneBlocksCount() {
     return blockManager.getMissingReplOneBlocksCount();
   }
   
+  @Metric({"LocatedBlocksCacheHits",
+      "Number of block location reads served from the located blocks cache"})
+  public long getLocatedBlocksCacheHits() {
+    return locatedBlocksCache == null ? 0 : locatedBlocksCache.getHits();
+  }
+
+  @Metric({"LocatedBlocksCacheMisses",
+      "Number of block location reads missing the located blocks cache"})
+  public long getLocatedBlocksCacheMisses() {
+    return locatedBlocksCache == null ? 0 : locatedBlocksCache.getMisses();
+  }
+
   @Metric({"ExpiredHeartbeats", "Number of expired heartbeats"})
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
@@ -8211,56 +8621,97 @@ void checkAccess(String src, FsAction mode) throws IOException {
   private static class DefaultAuditLogger extends HdfsAuditLogger {
 
     private boolean logTokenTrackingId;
+    private AsyncAuditPipeline pipeline;
 
     @Override
     public void initialize(Configuration conf) {
       logTokenTrackingId = conf.getBoolean(
           DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_KEY,
           DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT);
+      if (conf.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_DEFAULT)) {
+        pipeline = new AsyncAuditPipeline("NameNodeAuditLog", conf.getInt(
+            DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_CAPACITY_KEY,
+            DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_CAPACITY_DEFAULT));
+        pipeline.start();
+      }
+    }
+
+    void close() {
+      if (pipeline != null) {
+        pipeline.stop();
+      }
+    }
+
+    @VisibleForTesting
+    AsyncAuditPipeline getPipeline() {
+      return pipeline;
     }
 
     @Override
-    public void logAuditEvent(boolean succeeded, String userName,
-        InetAddress addr, String cmd, String src, String dst,
-        FileStatus status, UserGroupInformation ugi,
-        DelegationTokenSecretManager dtSecretManager) {
+    public void logAuditEvent(final boolean succeeded, final String userName,
+        final InetAddress addr, final String cmd, final String src,
+        final String dst, final FileStatus status,
+        final UserGroupInformation ugi,
+        final DelegationTokenSecretManager dtSecretManager) {
       if (auditLog.isInfoEnabled()) {
-        final StringBuilder sb = auditBuffer.get();
-        sb.setLength(0);
-        sb.append("allowed=").append(succeeded).append("\t");
-        sb.append("ugi=").append(userName).append("\t");
-        sb.append("ip=").append(addr).append("\t");
-        sb.append("cmd=").append(cmd).append("\t");
-        sb.append("src=").append(src).append("\t");
-        sb.append("dst=").append(dst).append("\t");
-        if (null == status) {
-          sb.append("perm=null");
+        // the protocol is only known by the thread serving the request
+        final boolean isWebHdfs = NamenodeWebHdfsMethods.isWebHdfsInvocation();
+        if (pipeline == null) {
+          logAuditEvent(succeeded, userName, addr, cmd, src, dst, status, ugi,
+              dtSecretManager, isWebHdfs);
         } else {
-          sb.append("perm=");
-          sb.append(status.getOwner()).append(":");
-          sb.append(status.getGroup()).append(":");
-          sb.append(status.getPermission());
+          pipeline.offer(new Runnable() {
+            @Override
+            public void run() {
+              logAuditEvent(succeeded, userName, addr, cmd, src, dst, status,
+                  ugi, dtSecretManager, isWebHdfs);
+            }
+          });
         }
-        if (logTokenTrackingId) {
-          sb.append("\t").append("trackingId=");
-          String trackingId = null;
-          if (ugi != null && dtSecretManager != null
-              && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
-            for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
-              if (tid instanceof DelegationTokenIdentifier) {
-                DelegationTokenIdentifier dtid =
-                    (DelegationTokenIdentifier)tid;
-                trackingId = dtSecretManager.getTokenTrackingId(dtid);
-                break;
-              }
+      }
+    }
+
+    private void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager, boolean isWebHdfs) {
+      final StringBuilder sb = auditBuffer.get();
+      sb.setLength(0);
+      sb.append("allowed=").append(succeeded).append("\t");
+      sb.append("ugi=").append(userName).append("\t");
+      sb.append("ip=").append(addr).append("\t");
+      sb.append("cmd=").append(cmd).append("\t");
+      sb.append("src=").append(src).append("\t");
+      sb.append("dst=").append(dst).append("\t");
+      if (null == status) {
+        sb.append("perm=null");
+      } else {
+        sb.append("perm=");
+        sb.append(status.getOwner()).append(":");
+        sb.append(status.getGroup()).append(":");
+        sb.append(status.getPermission());
+      }
+      if (logTokenTrackingId) {
+        sb.append("\t").append("trackingId=");
+        String trackingId = null;
+        if (ugi != null && dtSecretManager != null
+            && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
+          for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
+            if (tid instanceof DelegationTokenIdentifier) {
+              DelegationTokenIdentifier dtid =
+                  (DelegationTokenIdentifier)tid;
+              trackingId = dtSecretManager.getTokenTrackingId(dtid);
+              break;
             }
           }
-          sb.append(trackingId);
         }
-        sb.append("\t").append("proto=");
-        sb.append(NamenodeWebHdfsMethods.isWebHdfsInvocation() ? "webhdfs" : "rpc");
-        logAuditMessage(sb.toString());
+        sb.append(trackingId);
       }
+      sb.append("\t").append("proto=");
+      sb.append(isWebHdfs ? "webhdfs" : "rpc");
+      logAuditMessage(sb.toString());
     }
 
     public void logAuditMessage(String message) {
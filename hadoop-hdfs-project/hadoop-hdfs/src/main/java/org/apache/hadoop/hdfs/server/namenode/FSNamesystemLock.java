@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -26,16 +28,23 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.top.TopConf;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Timer;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
@@ -48,22 +57,55 @@
  * to be true, metrics will be emitted into the FSNamesystem metrics registry
  * for each operation which acquires this lock indicating how long the operation
  * held the lock for. These metrics have names of the form
- * FSN(Read|Write)LockNanosOperationName, where OperationName denotes the name
+ * FSN(Read|Write|FineGrainedWrite)LockNanosOperationName, where
+ * OperationName denotes the name
  * of the operation that initiated the lock hold (this will be OTHER for certain
  * uncategorized operations) and they export the hold time values in
  * nanoseconds. Note that if a thread dies, metrics produced after the
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY}
+ * is true, the lock additionally supports a fine-grained write mode. A
+ * fine-grained writer holds the read side of the coarse lock, so it is
+ * excluded by regular writers, and passes through a {@link FineGrainedGate}
+ * which keeps readers and fine-grained writers of overlapping paths apart.
+ * Readers which do not name a path overlap every path. Fine-grained writers
+ * are concurrent with each other and with the readers of other paths, and
+ * must protect the state they share by other means, see
+ * {@link INodeLockManager}. Their hold times are reported as fine-grained
+ * write holds, and profiled as write holds.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY}
+ * is positive, a sample of the outermost lock acquisitions is timed and
+ * their wait and hold times are added to a {@link LockProfiler}.
  */
 class FSNamesystemLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
 
+  /** Null unless fine-grained locking is enabled. */
+  private final FineGrainedGate fineGrainedGate;
+
   private final boolean metricsEnabled;
   private final MutableRatesWithAggregation detailedHoldTimeMetrics;
   private final Timer timer;
 
+  /** Null unless lock profiling is enabled. */
+  private final LockProfiler profiler;
+  private static final long NOT_SAMPLED = Long.MIN_VALUE;
+  /** Wait time (ns) of the sampled write lock hold, negative if not sampled. */
+  private long writeLockWaitNanos = -1;
+  /** Wait time (ns) of the sampled read lock hold, negative if not sampled. */
+  private final ThreadLocal<Long> readLockWaitNanos =
+      new ThreadLocal<Long>() {
+        @Override
+        public Long initialValue() {
+          return -1L;
+        }
+      };
+
   /**
    * Log statements about long lock hold times will not be produced more
    * frequently than this interval.
@@ -105,6 +147,8 @@ public Long initialValue() {
   static final String OP_NAME_OTHER = "OTHER";
   private static final String READ_LOCK_METRIC_PREFIX = "FSNReadLock";
   private static final String WRITE_LOCK_METRIC_PREFIX = "FSNWriteLock";
+  private static final String FINE_GRAINED_WRITE_LOCK_METRIC_PREFIX =
+      "FSNFineGrainedWriteLock";
   private static final String LOCK_METRIC_SUFFIX = "Nanos";
 
   FSNamesystemLock(Configuration conf,
@@ -120,6 +164,11 @@ public Long initialValue() {
     FSNamesystem.LOG.info("fsLock is fair: " + fair);
     this.coarseLock = new ReentrantReadWriteLock(fair);
     this.timer = timer;
+    boolean fineGrained = conf.getBoolean(
+        DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY,
+        DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_DEFAULT);
+    FSNamesystem.LOG.info("Fine-grained locking enabled: " + fineGrained);
+    this.fineGrainedGate = fineGrained ? new FineGrainedGate() : null;
 
     this.writeLockReportingThresholdMs = conf.getLong(
         DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY,
@@ -136,28 +185,151 @@ public Long initialValue() {
     FSNamesystem.LOG.info("Detailed lock hold time metrics enabled: " +
         this.metricsEnabled);
     this.detailedHoldTimeMetrics = detailedHoldTimeMetrics;
+    final float sampleRate = conf.getFloat(
+        DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY,
+        DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_DEFAULT);
+    FSNamesystem.LOG.info("Lock profiling sample rate: " + sampleRate);
+    this.profiler = sampleRate <= 0 ? null : new LockProfiler(sampleRate,
+        new TopConf(conf).nntopReportingPeriodsMs, timer);
+  }
+
+  /** @return the lock profiler, or null if lock profiling is disabled. */
+  LockProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * @return the start time (ns) of a lock acquisition if it is sampled;
+   *         otherwise, {@link #NOT_SAMPLED}.
+   */
+  private long getSampleStartNanos(boolean outermost) {
+    return profiler != null && outermost && profiler.shouldSample() ?
+        timer.monotonicNowNanos() : NOT_SAMPLED;
+  }
+
+  private void endReadLockWait(long sampleStartNanos) {
+    if (sampleStartNanos != NOT_SAMPLED) {
+      readLockWaitNanos.set(timer.monotonicNowNanos() - sampleStartNanos);
+    }
   }
 
   public void readLock() {
+    readLock(null);
+  }
+
+  /**
+   * Acquire the read lock for an operation which only reads the given path.
+   * With fine-grained locking enabled, the reader is admitted while
+   * fine-grained writers modify other paths, see {@link FineGrainedGate}.
+   *
+   * @param path the absolute path read by the operation, or null if it may
+   *             read anything
+   */
+  public void readLock(String path) {
+    final long sampleStart =
+        getSampleStartNanos(coarseLock.getReadHoldCount() == 0);
+    coarseReadLock();
+    enterGate(false, path);
+    endReadLockWait(sampleStart);
+  }
+
+  public void readUnlock() {
+    readUnlock(OP_NAME_OTHER);
+  }
+
+
+  /**
+   * Acquire the lock in fine-grained write mode for an operation which
+   * modifies the given path and the directories above it. Falls back to the
+   * regular write lock if fine-grained locking is disabled.
+   *
+   * @param path the absolute path modified by the operation, or null if it
+   *             may modify anything
+   */
+  public void fineGrainedWriteLock(String path) {
+    if (fineGrainedGate == null) {
+      writeLock();
+      return;
+    }
+    final long sampleStart =
+        getSampleStartNanos(coarseLock.getReadHoldCount() == 0);
+    coarseReadLock();
+    enterGate(true, path);
+    endReadLockWait(sampleStart);
+  }
+
+  public void fineGrainedWriteLock() {
+    fineGrainedWriteLock(null);
+  }
+
+  public void fineGrainedWriteUnlock(String opName) {
+    if (fineGrainedGate == null) {
+      writeUnlock(opName);
+      return;
+    }
+    sharedUnlock(opName, true);
+  }
+
+  public boolean isFineGrainedLockingEnabled() {
+    return fineGrainedGate != null;
+  }
+
+  /**
+   * @return true if the current thread holds the lock in fine-grained write
+   *         mode, i.e. it is allowed to modify the namespace without holding
+   *         the write lock.
+   */
+  public boolean hasFineGrainedWriteLock() {
+    return fineGrainedGate != null && fineGrainedGate.isWriterInside();
+  }
+
+  private void enterGate(boolean writer, String path) {
+    // a thread holding the write lock already excludes everybody else
+    if (fineGrainedGate != null && !coarseLock.isWriteLockedByCurrentThread()) {
+      fineGrainedGate.enter(writer, path);
+    }
+  }
+
+  private void exitGate() {
+    if (fineGrainedGate != null) {
+      fineGrainedGate.exit();
+    }
+  }
+
+  private void coarseReadLock() {
     coarseLock.readLock().lock();
     if (coarseLock.getReadHoldCount() == 1) {
       readLockHeldTimeStampNanos.set(timer.monotonicNowNanos());
     }
   }
 
-  public void readUnlock() {
-    readUnlock(OP_NAME_OTHER);
+  public void readUnlock(String opName) {
+    sharedUnlock(opName, false);
   }
 
-  public void readUnlock(String opName) {
+  /**
+   * Leave the gate and release the read side of the coarse lock, held either
+   * by a reader or by a fine-grained writer.
+   */
+  private void sharedUnlock(String opName, boolean fineGrainedWrite) {
+    exitGate();
     final boolean needReport = coarseLock.getReadHoldCount() == 1;
     final long readLockIntervalNanos =
         timer.monotonicNowNanos() - readLockHeldTimeStampNanos.get();
     coarseLock.readLock().unlock();
 
     if (needReport) {
-      addMetric(opName, readLockIntervalNanos, false);
+      addMetric(opName, readLockIntervalNanos, fineGrainedWrite ?
+          FINE_GRAINED_WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX);
       readLockHeldTimeStampNanos.remove();
+      if (profiler != null) {
+        final long waitNanos = readLockWaitNanos.get();
+        if (waitNanos >= 0) {
+          readLockWaitNanos.remove();
+          profiler.record(fineGrainedWrite, opName, waitNanos,
+              readLockIntervalNanos);
+        }
+      }
     }
     final long readLockIntervalMs =
         TimeUnit.NANOSECONDS.toMillis(readLockIntervalNanos);
@@ -185,8 +357,9 @@ public void readUnlock(String opName) {
       int numSuppressedWarnings = numReadLockWarningsSuppressed.getAndSet(0);
       long longestLockHeldIntervalMs =
           longestReadLockHeldIntervalMs.getAndSet(0);
-      FSNamesystem.LOG.info("FSNamesystem read lock held for " +
-          readLockIntervalMs + " ms via\n" +
+      FSNamesystem.LOG.info("FSNamesystem " +
+          (fineGrainedWrite ? "fine-grained write" : "read") +
+          " lock held for " + readLockIntervalMs + " ms via\n" +
           StringUtils.getStackTrace(Thread.currentThread()) +
           "\tNumber of suppressed read-lock reports: " + numSuppressedWarnings +
           "\n\tLongest read-lock held interval: " + longestLockHeldIntervalMs);
@@ -194,19 +367,29 @@ public void readUnlock(String opName) {
   }
   
   public void writeLock() {
+    final long sampleStart =
+        getSampleStartNanos(!coarseLock.isWriteLockedByCurrentThread());
     coarseLock.writeLock().lock();
     if (coarseLock.getWriteHoldCount() == 1) {
-      writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      writeLockAcquired(sampleStart);
     }
   }
 
   public void writeLockInterruptibly() throws InterruptedException {
+    final long sampleStart =
+        getSampleStartNanos(!coarseLock.isWriteLockedByCurrentThread());
     coarseLock.writeLock().lockInterruptibly();
     if (coarseLock.getWriteHoldCount() == 1) {
-      writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+      writeLockAcquired(sampleStart);
     }
   }
 
+  private void writeLockAcquired(long sampleStartNanos) {
+    writeLockHeldTimeStampNanos = timer.monotonicNowNanos();
+    writeLockWaitNanos = sampleStartNanos == NOT_SAMPLED ? -1 :
+        writeLockHeldTimeStampNanos - sampleStartNanos;
+  }
+
   public void writeUnlock() {
     writeUnlock(OP_NAME_OTHER);
   }
@@ -220,6 +403,7 @@ public void writeUnlock(String opName) {
     final long currentTimeMs = TimeUnit.NANOSECONDS.toMillis(currentTimeNanos);
     final long writeLockIntervalMs =
         TimeUnit.NANOSECONDS.toMillis(writeLockIntervalNanos);
+    final long waitNanos = needReport ? writeLockWaitNanos : -1;
 
     boolean logReport = false;
     int numSuppressedWarnings = 0;
@@ -245,7 +429,10 @@ public void writeUnlock(String opName) {
     coarseLock.writeLock().unlock();
 
     if (needReport) {
-      addMetric(opName, writeLockIntervalNanos, true);
+      addMetric(opName, writeLockIntervalNanos, WRITE_LOCK_METRIC_PREFIX);
+      if (waitNanos >= 0) {
+        profiler.record(true, opName, waitNanos, writeLockIntervalNanos);
+      }
     }
 
     if (logReport) {
@@ -285,15 +472,170 @@ public int getQueueLength() {
     return coarseLock.getQueueLength();
   }
 
+  @VisibleForTesting
+  FineGrainedGate getFineGrainedGate() {
+    return fineGrainedGate;
+  }
+
+  /**
+   * Admits readers and fine-grained writers as long as no reader is inside at
+   * the same time as a writer of an overlapping path. Two paths overlap if
+   * one of them is equal to or an ancestor of the other; a thread which does
+   * not name a path, or names a path that cannot be compared by its
+   * components, overlaps every path. Readers do not exclude each other, and
+   * neither do fine-grained writers.
+   *
+   * Threads are only admitted after they acquired the read side of the
+   * coarse lock. Whenever threads of the other kind with an overlapping path
+   * are waiting, newly arriving threads queue up behind them, so that neither
+   * kind can starve the other. Nested acquisitions by a thread which is
+   * already inside the gate always succeed, and keep the kind and the path of
+   * the outermost one.
+   */
+  @VisibleForTesting
+  static class FineGrainedGate {
+    /** A thread inside or waiting at the gate. */
+    private static class Hold {
+      private final boolean writer;
+      /** The path components, null if the path overlaps every path. */
+      private final String[] path;
+      private int depth = 1;
+
+      Hold(boolean writer, String[] path) {
+        this.writer = writer;
+        this.path = path;
+      }
+
+      boolean overlaps(Hold other) {
+        if (path == null || other.path == null) {
+          return true;
+        }
+        final int n = Math.min(path.length, other.path.length);
+        for (int i = 0; i < n; i++) {
+          if (!path[i].equals(other.path[i])) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+
+    private final ThreadLocal<Hold> holds = new ThreadLocal<Hold>();
+    private final List<Hold> activeReaders = new ArrayList<Hold>();
+    private final List<Hold> activeWriters = new ArrayList<Hold>();
+    private final List<Hold> waitingReaders = new ArrayList<Hold>();
+    private final List<Hold> waitingWriters = new ArrayList<Hold>();
+    /** Which kind of waiters is admitted next when both are waiting. */
+    private boolean writersTurn = false;
+
+    /**
+     * @return the components of an absolute path, or null if the path is
+     *         null, relative, reserved or goes through a snapshot, since
+     *         the inodes it reads are not determined by its components.
+     */
+    @VisibleForTesting
+    static String[] getPathComponents(String path) {
+      if (path == null || !path.startsWith(Path.SEPARATOR)
+          || FSDirectory.isReservedName(path)) {
+        return null;
+      }
+      final List<String> components = new ArrayList<String>();
+      for (String c : StringUtils.split(path, Path.SEPARATOR_CHAR)) {
+        if (c.equals(".") || c.equals("..")
+            || c.equals(HdfsConstants.DOT_SNAPSHOT_DIR)) {
+          return null;
+        }
+        if (!c.isEmpty()) {
+          components.add(c);
+        }
+      }
+      return components.toArray(new String[components.size()]);
+    }
+
+    void enter(boolean writer, String path) {
+      Hold h = holds.get();
+      if (h != null) {
+        h.depth++;
+        return;
+      }
+      h = new Hold(writer, getPathComponents(path));
+      final List<Hold> waiting = writer ? waitingWriters : waitingReaders;
+      boolean interrupted = false;
+      synchronized (this) {
+        waiting.add(h);
+        while (true) {
+          final boolean blockedByActive =
+              overlapsAny(h, writer ? activeReaders : activeWriters);
+          if (!blockedByActive && (writersTurn == writer ||
+              !overlapsAny(h, writer ? waitingReaders : waitingWriters))) {
+            break;
+          }
+          if (blockedByActive) {
+            writersTurn = writer;
+          }
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+        waiting.remove(h);
+        (writer ? activeWriters : activeReaders).add(h);
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      holds.set(h);
+    }
+
+    private static boolean overlapsAny(Hold h, List<Hold> others) {
+      for (Hold o : others) {
+        if (h.overlaps(o)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void exit() {
+      final Hold h = holds.get();
+      if (h == null) {
+        // entered while holding the write lock, nothing was registered
+        return;
+      }
+      if (--h.depth > 0) {
+        return;
+      }
+      holds.remove();
+      synchronized (this) {
+        (h.writer ? activeWriters : activeReaders).remove(h);
+        notifyAll();
+      }
+    }
+
+    boolean isWriterInside() {
+      final Hold h = holds.get();
+      return h != null && h.writer;
+    }
+
+    synchronized int getActiveReaders() {
+      return activeReaders.size();
+    }
+
+    synchronized int getActiveWriters() {
+      return activeWriters.size();
+    }
+  }
+
   /**
    * Add the lock hold time for a recent operation to the metrics.
    * @param operationName Name of the operation for which to record the time
    * @param value Length of time the lock was held (nanoseconds)
+   * @param prefix Prefix of the metric name for the lock mode
    */
-  private void addMetric(String operationName, long value, boolean isWrite) {
+  private void addMetric(String operationName, long value, String prefix) {
     if (metricsEnabled) {
-      String metricName =
-          (isWrite ? WRITE_LOCK_METRIC_PREFIX : READ_LOCK_METRIC_PREFIX) +
+      String metricName = prefix +
           org.apache.commons.lang.StringUtils.capitalize(operationName) +
           LOCK_METRIC_SUFFIX;
       detailedHoldTimeMetrics.add(metricName, value);
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcRequestHeaderProto;
+import org.apache.hadoop.ipc.protobuf.RpcHeaderProtos.RpcResponseHeaderProto;
+
+/**
+ * This is the server side implementation responsible for passing
+ * state alignment info to clients.
+ *
+ * The state id of the NameNode is the last transaction id it has applied
+ * (Standby) or written (Active). A Standby NameNode serves the reads of a
+ * client only if its state id is not older than the one of the client, see
+ * {@link org.apache.hadoop.hdfs.server.namenode.ha.StandbyState}.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+class GlobalStateIdContext implements AlignmentContext {
+  private final FSNamesystem namesystem;
+
+  GlobalStateIdContext(FSNamesystem namesystem) {
+    this.namesystem = namesystem;
+  }
+
+  /**
+   * Server side implementation for providing state alignment info in
+   * responses.
+   */
+  @Override
+  public void updateResponseState(RpcResponseHeaderProto.Builder header) {
+    header.setStateId(getLastSeenStateId());
+  }
+
+  /**
+   * Server side implementation only receives state alignment info.
+   * It does not build RPC responses.
+   */
+  @Override
+  public void receiveResponseState(RpcResponseHeaderProto header) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Server side implementation only receives state alignment info.
+   * It does not build RPC requests.
+   */
+  @Override
+  public void updateRequestState(RpcRequestHeaderProto.Builder header) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Server side implementation for processing state alignment info in
+   * requests.
+   */
+  @Override
+  public long receiveRequestState(RpcRequestHeaderProto header) {
+    return header.hasStateId() ? header.getStateId() : -1;
+  }
+
+  @Override
+  public long getLastSeenStateId() {
+    return namesystem.getFSImage().getLastAppliedOrWrittenTxId();
+  }
+}
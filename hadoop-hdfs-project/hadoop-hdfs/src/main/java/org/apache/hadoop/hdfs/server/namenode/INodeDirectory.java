@@ -179,6 +179,26 @@ public void addSpaceConsumed(QuotaCounts counts, boolean verify)
     } else {
       addSpaceConsumed2Parent(counts, verify);
     }
+    final DirectoryWithSummaryFeature s = getDirectoryWithSummaryFeature();
+    if (s != null) {
+      s.addSpaceConsumed(counts);
+    }
+  }
+
+  /**
+   * Update the cached usage of this directory, but not of its ancestors. It
+   * does not check for quota violations.
+   *
+   * @param counts the change of the namespace/space/type usage
+   */
+  public void addSpaceConsumed2Cache(QuotaCounts counts) {
+    if (isQuotaSet()) {
+      getDirectoryWithQuotaFeature().addSpaceConsumed2Cache(counts);
+    }
+    final DirectoryWithSummaryFeature s = getDirectoryWithSummaryFeature();
+    if (s != null) {
+      s.addSpaceConsumed(counts);
+    }
   }
 
   /**
@@ -201,6 +221,42 @@ DirectoryWithQuotaFeature addDirectoryWithQuotaFeature(
     return q;
   }
 
+  /**
+   * If the directory contains a {@link DirectoryWithSummaryFeature}, return
+   * it; otherwise, return null.
+   */
+  public final DirectoryWithSummaryFeature getDirectoryWithSummaryFeature() {
+    return getFeature(DirectoryWithSummaryFeature.class);
+  }
+
+  /**
+   * Set the usage of the subtree kept by the {@link DirectoryWithSummaryFeature}
+   * of this directory, adding the feature if needed. An existing feature keeps
+   * its snapshot data mark.
+   */
+  void setSummary(QuotaCounts usage) {
+    final DirectoryWithSummaryFeature s = getDirectoryWithSummaryFeature();
+    if (s != null) {
+      s.setSpaceConsumed(usage);
+    } else {
+      addFeature(new DirectoryWithSummaryFeature(usage, false));
+    }
+  }
+
+  /**
+   * Replace the {@link DirectoryWithSummaryFeature} of this directory with a
+   * fully computed one.
+   *
+   * @param withSnapshotData whether the subtree holds snapshot data
+   */
+  void resetSummary(QuotaCounts usage, boolean withSnapshotData) {
+    final DirectoryWithSummaryFeature s = getDirectoryWithSummaryFeature();
+    if (s != null) {
+      removeFeature(s);
+    }
+    addFeature(new DirectoryWithSummaryFeature(usage, withSnapshotData));
+  }
+
   int searchChildren(byte[] name) {
     return children == null? -1: Collections.binarySearch(children, name);
   }
@@ -587,6 +643,7 @@ public QuotaCounts computeQuotaUsage(BlockStoragePolicySuite bsps,
             lastSnapshotId);
       }
       counts.addNameSpace(1);
+      counts.addDirectoryCount(1);
       return counts;
     }
     
@@ -619,6 +676,7 @@ private QuotaCounts computeDirectoryQuotaUsage(BlockStoragePolicySuite bsps,
   public QuotaCounts computeQuotaUsage4CurrentDirectory(
       BlockStoragePolicySuite bsps, byte storagePolicyId, QuotaCounts counts) {
     counts.addNameSpace(1);
+    counts.addDirectoryCount(1);
     // include the diff list
     DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null) {
@@ -820,9 +878,7 @@ public QuotaCounts cleanSubtree(final BlockStoragePolicySuite bsps,
       // process recursively down the subtree
       QuotaCounts counts = cleanSubtreeRecursively(bsps, snapshotId, priorSnapshotId,
           collectedBlocks, removedINodes, null);
-      if (isQuotaSet()) {
-        getDirectoryWithQuotaFeature().addSpaceConsumed2Cache(counts.negation());
-      }
+      addSpaceConsumed2Cache(counts.negation());
       return counts;
     }
   }
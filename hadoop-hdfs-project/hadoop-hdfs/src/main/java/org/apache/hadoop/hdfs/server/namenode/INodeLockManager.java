@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Striped per-inode read/write locks used when fine-grained namespace locking
+ * is enabled.
+ *
+ * Fine-grained writers hold the FSNamesystem lock in a mode that is shared
+ * with other fine-grained writers only, so they have to synchronize with each
+ * other on the directories they touch: the children list of a directory is
+ * read under its read lock during path resolution and modified under its
+ * write lock. A thread holds at most one of these locks at any time, so
+ * striping several inodes onto the same lock cannot cause a deadlock.
+ */
+class INodeLockManager {
+  private final ReentrantReadWriteLock[] stripes;
+  private final int mask;
+
+  INodeLockManager(int numStripes) {
+    Preconditions.checkArgument(numStripes > 0,
+        "The number of inode lock stripes must be positive: " + numStripes);
+    int size = Integer.highestOneBit(numStripes);
+    if (size < numStripes) {
+      size <<= 1;
+    }
+    this.stripes = new ReentrantReadWriteLock[size];
+    for (int i = 0; i < size; i++) {
+      stripes[i] = new ReentrantReadWriteLock();
+    }
+    this.mask = size - 1;
+  }
+
+  @VisibleForTesting
+  int getNumStripes() {
+    return stripes.length;
+  }
+
+  @VisibleForTesting
+  ReentrantReadWriteLock getLock(INode inode) {
+    final long id = inode.getId();
+    // spread the sequentially allocated ids over all the stripes
+    final int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    return stripes[(h ^ (h >>> 16)) & mask];
+  }
+
+  void readLock(INode inode) {
+    getLock(inode).readLock().lock();
+  }
+
+  void readUnlock(INode inode) {
+    getLock(inode).readLock().unlock();
+  }
+
+  void writeLock(INode inode) {
+    getLock(inode).writeLock().lock();
+  }
+
+  void writeUnlock(INode inode) {
+    getLock(inode).writeLock().unlock();
+  }
+}
@@ -125,6 +125,19 @@ private static String constructPath(byte[][] components, int start, int end) {
   static INodesInPath resolve(final INodeDirectory startingDir,
       final byte[][] components, final boolean resolveLink)
       throws UnresolvedLinkException {
+    return resolve(startingDir, components, resolveLink, null);
+  }
+
+  /**
+   * Same as {@link #resolve(INodeDirectory, byte[][], boolean)}, but looks up
+   * each child under the read lock of its parent directory if
+   * {@code inodeLocks} is not null. This is required when the caller holds
+   * the fine-grained write lock, since other fine-grained writers may be
+   * adding children to the directories along the path concurrently.
+   */
+  static INodesInPath resolve(final INodeDirectory startingDir,
+      final byte[][] components, final boolean resolveLink,
+      final INodeLockManager inodeLocks) throws UnresolvedLinkException {
     Preconditions.checkArgument(startingDir.compareTo(components[0]) == 0);
 
     INode curNode = startingDir;
@@ -212,8 +225,18 @@ static INodesInPath resolve(final INodeDirectory startingDir,
         }
       } else {
         // normal case, and also for resolving file/dir under snapshot root
-        curNode = dir.getChild(childName,
-            isSnapshot ? snapshotId : CURRENT_STATE_ID);
+        if (inodeLocks == null) {
+          curNode = dir.getChild(childName,
+              isSnapshot ? snapshotId : CURRENT_STATE_ID);
+        } else {
+          inodeLocks.readLock(dir);
+          try {
+            curNode = dir.getChild(childName,
+                isSnapshot ? snapshotId : CURRENT_STATE_ID);
+          } finally {
+            inodeLocks.readUnlock(dir);
+          }
+        }
       }
       count++;
     }
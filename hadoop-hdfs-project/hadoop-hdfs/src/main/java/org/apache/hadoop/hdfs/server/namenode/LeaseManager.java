@@ -23,10 +23,9 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
-import java.util.NoSuchElementException;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -80,8 +79,10 @@ public class LeaseManager {
   // Mapping: leaseHolder -> Lease
   //
   private final SortedMap<String, Lease> leases = new TreeMap<String, Lease>();
-  // Set of: Lease
-  private final NavigableSet<Lease> sortedLeases = new TreeSet<Lease>();
+  // Set of: Lease, ordered by their last renewal, i.e. by their expiry.
+  // A lease is renewed at the current time and then moved to the end, so
+  // the insertion order is the expiry order, and renewals take O(1) time.
+  private final LinkedHashSet<Lease> sortedLeases = new LinkedHashSet<Lease>();
 
   // 
   // Map path names to leases. It is protected by the sortedLeases lock.
@@ -91,6 +92,9 @@ public class LeaseManager {
 
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
+  // Whether the last check of the leases stopped before releasing all the
+  // expired leases, to release the write lock.
+  private boolean lockHoldLimitReached = false;
 
   LeaseManager(FSNamesystem fsnamesystem) {this.fsnamesystem = fsnamesystem;}
 
@@ -145,11 +149,7 @@ synchronized long getNumUnderConstructionBlocks() {
 
   /** @return the number of paths contained in all leases */
   synchronized int countPath() {
-    int count = 0;
-    for(Lease lease : sortedLeases) {
-      count += lease.getPaths().size();
-    }
-    return count;
+    return sortedLeasesByPath.size();
   }
   
   /**
@@ -248,7 +248,7 @@ synchronized void renewAllLeases() {
    * checks in.  If the client dies and allows its lease to
    * expire, all the corresponding locks can be released.
    *************************************************************/
-  class Lease implements Comparable<Lease> {
+  class Lease {
     private final String holder;
     private long lastUpdate;
     private final Collection<String> paths = new TreeSet<String>();
@@ -286,21 +286,6 @@ public String toString() {
           + ", pendingcreates: " + paths.size() + "]";
     }
   
-    @Override
-    public int compareTo(Lease o) {
-      Lease l1 = this;
-      Lease l2 = o;
-      long lu1 = l1.lastUpdate;
-      long lu2 = l2.lastUpdate;
-      if (lu1 < lu2) {
-        return -1;
-      } else if (lu1 > lu2) {
-        return 1;
-      } else {
-        return l1.holder.compareTo(l2.holder);
-      }
-    }
-  
     @Override
     public boolean equals(Object o) {
       if (!(o instanceof Lease)) {
@@ -371,28 +356,34 @@ synchronized void removeLeaseWithPrefixPath(String prefix) {
     }
   }
 
+  /**
+   * @return the paths of the files under construction in the tree rooted at
+   *         the given path
+   */
+  synchronized Collection<String> getPathsUnderConstruction(String prefix) {
+    return findLeaseWithPrefixPath(prefix, sortedLeasesByPath).keySet();
+  }
+
   static private Map<String, Lease> findLeaseWithPrefixPath(
       String prefix, SortedMap<String, Lease> path2lease) {
     if (LOG.isDebugEnabled()) {
       LOG.debug(LeaseManager.class.getSimpleName() + ".findLease: prefix=" + prefix);
     }
 
-    final Map<String, Lease> entries = new HashMap<String, Lease>();
-    int srclen = prefix.length();
-    
     // prefix may ended with '/'
-    if (prefix.charAt(srclen - 1) == Path.SEPARATOR_CHAR) {
-      srclen -= 1;
-    }
-
-    for(Map.Entry<String, Lease> entry : path2lease.tailMap(prefix).entrySet()) {
-      final String p = entry.getKey();
-      if (!p.startsWith(prefix)) {
-        return entries;
-      }
-      if (p.length() == srclen || p.charAt(srclen) == Path.SEPARATOR_CHAR) {
-        entries.put(entry.getKey(), entry.getValue());
-      }
+    final String dir = prefix.charAt(prefix.length() - 1) == Path.SEPARATOR_CHAR
+        ? prefix.substring(0, prefix.length() - 1) : prefix;
+
+    // The paths under dir are exactly the ones between dir + "/" and the
+    // next string of the same length, so they are found without going
+    // through the paths of the siblings which share the prefix, e.g.
+    // "/a/b-1" for "/a/b".
+    final Map<String, Lease> entries = new HashMap<String, Lease>(
+        path2lease.subMap(dir + Path.SEPARATOR_CHAR,
+            dir + (char) (Path.SEPARATOR_CHAR + 1)));
+    final Lease lease = path2lease.get(dir);
+    if (lease != null) {
+      entries.put(dir, lease);
     }
     return entries;
   }
@@ -414,11 +405,13 @@ class Monitor implements Runnable {
     public void run() {
       for(; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         boolean needSync = false;
+        boolean moreToRelease = false;
         try {
           fsnamesystem.writeLockInterruptibly();
           try {
             if (!fsnamesystem.isInSafeMode()) {
               needSync = checkLeases();
+              moreToRelease = lockHoldLimitReached;
             }
           } finally {
             fsnamesystem.writeUnlock("leaseManager");
@@ -427,8 +420,12 @@ public void run() {
               fsnamesystem.getEditLog().logSync();
             }
           }
-  
-          Thread.sleep(HdfsServerConstants.NAMENODE_LEASE_RECHECK_INTERVAL);
+
+          // Go on with the remaining expired leases right away: the waiting
+          // ops got the lock in between, since it is released.
+          if (!moreToRelease) {
+            Thread.sleep(fsnamesystem.getLeaseRecheckIntervalMs());
+          }
         } catch(InterruptedException ie) {
           if (LOG.isDebugEnabled()) {
             LOG.debug(name + " is interrupted", ie);
@@ -461,22 +458,47 @@ Map<String, INodeFile> getINodesUnderConstruction() {
     return inodes;
   }
   
+  /**
+   * @return the leases which expired the hard limit, beginning from the
+   *         oldest one
+   */
+  private List<Lease> getHardLimitExpiredLeases() {
+    final List<Lease> expired = new ArrayList<Lease>();
+    for (Lease lease : sortedLeases) {
+      if (!lease.expiredHardLimit()) {
+        break;
+      }
+      expired.add(lease);
+    }
+    return expired;
+  }
+
   /** Check the leases beginning from the oldest.
+   *  The check stops once it held the write lock for the configured time,
+   *  even if more leases expired, so that a crash of many clients does not
+   *  block the other operations for long.
    *  @return true is sync is needed.
    */
   @VisibleForTesting
   synchronized boolean checkLeases() {
     boolean needSync = false;
     assert fsnamesystem.hasWriteLock();
-    Lease leaseToCheck = null;
-    try {
-      leaseToCheck = sortedLeases.first();
-    } catch(NoSuchElementException e) {}
-
-    while(leaseToCheck != null) {
-      if (!leaseToCheck.expiredHardLimit()) {
+    final long start = monotonicNow();
+    final long maxLockHoldMs = fsnamesystem.getMaxLockHoldToReleaseLeaseMs();
+    lockHoldLimitReached = false;
+    // Releasing a lease only removes leases, or renews them and so moves
+    // them after the expired ones, so the expired leases are walked once
+    // rather than looked up from the oldest one after each release.
+    Lease unreleased = null;
+    for (Lease leaseToCheck : getHardLimitExpiredLeases()) {
+      if (lockHoldLimitReached) {
         break;
       }
+      if (!sortedLeases.contains(leaseToCheck) ||
+          !leaseToCheck.expiredHardLimit()) {
+        // released or renewed along with an earlier lease
+        continue;
+      }
 
       LOG.info(leaseToCheck + " has expired hard limit");
 
@@ -509,20 +531,26 @@ synchronized boolean checkLeases() {
               + leaseToCheck, e);
           removing.add(p);
         }
+        if (monotonicNow() - start > maxLockHoldMs) {
+          // the remaining paths are released by the next check
+          lockHoldLimitReached = true;
+          break;
+        }
       }
 
       for(String p : removing) {
         removeLease(leaseToCheck, p);
       }
-      leaseToCheck = sortedLeases.higher(leaseToCheck);
+      if (unreleased == null && !lockHoldLimitReached &&
+          sortedLeases.contains(leaseToCheck) &&
+          leaseToCheck.expiredHardLimit()) {
+        unreleased = leaseToCheck;
+      }
     }
 
-    try {
-      if(leaseToCheck != sortedLeases.first()) {
-        LOG.warn("Unable to release hard-limit expired lease: "
-          + sortedLeases.first());
-      }
-    } catch(NoSuchElementException e) {}
+    if (unreleased != null) {
+      LOG.warn("Unable to release hard-limit expired lease: " + unreleased);
+    }
     return needSync;
   }
 
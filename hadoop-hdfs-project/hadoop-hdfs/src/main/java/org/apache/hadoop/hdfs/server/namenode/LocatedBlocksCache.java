@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager.AccessMode;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
+import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeManager;
+import org.apache.hadoop.net.Node;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the block locations of closed files which are read by many clients,
+ * such as the jars of the distributed cache, so that the NameNode does not
+ * build and sort the same {@link LocatedBlocks} for every reader.
+ * <p/>
+ * Entries are keyed by inode id. An entry is only used while the file has
+ * the modification time and length it had when the entry was created, and
+ * for a bounded time afterwards, since the replicas of the blocks may move
+ * without the file being modified. The locations sorted by distance are
+ * shared by the readers of the same rack. Each reader gets a copy in which
+ * its datanode is moved first if it holds a replica, and the replicas at the
+ * same distance are shuffled, as they are when the locations are sorted for
+ * every reader.
+ * <p/>
+ * The cached objects are shared between the handlers and must not be
+ * modified: a reader gets a copy of the blocks it needs to change, for
+ * example to set its block tokens.
+ */
+@InterfaceAudience.Private
+class LocatedBlocksCache {
+  /** Key of the locations sorted for the readers which are not datanodes. */
+  private static final String OFF_TOPOLOGY = "";
+
+  private final Cache<Long, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /** The cached block locations of a range of a file. */
+  static class Entry {
+    private final long offset;
+    private final long length;
+    private final long modificationTime;
+    private final long fileSize;
+    private final LocatedBlocks blocks;
+    private final ConcurrentMap<String, LocatedBlocks> sortedByRack =
+        new ConcurrentHashMap<String, LocatedBlocks>();
+
+    private Entry(long offset, long length, long modificationTime,
+        long fileSize, LocatedBlocks blocks) {
+      this.offset = offset;
+      this.length = length;
+      this.modificationTime = modificationTime;
+      this.fileSize = fileSize;
+      this.blocks = blocks;
+    }
+
+    /** @return the unsorted block locations, without block tokens. */
+    LocatedBlocks getBlocks() {
+      return blocks;
+    }
+
+    private boolean isValid(INodeFile inode, long fileSize, long offset,
+        long length) {
+      return this.offset == offset && this.length == length
+          && this.fileSize == fileSize
+          && modificationTime == inode.getModificationTime();
+    }
+  }
+
+  LocatedBlocksCache(int maxSize, long expiryMs) {
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Get the cached locations of a range of a closed file. The caller must
+   * hold the namesystem lock.
+   *
+   * @return the entry of the range, or null if it is not cached or if the
+   *         file changed since it was cached.
+   */
+  Entry get(INodeFile inode, long fileSize, long offset, long length) {
+    Entry entry = cache.getIfPresent(inode.getId());
+    if (entry != null && entry.isValid(inode, fileSize, offset, length)) {
+      hits.incrementAndGet();
+      return entry;
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Cache the locations of a range of a closed file, replacing those of any
+   * other range. The caller must hold the namesystem lock.
+   *
+   * @param blocks the block locations, without block tokens; they must not
+   *               be modified afterwards.
+   */
+  Entry put(INodeFile inode, long fileSize, long offset, long length,
+      LocatedBlocks blocks) {
+    Entry entry = new Entry(offset, length, inode.getModificationTime(),
+        fileSize, blocks);
+    cache.put(inode.getId(), entry);
+    return entry;
+  }
+
+  /**
+   * Get the cached locations sorted by their distance to a client, with the
+   * block tokens of the client if they are enabled. Sorts the locations for
+   * the rack of the client if no other client of the rack did, and shuffles
+   * the locations at the same distance for this client.
+   */
+  LocatedBlocks getSortedBlocks(Entry entry, String clientMachine,
+      BlockManager blockManager) throws IOException {
+    final DatanodeManager dm = blockManager.getDatanodeManager();
+    final Node client = dm.getClientNode(clientMachine);
+    // Only the datanodes are located in the topology, and the locations
+    // sorted for the other clients do not depend on their rack.
+    final String rack = client instanceof DatanodeDescriptor ?
+        client.getNetworkLocation() : OFF_TOPOLOGY;
+    LocatedBlocks sorted = entry.sortedByRack.get(rack);
+    if (sorted == null) {
+      sorted = copy(entry.blocks);
+      dm.sortLocatedBlocks(client, sorted.getLocatedBlocks());
+      if (sorted.getLastLocatedBlock() != null) {
+        dm.sortLocatedBlocks(client,
+            Arrays.asList(sorted.getLastLocatedBlock()));
+      }
+      LocatedBlocks previous = entry.sortedByRack.putIfAbsent(rack, sorted);
+      if (previous != null) {
+        sorted = previous;
+      }
+    }
+
+    final boolean needBlockToken = blockManager.isBlockTokenEnabled();
+    final boolean local = client instanceof DatanodeDescriptor
+        && holdsReplica(client, sorted);
+    final LocatedBlocks blocks = copy(sorted);
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      prepareForClient(blockManager, dm, client, b, needBlockToken, local);
+    }
+    if (blocks.getLastLocatedBlock() != null) {
+      prepareForClient(blockManager, dm, client, blocks.getLastLocatedBlock(),
+          needBlockToken, local);
+    }
+    return blocks;
+  }
+
+  private static void prepareForClient(BlockManager blockManager,
+      DatanodeManager dm, Node client, LocatedBlock b,
+      boolean needBlockToken, boolean local) throws IOException {
+    if (local) {
+      dm.moveClientFirst(client, b);
+    }
+    dm.shuffleLocations(client, b);
+    if (needBlockToken) {
+      blockManager.setBlockToken(b, AccessMode.READ);
+    }
+  }
+
+  private static boolean holdsReplica(Node client, LocatedBlocks blocks) {
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      if (Arrays.asList(b.getLocations()).contains(client)) {
+        return true;
+      }
+    }
+    LocatedBlock last = blocks.getLastLocatedBlock();
+    return last != null && Arrays.asList(last.getLocations()).contains(client);
+  }
+
+  private static LocatedBlocks copy(LocatedBlocks blocks) {
+    List<LocatedBlock> copies =
+        new ArrayList<LocatedBlock>(blocks.locatedBlockCount());
+    for (LocatedBlock b : blocks.getLocatedBlocks()) {
+      copies.add(copy(b));
+    }
+    LocatedBlock last = blocks.getLastLocatedBlock();
+    return new LocatedBlocks(blocks.getFileLength(),
+        blocks.isUnderConstruction(), copies,
+        last == null ? null : copy(last), blocks.isLastBlockComplete(),
+        blocks.getFileEncryptionInfo());
+  }
+
+  private static LocatedBlock copy(LocatedBlock b) {
+    String[] storageIDs = b.getStorageIDs();
+    return new LocatedBlock(b.getBlock(), b.getLocations(),
+        storageIDs == null ? null : storageIDs.clone(),
+        b.getStorageTypes() == null ? null : b.getStorageTypes().clone(),
+        b.getStartOffset(), b.isCorrupt(), b.getCachedLocations());
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long size() {
+    return cache.size();
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Servlet that provides a JSON representation of the namesystem lock
+ * profile, with one entry per nntop window, see {@link LockProfiler}.
+ */
+@InterfaceAudience.Private
+@SuppressWarnings("serial")
+public class LockProfileServlet extends DfsServlet {
+
+  public static final String PATH_SPEC = "/lockProfile";
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+      throws IOException {
+    final NameNode nn = NameNodeHttpServer.getNameNodeFromContext(
+        getServletContext());
+    final FSNamesystem fsn = nn.getNamesystem();
+    final LockProfiler profiler = fsn == null ? null : fsn.getLockProfiler();
+    if (profiler == null) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND,
+          "Lock profiling is disabled, see "
+          + DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY);
+      return;
+    }
+
+    final Map<String, Object> profile = new TreeMap<String, Object>();
+    profile.put("timestamp", DFSUtil.dateToIso8601String(new Date()));
+    profile.put("sampleRate", profiler.getSampleRate());
+    profile.put("windows", profiler.getWindows());
+    resp.setContentType("application/json; charset=UTF-8");
+    new ObjectMapper().writeValue(resp.getWriter(), profile);
+  }
+}
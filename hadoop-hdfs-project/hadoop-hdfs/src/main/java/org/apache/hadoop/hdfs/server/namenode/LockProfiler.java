@@ -0,0 +1,403 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.metrics2.lib.Interns.info;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsInfo;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Profiles a sample of the acquisitions of the {@link FSNamesystemLock}.
+ * For each sampled acquisition, the time spent waiting for the lock and the
+ * time the lock was held are added to histograms per lock mode (read or
+ * write) and operation, and per lock mode and caller. The caller is the user
+ * of the RPC call holding the lock, or the name of the thread for internal
+ * operations (ReplicationMonitor, DecommissionManager, LeaseManager...), with
+ * its numbers replaced by "N".
+ *
+ * The histograms are kept for each of the nntop reporting windows, extended
+ * to the current minute plus the previous whole minutes of the window. They are
+ * published as JSON by the {@link LockProfileServlet}, and the histograms of
+ * the shortest window are published as metrics, one record per lock mode and
+ * operation or caller.
+ */
+@InterfaceAudience.Private
+class LockProfiler implements MetricsSource {
+  static final String METRICS_SOURCE_NAME = "FSNamesystemLockProfile";
+
+  static final String READ = "read";
+  static final String WRITE = "write";
+  static final String OPERATION = "operation";
+  static final String CALLER = "caller";
+
+  /**
+   * Callers beyond this number of profiles are accounted under
+   * {@link FSNamesystemLock#OP_NAME_OTHER}.
+   */
+  @VisibleForTesting
+  static final int MAX_PROFILES = 1024;
+
+  /** The histograms are aggregated over time slots of this length. */
+  private static final long SLOT_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Pattern NUMBERS = Pattern.compile("[0-9]+");
+  private static final Pattern CLASS_NAME =
+      Pattern.compile("([\\w$]+\\.)+[\\w$]+");
+
+  private static final MetricsInfo RECORD_INFO =
+      info("FSNamesystemLockProfile", "FSNamesystem lock profile");
+  private static final MetricsInfo MODE_INFO =
+      info("Mode", "Lock mode, read or write");
+  private static final MetricsInfo KIND_INFO =
+      info("Kind", "Profile of an operation or of a caller");
+  private static final MetricsInfo NAME_INFO =
+      info("Name", "Operation or caller name");
+
+  private final double sampleRate;
+  private final int[] windowsMs;
+  private final int numSlots;
+  private final Timer timer;
+  private final ConcurrentMap<String, Profile> profiles =
+      new ConcurrentHashMap<String, Profile>();
+
+  LockProfiler(double sampleRate, int[] windowsMs, Timer timer) {
+    Preconditions.checkArgument(sampleRate > 0 && sampleRate <= 1,
+        "The lock profiling sample rate must be in (0, 1]: " + sampleRate);
+    Preconditions.checkArgument(windowsMs.length > 0);
+    this.sampleRate = sampleRate;
+    this.windowsMs = windowsMs.clone();
+    int maxWindowMs = 0;
+    for (int w : windowsMs) {
+      maxWindowMs = Math.max(maxWindowMs, w);
+    }
+    this.numSlots = getNumSlots(maxWindowMs) + 1;
+    this.timer = timer;
+  }
+
+  /** @return the number of whole time slots in a window. */
+  private static int getNumSlots(long windowMs) {
+    return (int) ((windowMs + SLOT_MS - 1) / SLOT_MS);
+  }
+
+  double getSampleRate() {
+    return sampleRate;
+  }
+
+  /** @return true if the next lock acquisition should be profiled. */
+  boolean shouldSample() {
+    return sampleRate >= 1
+        || ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  /**
+   * Add a sampled lock hold to the profiles of its operation and caller.
+   * @param write true for the write lock
+   * @param opName the operation which held the lock
+   * @param waitNanos the time spent waiting for the lock
+   * @param holdNanos the time the lock was held
+   */
+  void record(boolean write, String opName, long waitNanos, long holdNanos) {
+    final long now = timer.monotonicNow();
+    final String mode = write ? WRITE : READ;
+    getProfile(mode, OPERATION, opName).add(now, waitNanos, holdNanos);
+    getProfile(mode, CALLER, getCaller()).add(now, waitNanos, holdNanos);
+  }
+
+  private Profile getProfile(String mode, String kind, String name) {
+    final String key = mode + "/" + kind + "/" + name;
+    Profile p = profiles.get(key);
+    if (p == null) {
+      if (profiles.size() >= MAX_PROFILES
+          && !FSNamesystemLock.OP_NAME_OTHER.equals(name)) {
+        return getProfile(mode, kind, FSNamesystemLock.OP_NAME_OTHER);
+      }
+      final Profile newProfile = new Profile(mode, kind, name, numSlots);
+      p = profiles.putIfAbsent(key, newProfile);
+      if (p == null) {
+        p = newProfile;
+      }
+    }
+    return p;
+  }
+
+  private static String getCaller() {
+    final UserGroupInformation user = Server.getRemoteUser();
+    if (user != null) {
+      return user.getShortUserName();
+    }
+    return getThreadCaller(Thread.currentThread().getName());
+  }
+
+  /**
+   * @return the caller name of a thread, without the numbers which differ
+   *         between the threads of a pool, and without the package and
+   *         object identity of the runnable of a daemon.
+   */
+  @VisibleForTesting
+  static String getThreadCaller(String threadName) {
+    String name = threadName;
+    final int at = name.indexOf('@');
+    if (at > 0) {
+      name = name.substring(0, at);
+    }
+    if (CLASS_NAME.matcher(name).matches()) {
+      name = name.substring(name.lastIndexOf('.') + 1);
+    }
+    return NUMBERS.matcher(name).replaceAll("N");
+  }
+
+  /**
+   * @return the profiles over each of the windows, sorted by the total lock
+   *         hold time, as a JSON-friendly structure.
+   */
+  List<Map<String, Object>> getWindows() {
+    final long now = timer.monotonicNow();
+    final List<Map<String, Object>> windows =
+        new ArrayList<Map<String, Object>>(windowsMs.length);
+    for (int windowMs : windowsMs) {
+      final List<Snapshot> snapshots = snapshot(now, windowMs);
+      final List<Map<String, Object>> entries =
+          new ArrayList<Map<String, Object>>(snapshots.size());
+      for (Snapshot s : snapshots) {
+        final Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put("mode", s.profile.mode);
+        entry.put("kind", s.profile.kind);
+        entry.put("name", s.profile.name);
+        entry.put("samples", s.hold.count);
+        entry.put("wait", s.wait.toMap());
+        entry.put("hold", s.hold.toMap());
+        entries.add(entry);
+      }
+      final Map<String, Object> window = new LinkedHashMap<String, Object>();
+      window.put("windowLenMs", windowMs);
+      window.put("profiles", entries);
+      windows.add(window);
+    }
+    return windows;
+  }
+
+  private List<Snapshot> snapshot(long now, int windowMs) {
+    final List<Snapshot> snapshots = new ArrayList<Snapshot>();
+    for (Profile p : profiles.values()) {
+      final Snapshot s = p.snapshot(now, windowMs);
+      if (s.hold.count > 0) {
+        snapshots.add(s);
+      }
+    }
+    Collections.sort(snapshots, new Comparator<Snapshot>() {
+      @Override
+      public int compare(Snapshot a, Snapshot b) {
+        return Long.compare(b.hold.sum, a.hold.sum);
+      }
+    });
+    return snapshots;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    int shortestWindowMs = Integer.MAX_VALUE;
+    for (int w : windowsMs) {
+      shortestWindowMs = Math.min(shortestWindowMs, w);
+    }
+    for (Snapshot s : snapshot(timer.monotonicNow(), shortestWindowMs)) {
+      final MetricsRecordBuilder builder = collector.addRecord(RECORD_INFO)
+          .setContext("dfs")
+          .tag(MODE_INFO, s.profile.mode)
+          .tag(KIND_INFO, s.profile.kind)
+          .tag(NAME_INFO, s.profile.name);
+      builder.addGauge(info("NumSamples", "Number of sampled lock holds"),
+          s.hold.count);
+      s.wait.addGauges(builder, "Wait", "lock wait");
+      s.hold.addGauges(builder, "Hold", "lock hold");
+    }
+  }
+
+  /** The histograms of a lock mode and operation or caller. */
+  private static class Profile {
+    final String mode;
+    final String kind;
+    final String name;
+    /** Time slot index of each slot; the slots are used as a ring. */
+    private final long[] slotIndexes;
+    private final Histogram[] waits;
+    private final Histogram[] holds;
+
+    Profile(String mode, String kind, String name, int numSlots) {
+      this.mode = mode;
+      this.kind = kind;
+      this.name = name;
+      this.slotIndexes = new long[numSlots];
+      this.waits = new Histogram[numSlots];
+      this.holds = new Histogram[numSlots];
+    }
+
+    synchronized void add(long nowMs, long waitNanos, long holdNanos) {
+      final long slotIndex = nowMs / SLOT_MS;
+      final int i = (int) (slotIndex % slotIndexes.length);
+      if (waits[i] == null) {
+        waits[i] = new Histogram();
+        holds[i] = new Histogram();
+        slotIndexes[i] = slotIndex;
+      } else if (slotIndexes[i] != slotIndex) {
+        slotIndexes[i] = slotIndex;
+        waits[i].clear();
+        holds[i].clear();
+      }
+      waits[i].add(waitNanos);
+      holds[i].add(holdNanos);
+    }
+
+    synchronized Snapshot snapshot(long nowMs, int windowMs) {
+      final long current = nowMs / SLOT_MS;
+      final long oldest = current - getNumSlots(windowMs);
+      final Snapshot s = new Snapshot(this);
+      for (int i = 0; i < slotIndexes.length; i++) {
+        if (waits[i] != null
+            && slotIndexes[i] >= oldest && slotIndexes[i] <= current) {
+          s.wait.addAll(waits[i]);
+          s.hold.addAll(holds[i]);
+        }
+      }
+      return s;
+    }
+  }
+
+  private static class Snapshot {
+    final Profile profile;
+    final Histogram wait = new Histogram();
+    final Histogram hold = new Histogram();
+
+    Snapshot(Profile profile) {
+      this.profile = profile;
+    }
+  }
+
+  /**
+   * A histogram of durations, with power of two buckets of microseconds.
+   * The percentiles are the upper bounds of their buckets.
+   */
+  @VisibleForTesting
+  static class Histogram {
+    private static final int NUM_BUCKETS = 40;
+
+    private final long[] buckets = new long[NUM_BUCKETS];
+    long count;
+    /** Sum of the durations (ns). */
+    long sum;
+    /** Max duration (ns). */
+    long max;
+
+    void add(long nanos) {
+      buckets[getBucket(nanos)]++;
+      count++;
+      sum += nanos;
+      max = Math.max(max, nanos);
+    }
+
+    void addAll(Histogram that) {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        buckets[i] += that.buckets[i];
+      }
+      count += that.count;
+      sum += that.sum;
+      max = Math.max(max, that.max);
+    }
+
+    void clear() {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        buckets[i] = 0;
+      }
+      count = 0;
+      sum = 0;
+      max = 0;
+    }
+
+    /** Bucket i holds the durations in [2^(i-1), 2^i) us, bucket 0 < 1us. */
+    private static int getBucket(long nanos) {
+      final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+      return micros <= 0 ? 0 :
+          Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /** @return the given percentile (in [0, 100]) in microseconds. */
+    long getPercentileMicros(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      final long rank = (long) Math.ceil(percentile / 100 * count);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += buckets[i];
+        if (seen >= rank && seen > 0) {
+          return Math.min(1L << i, TimeUnit.NANOSECONDS.toMicros(max));
+        }
+      }
+      return TimeUnit.NANOSECONDS.toMicros(max);
+    }
+
+    long getAvgMicros() {
+      return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(sum / count);
+    }
+
+    Map<String, Object> toMap() {
+      final Map<String, Object> m = new LinkedHashMap<String, Object>();
+      m.put("totalMicros", TimeUnit.NANOSECONDS.toMicros(sum));
+      m.put("avgMicros", getAvgMicros());
+      m.put("50thPercentileMicros", getPercentileMicros(50));
+      m.put("90thPercentileMicros", getPercentileMicros(90));
+      m.put("99thPercentileMicros", getPercentileMicros(99));
+      m.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(max));
+      return m;
+    }
+
+    void addGauges(MetricsRecordBuilder builder, String prefix, String desc) {
+      builder.addGauge(info(prefix + "TotalMicros", "Total " + desc
+          + " time (us)"), TimeUnit.NANOSECONDS.toMicros(sum))
+          .addGauge(info(prefix + "AvgMicros", "Average " + desc
+              + " time (us)"), getAvgMicros())
+          .addGauge(info(prefix + "50thPercentileMicros", "50th percentile "
+              + desc + " time (us)"), getPercentileMicros(50))
+          .addGauge(info(prefix + "99thPercentileMicros", "99th percentile "
+              + desc + " time (us)"), getPercentileMicros(99))
+          .addGauge(info(prefix + "MaxMicros", "Max " + desc + " time (us)"),
+              TimeUnit.NANOSECONDS.toMicros(max));
+    }
+  }
+}
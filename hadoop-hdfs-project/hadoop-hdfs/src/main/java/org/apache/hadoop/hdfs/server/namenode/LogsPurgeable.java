@@ -42,10 +42,16 @@ interface LogsPurgeable {
    * 
    * @param fromTxId the first transaction id we want to read
    * @param inProgressOk whether or not in-progress streams should be returned
+   * @param onlyDurableTxns whether the in-progress streams should only
+   *        include the transactions which are durable, i.e. written to a
+   *        quorum of journals. Only the edit log tailer of a standby
+   *        NameNode asks for them, and it may then be given only the next
+   *        transactions rather than all of them.
    * @throws IOException if the underlying storage has an error or is otherwise
    * inaccessible
    */
   void selectInputStreams(Collection<EditLogInputStream> streams,
-      long fromTxId, boolean inProgressOk) throws IOException;
+      long fromTxId, boolean inProgressOk, boolean onlyDurableTxns)
+      throws IOException;
   
 }
@@ -121,6 +121,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SECONDARY_HTTP_ADDRESS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_RPC_ADDRESS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_RPC_BIND_HOST_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIFELINE_RPC_BIND_HOST_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_STARTUP_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SUPPORT_ALLOW_FORMAT_DEFAULT;
@@ -219,6 +221,8 @@ public static enum OperationCategory {
     DFS_NAMENODE_CHECKPOINT_EDITS_DIR_KEY,
     DFS_NAMENODE_SERVICE_RPC_ADDRESS_KEY,
     DFS_NAMENODE_SERVICE_RPC_BIND_HOST_KEY,
+    DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY,
+    DFS_NAMENODE_LIFELINE_RPC_BIND_HOST_KEY,
     DFS_NAMENODE_HTTP_ADDRESS_KEY,
     DFS_NAMENODE_HTTPS_ADDRESS_KEY,
     DFS_NAMENODE_HTTP_BIND_HOST_KEY,
@@ -509,6 +513,18 @@ protected InetSocketAddress getServiceRpcServerAddress(Configuration conf) {
     return NameNode.getServiceAddress(conf, false);
   }
 
+  /**
+   * Given a configuration get the address of the lifeline rpc server
+   * If the lifeline rpc is not configured returns null
+   */
+  protected InetSocketAddress getLifelineRpcServerAddress(Configuration conf) {
+    String addr = conf.getTrimmed(DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY);
+    if (addr == null || addr.isEmpty()) {
+      return null;
+    }
+    return NetUtils.createSocketAddr(addr);
+  }
+
   protected InetSocketAddress getRpcServerAddress(Configuration conf) {
     return getAddress(conf);
   }
@@ -524,6 +540,17 @@ protected String getServiceRpcServerBindHost(Configuration conf) {
     return addr;
   }
 
+  /** Given a configuration get the bind host of the lifeline rpc server
+   *  If the bind host is not configured returns null.
+   */
+  protected String getLifelineRpcServerBindHost(Configuration conf) {
+    String addr = conf.getTrimmed(DFS_NAMENODE_LIFELINE_RPC_BIND_HOST_KEY);
+    if (addr == null || addr.isEmpty()) {
+      return null;
+    }
+    return addr;
+  }
+
   /** Given a configuration get the bind host of the client rpc server
    *  If the bind host is not configured returns null.
    */
@@ -543,6 +570,17 @@ protected void setRpcServiceServerAddress(Configuration conf,
     setServiceAddress(conf, NetUtils.getHostPortString(serviceRPCAddress));
   }
 
+  /**
+   * Modifies the configuration passed to contain the lifeline rpc address
+   * setting
+   */
+  protected void setRpcLifelineServerAddress(Configuration conf,
+      InetSocketAddress lifelineRPCAddress) {
+    LOG.info("Setting lifeline RPC address {}", lifelineRPCAddress);
+    conf.set(DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY,
+        NetUtils.getHostPortString(lifelineRPCAddress));
+  }
+
   protected void setRpcServerAddress(Configuration conf,
       InetSocketAddress rpcAddress) {
     FileSystem.setDefaultUri(conf, getUri(rpcAddress));
@@ -932,6 +970,13 @@ public InetSocketAddress getServiceRpcAddress() {
     return serviceAddr == null ? rpcServer.getRpcAddress() : serviceAddr;
   }
 
+  /**
+   * @return NameNode lifeline RPC address, or null if it is not configured
+   */
+  public InetSocketAddress getLifelineRpcAddress() {
+    return rpcServer.getLifelineRpcAddress();
+  }
+
   /**
    * @return NameNode HTTP address, used by the Web UI, image transfer,
    *    and HTTP-based file system clients like Hftp and WebHDFS
@@ -1791,6 +1836,15 @@ public boolean allowStaleReads() {
       return allowStaleStandbyReads;
     }
 
+    @Override
+    public boolean allowConsistentReads() {
+      // the client state id is only set when the state context is enabled
+      final long clientStateId = Server.getClientStateId();
+      return clientStateId >= 0 && namesystem != null &&
+          namesystem.getFSImage().getLastAppliedOrWrittenTxId()
+              >= clientStateId;
+    }
+
   }
   
   public boolean isStandbyState() {
@@ -250,6 +250,8 @@ void setStartupProgress(StartupProgress prog) {
   private static void setupServlets(HttpServer2 httpServer, Configuration conf) {
     httpServer.addInternalServlet("startupProgress",
         StartupProgressServlet.PATH_SPEC, StartupProgressServlet.class);
+    httpServer.addInternalServlet("lockProfile",
+        LockProfileServlet.PATH_SPEC, LockProfileServlet.class);
     httpServer.addInternalServlet("getDelegationToken",
         GetDelegationTokenServlet.PATH_SPEC, 
         GetDelegationTokenServlet.class, true);
@@ -33,8 +33,18 @@ public class NameNodeLayoutVersion {
   public final static Map<Integer, SortedSet<LayoutFeature>> FEATURES
       = new HashMap<Integer, SortedSet<LayoutFeature>>();
 
-  public static final int CURRENT_LAYOUT_VERSION
-      = LayoutVersion.getCurrentLayoutVersion(Feature.values());
+  /**
+   * The layout version of the NameNode storage. It does not include
+   * {@link Feature#COMPACT_EDITS}, which is only used by the edit log
+   * segments written with dfs.namenode.edits.compact, so that no upgrade is
+   * needed while the compact encoding is off.
+   */
+  public static final int CURRENT_LAYOUT_VERSION =
+      Feature.QUOTA_BY_STORAGE_TYPE.getInfo().getLayoutVersion();
+
+  /** The layout version of the edit log segments in the compact encoding. */
+  public static final int COMPACT_EDITS_LAYOUT_VERSION =
+      Feature.COMPACT_EDITS.getInfo().getLayoutVersion();
 
   static {
     LayoutVersion.updateMap(FEATURES, LayoutVersion.Feature.values());
@@ -72,7 +82,12 @@ public static enum Feature implements LayoutFeature {
     BLOCK_STORAGE_POLICY(-60, "Block Storage policy"),
     TRUNCATE(-61, "Truncate"),
     APPEND_NEW_BLOCK(-62, "Support appending to new block"),
-    QUOTA_BY_STORAGE_TYPE(-63, "Support quota for specific storage types");
+    QUOTA_BY_STORAGE_TYPE(-63, "Support quota for specific storage types"),
+    // -64 to -67 are left to the erasure coding, expanded string table,
+    // snapshot modification time and NVDIMM features of later releases.
+    // Only written to edit log segments, see CURRENT_LAYOUT_VERSION.
+    COMPACT_EDITS(-68, -63, "Support batches of edit log ops in a " +
+      "compact, optionally compressed, encoding", false);
 
     private final FeatureInfo info;
 
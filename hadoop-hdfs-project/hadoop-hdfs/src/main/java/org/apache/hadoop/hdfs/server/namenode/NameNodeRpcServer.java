@@ -19,6 +19,8 @@
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIFELINE_HANDLER_COUNT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIFELINE_HANDLER_COUNT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_HANDLER_COUNT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SERVICE_HANDLER_COUNT_KEY;
 import static org.apache.hadoop.hdfs.protocol.HdfsConstants.MAX_PATH_DEPTH;
@@ -35,8 +37,12 @@
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.conf.Configuration;
@@ -72,6 +78,7 @@
 import org.apache.hadoop.hdfs.HDFSPolicyProvider;
 import org.apache.hadoop.hdfs.inotify.EventBatch;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
@@ -105,14 +112,18 @@
 import org.apache.hadoop.hdfs.protocol.UnregisteredNodeException;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ClientNamenodeProtocol;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeLifelineProtocolProtos.DatanodeLifelineProtocolService;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeProtocolService;
 import org.apache.hadoop.hdfs.protocol.proto.NamenodeProtocolProtos.NamenodeProtocolService;
 import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeLifelineProtocolPB;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeLifelineProtocolServerSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolServerSideTranslatorPB;
 import org.apache.hadoop.hdfs.protocolPB.NamenodeProtocolPB;
 import org.apache.hadoop.hdfs.protocolPB.NamenodeProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.protocolPB.PBHelper;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
@@ -142,7 +153,9 @@
 import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.AlignmentContext;
 import org.apache.hadoop.ipc.ProtobufRpcEngine;
+import org.apache.hadoop.ipc.ProtobufRpcEngineCallback;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCache;
@@ -209,6 +222,10 @@ class NameNodeRpcServer implements NamenodeProtocols {
   /** The RPC server that listens to requests from DataNodes */
   private final RPC.Server serviceRpcServer;
   private final InetSocketAddress serviceRPCAddress;
+
+  /** The RPC server that listens to lifeline requests from DataNodes */
+  private final RPC.Server lifelineRpcServer;
+  private final InetSocketAddress lifelineRPCAddress;
   
   /** The RPC server that listens to requests from clients */
   protected final RPC.Server clientRpcServer;
@@ -216,6 +233,16 @@ class NameNodeRpcServer implements NamenodeProtocols {
   
   private final String minimumDataNodeVersion;
 
+  /** Limits the inotify RPCs waiting for new transactions. */
+  private final Semaphore inotifyWaiters;
+  /** Waits for new transactions on behalf of deferred inotify RPCs. */
+  private final ExecutorService inotifyWaiterExecutor =
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("Inotify waiter #%d").build());
+
+  /** The maximum number of paths of a batched request. */
+  private final int maxBatchSize;
+
   public NameNodeRpcServer(Configuration conf, NameNode nn)
       throws IOException {
     this.nn = nn;
@@ -335,6 +362,47 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
       serviceRpcServer = null;
       serviceRPCAddress = null;
     }
+
+    InetSocketAddress lifelineRpcAddr = nn.getLifelineRpcServerAddress(conf);
+    if (lifelineRpcAddr != null) {
+      RPC.setProtocolEngine(conf, DatanodeLifelineProtocolPB.class,
+          ProtobufRpcEngine.class);
+      String bindHost = nn.getLifelineRpcServerBindHost(conf);
+      if (bindHost == null) {
+        bindHost = lifelineRpcAddr.getHostName();
+      }
+      LOG.info("Lifeline RPC server is binding to " + bindHost + ":" +
+          lifelineRpcAddr.getPort());
+
+      int lifelineHandlerCount =
+          conf.getInt(DFS_NAMENODE_LIFELINE_HANDLER_COUNT_KEY,
+                      DFS_NAMENODE_LIFELINE_HANDLER_COUNT_DEFAULT);
+      DatanodeLifelineProtocolServerSideTranslatorPB lifelineProtoPbTranslator =
+          new DatanodeLifelineProtocolServerSideTranslatorPB(this);
+      BlockingService lifelineProtoPbService = DatanodeLifelineProtocolService
+          .newReflectiveBlockingService(lifelineProtoPbTranslator);
+
+      // The lifeline RPC server only serves the lifelines of the DataNodes,
+      // so that they do not queue behind the other requests.
+      this.lifelineRpcServer = new RPC.Builder(conf)
+          .setProtocol(DatanodeLifelineProtocolPB.class)
+          .setInstance(lifelineProtoPbService)
+          .setBindAddress(bindHost)
+          .setPort(lifelineRpcAddr.getPort())
+          .setNumHandlers(lifelineHandlerCount)
+          .setVerbose(false)
+          .setSecretManager(namesystem.getDelegationTokenSecretManager())
+          .build();
+
+      // Update the address with the correct port
+      InetSocketAddress listenAddr = lifelineRpcServer.getListenerAddress();
+      lifelineRPCAddress = new InetSocketAddress(
+          lifelineRpcAddr.getHostName(), listenAddr.getPort());
+      nn.setRpcLifelineServerAddress(conf, lifelineRPCAddress);
+    } else {
+      lifelineRpcServer = null;
+      lifelineRPCAddress = null;
+    }
     InetSocketAddress rpcAddr = nn.getRpcServerAddress(conf);
     String bindHost = nn.getRpcServerBindHost(conf);
     if (bindHost == null) {
@@ -342,13 +410,21 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
     }
     LOG.info("RPC server is binding to " + bindHost + ":" + rpcAddr.getPort());
 
+    // Send the state of the namesystem to the clients, so that they can read
+    // from the standby NameNode once it has caught up with them.
+    AlignmentContext stateIdContext = null;
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_DEFAULT)) {
+      stateIdContext = new GlobalStateIdContext(namesystem);
+    }
     this.clientRpcServer = new RPC.Builder(conf)
         .setProtocol(
             org.apache.hadoop.hdfs.protocolPB.ClientNamenodeProtocolPB.class)
         .setInstance(clientNNPbService).setBindAddress(bindHost)
         .setPort(rpcAddr.getPort()).setNumHandlers(handlerCount)
         .setVerbose(false)
-        .setSecretManager(namesystem.getDelegationTokenSecretManager()).build();
+        .setSecretManager(namesystem.getDelegationTokenSecretManager())
+        .setAlignmentContext(stateIdContext).build();
 
     // Add all the RPC protocols that the namenode implements
     DFSUtil.addPBProtocol(conf, HAServiceProtocolPB.class, haPbService,
@@ -378,6 +454,9 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
       if (serviceRpcServer != null) {
         serviceRpcServer.refreshServiceAcl(conf, new HDFSPolicyProvider());
       }
+      if (lifelineRpcServer != null) {
+        lifelineRpcServer.refreshServiceAcl(conf, new HDFSPolicyProvider());
+      }
     }
 
     // The rpc-server port can be ephemeral... ensure we have the correct info
@@ -389,6 +468,12 @@ public NameNodeRpcServer(Configuration conf, NameNode nn)
     minimumDataNodeVersion = conf.get(
         DFSConfigKeys.DFS_NAMENODE_MIN_SUPPORTED_DATANODE_VERSION_KEY,
         DFSConfigKeys.DFS_NAMENODE_MIN_SUPPORTED_DATANODE_VERSION_DEFAULT);
+    inotifyWaiters = new Semaphore(conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_WAITING_RPCS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_WAITING_RPCS_DEFAULT));
+    maxBatchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_DEFAULT);
 
     // Set terse exception whose stack trace won't be logged
     this.clientRpcServer.addTerseExceptions(SafeModeException.class,
@@ -424,14 +509,23 @@ RPC.Server getServiceRpcServer() {
     return serviceRpcServer;
   }
   
+  /** Allow access to the lifeline RPC server for testing */
+  @VisibleForTesting
+  RPC.Server getLifelineRpcServer() {
+    return lifelineRpcServer;
+  }
+
   /**
-   * Start client and service RPC servers.
+   * Start client, service and lifeline RPC servers.
    */
   void start() {
     clientRpcServer.start();
     if (serviceRpcServer != null) {
       serviceRpcServer.start();      
     }
+    if (lifelineRpcServer != null) {
+      lifelineRpcServer.start();
+    }
   }
   
   /**
@@ -442,10 +536,13 @@ void join() throws InterruptedException {
     if (serviceRpcServer != null) {
       serviceRpcServer.join();      
     }
+    if (lifelineRpcServer != null) {
+      lifelineRpcServer.join();
+    }
   }
 
   /**
-   * Stop client and service RPC servers.
+   * Stop client, service and lifeline RPC servers.
    */
   void stop() {
     if (clientRpcServer != null) {
@@ -454,12 +551,20 @@ void stop() {
     if (serviceRpcServer != null) {
       serviceRpcServer.stop();
     }
+    if (lifelineRpcServer != null) {
+      lifelineRpcServer.stop();
+    }
+    inotifyWaiterExecutor.shutdownNow();
   }
   
   InetSocketAddress getServiceRpcAddress() {
     return serviceRPCAddress;
   }
 
+  InetSocketAddress getLifelineRpcAddress() {
+    return lifelineRPCAddress;
+  }
+
   InetSocketAddress getRpcAddress() {
     return clientRpcAddress;
   }
@@ -588,6 +693,21 @@ public LocatedBlocks getBlockLocations(String src,
     return namesystem.getBlockLocations(getClientMachine(), 
                                         src, offset, length);
   }
+
+  @Override // ClientProtocol
+  public LocatedBlocks[] getBlockLocationsBatch(String[] srcs, long[] offsets,
+      long[] lengths) throws IOException {
+    checkNNStartup();
+    if (offsets.length != srcs.length || lengths.length != srcs.length) {
+      throw new HadoopIllegalArgumentException("Got " + srcs.length
+          + " files but " + offsets.length + " offsets and " + lengths.length
+          + " lengths");
+    }
+    checkBatchSize(srcs);
+    metrics.incrGetBlockLocationsBatchOps(srcs.length);
+    return namesystem.getBlockLocationsBatch(getClientMachine(), srcs,
+        offsets, lengths);
+  }
   
   @Override // ClientProtocol
   public FsServerDefaults getServerDefaults() throws IOException {
@@ -1011,6 +1131,14 @@ public HdfsFileStatus getFileInfo(String src)  throws IOException {
     metrics.incrFileInfoOps();
     return namesystem.getFileInfo(src, true);
   }
+
+  @Override // ClientProtocol
+  public HdfsFileStatus[] getFileInfos(String[] srcs) throws IOException {
+    checkNNStartup();
+    checkBatchSize(srcs);
+    metrics.incrGetFileInfosOps(srcs.length);
+    return namesystem.getFileInfos(srcs, true);
+  }
   
   @Override // ClientProtocol
   public boolean isFileClosed(String src) throws IOException{
@@ -1300,6 +1428,17 @@ public HeartbeatResponse sendHeartbeat(DatanodeRegistration nodeReg,
         failedVolumes, volumeFailureSummary);
   }
 
+  @Override // DatanodeLifelineProtocol
+  public void sendLifeline(DatanodeRegistration nodeReg, StorageReport[] report,
+      long dnCacheCapacity, long dnCacheUsed, int xmitsInProgress,
+      int xceiverCount, int failedVolumes,
+      VolumeFailureSummary volumeFailureSummary) throws IOException {
+    checkNNStartup();
+    verifyRequest(nodeReg);
+    namesystem.handleLifeline(nodeReg, report, dnCacheCapacity, dnCacheUsed,
+        xceiverCount, xmitsInProgress, failedVolumes, volumeFailureSummary);
+  }
+
   @Override // DatanodeProtocol
   public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
         String poolId, final StorageBlockReport[] reports,
@@ -1312,22 +1451,29 @@ public DatanodeCommand blockReport(final DatanodeRegistration nodeReg,
     }
     final BlockManager bm = namesystem.getBlockManager(); 
     boolean noStaleStorages = false;
-    for (int r = 0; r < reports.length; r++) {
-      final BlockListAsLongs blocks = reports[r].getBlocks();
-      //
-      // BlockManager.processReport accumulates information of prior calls
-      // for the same node and storage, so the value returned by the last
-      // call of this loop is the final updated value for noStaleStorage.
-      //
-      final int index = r;
-      noStaleStorages = bm.runBlockOp(new Callable<Boolean>() {
-        @Override
-        public Boolean call() throws IOException {
-          return bm.processReport(nodeReg, reports[index].getStorage(),
-              blocks, context);
-        }
-      });
-      metrics.incrStorageBlockReportOps();
+    if (bm.isParallelBlockReportEnabled()) {
+      noStaleStorages = bm.processReports(nodeReg, reports, context);
+      for (int r = 0; r < reports.length; r++) {
+        metrics.incrStorageBlockReportOps();
+      }
+    } else {
+      for (int r = 0; r < reports.length; r++) {
+        final BlockListAsLongs blocks = reports[r].getBlocks();
+        //
+        // BlockManager.processReport accumulates information of prior calls
+        // for the same node and storage, so the value returned by the last
+        // call of this loop is the final updated value for noStaleStorage.
+        //
+        final int index = r;
+        noStaleStorages = bm.runBlockOp(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            return bm.processReport(nodeReg, reports[index].getStorage(),
+                blocks, context);
+          }
+        });
+        metrics.incrStorageBlockReportOps();
+      }
     }
 
     if (nn.getFSImage().isUpgradeFinalized() &&
@@ -1443,6 +1589,9 @@ public void refreshServiceAcl() throws IOException {
     if (this.serviceRpcServer != null) {
       this.serviceRpcServer.refreshServiceAcl(new Configuration(), new HDFSPolicyProvider());
     }
+    if (this.lifelineRpcServer != null) {
+      this.lifelineRpcServer.refreshServiceAcl(new Configuration(), new HDFSPolicyProvider());
+    }
   }
 
   @Override // RefreshAuthorizationPolicyProtocol
@@ -1468,6 +1617,9 @@ public void refreshCallQueue() {
     if (this.serviceRpcServer != null) {
       serviceRpcServer.refreshCallQueue(conf);
     }
+    if (this.lifelineRpcServer != null) {
+      lifelineRpcServer.refreshCallQueue(conf);
+    }
   }
 
   @Override // GenericRefreshProtocol
@@ -1926,6 +2078,18 @@ private void checkNNStartup() throws IOException {
     }
   }
 
+  /**
+   * Reject the batched requests with more paths than allowed, since a batch
+   * is resolved under a single acquisition of the namesystem lock.
+   */
+  private void checkBatchSize(String[] srcs) throws IOException {
+    if (srcs.length > maxBatchSize) {
+      throw new IOException("Got a batch of " + srcs.length
+          + " paths, larger than the maximum of " + maxBatchSize + " set by "
+          + DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY);
+    }
+  }
+
   @Override // ClientProtocol
   public void checkAccess(String path, FsAction mode) throws IOException {
     checkNNStartup();
@@ -1963,14 +2127,50 @@ private static FSEditLogOp readOp(EditLogInputStream elis)
 
   @Override // ClientProtocol
   public EventBatchList getEditsFromTxid(long txid) throws IOException {
+    return getEditsFromTxid(txid, null, 0, 0);
+  }
+
+  @Override // ClientProtocol
+  public EventBatchList getEditsFromTxid(long txid, EventFilter filter,
+      int maxEvents, long waitMs) throws IOException {
     checkNNStartup();
     namesystem.checkOperation(OperationCategory.READ); // only active
     namesystem.checkSuperuserPrivilege();
     int maxEventsPerRPC = nn.conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_EVENTS_PER_RPC_KEY,
         DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_EVENTS_PER_RPC_DEFAULT);
+    if (maxEvents > 0) {
+      maxEventsPerRPC = Math.min(maxEventsPerRPC, maxEvents);
+    }
+    int maxTxnsPerRPC = nn.conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_TXNS_PER_RPC_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_TXNS_PER_RPC_DEFAULT);
+    if (filter != null && filter.isEmpty()) {
+      filter = null;
+    }
     FSEditLog log = namesystem.getFSImage().getEditLog();
     long syncTxid = log.getSyncTxId();
+    waitMs = Math.min(waitMs, nn.conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_WAIT_MS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_WAIT_MS_DEFAULT));
+    if (syncTxid > 0 && txid > syncTxid && waitMs > 0) {
+      if (ProtobufRpcEngine.Server.canDeferResponse()) {
+        if (deferEdits(log, txid, filter, maxEventsPerRPC, maxTxnsPerRPC,
+            waitMs)) {
+          // the response is sent by the waiter
+          return null;
+        }
+      } else {
+        syncTxid = waitForEdits(log, txid, waitMs);
+      }
+    }
+    return readEdits(log, txid, syncTxid, filter, maxEventsPerRPC,
+        maxTxnsPerRPC);
+  }
+
+  private EventBatchList readEdits(FSEditLog log, long txid, long syncTxid,
+      EventFilter filter, int maxEventsPerRPC, int maxTxnsPerRPC)
+      throws IOException {
     // If we haven't synced anything yet, we can only read finalized
     // segments since we can't reliably determine which txns in in-progress
     // segments have actually been committed (e.g. written to a quorum of JNs).
@@ -2019,6 +2219,9 @@ public EventBatchList getEditsFromTxid(long txid) throws IOException {
           }
 
           EventBatch eventBatch = InotifyFSEditLogOpTranslator.translate(op);
+          if (eventBatch != null && filter != null) {
+            eventBatch = filter.filter(eventBatch);
+          }
           if (eventBatch != null) {
             batches.add(eventBatch);
             totalEvents += eventBatch.getEvents().length;
@@ -2029,8 +2232,9 @@ public EventBatchList getEditsFromTxid(long txid) throws IOException {
           if (firstSeenTxid == -1) {
             firstSeenTxid = op.getTransactionId();
           }
-          if (totalEvents >= maxEventsPerRPC || (syncTxid > 0 &&
-              op.getTransactionId() == syncTxid)) {
+          if (totalEvents >= maxEventsPerRPC ||
+              maxSeenTxid - firstSeenTxid + 1 >= maxTxnsPerRPC ||
+              (syncTxid > 0 && op.getTransactionId() == syncTxid)) {
             // we're done
             breakOuter = true;
             break;
@@ -2047,6 +2251,68 @@ public EventBatchList getEditsFromTxid(long txid) throws IOException {
     return new EventBatchList(batches, firstSeenTxid, maxSeenTxid, syncTxid);
   }
 
+  /**
+   * Defer the response of the current inotify RPC until the transaction is
+   * synced or the wait times out, so that the handler is not blocked while
+   * a client which has read all the edits waits for new ones.
+   *
+   * @return false if too many RPCs are waiting already, and the call must
+   *         be answered right away.
+   */
+  private boolean deferEdits(final FSEditLog log, final long txid,
+      final EventFilter filter, final int maxEventsPerRPC,
+      final int maxTxnsPerRPC, final long waitMs) {
+    if (!inotifyWaiters.tryAcquire()) {
+      return false;
+    }
+    final ProtobufRpcEngineCallback callback;
+    try {
+      callback = ProtobufRpcEngine.Server.registerForDeferredResponse();
+      inotifyWaiterExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            try {
+              log.waitForSyncTxId(txid, waitMs);
+            } finally {
+              inotifyWaiters.release();
+            }
+            callback.setResponse(PBHelper.convertEditsResponse(readEdits(
+                log, txid, log.getSyncTxId(), filter, maxEventsPerRPC,
+                maxTxnsPerRPC)));
+          } catch (Throwable t) {
+            callback.error(t);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      inotifyWaiters.release();
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Wait for a transaction to be synced, so that a client which has read all
+   * the edits does not have to poll for new ones. Only used by calls whose
+   * response cannot be deferred.
+   *
+   * @return the last synced txid after waiting.
+   */
+  private long waitForEdits(FSEditLog log, long txid, long waitMs) {
+    if (waitMs <= 0 || !inotifyWaiters.tryAcquire()) {
+      return log.getSyncTxId();
+    }
+    try {
+      log.waitForSyncTxId(txid, waitMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inotifyWaiters.release();
+    }
+    return log.getSyncTxId();
+  }
+
   @Override // TraceAdminProtocol
   public SpanReceiverInfo[] listSpanReceivers() throws IOException {
     checkNNStartup();
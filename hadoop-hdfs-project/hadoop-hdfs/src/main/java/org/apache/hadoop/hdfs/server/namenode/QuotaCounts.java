@@ -23,6 +23,9 @@
 
 /**
  * Counters for namespace, storage space and storage type space quota and usage.
+ * The usage also counts the directories and the length of the files, which
+ * are not subject to quota but are needed for the content summaries cached by
+ * {@link DirectoryWithSummaryFeature}.
  */
 public class QuotaCounts {
   // Name space and storage space counts (HDFS-7775 refactors the original disk
@@ -30,10 +33,16 @@ public class QuotaCounts {
   private EnumCounters<Quota> nsSsCounts;
   // Storage type space counts
   private EnumCounters<StorageType> tsCounts;
+  // The number of directories, which are also counted in the name space
+  private long dirCount;
+  // The file length without replication
+  private long length;
 
   public static class Builder {
     private EnumCounters<Quota> nsSsCounts;
     private EnumCounters<StorageType> tsCounts;
+    private long dirCount;
+    private long length;
 
     public Builder() {
       this.nsSsCounts = new EnumCounters<Quota>(Quota.class);
@@ -62,9 +71,21 @@ public Builder typeSpaces(long val) {
       return this;
     }
 
+    public Builder directoryCount(long val) {
+      this.dirCount = val;
+      return this;
+    }
+
+    public Builder length(long val) {
+      this.length = val;
+      return this;
+    }
+
     public Builder quotaCount(QuotaCounts that) {
       this.nsSsCounts.set(that.nsSsCounts);
       this.tsCounts.set(that.tsCounts);
+      this.dirCount = that.dirCount;
+      this.length = that.length;
       return this;
     }
 
@@ -76,16 +97,22 @@ public QuotaCounts build() {
   private QuotaCounts(Builder builder) {
     this.nsSsCounts = builder.nsSsCounts;
     this.tsCounts = builder.tsCounts;
+    this.dirCount = builder.dirCount;
+    this.length = builder.length;
   }
 
   public void add(QuotaCounts that) {
     this.nsSsCounts.add(that.nsSsCounts);
     this.tsCounts.add(that.tsCounts);
+    this.dirCount += that.dirCount;
+    this.length += that.length;
   }
 
   public void subtract(QuotaCounts that) {
     this.nsSsCounts.subtract(that.nsSsCounts);
     this.tsCounts.subtract(that.tsCounts);
+    this.dirCount -= that.dirCount;
+    this.length -= that.length;
   }
 
   /**
@@ -97,6 +124,8 @@ public QuotaCounts negation() {
     QuotaCounts ret = new QuotaCounts.Builder().quotaCount(this).build();
     ret.nsSsCounts.negation();
     ret.tsCounts.negation();
+    ret.dirCount = -ret.dirCount;
+    ret.length = -ret.length;
     return ret;
   }
 
@@ -149,6 +178,22 @@ public void addTypeSpace(StorageType type, long delta) {
     this.tsCounts.add(type, delta);
   }
 
+  public long getDirectoryCount() {
+    return dirCount;
+  }
+
+  public void addDirectoryCount(long delta) {
+    this.dirCount += delta;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public void addLength(long delta) {
+    this.length += delta;
+  }
+
   public boolean anyNsSsCountGreaterOrEqual(long val) {
     return nsSsCounts.anyGreaterOrEqual(val);
   }
@@ -166,7 +211,9 @@ public boolean equals(Object obj) {
     }
     final QuotaCounts that = (QuotaCounts)obj;
     return this.nsSsCounts.equals(that.nsSsCounts)
-        && this.tsCounts.equals(that.tsCounts);
+        && this.tsCounts.equals(that.tsCounts)
+        && this.dirCount == that.dirCount
+        && this.length == that.length;
   }
 
   @Override
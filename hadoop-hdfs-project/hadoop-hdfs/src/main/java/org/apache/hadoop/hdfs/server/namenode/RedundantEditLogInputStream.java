@@ -280,6 +280,15 @@ public void setMaxOpSize(int maxOpSize) {
     }
   }
 
+  @Override
+  public boolean disableOpReuse() {
+    boolean disabled = true;
+    for (EditLogInputStream elis : streams) {
+      disabled &= elis.disableOpReuse();
+    }
+    return disabled;
+  }
+
   @Override
   public boolean isLocalLog() {
     return streams[curIdx].isLocalLog();
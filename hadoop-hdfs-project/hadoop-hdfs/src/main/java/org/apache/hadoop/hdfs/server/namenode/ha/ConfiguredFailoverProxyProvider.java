@@ -36,6 +36,7 @@
 import org.apache.hadoop.hdfs.NameNodeProxies;
 import org.apache.hadoop.hdfs.server.namenode.ha.AbstractNNFailoverProxyProvider;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.ipc.AlignmentContext;
 import org.apache.hadoop.ipc.RPC;
 import org.apache.hadoop.security.UserGroupInformation;
 
@@ -59,6 +60,8 @@
   private final Class<T> xface;
   
   private int currentProxyIndex = 0;
+  /** Aligns the state of the proxies with the NameNodes; may be null. */
+  protected AlignmentContext alignmentContext;
 
   public ConfiguredFailoverProxyProvider(Configuration conf, URI uri,
       Class<T> xface) {
@@ -113,16 +116,21 @@ public Class<T> getInterface() {
     return xface;
   }
 
-  /**
-   * Lazily initialize the RPC proxy object.
-   */
   @Override
   public synchronized ProxyInfo<T> getProxy() {
-    AddressRpcProxyPair<T> current = proxies.get(currentProxyIndex);
+    return getProxyInfo(currentProxyIndex);
+  }
+
+  /**
+   * Lazily initialize the RPC proxy object of the NameNode at the given index.
+   */
+  protected synchronized ProxyInfo<T> getProxyInfo(int index) {
+    AddressRpcProxyPair<T> current = proxies.get(index);
     if (current.namenode == null) {
       try {
         current.namenode = NameNodeProxies.createNonHAProxy(conf,
-            current.address, xface, ugi, false, fallbackToSimpleAuth).getProxy();
+            current.address, xface, ugi, false, fallbackToSimpleAuth,
+            alignmentContext).getProxy();
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
@@ -131,6 +139,16 @@ public synchronized ProxyInfo<T> getProxy() {
     return new ProxyInfo<T>(current.namenode, current.address.toString());
   }
 
+  /** @return the number of configured NameNodes. */
+  protected int getProxyCount() {
+    return proxies.size();
+  }
+
+  /** @return the index of the NameNode the calls are currently sent to. */
+  protected synchronized int getCurrentProxyIndex() {
+    return currentProxyIndex;
+  }
+
   @Override
   public synchronized void performFailover(T currentProxy) {
     currentProxyIndex = (currentProxyIndex + 1) % proxies.size();
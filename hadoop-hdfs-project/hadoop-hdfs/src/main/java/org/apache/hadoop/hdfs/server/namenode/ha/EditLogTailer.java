@@ -23,6 +23,7 @@
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -98,6 +99,13 @@ public class EditLogTailer {
    * available to be read from.
    */
   private final long sleepTimeMs;
+
+  /**
+   * Whether the Standby should also read the durable transactions of the
+   * in-progress segment, see
+   * {@link DFSConfigKeys#DFS_HA_TAILEDITS_INPROGRESS_KEY}.
+   */
+  private final boolean inProgressOk;
   
   public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
     this.tailerThread = new EditLogTailerThread();
@@ -121,11 +129,16 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    sleepTimeMs = conf.getTimeDuration(
+        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT,
+        TimeUnit.SECONDS, TimeUnit.MILLISECONDS);
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
     
     LOG.debug("logRollPeriodMs=" + logRollPeriodMs +
-        " sleepTime=" + sleepTimeMs);
+        " sleepTime=" + sleepTimeMs + " inProgressOk=" + inProgressOk);
   }
   
   private InetSocketAddress getActiveNodeAddress() {
@@ -185,7 +198,9 @@ public Void run() throws Exception {
         try {
           // It is already under the full name system lock and the checkpointer
           // thread is already stopped. No need to acqure any other lock.
-          doTailEdits();
+          // The unclosed segments have been recovered, so all the remaining
+          // edits are in finalized segments.
+          doTailEdits(false);
         } catch (InterruptedException e) {
           throw new IOException(e);
         }
@@ -195,7 +210,17 @@ public Void run() throws Exception {
   }
   
   @VisibleForTesting
-  void doTailEdits() throws IOException, InterruptedException {
+  long doTailEdits() throws IOException, InterruptedException {
+    return doTailEdits(inProgressOk);
+  }
+
+  /**
+   * Load the edits following the last applied transaction.
+   * @param inProgressOk whether to read the in-progress segment too
+   * @return the number of edits loaded
+   */
+  private long doTailEdits(boolean inProgressOk)
+      throws IOException, InterruptedException {
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -211,14 +236,15 @@ void doTailEdits() throws IOException, InterruptedException {
       }
       Collection<EditLogInputStream> streams;
       try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
+        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+            inProgressOk, true);
       } catch (IOException ioe) {
         // This is acceptable. If we try to tail edits in the middle of an edits
         // log roll, i.e. the last one has been finalized but the new inprogress
         // edits file hasn't been started yet.
         LOG.warn("Edits tailer failed to find any streams. Will try again " +
             "later.", ioe);
-        return;
+        return 0;
       }
       if (LOG.isDebugEnabled()) {
         LOG.debug("edit streams to load from: " + streams.size());
@@ -244,6 +270,7 @@ void doTailEdits() throws IOException, InterruptedException {
         lastLoadTimeMs = monotonicNow();
       }
       lastLoadedTxnId = image.getLastAppliedTxId();
+      return editsLoaded;
     } finally {
       namesystem.writeUnlock();
     }
@@ -326,12 +353,18 @@ private void doWork() {
           // Prevent reading of name system while being modified. The full
           // name system lock will be acquired to further block even the block
           // state updates.
+          long editsLoaded;
           namesystem.cpLockInterruptibly();
           try {
-            doTailEdits();
+            editsLoaded = doTailEdits();
           } finally {
             namesystem.cpUnlock();
           }
+          // When tailing the in-progress segment, there may already be more
+          // edits to load, so only wait when there were none.
+          if (inProgressOk && editsLoaded > 0) {
+            continue;
+          }
         } catch (EditLogInputException elie) {
           LOG.warn("Error while reading edits from disk. Will try again.", elie);
         } catch (InterruptedException ie) {
@@ -83,4 +83,10 @@ public interface HAContext {
    * while the namespace is not up to date)
    */
   boolean allowStaleReads();
+
+  /**
+   * @return true if the node may serve the reads of the current call, since
+   * the node has applied all the transactions already seen by its client
+   */
+  boolean allowConsistentReads();
 }
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.ClientGSIContext;
+import org.apache.hadoop.hdfs.protocol.ReadOnly;
+import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.ipc.AlignmentContext;
+import org.apache.hadoop.ipc.Client.ConnectionId;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RetriableException;
+import org.apache.hadoop.ipc.RpcInvocationHandler;
+import org.apache.hadoop.ipc.StandbyException;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A FailoverProxyProvider implementation which sends the reads to a Standby
+ * NameNode, and the other calls to the Active one, like
+ * {@link ConfiguredFailoverProxyProvider} does.
+ *
+ * All the calls carry the last transaction id seen by the client, and a
+ * Standby NameNode only serves a read after it has applied that transaction,
+ * so that the client always reads its own writes. The reads are the
+ * {@link ReadOnly} methods of
+ * {@link org.apache.hadoop.hdfs.protocol.ClientProtocol}; the block
+ * locations are not among them, since a Standby NameNode may not have
+ * received the reports of all the replicas yet.
+ *
+ * Until the client has seen a transaction id of the Active NameNode, e.g.
+ * before its first call, the reads are sent to the Active NameNode, whose
+ * response seeds the transaction id: otherwise a new client would accept a
+ * Standby NameNode of any staleness. When no Standby NameNode can serve a
+ * read, e.g. because it is lagging behind, the read is sent to the Active
+ * NameNode. The NameNodes must have dfs.namenode.state.context.enabled set,
+ * otherwise all the reads end up on the Active NameNode.
+ */
+public class ObserverReadProxyProvider<T>
+    extends ConfiguredFailoverProxyProvider<T> {
+
+  private static final Log LOG =
+      LogFactory.getLog(ObserverReadProxyProvider.class);
+
+  public ObserverReadProxyProvider(Configuration conf, URI uri,
+      Class<T> xface) {
+    super(conf, uri, xface);
+    this.alignmentContext = new ClientGSIContext();
+  }
+
+  @VisibleForTesting
+  public AlignmentContext getAlignmentContext() {
+    return alignmentContext;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized ProxyInfo<T> getProxy() {
+    final int activeIndex = getCurrentProxyIndex();
+    final ProxyInfo<T> active = getProxyInfo(activeIndex);
+    final T proxy = (T) Proxy.newProxyInstance(
+        getInterface().getClassLoader(), new Class<?>[] { getInterface() },
+        new ObserverReadInvocationHandler(activeIndex, active));
+    return new ProxyInfo<T>(proxy, active.proxyInfo);
+  }
+
+  /**
+   * @return true if a read which failed on a Standby NameNode should be sent
+   *         to another NameNode.
+   */
+  private static boolean shouldFallBack(Throwable t) {
+    if (t instanceof RemoteException) {
+      final IOException e = ((RemoteException) t).unwrapRemoteException(
+          StandbyException.class, RetriableException.class,
+          SafeModeException.class);
+      return e instanceof StandbyException
+          || e instanceof RetriableException
+          || e instanceof SafeModeException;
+    }
+    // e.g. the NameNode is not reachable
+    return t instanceof IOException;
+  }
+
+  /**
+   * Sends the reads to the Standby NameNodes first, then to the Active one.
+   * Any other call is sent to the Active NameNode; its failures, including
+   * the failovers, are handled by the retry proxy wrapping this handler.
+   */
+  private class ObserverReadInvocationHandler
+      implements RpcInvocationHandler {
+    private final int activeIndex;
+    private final ProxyInfo<T> active;
+
+    ObserverReadInvocationHandler(int activeIndex, ProxyInfo<T> active) {
+      this.activeIndex = activeIndex;
+      this.active = active;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws Throwable {
+      if (method.isAnnotationPresent(ReadOnly.class)
+          && alignmentContext.getLastSeenStateId() > 0) {
+        for (int i = 0; i < getProxyCount(); i++) {
+          if (i == activeIndex) {
+            continue;
+          }
+          final ProxyInfo<T> standby = getProxyInfo(i);
+          try {
+            return method.invoke(standby.proxy, args);
+          } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause();
+            if (!shouldFallBack(cause)) {
+              throw cause;
+            }
+            if (LOG.isDebugEnabled()) {
+              LOG.debug("Failed to invoke " + method.getName() + " on "
+                  + standby.proxyInfo + ", trying another NameNode", cause);
+            }
+          }
+        }
+      }
+      try {
+        return method.invoke(active.proxy, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    @Override
+    public ConnectionId getConnectionId() {
+      return RPC.getConnectionIdForProxy(active.proxy);
+    }
+
+    @Override
+    public void close() throws IOException {
+      // the proxies are closed by the proxy provider
+    }
+  }
+}
@@ -79,7 +79,8 @@ public void exitState(HAContext context) throws ServiceFailedException {
   public void checkOperation(HAContext context, OperationCategory op)
       throws StandbyException {
     if (op == OperationCategory.UNCHECKED ||
-        (op == OperationCategory.READ && context.allowStaleReads())) {
+        (op == OperationCategory.READ && (context.allowStaleReads() ||
+            context.allowConsistentReads()))) {
       return;
     }
     String msg = "Operation category " + op + " is not supported in state "
@@ -32,6 +32,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 /**
@@ -53,6 +54,10 @@ public class NameNodeMetrics {
   @Metric("Number of files/dirs deleted by delete or rename operations")
   MutableCounterLong filesDeleted;
   @Metric MutableCounterLong fileInfoOps;
+  @Metric("Number of getFileInfos operations")
+  MutableCounterLong getFileInfosOps;
+  @Metric("Number of getBlockLocationsBatch operations")
+  MutableCounterLong getBlockLocationsBatchOps;
   @Metric MutableCounterLong addBlockOps;
   @Metric MutableCounterLong getAdditionalDatanodeOps;
   @Metric MutableCounterLong createSymlinkOps;
@@ -80,6 +85,13 @@ public class NameNodeMetrics {
   MutableGaugeInt blockOpsQueued;
   @Metric("Number of blockReports and blockReceivedAndDeleted batch processed")
   MutableCounterLong blockOpsBatched;
+  @Metric(value = "Number of blockReports and blockReceivedAndDeleted " +
+      "processed per write lock hold", sampleName = "Batches",
+      valueName = "Ops")
+  MutableStat blockOpsBatchSize;
+  @Metric("Write lock hold time of blockReports and blockReceivedAndDeleted " +
+      "batches")
+  MutableRate blockOpsBatchLockHold;
 
   @Metric("Number of file system operations")
   public long totalFileOps(){
@@ -116,6 +128,12 @@ public long totalFileOps(){
   @Metric("Cache report") MutableRate cacheReport;
   final MutableQuantiles[] cacheReportQuantiles;
 
+  @Metric("Time from scheduling the replication of a block to its completion")
+  MutableRate blockReplication;
+  @Metric("Time from some blocks becoming under-replicated to all the " +
+      "blocks being replicated")
+  MutableRate fullReplication;
+
   @Metric("Duration in SafeMode at startup in msec")
   MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup in msec")
@@ -227,6 +245,24 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  /**
+   * A getFileInfos operation also counts as one FileInfoOps for each of the
+   * paths in the batch.
+   */
+  public void incrGetFileInfosOps(int files) {
+    getFileInfosOps.incr();
+    fileInfoOps.incr(files);
+  }
+
+  /**
+   * A getBlockLocationsBatch operation also counts as one GetBlockLocations
+   * for each of the files in the batch.
+   */
+  public void incrGetBlockLocationsBatchOps(int files) {
+    getBlockLocationsBatchOps.incr();
+    getBlockLocations.incr(files);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -279,6 +315,19 @@ public void addBlockOpsBatched(int count) {
     blockOpsBatched.incr(count);
   }
 
+  public void addBlockOpsBatch(int size, long lockHeld) {
+    blockOpsBatchSize.add(size);
+    blockOpsBatchLockHold.add(lockHeld);
+  }
+
+  public void addBlockReplication(long latency) {
+    blockReplication.add(latency);
+  }
+
+  public void addFullReplication(long latency) {
+    fullReplication.add(latency);
+  }
+
   public void addTransaction(long latency) {
     transactions.add(latency);
   }
@@ -806,10 +806,7 @@ public QuotaCounts cleanDirectory(final BlockStoragePolicySuite bsps, final INod
       }
     }
 
-    if (currentINode.isQuotaSet()) {
-      currentINode.getDirectoryWithQuotaFeature().addSpaceConsumed2Cache(
-          counts.negation());
-    }
+    currentINode.addSpaceConsumed2Cache(counts.negation());
     return counts;
   }
 }
@@ -121,6 +121,9 @@ public void setSnapshottable(final String path, boolean checkNestedSnapshottable
       d.addSnapshottableFeature();
     }
     addSnapshottable(d);
+    // the summaries of the directory and its ancestors may not be kept
+    // exact anymore
+    fsdir.markSummariesWithSnapshotData(iip);
   }
   
   /** Add the given snapshottable directory to {@link #snapshottables}. */
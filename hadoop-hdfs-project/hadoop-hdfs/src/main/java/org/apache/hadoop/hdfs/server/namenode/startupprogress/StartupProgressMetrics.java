@@ -79,6 +79,8 @@ public void getMetrics(MetricsCollector collector, boolean all) {
       addCounter(builder, phase, "Total", " total", prog.getTotal(phase));
       addGauge(builder, phase, "PercentComplete", " percent complete",
         prog.getPercentComplete(phase));
+      addGauge(builder, phase, "Rate", " count per second",
+        prog.getRate(phase));
     }
   }
 
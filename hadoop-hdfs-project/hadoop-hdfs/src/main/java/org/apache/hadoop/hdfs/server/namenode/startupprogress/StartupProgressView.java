@@ -176,6 +176,32 @@ public float getPercentComplete(Phase phase, Step step) {
     }
   }
 
+  /**
+   * Returns the rate for the specified phase, calculated as the sum of the
+   * counter values for all steps divided by the elapsed time of the phase, in
+   * counts per second, or 0 if no time has elapsed.
+   *
+   * @param phase Phase to get
+   * @return float counts per second
+   */
+  public float getRate(Phase phase) {
+    return getRate(getCount(phase), getElapsedTime(phase));
+  }
+
+  /**
+   * Returns the rate for the specified phase and step, calculated as the
+   * counter value divided by the elapsed time of the step, in counts per
+   * second, or 0 if no time has elapsed.  For the steps of loading edits, this
+   * is the number of edits replayed per second.
+   *
+   * @param phase Phase to get
+   * @param step Step to get
+   * @return float counts per second
+   */
+  public float getRate(Phase phase, Step step) {
+    return getRate(getCount(phase, step), getElapsedTime(phase, step));
+  }
+
   /**
    * Returns all phases.
    * 
@@ -325,4 +351,15 @@ private StepTracking getStepTracking(Phase phase, Step step) {
   private static float getBoundedPercent(float percent) {
     return Math.max(0.0f, Math.min(1.0f, percent));
   }
+
+  /**
+   * Returns a count per second of elapsed time.
+   * 
+   * @param count long count
+   * @param elapsedTime long elapsed time in milliseconds
+   * @return float count per second, or 0 if no time has elapsed
+   */
+  private static float getRate(long count, long elapsedTime) {
+    return elapsedTime > 0 ? 1000.0f * count / elapsedTime : 0.0f;
+  }
 }
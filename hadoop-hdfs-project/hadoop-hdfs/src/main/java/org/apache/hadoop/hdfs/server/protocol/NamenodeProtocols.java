@@ -33,6 +33,7 @@
 public interface NamenodeProtocols
   extends ClientProtocol,
           DatanodeProtocol,
+          DatanodeLifelineProtocol,
           NamenodeProtocol,
           RefreshAuthorizationPolicyProtocol,
           RefreshUserMappingsProtocol,
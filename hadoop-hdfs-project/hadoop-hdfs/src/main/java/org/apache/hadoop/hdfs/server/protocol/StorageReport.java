@@ -28,11 +28,28 @@ public class StorageReport {
   private final long nonDfsUsed;
   private final long remaining;
   private final long blockPoolUsed;
+  private final long ioLatencyMicros;
+  private final int pendingIOs;
+  private final long transferRate;
 
   public static final StorageReport[] EMPTY_ARRAY = {};
 
   public StorageReport(DatanodeStorage storage, boolean failed, long capacity,
       long dfsUsed, long remaining, long bpUsed, long nonDfsUsed) {
+    this(storage, failed, capacity, dfsUsed, remaining, bpUsed, nonDfsUsed,
+        0L, 0, 0L);
+  }
+
+  /**
+   * @param ioLatencyMicros the average latency of the recent I/Os of the
+   *                        storage, in microseconds
+   * @param pendingIOs the number of I/Os in progress on the storage
+   * @param transferRate the number of bytes per second recently read from
+   *                     or written to the storage by the block transfers
+   */
+  public StorageReport(DatanodeStorage storage, boolean failed, long capacity,
+      long dfsUsed, long remaining, long bpUsed, long nonDfsUsed,
+      long ioLatencyMicros, int pendingIOs, long transferRate) {
     this.storage = storage;
     this.failed = failed;
     this.capacity = capacity;
@@ -40,6 +57,9 @@ public StorageReport(DatanodeStorage storage, boolean failed, long capacity,
     this.nonDfsUsed = nonDfsUsed;
     this.remaining = remaining;
     this.blockPoolUsed = bpUsed;
+    this.ioLatencyMicros = ioLatencyMicros;
+    this.pendingIOs = pendingIOs;
+    this.transferRate = transferRate;
   }
 
   public DatanodeStorage getStorage() {
@@ -69,4 +89,16 @@ public long getRemaining() {
   public long getBlockPoolUsed() {
     return blockPoolUsed;
   }
+
+  public long getIOLatencyMicros() {
+    return ioLatencyMicros;
+  }
+
+  public int getPendingIOs() {
+    return pendingIOs;
+  }
+
+  public long getTransferRate() {
+    return transferRate;
+  }
 }
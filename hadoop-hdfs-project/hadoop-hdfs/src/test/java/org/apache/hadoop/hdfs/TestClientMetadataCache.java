@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.PrivilegedExceptionAction;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the metadata cache of DFSClient.
+ */
+public class TestClientMetadataCache {
+  private static final short REPLICATION = 1;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private DFSClient newClient(String context, boolean inotify)
+      throws Exception {
+    Configuration clientConf = new Configuration(conf);
+    clientConf.set(DFSConfigKeys.DFS_CLIENT_CONTEXT, context);
+    clientConf.setInt(DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_SIZE_KEY, 100);
+    clientConf.setLong(DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_EXPIRY_MS_KEY,
+        600000);
+    clientConf.setBoolean(
+        DFSConfigKeys.DFS_CLIENT_METADATA_CACHE_INOTIFY_ENABLED_KEY, inotify);
+    return new DFSClient(cluster.getNameNode().getNameNodeAddress(),
+        clientConf);
+  }
+
+  @Test(timeout = 60000)
+  public void testCachedMetadata() throws Exception {
+    FileSystem fs = cluster.getFileSystem();
+    final Path file = new Path("/dir/file");
+    DFSTestUtil.createFile(fs, file, 1024, REPLICATION, 0L);
+
+    DFSClient client = newClient("testCachedMetadata", false);
+    try {
+      HdfsFileStatus status = client.getFileInfo(file.toString());
+      long hits = client.getMetadataCacheHits();
+      long misses = client.getMetadataCacheMisses();
+      assertEquals(status.getLen(),
+          client.getFileInfo(file.toString()).getLen());
+      assertEquals(hits + 1, client.getMetadataCacheHits());
+
+      // the block locations are cached when opening the file
+      client.open(file.toString()).close();
+      assertEquals(misses + 1, client.getMetadataCacheMisses());
+      DFSInputStream in = client.open(file.toString());
+      assertEquals(hits + 2, client.getMetadataCacheHits());
+      assertEquals(1024, in.getFileLength());
+      byte[] buf = new byte[1024];
+      in.readFully(0, buf);
+      in.close();
+
+      // the changes of the client invalidate its cache
+      client.setPermission(file.toString(), new FsPermission((short) 0600));
+      assertEquals(new FsPermission((short) 0600),
+          client.getFileInfo(file.toString()).getPermission());
+      client.delete("/dir", true);
+      assertNull(client.getFileInfo(file.toString()));
+      assertFalse(client.exists("/dir"));
+    } finally {
+      client.close();
+    }
+  }
+
+  private String getAuthority() {
+    return NameNode.getUri(cluster.getNameNode().getNameNodeAddress())
+        .getAuthority();
+  }
+
+  private static int countInvalidatorThreads(String authority) {
+    int count = 0;
+    for (Thread t : Thread.getAllStackTraces().keySet()) {
+      if (t.getName().equals(
+          "ClientMetadataCache invalidator for " + authority)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void waitForReplication(final DFSClient client,
+      final String path, final short replication) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return client.getFileInfo(path).getReplication() == replication;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 30000);
+  }
+
+  @Test(timeout = 60000)
+  public void testInotifyInvalidation() throws Exception {
+    final Path file = new Path("/file");
+    DFSTestUtil.createFile(cluster.getFileSystem(), file, 1024, REPLICATION,
+        0L);
+    final DFSClient client = newClient("testInotifyInvalidation", true);
+    final DFSClient second = newClient("testInotifyInvalidation", true);
+    DFSClient other = newClient("testInotifyInvalidationOther", false);
+    try {
+      // the clients of a context share the invalidator of the NameNode
+      final String authority = getAuthority();
+      final ClientMetadataCache cache =
+          client.getClientContext().getMetadataCache();
+      assertSame(cache, second.getClientContext().getMetadataCache());
+      final ClientMetadataCache.Invalidator invalidator =
+          cache.getInvalidator(authority);
+      assertNotNull(invalidator);
+      assertEquals(1, countInvalidatorThreads(authority));
+
+      assertEquals(REPLICATION,
+          client.getFileInfo(file.toString()).getReplication());
+
+      // a change made by another client is seen through the inotify events
+      other.setReplication(file.toString(), (short) 2);
+      waitForReplication(client, file.toString(), (short) 2);
+
+      // the events are still read once the first client is closed
+      client.close();
+      assertSame(invalidator, cache.getInvalidator(authority));
+      assertEquals(2, second.getFileInfo(file.toString()).getReplication());
+      other.setReplication(file.toString(), (short) 3);
+      waitForReplication(second, file.toString(), (short) 3);
+
+      second.close();
+      assertNull(cache.getInvalidator(authority));
+    } finally {
+      other.close();
+      second.close();
+      client.close();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testInotifyDenied() throws Exception {
+    final Path file = new Path("/file");
+    DFSTestUtil.createFile(cluster.getFileSystem(), file, 1024, REPLICATION,
+        0L);
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "user", new String[] { "group" });
+    final DFSClient client = user.doAs(
+        new PrivilegedExceptionAction<DFSClient>() {
+          @Override
+          public DFSClient run() throws Exception {
+            return newClient("testInotifyDenied", true);
+          }
+        });
+    try {
+      // reading the inotify events needs superuser privileges
+      final ClientMetadataCache cache =
+          client.getClientContext().getMetadataCache();
+      final String authority = getAuthority();
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return cache.getInvalidator(authority).isDenied();
+        }
+      }, 100, 30000);
+
+      // the cache is still used, and only expires
+      long hits = client.getMetadataCacheHits();
+      client.getFileInfo(file.toString());
+      client.getFileInfo(file.toString());
+      assertTrue(client.getMetadataCacheHits() > hits);
+    } finally {
+      client.close();
+    }
+  }
+}
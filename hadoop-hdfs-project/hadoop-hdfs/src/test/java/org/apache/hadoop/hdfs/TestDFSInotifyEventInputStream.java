@@ -29,18 +29,25 @@
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.inotify.EventBatch;
+import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.inotify.EventFilter;
 import org.apache.hadoop.hdfs.inotify.MissingEventsException;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
 import org.apache.hadoop.hdfs.server.namenode.FSEditLogOpCodes;
 import org.apache.hadoop.hdfs.server.namenode.ha.HATestUtil;
 import org.apache.hadoop.util.ExitUtil;
+import org.apache.hadoop.util.Time;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -482,4 +489,115 @@ public void run() {
       cluster.shutdown();
     }
   }
+
+  /**
+   * Tests that the NameNode only sends the events selected by the filter of
+   * the client, by path prefix and by event type.
+   */
+  @Test(timeout = 120000)
+  public void testFilteredEvents() throws IOException,
+      InterruptedException, MissingEventsException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    MiniQJMHACluster.Builder builder = new MiniQJMHACluster.Builder(conf);
+    builder.getDfsBuilder().numDataNodes(1);
+    MiniQJMHACluster cluster = builder.build();
+
+    try {
+      cluster.getDfsCluster().waitActive();
+      cluster.getDfsCluster().transitionToActive(0);
+      DFSClient client = new DFSClient(cluster.getDfsCluster().getNameNode(0)
+          .getNameNodeAddress(), conf);
+      FileSystem fs = cluster.getDfsCluster().getFileSystem(0);
+      EventFilter filter = new EventFilter(Arrays.asList("/watched/"),
+          EnumSet.of(Event.EventType.CREATE, Event.EventType.RENAME));
+      long startTxid = client.getNamenode().getCurrentEditLogTxid();
+      DFSInotifyEventInputStream eis = client.getInotifyEventStream(filter);
+
+      client.mkdirs("/watched", null, false); // selected
+      client.mkdirs("/watchedNot", null, false); // not below /watched
+      // the create is selected, but not the close
+      DFSTestUtil.createFile(fs, new Path("/watched/a"), BLOCK_SIZE,
+          (short) 1, 0L);
+      DFSTestUtil.createFile(fs, new Path("/other"), BLOCK_SIZE, (short) 1,
+          0L);
+      client.rename("/other", "/watched/b", null); // selected by destination
+      client.delete("/watched/a", false); // not selected by type
+
+      EventBatch batch = waitForNextEvents(eis);
+      Assert.assertEquals(1, batch.getEvents().length);
+      Assert.assertEquals("/watched",
+          ((Event.CreateEvent) batch.getEvents()[0]).getPath());
+      batch = waitForNextEvents(eis);
+      Assert.assertEquals("/watched/a",
+          ((Event.CreateEvent) batch.getEvents()[0]).getPath());
+      batch = waitForNextEvents(eis);
+      Event.RenameEvent re = (Event.RenameEvent) batch.getEvents()[0];
+      Assert.assertEquals("/other", re.getSrcPath());
+      Assert.assertEquals("/watched/b", re.getDstPath());
+      Assert.assertNull(eis.poll());
+
+      // the NameNode itself drops the events which are not selected
+      ClientProtocol namenode = client.getNamenode();
+      List<Event> events = new ArrayList<Event>();
+      EventBatchList el = namenode.getEditsFromTxid(startTxid + 1, filter,
+          0, 0);
+      Assert.assertEquals(startTxid + 1, el.getFirstTxid());
+      for (EventBatch b : el.getBatches()) {
+        events.addAll(Arrays.asList(b.getEvents()));
+      }
+      Assert.assertEquals(3, events.size());
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Tests that the NameNode waits for new edits when asked to, instead of
+   * returning an empty response right away, and that the waiting RPC does
+   * not hold the only handler, which must serve the mkdirs it waits for.
+   */
+  @Test(timeout = 120000)
+  public void testWaitForEdits() throws IOException, InterruptedException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_INOTIFY_MAX_WAIT_MS_KEY, 60000);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY, 1);
+    MiniQJMHACluster cluster = new MiniQJMHACluster.Builder(conf).build();
+
+    try {
+      cluster.getDfsCluster().waitActive();
+      cluster.getDfsCluster().transitionToActive(0);
+      final DFSClient client = new DFSClient(cluster.getDfsCluster()
+          .getNameNode(0).getNameNodeAddress(), conf);
+      ClientProtocol namenode = client.getNamenode();
+      long txid = namenode.getCurrentEditLogTxid();
+      // without waiting, there is nothing to read yet
+      Assert.assertEquals(-1,
+          namenode.getEditsFromTxid(txid + 1, null, 0, 0).getLastTxid());
+
+      ScheduledExecutorService ex = Executors
+          .newSingleThreadScheduledExecutor();
+      ex.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            client.mkdirs("/dir", null, false);
+          } catch (IOException e) {
+            // test will fail
+            LOG.error("Unable to create /dir", e);
+          }
+        }
+      }, 1, TimeUnit.SECONDS);
+      long start = Time.monotonicNow();
+      EventBatchList el = namenode.getEditsFromTxid(txid + 1, null, 0, 60000);
+      Assert.assertTrue(Time.monotonicNow() - start < 60000);
+      Assert.assertEquals(1, el.getBatches().size());
+      Assert.assertEquals("/dir",
+          ((Event.CreateEvent) el.getBatches().get(0).getEvents()[0])
+          .getPath());
+      ex.shutdown();
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
@@ -976,6 +976,145 @@ public void testFileCloseStatus() throws IOException {
     }
   }
   
+  @Test(timeout=60000)
+  public void testBatchedFileInfoAndBlockLocations() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(2).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final Path dir = new Path("/batch");
+      final Path[] files = new Path[3];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = new Path(dir, "file" + i);
+        DFSTestUtil.createFile(fs, files[i], 1024 * (i + 1), (short) 2, 0L);
+      }
+      final Path relative = new Path("relative");
+      fs.create(relative).close();
+      final Path missing = new Path(dir, "missing");
+
+      // file status of files, directories and missing paths
+      FileStatus[] stats = fs.getFileStatuses(
+          new Path[] { files[0], dir, missing, relative, files[2] });
+      assertEquals(5, stats.length);
+      assertEquals(fs.getFileStatus(files[0]), stats[0]);
+      assertEquals(1024, stats[0].getLen());
+      assertTrue(stats[1].isDirectory());
+      assertEquals(fs.makeQualified(dir), stats[1].getPath());
+      assertNull(stats[2]);
+      assertEquals(fs.makeQualified(relative), stats[3].getPath());
+      assertEquals(3 * 1024, stats[4].getLen());
+      assertEquals(0, fs.getFileStatuses(new Path[0]).length);
+
+      // the block locations are the same as the ones of single lookups
+      long[] starts = new long[files.length];
+      long[] lens = new long[files.length];
+      for (int i = 0; i < files.length; i++) {
+        lens[i] = 1024 * (i + 1);
+      }
+      starts[2] = 1024;
+      FileStatus[] fileStats = fs.getFileStatuses(files);
+      BlockLocation[][] locations = fs.getFileBlockLocations(fileStats,
+          starts, lens);
+      assertEquals(files.length, locations.length);
+      for (int i = 0; i < files.length; i++) {
+        BlockLocation[] expected = fs.getFileBlockLocations(files[i],
+            starts[i], lens[i]);
+        assertEquals(expected.length, locations[i].length);
+        for (int j = 0; j < expected.length; j++) {
+          assertEquals(expected[j].getOffset(), locations[i][j].getOffset());
+          assertEquals(expected[j].getLength(), locations[i][j].getLength());
+          assertEquals(2, locations[i][j].getHosts().length);
+        }
+      }
+      assertEquals(2, locations[2].length);
+      assertEquals(1024, locations[2][0].getOffset());
+
+      try {
+        fs.delete(files[1], false);
+        fs.getFileBlockLocations(fileStats, starts, lens);
+        fail("Expected FileNotFoundException");
+      } catch (FileNotFoundException e) {
+        GenericTestUtils.assertExceptionContains(files[1].toString(), e);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testBatchSizeLimit() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_BATCH_SIZE_KEY, 2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      final Path[] files = new Path[5];
+      final String[] srcs = new String[files.length];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = new Path("/batch/file" + i);
+        srcs[i] = files[i].toString();
+        DFSTestUtil.createFile(fs, files[i], i + 1, (short) 1, 0L);
+      }
+
+      // the namenode rejects the batches larger than its maximum
+      try {
+        cluster.getNameNodeRpc().getFileInfos(
+            Arrays.copyOfRange(srcs, 0, 3));
+        fail("Expected IOException");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains(
+            DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY, e);
+      }
+      try {
+        cluster.getNameNodeRpc().getBlockLocationsBatch(
+            Arrays.copyOfRange(srcs, 0, 3), new long[3], new long[3]);
+        fail("Expected IOException");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains(
+            DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY, e);
+      }
+      assertEquals(2, cluster.getNameNodeRpc().getFileInfos(
+          Arrays.copyOfRange(srcs, 0, 2)).length);
+
+      // the client splits its batches
+      FileStatus[] stats = fs.getFileStatuses(files);
+      assertEquals(files.length, stats.length);
+      long[] starts = new long[files.length];
+      long[] lens = new long[files.length];
+      for (int i = 0; i < files.length; i++) {
+        assertEquals(i + 1, stats[i].getLen());
+        lens[i] = i + 1;
+      }
+      BlockLocation[][] locations = fs.getFileBlockLocations(stats, starts,
+          lens);
+      assertEquals(files.length, locations.length);
+      for (int i = 0; i < files.length; i++) {
+        assertEquals(1, locations[i].length);
+        assertEquals(i + 1, locations[i][0].getLength());
+      }
+
+      // unless it is configured with a larger batch size than the namenode
+      Configuration clientConf = new Configuration(conf);
+      clientConf.setInt(DFSConfigKeys.DFS_CLIENT_BATCH_SIZE_KEY, 3);
+      FileSystem other = FileSystem.newInstance(fs.getUri(), clientConf);
+      try {
+        other.getFileStatuses(files);
+        fail("Expected IOException");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains(
+            DFSConfigKeys.DFS_NAMENODE_BATCH_MAX_SIZE_KEY, e);
+      } finally {
+        other.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test(timeout=60000)
   public void testListFiles() throws IOException {
     Configuration conf = new HdfsConfiguration();
@@ -81,8 +81,14 @@ public static byte[] createGabageTxns(long startTxId, int numTxns)
   public static EditLogOutputStream writeSegment(MiniJournalCluster cluster,
       QuorumJournalManager qjm, long startTxId, int numTxns,
       boolean finalize) throws IOException {
-    EditLogOutputStream stm = qjm.startLogSegment(startTxId,
+    return writeSegment(cluster, qjm, startTxId, numTxns, finalize,
         NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+  }
+
+  public static EditLogOutputStream writeSegment(MiniJournalCluster cluster,
+      QuorumJournalManager qjm, long startTxId, int numTxns,
+      boolean finalize, int layoutVersion) throws IOException {
+    EditLogOutputStream stm = qjm.startLogSegment(startTxId, layoutVersion);
     // Should create in-progress
     assertExistsInQuorum(cluster,
         NNStorage.getInProgressEditsFileName(startTxId));
@@ -166,7 +172,7 @@ public static long recoverAndReturnLastTxn(QuorumJournalManager qjm)
 
     List<EditLogInputStream> streams = Lists.newArrayList();
     try {
-      qjm.selectInputStreams(streams, 0, false);
+      qjm.selectInputStreams(streams, 0, false, false);
       
       for (EditLogInputStream elis : streams) {
         assertTrue(elis.getFirstTxId() > lastRecoveredTxn);
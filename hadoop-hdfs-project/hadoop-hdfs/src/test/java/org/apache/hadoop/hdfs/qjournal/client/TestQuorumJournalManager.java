@@ -22,6 +22,7 @@
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.verifyEdits;
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.writeSegment;
 import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.writeTxns;
+import static org.apache.hadoop.hdfs.qjournal.client.TestQuorumJournalManagerUnit.futureReturns;
 import static org.apache.hadoop.hdfs.qjournal.client.TestQuorumJournalManagerUnit.futureThrows;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -45,8 +46,10 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
 import org.apache.hadoop.hdfs.qjournal.server.JournalFaultInjector;
 import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
@@ -93,6 +96,9 @@ public void setup() throws Exception {
     conf = new Configuration();
     // Don't retry connections - it just slows down the tests.
     conf.setInt(CommonConfigurationKeysPublic.IPC_CLIENT_CONNECT_MAX_RETRIES_KEY, 0);
+    // Keep the edit caches of the JournalNodes, for the in-progress tailing
+    // tests.
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
     
     cluster = new MiniJournalCluster.Builder(conf)
       .build();
@@ -156,11 +162,11 @@ public void testFormat() throws Exception {
   public void testReaderWhileAnotherWrites() throws Exception {
     QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
     List<EditLogInputStream> streams = Lists.newArrayList();
-    readerQjm.selectInputStreams(streams, 0, false);
+    readerQjm.selectInputStreams(streams, 0, false, false);
     assertEquals(0, streams.size());
     writeSegment(cluster, qjm, 1, 3, true);
 
-    readerQjm.selectInputStreams(streams, 0, false);
+    readerQjm.selectInputStreams(streams, 0, false, false);
     try {
       assertEquals(1, streams.size());
       // Validate the actual stream contents.
@@ -178,7 +184,7 @@ public void testReaderWhileAnotherWrites() throws Exception {
     // Ensure correct results when there is a stream in-progress, but we don't
     // ask for in-progress.
     writeSegment(cluster, qjm, 4, 3, false);
-    readerQjm.selectInputStreams(streams, 0, false);
+    readerQjm.selectInputStreams(streams, 0, false, false);
     try {
       assertEquals(1, streams.size());
       EditLogInputStream stream = streams.get(0);
@@ -196,7 +202,7 @@ public void testReaderWhileAnotherWrites() throws Exception {
     // But, it shouldn't be necessary for current use cases.
     
     qjm.finalizeLogSegment(4, 6);
-    readerQjm.selectInputStreams(streams, 0, false);
+    readerQjm.selectInputStreams(streams, 0, false, false);
     try {
       assertEquals(2, streams.size());
       assertEquals(4, streams.get(1).getFirstTxId());
@@ -209,6 +215,189 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  /**
+   * Test that the in-progress edits are read from the edit caches of the
+   * JournalNodes when in-progress tailing is enabled.
+   */
+  @Test
+  public void testSelectInProgressEditsViaRpc() throws Exception {
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    writeSegment(cluster, qjm, 1, 3, true);
+    writeSegment(cluster, qjm, 4, 3, false);
+
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      assertEquals(1, streams.size());
+      assertEquals(1, streams.get(0).getFirstTxId());
+      assertEquals(6, streams.get(0).getLastTxId());
+      verifyEdits(streams, 1, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    readerQjm.selectInputStreams(streams, 5, true, true);
+    try {
+      verifyEdits(streams, 5, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    // Nothing new to read
+    readerQjm.selectInputStreams(streams, 7, true, true);
+    assertTrue(streams.isEmpty());
+    for (AsyncLogger logger :
+        readerQjm.getLoggerSetForTests().getLoggersForTests()) {
+      Mockito.verify(logger, Mockito.never()).getEditLogManifest(
+          Mockito.anyLong(), Mockito.anyBoolean());
+    }
+  }
+
+  /**
+   * Test that the edit caches are only used when the durable transactions
+   * are asked for, since they return a limited number of transactions: the
+   * other callers get all of them.
+   */
+  @Test
+  public void testSelectInProgressEditsNotOnlyDurable() throws Exception {
+    conf.setInt(DFSConfigKeys.DFS_QJOURNAL_RPC_MAX_TXNS_KEY, 2);
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    writeSegment(cluster, qjm, 1, 3, true);
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 4, 3, false);
+    stm.close();
+
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      verifyEdits(streams, 1, 2);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    readerQjm.selectInputStreams(streams, 1, true, false);
+    try {
+      verifyEdits(streams, 1, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+    for (AsyncLogger logger :
+        readerQjm.getLoggerSetForTests().getLoggersForTests()) {
+      Mockito.verify(logger, Mockito.times(1)).getJournaledEdits(
+          Mockito.anyLong(), Mockito.anyInt());
+    }
+  }
+
+  /**
+   * Test that edits written in the compact encoding are stored as they are by
+   * the JournalNodes, and can be read from their segments and edit caches,
+   * starting in the middle of a batch.
+   */
+  @Test
+  public void testCompactEdits() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_KEY, true);
+    QuorumJournalManager writer = createSpyingQJM();
+    writer.recoverUnfinalizedSegments();
+    writeSegment(cluster, writer, 1, 10, true,
+        NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION);
+    writeSegment(cluster, writer, 11, 10, false,
+        NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION);
+
+    File segment = new File(cluster.getCurrentDir(0, JID),
+        NNStorage.getFinalizedEditsFileName(1, 10));
+    assertTrue("The segment of " + segment.length() + " bytes should be " +
+        "smaller than its plain edits",
+        segment.length() < QJMTestUtil.createTxnData(1, 10).length);
+
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, false, false);
+    try {
+      verifyEdits(streams, 1, 10);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+
+    readerQjm.selectInputStreams(streams, 15, true, true);
+    try {
+      verifyEdits(streams, 15, 20);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+  }
+
+  /**
+   * Test that only the edits which are in the edit caches of a quorum of the
+   * JournalNodes are read.
+   */
+  @Test
+  public void testSelectInProgressEditsViaRpcOnlyDurable() throws Exception {
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    List<AsyncLogger> readerSpies =
+        readerQjm.getLoggerSetForTests().getLoggersForTests();
+    writeSegment(cluster, qjm, 1, 3, false);
+
+    // Two of the JournalNodes have not received the edits
+    GetJournaledEditsResponseProto noTxns =
+        GetJournaledEditsResponseProto.newBuilder().setTxnCount(0).build();
+    futureReturns(noTxns).when(readerSpies.get(0))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    futureReturns(noTxns).when(readerSpies.get(1))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    assertTrue(streams.isEmpty());
+
+    // Only one of the two JournalNodes that respond has received them
+    Mockito.doCallRealMethod().when(readerSpies.get(1))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    futureThrows(new IOException("injected")).when(readerSpies.get(2))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    assertTrue(streams.isEmpty());
+
+    Mockito.doCallRealMethod().when(readerSpies.get(0))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    Mockito.doCallRealMethod().when(readerSpies.get(2))
+        .getJournaledEdits(Mockito.anyLong(), Mockito.anyInt());
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      verifyEdits(streams, 1, 3);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+  }
+
+  /**
+   * Test that the in-progress edits are read over HTTP when they are not in
+   * the edit caches, e.g. after the JournalNodes restart.
+   */
+  @Test
+  public void testSelectInProgressEditsFallback() throws Exception {
+    writeSegment(cluster, qjm, 1, 3, true);
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 4, 3, false);
+    stm.close();
+    for (int i = 0; i < cluster.getNumNodes(); i++) {
+      cluster.restartJournalNode(i);
+    }
+
+    QuorumJournalManager readerQjm = closeLater(createSpyingQJM());
+    List<EditLogInputStream> streams = Lists.newArrayList();
+    readerQjm.selectInputStreams(streams, 1, true, true);
+    try {
+      verifyEdits(streams, 1, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
@@ -230,7 +419,7 @@ public void testOneJNMissingSegments() throws Exception {
     QuorumJournalManager readerQjm = createSpyingQJM();
     List<EditLogInputStream> streams = Lists.newArrayList();
     try {
-      readerQjm.selectInputStreams(streams, 1, false);
+      readerQjm.selectInputStreams(streams, 1, false, false);
       verifyEdits(streams, 1, 9);
     } finally {
       IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
@@ -249,7 +438,7 @@ public void testSelectInputStreamsMajorityDown() throws Exception {
 
     List<EditLogInputStream> streams = Lists.newArrayList();
     try {
-      qjm.selectInputStreams(streams, 0, false);
+      qjm.selectInputStreams(streams, 0, false, false);
       fail("Did not throw IOE");
     } catch (QuorumException ioe) {
       GenericTestUtils.assertExceptionContains(
@@ -929,7 +1118,7 @@ public void testSelectInputStreamsNotOnBoundary() throws Exception {
         NNStorage.getFinalizedEditsFileName(41, 50));
     
     ArrayList<EditLogInputStream> streams = new ArrayList<EditLogInputStream>();
-    qjm.selectInputStreams(streams, 25, false);
+    qjm.selectInputStreams(streams, 25, false, false);
     
     verifyEdits(streams, 25, 50);
   }
@@ -27,9 +27,11 @@
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalOutOfSyncException;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProtoOrBuilder;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -400,6 +402,42 @@ public void testStartLogSegmentWhenAlreadyExists() throws Exception {
 
   }
   
+  @Test (timeout = 10000)
+  public void testJournaledEdits() throws Exception {
+    try {
+      journal.getJournaledEdits(1, 10);
+      fail("Should have failed with the edits cache disabled");
+    } catch (IOException ioe) {
+      GenericTestUtils.assertExceptionContains("cache", ioe);
+    }
+    journal.close();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, StartupOption.REGULAR,
+        mockErrorReporter);
+
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    journal.journal(makeRI(2), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    journal.journal(makeRI(3), 1, 4, 3, QJMTestUtil.createTxnData(4, 3));
+
+    GetJournaledEditsResponseProto resp = journal.getJournaledEdits(2, 10);
+    assertEquals(5, resp.getTxnCount());
+    assertTrue(resp.hasEditLog());
+    resp = journal.getJournaledEdits(7, 10);
+    assertEquals(0, resp.getTxnCount());
+    assertFalse(resp.hasEditLog());
+
+    // A new writer may recover the segment differently
+    journal.newEpoch(FAKE_NSINFO, 2);
+    try {
+      journal.getJournaledEdits(1, 10);
+      fail("Should have invalidated the edits cache");
+    } catch (JournaledEditsCache.CacheMissException e) {
+      // expected
+    }
+  }
+
   private static RequestInfo makeRI(int serial) {
     return new RequestInfo(JID, 1, serial, 0);
   }
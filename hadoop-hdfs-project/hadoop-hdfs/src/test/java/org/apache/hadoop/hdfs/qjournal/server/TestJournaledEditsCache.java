@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import static org.apache.hadoop.hdfs.qjournal.QJMTestUtil.createTxnData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileInputStream;
+import org.apache.hadoop.hdfs.server.namenode.EditLogInputStream;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeLayoutVersion;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+public class TestJournaledEditsCache {
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION;
+
+  private static void storeTxns(JournaledEditsCache cache, int startTxn,
+      int numTxns) throws Exception {
+    cache.storeEdits(createTxnData(startTxn, numTxns), startTxn,
+        startTxn + numTxns - 1, LAYOUT_VERSION);
+  }
+
+  /**
+   * Retrieve the edits since the given transaction, and check that they are
+   * the transactions sinceTxId to expectedLastTxId.
+   */
+  private static void assertRetrieved(JournaledEditsCache cache,
+      long sinceTxId, int maxTxns, long expectedLastTxId) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final int count = cache.retrieveEdits(sinceTxId, maxTxns, out);
+    assertEquals(expectedLastTxId - sinceTxId + 1, count);
+    final EditLogInputStream in = EditLogFileInputStream.fromByteString(
+        ByteString.copyFrom(out.toByteArray()), "cache", sinceTxId,
+        expectedLastTxId, true);
+    try {
+      for (long txid = sinceTxId; txid <= expectedLastTxId; txid++) {
+        final FSEditLogOp op = in.readOp();
+        assertEquals(txid, op.getTransactionId());
+      }
+      assertNull(in.readOp());
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void assertCacheMiss(JournaledEditsCache cache,
+      long sinceTxId) throws IOException {
+    try {
+      cache.retrieveEdits(sinceTxId, 100, new ByteArrayOutputStream());
+      fail("Transaction " + sinceTxId + " should not be in the cache");
+    } catch (JournaledEditsCache.CacheMissException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRetrieveEdits() throws Exception {
+    final JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    assertCacheMiss(cache, 1);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 6, 5);
+    storeTxns(cache, 11, 5);
+
+    assertRetrieved(cache, 1, 100, 15);
+    // starting in the middle of a batch
+    assertRetrieved(cache, 7, 100, 15);
+    assertRetrieved(cache, 15, 100, 15);
+    // nothing new yet
+    assertEquals(0, cache.retrieveEdits(16, 100, new ByteArrayOutputStream()));
+
+    // the limit is rounded up to the end of a batch
+    assertRetrieved(cache, 1, 5, 5);
+    assertRetrieved(cache, 3, 4, 10);
+    assertRetrieved(cache, 3, 8, 10);
+    assertRetrieved(cache, 3, 9, 15);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    // the batches grow a little with the transaction IDs
+    final int size1 = createTxnData(1, 5).length;
+    final int size2 = createTxnData(6, 5).length;
+    final int size3 = createTxnData(11, 5).length;
+    final JournaledEditsCache cache =
+        new JournaledEditsCache(size2 + size3 + size1 / 2);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 6, 5);
+    assertRetrieved(cache, 1, 100, 10);
+    storeTxns(cache, 11, 5);
+    assertEquals(size2 + size3, cache.getTotalSize());
+    assertCacheMiss(cache, 5);
+    assertRetrieved(cache, 6, 100, 15);
+
+    // a batch larger than the cache empties it
+    cache.storeEdits(createTxnData(16, 20), 16, 35, LAYOUT_VERSION);
+    assertEquals(0, cache.getTotalSize());
+    assertCacheMiss(cache, 16);
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    final JournaledEditsCache cache = new JournaledEditsCache(1024 * 1024);
+    storeTxns(cache, 1, 5);
+    storeTxns(cache, 6, 5);
+
+    // a gap in the transactions
+    storeTxns(cache, 20, 5);
+    assertCacheMiss(cache, 6);
+    assertRetrieved(cache, 20, 100, 24);
+
+    // a new layout version
+    cache.storeEdits(createTxnData(25, 5), 25, 29, LAYOUT_VERSION - 1);
+    assertCacheMiss(cache, 20);
+    assertEquals(5, cache.retrieveEdits(25, 100, new ByteArrayOutputStream()));
+
+    cache.invalidate();
+    assertCacheMiss(cache, 25);
+    assertEquals(0, cache.getTotalSize());
+  }
+}
@@ -1067,6 +1067,10 @@ public void run() {
       MetricsRecordBuilder rb = getMetrics("NameNodeActivity");
       long batched = MetricsAsserts.getLongCounter("BlockOpsBatched", rb);
       assertTrue(batched > 0);
+      assertTrue(
+          MetricsAsserts.getLongCounter("BlockOpsBatchSizeNumBatches", rb) > 0);
+      assertTrue(
+          MetricsAsserts.getLongCounter("BlockOpsBatchLockHoldNumOps", rb) > 0);
     } finally {
       cluster.shutdown();
     }
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.namenode.Namesystem;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests that the cluster statistics of the {@link HeartbeatManager}, which
+ * are updated without any lock, stay the sum of the statistics of the live
+ * datanodes when heartbeats, lifelines and decommissions run concurrently.
+ */
+public class TestDatanodeStats {
+  private static final int NUM_NODES = 20;
+  private static final int NUM_THREADS = 8;
+  private static final int NUM_HEARTBEATS = 500;
+
+  private HeartbeatManager hm;
+  private DatanodeDescriptor[] nodes;
+
+  @Before
+  public void setup() {
+    hm = new HeartbeatManager(Mockito.mock(Namesystem.class),
+        Mockito.mock(BlockManager.class), new HdfsConfiguration());
+    nodes = DFSTestUtil.toDatanodeDescriptor(
+        DFSTestUtil.createDatanodeStorageInfos(NUM_NODES));
+    for (DatanodeDescriptor node : nodes) {
+      hm.addDatanode(node);
+    }
+  }
+
+  private static StorageReport[] newReports(DatanodeDescriptor node,
+      Random random) {
+    final DatanodeStorageInfo storage = node.getStorageInfos()[0];
+    final long capacity = 1000 + random.nextInt(1000);
+    final long dfsUsed = random.nextInt(500);
+    final long nonDfsUsed = random.nextInt(100);
+    return new StorageReport[] { new StorageReport(
+        new DatanodeStorage(storage.getStorageID(), storage.getState(),
+            storage.getStorageType()), false, capacity, dfsUsed,
+        capacity - dfsUsed - nonDfsUsed, dfsUsed, nonDfsUsed) };
+  }
+
+  private void assertStats() {
+    long capacityTotal = 0;
+    long capacityUsed = 0;
+    long capacityRemaining = 0;
+    long capacityUsedNonDfs = 0;
+    int xceivers = 0;
+    int inService = 0;
+    int inServiceXceivers = 0;
+    for (DatanodeDescriptor node : nodes) {
+      if (!node.isAlive) {
+        continue;
+      }
+      capacityUsed += node.getDfsUsed();
+      capacityUsedNonDfs += node.getNonDfsUsed();
+      xceivers += node.getXceiverCount();
+      if (node.isDecommissionInProgress() || node.isDecommissioned()) {
+        capacityTotal += node.getDfsUsed();
+      } else {
+        capacityTotal += node.getCapacity();
+        capacityRemaining += node.getRemaining();
+        inService++;
+        inServiceXceivers += node.getXceiverCount();
+      }
+    }
+    assertEquals(capacityTotal, hm.getCapacityTotal());
+    assertEquals(capacityUsed, hm.getCapacityUsed());
+    assertEquals(capacityUsed, hm.getBlockPoolUsed());
+    assertEquals(capacityRemaining, hm.getCapacityRemaining());
+    assertEquals(capacityUsedNonDfs, hm.getCapacityUsedNonDFS());
+    assertEquals(xceivers, hm.getXceiverCount());
+    assertEquals(inService, hm.getNumDatanodesInService());
+    assertEquals(inServiceXceivers, hm.getInServiceXceiverCount());
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentUpdates() throws Exception {
+    assertStats();
+    assertEquals(NUM_NODES, hm.getNumDatanodesInService());
+
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int thread = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          final Random random = new Random(thread);
+          for (int i = 0; i < NUM_HEARTBEATS; i++) {
+            for (int n = thread; n < NUM_NODES; n += NUM_THREADS) {
+              hm.updateHeartbeat(nodes[n], newReports(nodes[n], random),
+                  0L, 0L, random.nextInt(10), 0, null);
+            }
+            // the lifelines of the first node race with its heartbeats
+            hm.updateLifeline(nodes[0], newReports(nodes[0], random),
+                0L, 0L, random.nextInt(10), 0, null);
+          }
+        }
+      });
+    }
+    // the decommissions and the removals race with the heartbeats
+    threads.add(new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < NUM_HEARTBEATS; i++) {
+          hm.startDecommission(nodes[1]);
+          hm.stopDecommission(nodes[1]);
+          hm.removeDatanode(nodes[2]);
+          hm.addDatanode(nodes[2]);
+        }
+        hm.startDecommission(nodes[3]);
+        hm.removeDatanode(nodes[4]);
+      }
+    });
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertStats();
+    assertEquals(NUM_NODES - 2, hm.getNumDatanodesInService());
+
+    for (DatanodeDescriptor node : nodes) {
+      hm.removeDatanode(node);
+    }
+    assertEquals(0, hm.getCapacityTotal());
+    assertEquals(0, hm.getCapacityUsed());
+    assertEquals(0, hm.getXceiverCount());
+    assertEquals(0, hm.getNumDatanodesInService());
+  }
+}
@@ -18,6 +18,8 @@
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 
@@ -39,9 +41,12 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.util.Time;
 import org.junit.Test;
 
+import com.google.common.base.Supplier;
+
 /**
  * Test if FSNamesystem handles heartbeat right
  */
@@ -241,4 +246,69 @@ public void testHeartbeatBlockRecovery() throws Exception {
       cluster.shutdown();
     }
   }
+
+  /**
+   * Test that a node whose heartbeat is being processed is not removed as
+   * dead, and that the heartbeat of a removed node asks it to register.
+   */
+  @Test
+  public void testRemoveDeadDatanodeWithHeartbeat() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    final MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final FSNamesystem namesystem = cluster.getNamesystem();
+      final DatanodeManager dm =
+          namesystem.getBlockManager().getDatanodeManager();
+      DataNodeTestUtils.setHeartbeatsDisabledForTests(
+          cluster.getDataNodes().get(0), true);
+      final DatanodeRegistration nodeReg = DataNodeTestUtils
+          .getDNRegistrationForBP(cluster.getDataNodes().get(0),
+              namesystem.getBlockPoolId());
+      final DatanodeDescriptor dd =
+          NameNodeAdapter.getDatanode(namesystem, nodeReg);
+      final Thread remover = new Thread() {
+        @Override
+        public void run() {
+          namesystem.writeLock();
+          try {
+            dm.removeDeadDatanode(nodeReg);
+          } finally {
+            namesystem.writeUnlock();
+          }
+        }
+      };
+
+      // the heartbeats of a node are processed while holding the node
+      synchronized(dd) {
+        dd.setLastUpdateMonotonic(0);
+        remover.start();
+        GenericTestUtils.waitFor(new Supplier<Boolean>() {
+          @Override
+          public Boolean get() {
+            return remover.getState() == Thread.State.BLOCKED;
+          }
+        }, 10, 10000);
+        dd.setLastUpdateMonotonic(Time.monotonicNow());
+      }
+      remover.join();
+      assertTrue(dd.isRegistered());
+
+      dd.setLastUpdateMonotonic(0);
+      namesystem.writeLock();
+      try {
+        dm.removeDeadDatanode(nodeReg);
+      } finally {
+        namesystem.writeUnlock();
+      }
+      assertFalse(dd.isRegistered());
+      DatanodeCommand[] cmds = NameNodeAdapter.sendHeartBeat(nodeReg, dd,
+          namesystem).getCommands();
+      assertEquals(1, cmds.length);
+      assertEquals(DatanodeProtocol.DNA_REGISTER, cmds[0].getAction());
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
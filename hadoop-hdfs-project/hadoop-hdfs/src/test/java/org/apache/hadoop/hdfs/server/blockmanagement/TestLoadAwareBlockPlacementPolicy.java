@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.TestBlockStoragePolicy;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.test.PathUtils;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Simulates the writes of a cluster where some datanodes have slow disks,
+ * and compares the latency of the pipelines chosen by the load aware block
+ * placement policy with that of the pipelines chosen by the default policy.
+ */
+public class TestLoadAwareBlockPlacementPolicy {
+  private static final Log LOG =
+      LogFactory.getLog(TestLoadAwareBlockPlacementPolicy.class);
+  private final static int numRacks = 4;
+  private final static int nodesPerRack = 5;
+  private final static int blockSize = 1024;
+  private final static int chooseTimes = 10000;
+  private final static String file = "/loadAware/test";
+  private final static int replica = 3;
+  private final static long fastLatencyMicros = 500;
+  private final static long slowLatencyMicros = 20000;
+
+  private static DatanodeStorageInfo[] storages;
+  private static DatanodeDescriptor[] dataNodes;
+  private static Configuration conf;
+  private static NameNode namenode;
+  private static BlockPlacementPolicy placementPolicy;
+  private static BlockPlacementPolicy defaultPolicy;
+  private static NetworkTopology cluster;
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setFloat(
+      DFSConfigKeys.DFS_NAMENODE_LOAD_AWARE_BLOCK_PLACEMENT_POLICY_LOAD_PREFERENCE_FRACTION_KEY,
+      0.9f);
+    String[] racks = new String[numRacks];
+    for (int i = 0; i < numRacks; i++) {
+      racks[i] = "/rack" + i;
+    }
+
+    String[] rackOfNodes = new String[numRacks * nodesPerRack];
+    for (int i = 0; i < nodesPerRack; i++) {
+      for (int j = 0; j < numRacks; j++) {
+        rackOfNodes[i * numRacks + j] = racks[j];
+      }
+    }
+
+    storages = DFSTestUtil.createDatanodeStorageInfos(rackOfNodes);
+    dataNodes = DFSTestUtil.toDatanodeDescriptor(storages);
+
+    FileSystem.setDefaultUri(conf, "hdfs://localhost:0");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY, "0.0.0.0:0");
+    File baseDir = PathUtils.getTestDir(LoadAwareBlockPlacementPolicy.class);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        new File(baseDir, "name").getPath());
+    conf.set(DFSConfigKeys.DFS_BLOCK_REPLICATOR_CLASSNAME_KEY,
+      LoadAwareBlockPlacementPolicy.class.getName());
+
+    DFSTestUtil.formatNameNode(conf);
+    namenode = new NameNode(conf);
+
+    final BlockManager bm = namenode.getNamesystem().getBlockManager();
+    placementPolicy = bm.getBlockPlacementPolicy();
+    cluster = bm.getDatanodeManager().getNetworkTopology();
+    for (int i = 0; i < nodesPerRack * numRacks; i++) {
+      cluster.add(dataNodes[i]);
+    }
+    defaultPolicy = new BlockPlacementPolicyDefault();
+    defaultPolicy.initialize(conf, bm.getDatanodeManager().getFSClusterStats(),
+        cluster, bm.getDatanodeManager().getHost2DatanodeMap());
+
+    setupDataNodeLoad();
+  }
+
+  /** The first datanode of each rack has a slow and busy disk. */
+  private static boolean isSlow(int i) {
+    return i < numRacks;
+  }
+
+  private static void setupDataNodeLoad() {
+    final long capacity = 2 * HdfsConstants.MIN_BLOCKS_FOR_WRITE * blockSize;
+    for (int i = 0; i < nodesPerRack * numRacks; i++) {
+      DatanodeDescriptor dn = dataNodes[i];
+      dn.getStorageInfos()[0].setUtilizationForTesting(
+          capacity, 0L, capacity, 0L);
+      StorageReport r = BlockManagerTestUtil.getStorageReportsForDatanode(dn)[0];
+      StorageReport withLoad = new StorageReport(r.getStorage(), false,
+          r.getCapacity(), r.getDfsUsed(), r.getRemaining(),
+          r.getBlockPoolUsed(), r.getNonDfsUsed(),
+          isSlow(i) ? slowLatencyMicros : fastLatencyMicros,
+          isSlow(i) ? 8 : 0, 0L);
+      dn.updateHeartbeat(new StorageReport[] { withLoad }, 0L, 0L, 0, 0, null);
+    }
+  }
+
+  /**
+   * @return the latency of the pipelines chosen by a policy, sorted. A packet
+   *         is acknowledged once all the datanodes of the pipeline wrote it,
+   *         so the latency of a pipeline is that of its slowest datanode.
+   */
+  private static long[] simulatePipelines(BlockPlacementPolicy policy) {
+    long[] latencies = new long[chooseTimes];
+    for (int i = 0; i < chooseTimes; i++) {
+      DatanodeStorageInfo[] targets = policy.chooseTarget(file, replica, null,
+          new ArrayList<DatanodeStorageInfo>(), false, null, blockSize,
+          TestBlockStoragePolicy.DEFAULT_STORAGE_POLICY);
+      Assert.assertEquals(replica, targets.length);
+
+      Set<String> racks = new HashSet<String>();
+      long latency = 0;
+      for (DatanodeStorageInfo target : targets) {
+        DatanodeDescriptor dn = target.getDatanodeDescriptor();
+        racks.add(dn.getNetworkLocation());
+        latency = Math.max(latency, dn.getIOLatencyMicros());
+      }
+      // the replicas are still spread over racks
+      Assert.assertTrue(racks.size() >= 2);
+      latencies[i] = latency;
+    }
+    Arrays.sort(latencies);
+    return latencies;
+  }
+
+  private static long percentile(long[] sorted, double p) {
+    return sorted[(int) Math.min(sorted.length - 1, p * sorted.length)];
+  }
+
+  private static double mean(long[] values) {
+    double total = 0;
+    for (long v : values) {
+      total += v;
+    }
+    return total / values.length;
+  }
+
+  @Test
+  public void testPolicyReplacement() {
+    Assert.assertTrue(placementPolicy instanceof LoadAwareBlockPlacementPolicy);
+  }
+
+  @Test
+  public void testHeartbeatLoad() {
+    Assert.assertEquals(slowLatencyMicros, dataNodes[0].getIOLatencyMicros());
+    Assert.assertEquals(8, dataNodes[0].getPendingIOs());
+    Assert.assertEquals(fastLatencyMicros,
+        dataNodes[numRacks].getIOLatencyMicros());
+    Assert.assertEquals(0, dataNodes[numRacks].getPendingIOs());
+  }
+
+  /*
+   * Choose the targets of many blocks with both policies, and verify that the
+   * pipelines chosen by the load aware policy avoid the slow datanodes.
+   */
+  @Test
+  public void testPipelineLatency() {
+    long[] loadAware = simulatePipelines(placementPolicy);
+    long[] loadUnaware = simulatePipelines(defaultPolicy);
+    LOG.info("Pipeline latency of the load aware policy: mean="
+        + mean(loadAware) + "us p50=" + percentile(loadAware, 0.5)
+        + "us p75=" + percentile(loadAware, 0.75)
+        + "us p99=" + percentile(loadAware, 0.99) + "us");
+    LOG.info("Pipeline latency of the default policy: mean="
+        + mean(loadUnaware) + "us p50=" + percentile(loadUnaware, 0.5)
+        + "us p75=" + percentile(loadUnaware, 0.75)
+        + "us p99=" + percentile(loadUnaware, 0.99) + "us");
+
+    // about half of the default pipelines include a slow datanode, and about
+    // a fifth of the load aware ones
+    Assert.assertTrue(mean(loadAware) < 0.6 * mean(loadUnaware));
+    Assert.assertEquals(fastLatencyMicros, percentile(loadAware, 0.75));
+    Assert.assertEquals(slowLatencyMicros, percentile(loadUnaware, 0.75));
+  }
+
+  @AfterClass
+  public static void teardownCluster() {
+    if (namenode != null) {
+      namenode.stop();
+    }
+  }
+}
@@ -19,6 +19,8 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -29,8 +31,11 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Test;
 
+import com.google.common.base.Supplier;
+
 import java.util.Iterator;
 
 
@@ -140,4 +145,43 @@ public void testNumberOfBlocksToBeReplicated() throws Exception {
 
   }
 
+  /**
+   * The test verifies that the blocks are replicated when their targets are
+   * chosen by the replication work threads, and that the time to replicate
+   * them is measured.
+   */
+  @Test(timeout=60000)
+  public void testParallelReplicationWork() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+
+    final int NUM_OF_BLOCKS = 20;
+    final short REP_FACTOR = 3;
+    final Path FILE_PATH = new Path("/testFile");
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(
+        REP_FACTOR).build();
+    try {
+      final FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, FILE_PATH, NUM_OF_BLOCKS, (short) 1, 1L);
+      DFSTestUtil.waitReplication(fs, FILE_PATH, (short) 1);
+
+      fs.setReplication(FILE_PATH, REP_FACTOR);
+      DFSTestUtil.waitReplication(fs, FILE_PATH, REP_FACTOR);
+      assertTrue(getLongCounter("BlockReplicationNumOps",
+          getMetrics("NameNodeActivity")) > 0);
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return getLongCounter("FullReplicationNumOps",
+              getMetrics("NameNodeActivity")) > 0;
+        }
+      }, 100, 30000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
 }
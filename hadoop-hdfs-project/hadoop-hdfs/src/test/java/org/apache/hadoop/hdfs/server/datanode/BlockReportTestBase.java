@@ -115,6 +115,7 @@ public abstract class BlockReportTestBase {
   @Before
   public void startUpCluster() throws IOException {
     REPL_FACTOR = 1; //Reset if case a test has modified the value
+    setUpConfiguration(conf);
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPL_FACTOR).build();
     fs = cluster.getFileSystem();
   }
@@ -130,6 +131,12 @@ public void shutDownCluster() throws IOException {
     }
   }
 
+  /**
+   * Set additional configuration for the cluster of each test.
+   */
+  protected void setUpConfiguration(Configuration conf) {
+  }
+
   protected static void resetConfiguration() {
     conf = new Configuration();
     int customPerChecksumSize = 512;
@@ -51,7 +51,8 @@ public void setupBPM() {
     bpm = new BlockPoolManager(mockDN){
 
       @Override
-      protected BPOfferService createBPOS(List<InetSocketAddress> nnAddrs) {
+      protected BPOfferService createBPOS(List<InetSocketAddress> nnAddrs,
+          List<InetSocketAddress> lifelineNnAddrs) {
         final int idx = mockIdx++;
         doLog("create #" + idx);
         final BPOfferService bpos = Mockito.mock(BPOfferService.class);
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.HeartbeatResponse;
+import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.apache.hadoop.hdfs.server.protocol.VolumeFailureSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests that the lifelines sent by a DataNode to the lifeline RPC server of
+ * the NameNode keep the DataNode alive while its heartbeats are delayed.
+ */
+public class TestDataNodeLifeline {
+  private static final long HEARTBEAT_INTERVAL_SECONDS = 1;
+  private static final long LIFELINE_INTERVAL_SECONDS = 3;
+  private static final int HEARTBEAT_RECHECK_INTERVAL_MS = 100;
+  /** 2 * recheck interval + 10 * heartbeat interval */
+  private static final long DEAD_INTERVAL_MS =
+      2 * HEARTBEAT_RECHECK_INTERVAL_MS + 10 * HEARTBEAT_INTERVAL_SECONDS * 1000;
+
+  private MiniDFSCluster cluster;
+  private FSNamesystem namesystem;
+  private DataNode dn;
+
+  @Before
+  public void setup() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_LIFELINE_RPC_ADDRESS_KEY, "127.0.0.1:0");
+    conf.setLong(DFS_HEARTBEAT_INTERVAL_KEY, HEARTBEAT_INTERVAL_SECONDS);
+    conf.setLong(DFS_DATANODE_LIFELINE_INTERVAL_SECONDS_KEY,
+        LIFELINE_INTERVAL_SECONDS);
+    conf.setInt(DFS_NAMENODE_HEARTBEAT_RECHECK_INTERVAL_KEY,
+        HEARTBEAT_RECHECK_INTERVAL_MS);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    namesystem = cluster.getNamesystem();
+    dn = cluster.getDataNodes().get(0);
+  }
+
+  @After
+  public void shutdown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private long getLifelines() {
+    return getLongCounter("LifelinesNumOps",
+        getMetrics(dn.getMetrics().name()));
+  }
+
+  @Test(timeout = 60000)
+  public void testLifelineRpcServer() throws Exception {
+    assertNotNull(cluster.getNameNode().getLifelineRpcAddress());
+    // the lifelines are not due while the heartbeats are sent on time
+    Thread.sleep(2 * LIFELINE_INTERVAL_SECONDS * 1000);
+    assertEquals(0, getLifelines());
+  }
+
+  @Test(timeout = 60000)
+  public void testLifelineKeepsDataNodeAlive() throws Exception {
+    final CountDownLatch heartbeatsUnblocked = new CountDownLatch(1);
+    DatanodeProtocolClientSideTranslatorPB nnSpy =
+        DataNodeTestUtils.spyOnBposToNN(dn, cluster.getNameNode());
+    Mockito.doAnswer(new Answer<HeartbeatResponse>() {
+      @Override
+      public HeartbeatResponse answer(InvocationOnMock invocation)
+          throws Throwable {
+        heartbeatsUnblocked.await();
+        return (HeartbeatResponse) invocation.callRealMethod();
+      }
+    }).when(nnSpy).sendHeartbeat(
+        Mockito.any(DatanodeRegistration.class),
+        Mockito.any(StorageReport[].class),
+        Mockito.anyLong(),
+        Mockito.anyLong(),
+        Mockito.anyInt(),
+        Mockito.anyInt(),
+        Mockito.anyInt(),
+        Mockito.any(VolumeFailureSummary.class));
+
+    try {
+      // the heartbeats are blocked for longer than the dead node interval
+      Thread.sleep(DEAD_INTERVAL_MS + 2 * LIFELINE_INTERVAL_SECONDS * 1000);
+      assertEquals(1, namesystem.getNumLiveDataNodes());
+      assertEquals(0, namesystem.getNumDeadDataNodes());
+      assertTrue(getLifelines() > 0);
+    } finally {
+      heartbeatsUnblocked.countDown();
+    }
+  }
+}
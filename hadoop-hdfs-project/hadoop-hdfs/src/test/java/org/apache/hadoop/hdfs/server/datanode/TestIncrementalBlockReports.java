@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hdfs.server.datanode;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
@@ -31,7 +33,9 @@
 import org.apache.hadoop.hdfs.*;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocolPB.DatanodeProtocolClientSideTranslatorPB;
+import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.ReceivedDeletedBlockInfo;
@@ -41,6 +45,8 @@
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Verify that incremental block reports are generated in response to
@@ -210,4 +216,47 @@ public void testReplaceReceivedBlock() throws InterruptedException, IOException
       cluster = null;
     }
   }
+
+  /**
+   * Ensure that the IBR interval grows while the NN is slow to process the
+   * IBRs, and shrinks back when it is fast again.
+   */
+  @Test (timeout=60000)
+  public void testAdaptiveIbrInterval() throws Exception {
+    cluster.shutdown();
+    cluster = null;
+
+    final long[] ibrTime = new long[] {100};
+    final DatanodeProtocol nn = Mockito.mock(DatanodeProtocol.class);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(ibrTime[0]);
+        return null;
+      }
+    }).when(nn).blockReceivedAndDeleted(any(DatanodeRegistration.class),
+        anyString(), any(StorageReceivedDeletedBlocks[].class));
+    final DataNodeMetrics metrics = Mockito.mock(DataNodeMetrics.class);
+    final DatanodeStorage storage = new DatanodeStorage("storage");
+
+    final IncrementalBlockReportManager ibrManager =
+        new IncrementalBlockReportManager(0, 5000);
+    assertEquals(0, ibrManager.getIbrInterval());
+    ibrManager.addRDBI(new ReceivedDeletedBlockInfo(getDummyBlock(),
+        BlockStatus.RECEIVED_BLOCK, null), storage);
+    ibrManager.sendIBRs(nn, null, "bpid", metrics);
+    long interval = ibrManager.getIbrInterval();
+    assertTrue("interval " + interval, interval >=
+        IncrementalBlockReportManager.ADAPTIVE_INTERVAL_FACTOR * ibrTime[0]);
+    assertTrue("interval " + interval, interval <= 5000);
+
+    ibrTime[0] = 0;
+    for (int i = 0; i < 50; i++) {
+      ibrManager.addRDBI(new ReceivedDeletedBlockInfo(getDummyBlock(),
+          BlockStatus.RECEIVED_BLOCK, null), storage);
+      ibrManager.sendIBRs(nn, null, "bpid", metrics);
+    }
+    assertTrue("interval " + ibrManager.getIbrInterval(),
+        ibrManager.getIbrInterval() < interval / 10);
+  }
 }
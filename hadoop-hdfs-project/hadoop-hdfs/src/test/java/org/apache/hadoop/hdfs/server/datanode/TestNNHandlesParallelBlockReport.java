@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportContext;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageBlockReport;
+import org.junit.Test;
+
+/**
+ * Runs all tests in BlockReportTestBase, sending one block report
+ * per DataNode, with the NN comparing the storage reports against the
+ * stored blocks in parallel and applying the differences in small batches.
+ */
+public class TestNNHandlesParallelBlockReport extends BlockReportTestBase {
+
+  @Override
+  protected void setUpConfiguration(Configuration conf) {
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_DIFF_THREADS_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BLOCKREPORT_APPLY_BATCH_SIZE_KEY,
+        2);
+  }
+
+  @Override
+  protected void sendBlockReports(DatanodeRegistration dnR, String poolId,
+                                  StorageBlockReport[] reports) throws IOException {
+    LOG.info("Sending combined block reports for " + dnR);
+    cluster.getNameNodeRpc().blockReport(dnR, poolId, reports,
+        new BlockReportContext(1, 0, System.nanoTime()));
+  }
+
+  @Test
+  public void testParallelBlockReportEnabled() {
+    assertTrue(cluster.getNamesystem().getBlockManager()
+        .isParallelBlockReportEnabled());
+  }
+
+  /**
+   * Report no replica, then all the replicas of a file, checking that the
+   * changes applied in several batches are all taken into account.
+   */
+  @Test(timeout=300000)
+  public void testBatchedReportDiff() throws Exception {
+    final Path filePath = new Path("/testBatchedReportDiff.dat");
+    final DistributedFileSystem dfs = cluster.getFileSystem();
+    DFSTestUtil.createFile(dfs, filePath, 7 * 1536L, (short) 1, 0L);
+
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final String poolId = cluster.getNamesystem().getBlockPoolId();
+    final DatanodeRegistration dnR = dn.getDNRegistrationForBP(poolId);
+    final Map<DatanodeStorage, BlockListAsLongs> blockLists =
+        dn.getFSDataset().getBlockReports(poolId);
+    final StorageBlockReport[] emptyReports =
+        new StorageBlockReport[blockLists.size()];
+    final StorageBlockReport[] reports =
+        new StorageBlockReport[blockLists.size()];
+    int i = 0;
+    for (Map.Entry<DatanodeStorage, BlockListAsLongs> e :
+        blockLists.entrySet()) {
+      emptyReports[i] = new StorageBlockReport(e.getKey(),
+          BlockListAsLongs.EMPTY);
+      reports[i++] = new StorageBlockReport(e.getKey(), e.getValue());
+    }
+
+    sendBlockReports(dnR, poolId, emptyReports);
+    List<LocatedBlock> blocks = DFSTestUtil.getAllBlocks(dfs, filePath);
+    assertEquals(7, blocks.size());
+    for (LocatedBlock b : blocks) {
+      assertEquals(b.toString(), 0, b.getLocations().length);
+    }
+
+    sendBlockReports(dnR, poolId, reports);
+    blocks = DFSTestUtil.getAllBlocks(dfs, filePath);
+    for (LocatedBlock b : blocks) {
+      assertEquals(b.toString(), 1, b.getLocations().length);
+    }
+  }
+}
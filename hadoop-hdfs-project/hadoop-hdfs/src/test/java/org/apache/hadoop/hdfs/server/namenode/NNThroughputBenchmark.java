@@ -723,6 +723,89 @@ void printResults() {
     }
   }
 
+  /**
+   * Directory creation scaling statistics.
+   *
+   * Runs the mkdirs workload repeatedly, doubling the number of threads from
+   * 1 up to the requested number, and reports the throughput for each thread
+   * count. Every thread creates its directories in a subtree of its own, so
+   * with dfs.namenode.fine-grained-locking.enabled the operations of
+   * different threads do not contend on the same directories.
+   */
+  class MkdirsScalingStats extends MkdirsStats {
+    // Operation types
+    static final String OP_MKDIRS_SCALING_NAME = "mkdirsScaling";
+    static final String OP_MKDIRS_SCALING_USAGE =
+        "-op mkdirsScaling [-threads T] [-dirs N] [-dirsPerDir P]";
+
+    private int maxThreads;
+    private final List<Integer> threadCounts = new ArrayList<Integer>();
+    private final List<Double> opsPerSecond = new ArrayList<Double>();
+
+    MkdirsScalingStats(List<String> args) {
+      super(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_MKDIRS_SCALING_NAME;
+    }
+
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      assert opsPerThread.length == numThreads : "Error opsPerThread.length";
+      clientProto.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE,
+          false);
+      LOG.info("Generate " + numOpsRequired + " inputs for " + getOpName() +
+          " with " + numThreads + " thread(s)");
+      dirPaths = new String[numThreads][];
+      for(int idx=0; idx < numThreads; idx++) {
+        FileNameGenerator threadNameGenerator = new FileNameGenerator(
+            getBaseDir() + "/thread" + idx,
+            nameGenerator.getFilesPerDirectory());
+        int threadOps = opsPerThread[idx];
+        dirPaths[idx] = new String[threadOps];
+        for(int jdx=0; jdx < threadOps; jdx++)
+          dirPaths[idx][jdx] = threadNameGenerator.
+              getNextFileName("ThroughputBench");
+      }
+    }
+
+    @Override
+    void benchmark() throws IOException {
+      maxThreads = numThreads;
+      threadCounts.clear();
+      opsPerSecond.clear();
+      try {
+        for(int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+          numThreads = threads;
+          super.benchmark();
+          threadCounts.add(threads);
+          opsPerSecond.add(getOpsPerSecond());
+          // start every round from an empty namespace
+          clientProto.delete(getBaseDir(), true);
+          if(threads == maxThreads)
+            break;
+        }
+      } finally {
+        numThreads = maxThreads;
+      }
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("nrDirs = " + numOpsRequired);
+      LOG.info("nrThreads = " + maxThreads);
+      LOG.info("nrDirsPerDir = " + nameGenerator.getFilesPerDirectory());
+      LOG.info("--- " + getOpName() + " stats  ---");
+      for(int i = 0; i < threadCounts.size(); i++) {
+        LOG.info(String.format("%4d thread(s): %10.2f ops per sec",
+            threadCounts.get(i), opsPerSecond.get(i)));
+      }
+    }
+  }
+
   /**
    * Open file statistics.
    * 
@@ -1426,6 +1509,7 @@ static void printUsage() {
         + "\n\t"    + OperationStatsBase.OP_ALL_USAGE
         + " | \n\t" + CreateFileStats.OP_CREATE_USAGE
         + " | \n\t" + MkdirsStats.OP_MKDIRS_USAGE
+        + " | \n\t" + MkdirsScalingStats.OP_MKDIRS_SCALING_USAGE
         + " | \n\t" + OpenFileStats.OP_OPEN_USAGE
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
@@ -1482,6 +1566,10 @@ public int run(String[] aArgs) throws Exception {
         opStat = new MkdirsStats(args);
         ops.add(opStat);
       }
+      if(runAll || MkdirsScalingStats.OP_MKDIRS_SCALING_NAME.equals(type)) {
+        opStat = new MkdirsScalingStats(args);
+        ops.add(opStat);
+      }
       if(runAll || OpenFileStats.OP_OPEN_NAME.equals(type)) {
         opStat = new OpenFileStats(args);
         ops.add(opStat);
@@ -45,8 +45,10 @@
 import org.apache.hadoop.hdfs.web.HftpFileSystem;
 import org.apache.hadoop.hdfs.web.WebHdfsTestUtil;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
+import org.apache.hadoop.log.AsyncAuditPipeline;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
 import org.apache.log4j.Appender;
 import org.apache.log4j.AsyncAppender;
@@ -62,6 +64,8 @@
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import com.google.common.base.Supplier;
+
 /**
  * A JUnit test that audit logs are generated
  */
@@ -69,17 +73,20 @@
 public class TestAuditLogs {
   static final String auditLogFile = PathUtils.getTestDirName(TestAuditLogs.class) + "/TestAuditLogs-audit.log";
   final boolean useAsyncLog;
+  final boolean useAsyncPipeline;
   
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{new Boolean(false)});
-    params.add(new Object[]{new Boolean(true)});
+    params.add(new Object[]{new Boolean(false), new Boolean(false)});
+    params.add(new Object[]{new Boolean(true), new Boolean(false)});
+    params.add(new Object[]{new Boolean(false), new Boolean(true)});
     return params;
   }
   
-  public TestAuditLogs(boolean useAsyncLog) {
+  public TestAuditLogs(boolean useAsyncLog, boolean useAsyncPipeline) {
     this.useAsyncLog = useAsyncLog;
+    this.useAsyncPipeline = useAsyncPipeline;
   }
 
   // Pattern for: 
@@ -117,6 +124,8 @@ public void setupCluster() throws Exception {
     conf.setLong(DFSConfigKeys.DFS_BLOCKREPORT_INTERVAL_MSEC_KEY, 10000L);
     conf.setBoolean(DFSConfigKeys.DFS_WEBHDFS_ENABLED_KEY, true);
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY, useAsyncLog);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_PIPELINE_KEY,
+        useAsyncPipeline);
     util = new DFSTestUtil.Builder().setName("TestAuditAllowed").
         setNumFiles(20).build();
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(4).build();
@@ -129,6 +138,8 @@ public void setupCluster() throws Exception {
     List<Appender> appenders = Collections.list(logger.getAllAppenders());
     assertEquals(1, appenders.size());
     assertEquals(useAsyncLog, appenders.get(0) instanceof AsyncAppender);
+    assertEquals(useAsyncPipeline,
+        cluster.getNamesystem().getAuditPipeline() != null);
     
     fnames = util.getFileNames(fileName);
     util.waitReplication(fs, fileName, (short)3);
@@ -310,14 +321,29 @@ private void configureAuditLogs() throws IOException {
     logger.addAppender(appender);
   }
 
+  // Wait for the events queued for the background thread to be logged
+  private void waitForAuditPipeline() throws Exception {
+    final AsyncAuditPipeline pipeline =
+        cluster.getNamesystem().getAuditPipeline();
+    if (pipeline != null) {
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return pipeline.getQueueDepth() == 0;
+        }
+      }, 10, 10000);
+    }
+  }
+
   // Ensure audit log has only one entry
-  private void verifyAuditLogs(boolean expectSuccess) throws IOException {
+  private void verifyAuditLogs(boolean expectSuccess) throws Exception {
     verifyAuditLogsRepeat(expectSuccess, 1);
   }
 
   // Ensure audit log has exactly N entries
   private void verifyAuditLogsRepeat(boolean expectSuccess, int ndupe)
-      throws IOException {
+      throws Exception {
+    waitForAuditPipeline();
     // Turn off the logs
     Logger logger = ((Log4JLogger) FSNamesystem.auditLog).getLogger();
     logger.setLevel(Level.OFF);
@@ -350,7 +376,8 @@ private void verifyAuditLogsRepeat(boolean expectSuccess, int ndupe)
 
   // Ensure audit log has exactly N entries
   private void verifyAuditLogsCheckPattern(boolean expectSuccess, int ndupe, Pattern pattern)
-      throws IOException {
+      throws Exception {
+    waitForAuditPipeline();
     // Turn off the logs
     Logger logger = ((Log4JLogger) FSNamesystem.auditLog).getLogger();
     logger.setLevel(Level.OFF);
@@ -21,6 +21,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CACHEREPORT_INTERVAL_MSEC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_MAX_LOCKED_MEMORY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_PATH_BASED_CACHE_REFRESH_INTERVAL_MS;
 import static org.apache.hadoop.hdfs.protocol.CachePoolInfo.RELATIVE_EXPIRY_NEVER;
 import static org.apache.hadoop.test.GenericTestUtils.assertExceptionContains;
@@ -1008,6 +1010,79 @@ public void testWaitForCachedReplicasInDirectory() throws Exception {
         poolInfo, "testWaitForCachedReplicasInDirectory:3:pool");
   }
 
+  /**
+   * Tests that incremental rescans cache the blocks of new files under a
+   * directive without scanning the other directives again, and that renaming
+   * a file out of a directive falls back to a full rescan which uncaches its
+   * blocks.
+   */
+  @Test(timeout=120000)
+  public void testIncrementalRescan() throws Exception {
+    cluster.shutdown();
+    conf.setBoolean(DFS_NAMENODE_PATH_BASED_CACHE_INCREMENTAL_RESCAN, true);
+    conf.setLong(DFS_NAMENODE_PATH_BASED_CACHE_FULL_RESCAN_INTERVAL_MS,
+        600000);
+    cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATANODES).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    namenode = cluster.getNameNode();
+
+    final String pool = "incrementalPool";
+    dfs.addCachePool(new CachePoolInfo(pool));
+    final Path dir = new Path("/incremental");
+    dfs.mkdirs(dir);
+    DFSTestUtil.createFile(dfs, new Path(dir, "file1"), BLOCK_SIZE * 2,
+        (short) 1, 0xFADED);
+    final Path otherDir = new Path("/otherIncremental");
+    dfs.mkdirs(otherDir);
+    DFSTestUtil.createFile(dfs, new Path(otherDir, "file"), BLOCK_SIZE * 2,
+        (short) 1, 0xFADED);
+    final CacheDirectiveInfo filter =
+        new CacheDirectiveInfo.Builder().setPath(dir).build();
+    final CacheDirectiveInfo otherFilter =
+        new CacheDirectiveInfo.Builder().setPath(otherDir).build();
+    dfs.addCacheDirective(new CacheDirectiveInfo.Builder()
+        .setPath(dir).setPool(pool).setReplication((short) 1).build());
+    dfs.addCacheDirective(new CacheDirectiveInfo.Builder()
+        .setPath(otherDir).setPool(pool).setReplication((short) 1).build());
+    waitForCachedBlocks(namenode, 4, 4, "testIncrementalRescan:1");
+    waitForCacheDirectiveStats(dfs, 2 * BLOCK_SIZE, 2 * BLOCK_SIZE, 1, 1,
+        filter, "testIncrementalRescan:1");
+    waitForCacheDirectiveStats(dfs, 2 * BLOCK_SIZE, 2 * BLOCK_SIZE, 1, 1,
+        otherFilter, "testIncrementalRescan:1");
+
+    // Only the new file under the directive is picked up, and the fully
+    // cached directive is not scanned again.
+    final CacheReplicationMonitor monitor = namenode.getNamesystem()
+        .getCacheManager().getCacheReplicationMonitor();
+    final long fullScans = monitor.getNumFullScans();
+    final long incrementalScans = monitor.getNumIncrementalScans();
+    final long scannedDirectives =
+        monitor.getNumIncrementallyScannedDirectives();
+    DFSTestUtil.createFile(dfs, new Path("/notCached"), BLOCK_SIZE * 2,
+        (short) 1, 0xFADED);
+    DFSTestUtil.createFile(dfs, new Path(dir, "file2"), BLOCK_SIZE * 2,
+        (short) 1, 0xFADED);
+    waitForCachedBlocks(namenode, 6, 6, "testIncrementalRescan:2");
+    waitForCacheDirectiveStats(dfs, 4 * BLOCK_SIZE, 4 * BLOCK_SIZE, 2, 2,
+        filter, "testIncrementalRescan:2");
+    assertEquals(fullScans, monitor.getNumFullScans());
+    final long newIncrementalScans =
+        monitor.getNumIncrementalScans() - incrementalScans;
+    assertTrue(newIncrementalScans > 0);
+    // Each of these scans found the changed directive only.
+    assertEquals(newIncrementalScans,
+        monitor.getNumIncrementallyScannedDirectives() - scannedDirectives);
+
+    // Renaming a file out of the directive needs a full rescan.
+    dfs.rename(new Path(dir, "file1"), new Path("/renamed"));
+    waitForCachedBlocks(namenode, 4, 4, "testIncrementalRescan:3");
+    waitForCacheDirectiveStats(dfs, 2 * BLOCK_SIZE, 2 * BLOCK_SIZE, 1, 1,
+        filter, "testIncrementalRescan:3");
+    assertTrue(monitor.getNumFullScans() > fullScans);
+  }
+
   /**
    * Tests stepping the cache replication factor up and down, checking the
    * number of cached replicas and blocks as well as the advertised locations.
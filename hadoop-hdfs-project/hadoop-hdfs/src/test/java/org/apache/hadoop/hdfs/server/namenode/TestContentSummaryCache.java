@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
+import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the content summaries kept by the directories when
+ * {@link DFSConfigKeys#DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY} is set:
+ * after each change of the namespace they must be the same as the summaries
+ * computed by traversing the directories.
+ */
+public class TestContentSummaryCache {
+  private static final int BLOCKSIZE = 1024;
+  private static final short REPLICATION = 3;
+  private static final long seed = 0L;
+  private static final Path dir = new Path("/TestContentSummaryCache");
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCKSIZE);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Check that the summaries of all the directories under the given path are
+   * cached, and are equal to the computed ones.
+   */
+  private void checkSummaries(Path path) throws IOException {
+    final FSDirectory fsdir = cluster.getNamesystem().getFSDirectory();
+    final List<INodeDirectory> dirs = new ArrayList<INodeDirectory>();
+    collectDirectories(fsdir.getINode(path.toString()).asDirectory(), dirs);
+    for (INodeDirectory d : dirs) {
+      final String p = d.getFullPathName();
+      assertNotNull(p, d.getDirectoryWithSummaryFeature());
+      final ContentSummary computed = d.computeContentSummary(
+          fsdir.getBlockStoragePolicySuite());
+      final ContentSummary cached = dfs.getContentSummary(new Path(p));
+      assertEquals(p, computed.toString(true), cached.toString(true));
+      assertEquals(p, computed.getSpaceConsumed(), cached.getSpaceConsumed());
+      for (StorageType t : StorageType.getTypesSupportingQuota()) {
+        assertEquals(p + " " + t, computed.getTypeConsumed(t),
+            cached.getTypeConsumed(t));
+      }
+    }
+  }
+
+  private static void collectDirectories(INodeDirectory d,
+      List<INodeDirectory> dirs) {
+    dirs.add(d);
+    for (INode child : d.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
+      if (child.isDirectory()) {
+        collectDirectories(child.asDirectory(), dirs);
+      }
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testNamespaceChanges() throws Exception {
+    final Path foo = new Path(dir, "foo");
+    final Path bar = new Path(foo, "bar");
+    final Path baz = new Path(dir, "baz");
+    dfs.mkdirs(bar);
+    dfs.mkdirs(new Path(baz, "a/b/c"));
+    dfs.setQuota(baz, 1000, HdfsConstants.QUOTA_DONT_SET);
+    dfs.setStoragePolicy(foo, HdfsConstants.ONESSD_STORAGE_POLICY_NAME);
+    DFSTestUtil.createFile(dfs, new Path(foo, "f1"), BLOCKSIZE * 3 + 100,
+        REPLICATION, seed);
+    DFSTestUtil.createFile(dfs, new Path(bar, "f2"), BLOCKSIZE / 2,
+        (short) 1, seed);
+    DFSTestUtil.createFile(dfs, new Path(baz, "a/f3"), BLOCKSIZE * 2,
+        (short) 2, seed);
+    dfs.createSymlink(new Path("/target"), new Path(bar, "link"), false);
+    checkSummaries(dir);
+
+    // append, truncate and set the replication
+    DFSTestUtil.appendFile(dfs, new Path(bar, "f2"), BLOCKSIZE * 2);
+    assertTrue(dfs.truncate(new Path(foo, "f1"), BLOCKSIZE * 2));
+    dfs.setReplication(new Path(baz, "a/f3"), (short) 3);
+    checkSummaries(dir);
+
+    // rename across directories, with and without overwriting
+    dfs.rename(bar, new Path(baz, "a/b"));
+    dfs.rename(new Path(baz, "a/f3"), new Path(dir, "f3"));
+    DFSTestUtil.createFile(dfs, new Path(foo, "f4"), BLOCKSIZE, REPLICATION,
+        seed);
+    dfs.rename(new Path(foo, "f4"), new Path(baz, "a/b/bar/f2"),
+        Options.Rename.OVERWRITE);
+    checkSummaries(dir);
+
+    // change the storage policy of a populated directory
+    dfs.setStoragePolicy(baz, HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+    checkSummaries(dir);
+
+    // concat and delete
+    final Path target = new Path(foo, "target");
+    DFSTestUtil.createFile(dfs, target, BLOCKSIZE, REPLICATION, seed);
+    final Path[] srcs = new Path[3];
+    for (int i = 0; i < srcs.length; i++) {
+      srcs[i] = new Path(foo, "src" + i);
+      DFSTestUtil.createFile(dfs, srcs[i], BLOCKSIZE, (short) 2, seed);
+    }
+    dfs.concat(target, srcs);
+    dfs.delete(new Path(baz, "a/b"), true);
+    dfs.delete(new Path(foo, "f1"), false);
+    checkSummaries(dir);
+
+    // the summaries are set again when the namenode restarts
+    cluster.restartNameNode(true);
+    dfs = cluster.getFileSystem();
+    checkSummaries(dir);
+    checkSummaries(new Path("/"));
+  }
+
+  @Test(timeout = 120000)
+  public void testFileUnderConstruction() throws Exception {
+    final Path file = new Path(dir, "file");
+    final HdfsDataOutputStream out =
+        (HdfsDataOutputStream) dfs.create(file, REPLICATION);
+    try {
+      out.write(new byte[BLOCKSIZE + 10]);
+      out.hflush();
+      // the namenode does not know the length of the last block yet
+      checkSummaries(dir);
+      ContentSummary summary = dfs.getContentSummary(dir);
+      assertEquals(BLOCKSIZE, summary.getLength());
+      // the last block takes the preferred block size, as for the quota
+      assertEquals(2 * BLOCKSIZE * REPLICATION, summary.getSpaceConsumed());
+      assertEquals(1, summary.getFileCount());
+
+      out.write(new byte[10]);
+      out.hsync(EnumSet.of(SyncFlag.UPDATE_LENGTH));
+      checkSummaries(dir);
+      summary = dfs.getContentSummary(dir);
+      assertEquals(BLOCKSIZE + 20, summary.getLength());
+      checkSummaries(new Path("/"));
+    } finally {
+      out.close();
+    }
+    checkSummaries(dir);
+    assertEquals(BLOCKSIZE + 20, dfs.getContentSummary(dir).getLength());
+  }
+
+  private DirectoryWithSummaryFeature getSummary(Path path)
+      throws IOException {
+    return cluster.getNamesystem().getFSDirectory().getINode(path.toString())
+        .asDirectory().getDirectoryWithSummaryFeature();
+  }
+
+  @Test(timeout = 120000)
+  public void testSnapshots() throws Exception {
+    final Path foo = new Path(dir, "foo");
+    final Path bar = new Path(dir, "bar");
+    final Path file = new Path(foo, "file");
+    final Path file2 = new Path(foo, "file2");
+    DFSTestUtil.createFile(dfs, file, BLOCKSIZE, REPLICATION, seed);
+    DFSTestUtil.createFile(dfs, file2, BLOCKSIZE, REPLICATION, seed);
+    DFSTestUtil.createFile(dfs, new Path(bar, "file3"), BLOCKSIZE,
+        REPLICATION, seed);
+    dfs.mkdirs(new Path(dir, "baz"));
+    dfs.allowSnapshot(foo);
+    dfs.createSnapshot(foo, "s1");
+    dfs.delete(file, false);
+    DFSTestUtil.appendFile(dfs, file2, BLOCKSIZE);
+
+    // the summaries of the snapshottable directory and of its ancestors are
+    // computed, the other ones are still kept
+    assertTrue(getSummary(dir).isWithSnapshotData());
+    assertTrue(getSummary(new Path("/")).isWithSnapshotData());
+    assertFalse(getSummary(bar).isWithSnapshotData());
+    assertEquals(2, dfs.getContentSummary(foo).getFileCount());
+    checkSummaries(dir);
+
+    // a file renamed out of the snapshot is shared with the snapshot
+    dfs.rename(file2, new Path(bar, "file2"));
+    assertTrue(getSummary(bar).isWithSnapshotData());
+    checkSummaries(dir);
+
+    // the summaries are computed again when the namenode restarts
+    cluster.restartNameNode(true);
+    dfs = cluster.getFileSystem();
+    assertTrue(getSummary(bar).isWithSnapshotData());
+    assertFalse(getSummary(new Path(dir, "baz")).isWithSnapshotData());
+    checkSummaries(dir);
+  }
+
+  @Test(timeout = 120000)
+  public void testDisabled() throws Exception {
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY, false);
+    cluster.restartNameNode(true);
+    dfs = cluster.getFileSystem();
+    dfs.mkdirs(new Path(dir, "foo"));
+    final FSDirectory fsdir = cluster.getNamesystem().getFSDirectory();
+    assertNull(fsdir.getINode(dir.toString()).asDirectory()
+        .getDirectoryWithSummaryFeature());
+    assertNull(fsdir.getRoot().getDirectoryWithSummaryFeature());
+    assertEquals(2, dfs.getContentSummary(dir).getDirectoryCount());
+  }
+}
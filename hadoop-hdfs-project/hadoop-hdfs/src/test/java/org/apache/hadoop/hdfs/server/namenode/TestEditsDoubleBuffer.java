@@ -19,15 +19,27 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.LayoutFlags;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.MkdirOp;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.junit.Test;
 
+import com.google.protobuf.ByteString;
+
 public class TestEditsDoubleBuffer {
+  private static final int LAYOUT_VERSION =
+      NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION;
+
   @Test
   public void testDoubleBuffer() throws IOException {
     EditsDoubleBuffer buf = new EditsDoubleBuffer(1024);
@@ -81,4 +93,113 @@ public void shouldFailToCloseWhenUnflushed() throws IOException {
       }
     }
   }
+
+  /** Write mkdir ops with the given transaction IDs to the buffer. */
+  private static void writeOps(EditsDoubleBuffer buf, long firstTxId,
+      long lastTxId) throws IOException {
+    for (long txid = firstTxId; txid <= lastTxId; txid++) {
+      FSEditLogOp op = NameNodeAdapter.createMkdirOp("/dir/" + txid);
+      op.setTransactionId(txid);
+      buf.writeOp(op);
+    }
+  }
+
+  /** Flush the buffer to a log with a header. */
+  private static byte[] flushLog(EditsDoubleBuffer buf) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    EditLogFileOutputStream.writeHeader(LAYOUT_VERSION, out);
+    buf.setReadyToFlush();
+    buf.flushTo(out);
+    assertTrue(buf.isFlushed());
+    return Arrays.copyOf(out.getData(), out.getLength());
+  }
+
+  private static void assertLogHasOps(byte[] log, long... txids)
+      throws IOException {
+    EditLogInputStream in = EditLogFileInputStream.fromByteString(
+        ByteString.copyFrom(log), "test", txids[0],
+        HdfsConstants.INVALID_TXID, true);
+    try {
+      for (long txid : txids) {
+        FSEditLogOp op = in.readOp();
+        assertEquals(txid, op.getTransactionId());
+        assertEquals("/dir/" + txid, ((MkdirOp) op).path);
+      }
+      assertNull(in.readOp());
+    } finally {
+      in.close();
+    }
+  }
+
+  /** @return the transaction IDs returned by each scan of the log. */
+  private static long[] scanLog(byte[] log) throws IOException {
+    FSEditLogLoader.PositionTrackingInputStream tracker =
+        new FSEditLogLoader.PositionTrackingInputStream(
+            new ByteArrayInputStream(log));
+    DataInputStream in = new DataInputStream(tracker);
+    assertEquals(LAYOUT_VERSION, in.readInt());
+    LayoutFlags.read(in);
+    FSEditLogOp.Reader reader =
+        new FSEditLogOp.Reader(in, tracker, LAYOUT_VERSION);
+    long[] scanned = new long[0];
+    long txid;
+    while ((txid = reader.scanOp()) != HdfsConstants.INVALID_TXID) {
+      scanned = Arrays.copyOf(scanned, scanned.length + 1);
+      scanned[scanned.length - 1] = txid;
+    }
+    return scanned;
+  }
+
+  @Test
+  public void testCompactEncoding() throws IOException {
+    EditsDoubleBuffer plainBuf = new EditsDoubleBuffer(1024);
+    writeOps(plainBuf, 1, 100);
+    byte[] plainLog = flushLog(plainBuf);
+
+    for (boolean compress : new boolean[] { false, true }) {
+      EditsDoubleBuffer buf = new EditsDoubleBuffer(1024);
+      buf.setCompactEncoding(compress);
+      writeOps(buf, 1, 100);
+      byte[] log = flushLog(buf);
+      assertTrue("The compact log of " + log.length + " bytes should be " +
+          "smaller than the plain one of " + plainLog.length + " bytes",
+          log.length < plainLog.length);
+      long[] txids = new long[100];
+      for (int i = 0; i < txids.length; i++) {
+        txids[i] = i + 1;
+      }
+      assertLogHasOps(log, txids);
+      // the ops are in a single batch
+      assertTrue(Arrays.equals(new long[] { 100 }, scanLog(log)));
+
+      // a gap in the transaction IDs starts a new batch
+      writeOps(buf, 1, 2);
+      writeOps(buf, 5, 5);
+      log = flushLog(buf);
+      assertLogHasOps(log, 1, 2, 5);
+      assertTrue(Arrays.equals(new long[] { 2, 5 }, scanLog(log)));
+    }
+    assertTrue(Arrays.equals(new long[] { 1, 2, 3 },
+        Arrays.copyOf(scanLog(plainLog), 3)));
+  }
+
+  @Test
+  public void testCompactEncodingSkipsRawData() throws IOException {
+    EditsDoubleBuffer plainBuf = new EditsDoubleBuffer(1024);
+    writeOps(plainBuf, 1, 10);
+    plainBuf.setReadyToFlush();
+    DataOutputBuffer ops = new DataOutputBuffer();
+    plainBuf.flushTo(ops);
+
+    // edits written raw, as by the JournalNodes, are flushed unchanged
+    EditsDoubleBuffer buf = new EditsDoubleBuffer(1024);
+    buf.setCompactEncoding(true);
+    buf.writeRaw(ops.getData(), 0, ops.getLength());
+    buf.setReadyToFlush();
+    DataOutputBuffer out = new DataOutputBuffer();
+    buf.flushTo(out);
+    assertEquals(ops.getLength(), out.getLength());
+    assertTrue(Arrays.equals(Arrays.copyOf(ops.getData(), ops.getLength()),
+        Arrays.copyOf(out.getData(), out.getLength())));
+  }
 }
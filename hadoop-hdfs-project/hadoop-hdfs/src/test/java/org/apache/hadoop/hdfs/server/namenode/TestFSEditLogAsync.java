@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.ipc.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+/**
+ * Tests the NameNode with
+ * {@link DFSConfigKeys#DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY} set.
+ */
+public class TestFSEditLogAsync {
+  private static final int NUM_THREADS = 8;
+  private static final int FILES_PER_THREAD = 50;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING_KEY, true);
+    // fewer handlers than clients
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_HANDLER_COUNT_KEY, 2);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    Server.getCurCall().set(null);
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentEdits() throws Exception {
+    FSEditLog editLog = cluster.getNamesystem().getEditLog();
+    assertTrue(editLog instanceof FSEditLogAsync);
+    assertTrue(((FSEditLogAsync) editLog).isSyncThreadAlive());
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final Path dir = new Path("/thread" + t);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            assertTrue(fs.mkdirs(dir));
+            for (int i = 0; i < FILES_PER_THREAD; i++) {
+              DFSTestUtil.createFile(fs, new Path(dir, "file" + i), 0L,
+                  (short) 1, 0L);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    // every edit acknowledged to a client has been synced
+    assertEquals(editLog.getLastWrittenTxId(), editLog.getSyncTxId());
+
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      assertEquals(FILES_PER_THREAD,
+          fs.listStatus(new Path("/thread" + t)).length);
+    }
+    assertTrue(((FSEditLogAsync) cluster.getNamesystem().getEditLog())
+        .isSyncThreadAlive());
+  }
+
+  @Test(timeout = 60000)
+  public void testResponseSentAfterSync() throws Exception {
+    FSNamesystem fsn = cluster.getNamesystem();
+    Server.Call call = mock(Server.Call.class);
+    Server.getCurCall().set(call);
+    assertTrue(fsn.mkdirs("/dir", new PermissionStatus("user", "group",
+        FsPermission.getDefault()), true));
+
+    // the handler returned, the response is sent by the sync thread
+    verify(call, timeout(10000)).sendResponse();
+    InOrder inOrder = inOrder(call);
+    inOrder.verify(call).postponeResponse();
+    inOrder.verify(call).sendResponse();
+    verify(call, never()).abortResponse(org.mockito.Matchers.<Throwable>any());
+    assertTrue(fsn.getEditLog().getSyncTxId() >=
+        fsn.getEditLog().getLastWrittenTxId());
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncWithoutCall() throws Exception {
+    // threads which do not serve an RPC call sync synchronously
+    FSNamesystem fsn = cluster.getNamesystem();
+    assertTrue(fsn.mkdirs("/dir", new PermissionStatus("user", "group",
+        FsPermission.getDefault()), true));
+    assertEquals(fsn.getEditLog().getLastWrittenTxId(),
+        fsn.getEditLog().getSyncTxId());
+  }
+
+  @Test(timeout = 60000)
+  public void testSyncThreadStoppedOnShutdown() throws Exception {
+    FSEditLogAsync editLog =
+        (FSEditLogAsync) cluster.getNamesystem().getEditLog();
+    assertTrue(fs.mkdirs(new Path("/dir")));
+    cluster.shutdownNameNode(0);
+    assertTrue(!editLog.isSyncThreadAlive());
+  }
+}
@@ -19,6 +19,7 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
@@ -68,8 +69,21 @@ public class TestFSEditLogLoader {
   
   @Test
   public void testDisplayRecentEditLogOpCodes() throws IOException {
+    testDisplayRecentEditLogOpCodes(false);
+  }
+
+  @Test
+  public void testDisplayRecentEditLogOpCodesAsyncLoading()
+      throws IOException {
+    testDisplayRecentEditLogOpCodes(true);
+  }
+
+  private void testDisplayRecentEditLogOpCodes(boolean asyncLoading)
+      throws IOException {
     // start a cluster 
     Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_KEY,
+        asyncLoading);
     MiniDFSCluster cluster = null;
     FileSystem fileSys = null;
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
@@ -111,6 +125,103 @@ public void testDisplayRecentEditLogOpCodes() throws IOException {
     }
   }
   
+  /**
+   * Test that the edits decoded by a prefetching thread are applied in order.
+   */
+  @Test
+  public void testAsyncLoading() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_KEY, true);
+    // a small queue, so that the prefetching thread has to wait
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOADING_QUEUE_SIZE_KEY,
+        2);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 50; i++) {
+        Path dir = new Path("/dir" + i);
+        fs.mkdirs(new Path(dir, "sub"));
+        DFSTestUtil.createFile(fs, new Path(dir, "file"), 1024, (short) 1, i);
+        fs.setReplication(new Path(dir, "file"), (short) 2);
+        fs.rename(new Path(dir, "sub"), new Path(dir, "renamed"));
+        if (i % 2 == 0) {
+          fs.delete(dir, true);
+        }
+      }
+      final long lastTxId = cluster.getNamesystem().getFSImage().getEditLog()
+          .getLastWrittenTxId();
+
+      cluster.restartNameNode();
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 50; i++) {
+        Path dir = new Path("/dir" + i);
+        if (i % 2 == 0) {
+          assertFalse(fs.exists(dir));
+        } else {
+          assertTrue(fs.exists(new Path(dir, "renamed")));
+          assertEquals(2, fs.getFileStatus(new Path(dir, "file"))
+              .getReplication());
+        }
+      }
+      assertTrue(cluster.getNamesystem().getFSImage().getLastAppliedTxId()
+          >= lastTxId);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Test that the NN writes its edits in compressed, compact batches when
+   * configured to, and replays them upon restart.
+   */
+  @Test
+  public void testCompactEdits() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_COMPACT_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_COMPRESS_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 20; i++) {
+        Path dir = new Path("/dir" + i);
+        fs.mkdirs(new Path(dir, "sub"));
+        DFSTestUtil.createFile(fs, new Path(dir, "file"), 1024, (short) 1, i);
+        fs.rename(new Path(dir, "sub"), new Path(dir, "renamed"));
+      }
+
+      // only the segment has the layout version of the compact encoding,
+      // and its first op follows the 8 bytes of the header
+      NNStorage storage = cluster.getNamesystem().getFSImage().getStorage();
+      assertEquals(NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION,
+          storage.getLayoutVersion());
+      StorageDirectory sd = storage.dirIterator(NameNodeDirType.EDITS).next();
+      File edits = FSImageTestUtil.findLatestEditsLog(sd).getFile();
+      RandomAccessFile raf = new RandomAccessFile(edits, "r");
+      try {
+        assertEquals(NameNodeLayoutVersion.COMPACT_EDITS_LAYOUT_VERSION,
+            raf.readInt());
+        raf.seek(8);
+        assertEquals(FSEditLogOp.COMPACT_BATCH_OPCODE, raf.readByte());
+      } finally {
+        raf.close();
+      }
+
+      cluster.restartNameNode();
+      fs = cluster.getFileSystem();
+      for (int i = 0; i < 20; i++) {
+        Path dir = new Path("/dir" + i);
+        assertTrue(fs.exists(new Path(dir, "renamed")));
+        assertEquals(1024, fs.getFileStatus(new Path(dir, "file")).getLen());
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   /**
    * Test that, if the NN restarts with a new minimum replication,
    * any files created with the old replication count will get
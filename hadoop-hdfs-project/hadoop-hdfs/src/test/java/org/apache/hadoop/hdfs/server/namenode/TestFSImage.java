@@ -18,10 +18,12 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.EnumSet;
 
 import org.junit.Assert;
@@ -33,15 +35,19 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSOutputStream;
+import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream.SyncFlag;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.RollingUpgradeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
+import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -125,6 +131,135 @@ private void testPersistHelper(Configuration conf) throws IOException {
     }
   }
 
+  private static Configuration getParallelImageConf() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, 0);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 2);
+    return conf;
+  }
+
+  @Test
+  public void testParallelPersist() throws IOException {
+    testPersistHelper(getParallelImageConf());
+  }
+
+  @Test(timeout=120000)
+  public void testParallelSaveAndLoad() throws IOException {
+    testParallelSaveAndLoad(getParallelImageConf(), true, false);
+  }
+
+  /** Images with sub-sections can be loaded by a serial loader. */
+  @Test(timeout=120000)
+  public void testParallelSaveAndSerialLoad() throws IOException {
+    testParallelSaveAndLoad(getParallelImageConf(), false, false);
+  }
+
+  /**
+   * No sub-sections are written during a rolling upgrade, since the
+   * NameNodes of the previous version cannot load them.
+   */
+  @Test(timeout=120000)
+  public void testParallelSaveDuringRollingUpgrade() throws IOException {
+    testParallelSaveAndLoad(getParallelImageConf(), true, true);
+  }
+
+  /** No sub-sections are written when the image is compressed. */
+  @Test(timeout=120000)
+  public void testParallelSaveWithCompression() throws IOException {
+    Configuration conf = getParallelImageConf();
+    conf.setBoolean(DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, true);
+    conf.set(DFSConfigKeys.DFS_IMAGE_COMPRESSION_CODEC_KEY,
+        "org.apache.hadoop.io.compress.DefaultCodec");
+    testParallelSaveAndLoad(conf, true, false);
+  }
+
+  private void testParallelSaveAndLoad(Configuration conf,
+      boolean parallelLoad, boolean rollingUpgrade) throws IOException {
+    final boolean subSections = !rollingUpgrade && !conf.getBoolean(
+        DFSConfigKeys.DFS_IMAGE_COMPRESS_KEY, false);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 20; j++) {
+          Path file = new Path("/dir" + i + "/sub" + (j % 3) + "/file" + j);
+          DFSTestUtil.createFile(fs, file, j, (short) 1, 0L);
+        }
+      }
+      fs.createSymlink(new Path("/dir0/sub0/file0"), new Path("/link"),
+          false);
+
+      if (rollingUpgrade) {
+        fs.rollingUpgrade(RollingUpgradeAction.PREPARE);
+      }
+      fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+      fs.saveNamespace();
+      fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+      if (rollingUpgrade) {
+        fs.rollingUpgrade(RollingUpgradeAction.FINALIZE);
+      }
+
+      File currentDir = FSImageTestUtil.getNameNodeCurrentDirs(cluster, 0)
+          .get(0);
+      File fsimage = FSImageTestUtil.findNewestImageFile(currentDir
+          .getAbsolutePath());
+      FileSummary summary;
+      RandomAccessFile raFile = new RandomAccessFile(fsimage, "r");
+      try {
+        summary = FSImageUtil.loadSummary(raFile);
+      } finally {
+        raFile.close();
+      }
+      int inodeSubSections = 0;
+      int dirSubSections = 0;
+      for (FileSummary.Section s : summary.getSectionsList()) {
+        SectionName name = SectionName.fromString(s.getName());
+        if (name == SectionName.INODE_SUB) {
+          inodeSubSections++;
+        } else if (name == SectionName.INODE_DIR_SUB) {
+          dirSubSections++;
+        }
+      }
+      if (!subSections) {
+        assertEquals(0, inodeSubSections);
+        assertEquals(0, dirSubSections);
+      } else {
+        assertTrue("Too few INode sub-sections: " + inodeSubSections,
+            inodeSubSections >= 4);
+        assertTrue("No INode directory sub-sections", dirSubSections > 0);
+      }
+
+      final long numInodes = cluster.getNamesystem().dir.getINodeMap().size();
+      final long numBlocks = cluster.getNamesystem().getBlocksTotal();
+      cluster.getConfiguration(0).setBoolean(
+          DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, parallelLoad);
+      cluster.restartNameNode();
+      cluster.waitActive();
+      fs = cluster.getFileSystem();
+
+      FSNamesystem fsn = cluster.getNamesystem();
+      assertEquals(numInodes, fsn.dir.getINodeMap().size());
+      assertEquals(numBlocks, fsn.getBlocksTotal());
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 20; j++) {
+          Path file = new Path("/dir" + i + "/sub" + (j % 3) + "/file" + j);
+          assertEquals(j, fs.getFileStatus(file).getLen());
+        }
+      }
+      assertEquals(new Path("/dir0/sub0/file0"),
+          fs.getLinkTarget(new Path("/link")));
+      assertFalse(fs.exists(new Path("/dir10")));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Ensure that the digest written by the saver equals to the digest of the
    * file.
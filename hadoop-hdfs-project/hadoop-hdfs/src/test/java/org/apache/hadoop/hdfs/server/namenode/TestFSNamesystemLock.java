@@ -20,10 +20,14 @@
 
 import com.google.common.base.Supplier;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
+import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
 import org.apache.hadoop.test.MetricsAsserts;
@@ -32,6 +36,10 @@
 import org.junit.Test;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -99,6 +107,153 @@ public void testFSNamesystemLockCompatibility() {
     assertEquals(0, rwLock.getWriteHoldCount());
   }
 
+  @Test
+  public void testFineGrainedWriteLockCompatibility() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    final FSNamesystemLock rwLock = new FSNamesystemLock(conf, null);
+    final FSNamesystemLock.FineGrainedGate gate = rwLock.getFineGrainedGate();
+    assertTrue(rwLock.isFineGrainedLockingEnabled());
+
+    // fine-grained writers are compatible with each other
+    rwLock.fineGrainedWriteLock();
+    assertTrue(rwLock.hasFineGrainedWriteLock());
+    ExecutorService helper = Executors.newSingleThreadExecutor();
+    try {
+      helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          rwLock.fineGrainedWriteLock();
+          assertEquals(2, gate.getActiveWriters());
+          rwLock.fineGrainedWriteUnlock("test");
+        }
+      }).get(10, TimeUnit.SECONDS);
+
+      // a nested read lock does not give up the fine-grained write lock
+      rwLock.readLock();
+      assertTrue(rwLock.hasFineGrainedWriteLock());
+      rwLock.readUnlock();
+
+      // but readers and writers have to wait
+      final CountDownLatch readerIn = new CountDownLatch(1);
+      helper.execute(new Runnable() {
+        @Override
+        public void run() {
+          rwLock.readLock();
+          readerIn.countDown();
+          rwLock.readUnlock();
+        }
+      });
+      assertFalse(readerIn.await(500, TimeUnit.MILLISECONDS));
+      assertEquals(0, gate.getActiveReaders());
+      rwLock.fineGrainedWriteUnlock("test");
+      assertFalse(rwLock.hasFineGrainedWriteLock());
+      assertTrue(readerIn.await(10, TimeUnit.SECONDS));
+
+      rwLock.writeLock();
+      assertFalse(helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          rwLock.fineGrainedWriteLock();
+          rwLock.fineGrainedWriteUnlock("test");
+        }
+      }).isDone());
+      rwLock.writeUnlock();
+    } finally {
+      helper.shutdown();
+      assertTrue(helper.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testFineGrainedWriteLockPaths() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    final FSNamesystemLock rwLock = new FSNamesystemLock(conf, null);
+    final FSNamesystemLock.FineGrainedGate gate = rwLock.getFineGrainedGate();
+
+    rwLock.fineGrainedWriteLock("/a/b");
+    ExecutorService helper = Executors.newSingleThreadExecutor();
+    try {
+      // readers of other paths are admitted
+      for (final String path : new String[] {"/a/c", "/a/bc", "/d/b"}) {
+        helper.submit(new Runnable() {
+          @Override
+          public void run() {
+            rwLock.readLock(path);
+            assertEquals(1, gate.getActiveReaders());
+            rwLock.readUnlock();
+          }
+        }).get(10, TimeUnit.SECONDS);
+      }
+
+      // readers of the same path, of its ancestors and descendants, and of
+      // paths which cannot be compared have to wait
+      for (final String path : new String[] {"/a/b", "/a", "/", "/a/b/c",
+          "/a/.snapshot/s/c", "/.reserved/.inodes/16386", null}) {
+        final CountDownLatch readerIn = new CountDownLatch(1);
+        helper.execute(new Runnable() {
+          @Override
+          public void run() {
+            rwLock.readLock(path);
+            readerIn.countDown();
+            rwLock.readUnlock();
+          }
+        });
+        assertFalse(path, readerIn.await(200, TimeUnit.MILLISECONDS));
+        rwLock.fineGrainedWriteUnlock("test");
+        assertTrue(path, readerIn.await(10, TimeUnit.SECONDS));
+        rwLock.fineGrainedWriteLock("/a/b");
+      }
+    } finally {
+      rwLock.fineGrainedWriteUnlock("test");
+      helper.shutdown();
+      assertTrue(helper.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    // and the other way around, writers wait for the readers of their path
+    rwLock.readLock("/a");
+    helper = Executors.newSingleThreadExecutor();
+    try {
+      helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          rwLock.fineGrainedWriteLock("/b/c");
+          rwLock.fineGrainedWriteUnlock("test");
+        }
+      }).get(10, TimeUnit.SECONDS);
+      final CountDownLatch writerIn = new CountDownLatch(1);
+      helper.execute(new Runnable() {
+        @Override
+        public void run() {
+          rwLock.fineGrainedWriteLock("/a/b/c");
+          writerIn.countDown();
+          rwLock.fineGrainedWriteUnlock("test");
+        }
+      });
+      assertFalse(writerIn.await(200, TimeUnit.MILLISECONDS));
+      rwLock.readUnlock();
+      assertTrue(writerIn.await(10, TimeUnit.SECONDS));
+    } finally {
+      helper.shutdown();
+      assertTrue(helper.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testFineGrainedWriteLockDisabled() {
+    FSNamesystemLock rwLock = new FSNamesystemLock(new Configuration(), null);
+    assertFalse(rwLock.isFineGrainedLockingEnabled());
+
+    rwLock.fineGrainedWriteLock();
+    assertTrue(rwLock.isWriteLockedByCurrentThread());
+    assertFalse(rwLock.hasFineGrainedWriteLock());
+    rwLock.fineGrainedWriteUnlock("test");
+    assertFalse(rwLock.isWriteLockedByCurrentThread());
+  }
+
   @Test
   public void testFSLockGetWaiterCount() throws InterruptedException {
     final int threadCount = 3;
@@ -360,4 +515,134 @@ public void testDetailedHoldMetrics() throws Exception {
     assertCounter("FSNWriteLockBazNanosNumOps", 1L, rb);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testFineGrainedWriteHoldMetrics() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY, true);
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY,
+        1);
+    FakeTimer timer = new FakeTimer();
+    MetricsRegistry registry = new MetricsRegistry("Test");
+    MutableRatesWithAggregation rates =
+        registry.newRatesWithAggregation("Test");
+    FSNamesystemLock fsLock = new FSNamesystemLock(conf, rates, timer);
+
+    fsLock.fineGrainedWriteLock();
+    timer.advance(2);
+    fsLock.fineGrainedWriteUnlock("foo");
+    assertEquals(0, fsLock.getReadHoldCount());
+    assertEquals(0, fsLock.getFineGrainedGate().getActiveWriters());
+    fsLock.readLock();
+    timer.advance(1);
+    fsLock.readUnlock("foo");
+
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    rates.snapshot(rb, true);
+    assertGauge("FSNFineGrainedWriteLockFooNanosAvgTime", 2000000.0, rb);
+    assertCounter("FSNFineGrainedWriteLockFooNanosNumOps", 1L, rb);
+    assertGauge("FSNReadLockFooNanosAvgTime", 1000000.0, rb);
+    assertCounter("FSNReadLockFooNanosNumOps", 1L, rb);
+
+    // the fine-grained write holds are profiled as write holds
+    List<?> profiles = (List<?>) fsLock.getProfiler().getWindows().get(0)
+        .get("profiles");
+    assertEquals(4, profiles.size());
+    for (Object p : profiles.subList(0, 2)) {
+      assertProfile(p, "write", ((Map<?, ?>) p).get("kind"),
+          "operation".equals(((Map<?, ?>) p).get("kind")) ? "foo" : "main",
+          1, 2000);
+    }
+  }
+
+  @Test
+  public void testLockProfiling() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY,
+        1);
+    conf.setStrings(DFSConfigKeys.NNTOP_WINDOWS_MINUTES_KEY, "1", "5");
+    FakeTimer timer = new FakeTimer();
+    FSNamesystemLock fsLock = new FSNamesystemLock(conf, null, timer);
+    LockProfiler profiler = fsLock.getProfiler();
+    assertNotNull(profiler);
+
+    fsLock.readLock();
+    timer.advanceNanos(3000000);
+    fsLock.readUnlock("foo");
+    // nested holds are profiled once
+    fsLock.writeLock();
+    fsLock.readLock();
+    timer.advance(1);
+    fsLock.readUnlock("bar");
+    fsLock.writeLock();
+    timer.advance(1);
+    fsLock.writeUnlock("bar");
+    fsLock.writeUnlock("baz");
+
+    List<Map<String, Object>> windows = profiler.getWindows();
+    assertEquals(2, windows.size());
+    assertEquals(60000, windows.get(0).get("windowLenMs"));
+    List<?> profiles = (List<?>) windows.get(0).get("profiles");
+    assertEquals(5, profiles.size());
+    // sorted by total hold time
+    assertProfile(profiles.get(0), "read", "caller", "main", 2, 4000);
+    assertProfile(profiles.get(1), "read", "operation", "foo", 1, 3000);
+    assertProfile(profiles.get(4), "read", "operation", "bar", 1, 1000);
+    for (Object p : profiles.subList(2, 4)) {
+      assertProfile(p, "write", ((Map<?, ?>) p).get("kind"),
+          "operation".equals(((Map<?, ?>) p).get("kind")) ? "baz" : "main",
+          1, 2000);
+    }
+
+    // the samples leave the windows
+    timer.advance(TimeUnit.MINUTES.toMillis(3));
+    windows = profiler.getWindows();
+    assertTrue(((List<?>) windows.get(0).get("profiles")).isEmpty());
+    assertEquals(5, ((List<?>) windows.get(1).get("profiles")).size());
+
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY,
+        0);
+    assertNull(new FSNamesystemLock(conf, null, timer).getProfiler());
+  }
+
+  @Test(timeout = 120000)
+  public void testLockProfileServlet() throws Exception {
+    Configuration conf = new Configuration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      URL url = new URL("http://" + NetUtils.getHostPortString(
+          cluster.getNameNode().getHttpAddress()) +
+          LockProfileServlet.PATH_SPEC);
+      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+      assertEquals(HttpURLConnection.HTTP_NOT_FOUND, conn.getResponseCode());
+      conn.disconnect();
+
+      cluster.getConfiguration(0).setFloat(
+          DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_SAMPLE_RATE_KEY, 1);
+      cluster.restartNameNode();
+      url = new URL("http://" + NetUtils.getHostPortString(
+          cluster.getNameNode().getHttpAddress()) +
+          LockProfileServlet.PATH_SPEC);
+      cluster.getFileSystem().mkdirs(new Path("/foo"));
+      String json = DFSTestUtil.urlGet(url);
+      assertTrue(json, json.contains("\"name\":\"mkdirs\""));
+      assertTrue(json, json.contains("\"sampleRate\":1.0"));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static void assertProfile(Object profile, String mode, Object kind,
+      String name, long samples, long totalHoldMicros) {
+    Map<?, ?> p = (Map<?, ?>) profile;
+    assertEquals(mode, p.get("mode"));
+    assertEquals(kind, p.get("kind"));
+    assertEquals(name, p.get("name"));
+    assertEquals(samples, p.get("samples"));
+    assertEquals(totalHoldMicros,
+        ((Map<?, ?>) p.get("hold")).get("totalMicros"));
+  }
+}
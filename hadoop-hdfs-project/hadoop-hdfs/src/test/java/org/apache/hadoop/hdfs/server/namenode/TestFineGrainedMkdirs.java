@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests concurrent mkdirs and creates with
+ * {@link DFSConfigKeys#DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY} set.
+ */
+public class TestFineGrainedMkdirs {
+  private static final int NUM_THREADS = 8;
+  private static final int DIRS_PER_THREAD = 50;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    // few stripes, so that unrelated directories share inode locks
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_STRIPES_KEY, 4);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentMkdirs() throws Exception {
+    final Path base = new Path("/base");
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < DIRS_PER_THREAD; i++) {
+              // every thread also creates the directories of all the others
+              assertTrue(fs.mkdirs(new Path(base, "shared/dir" + i)));
+              assertTrue(fs.mkdirs(new Path(base,
+                  "thread" + thread + "/a" + (i % 5) + "/dir" + i)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // base, shared, its children, threadN, threadN/aM and threadN/aM/dirK
+    final long expectedDirs = 2 + DIRS_PER_THREAD +
+        NUM_THREADS * (1 + 5 + DIRS_PER_THREAD);
+    ContentSummary summary = fs.getContentSummary(base);
+    assertEquals(expectedDirs, summary.getDirectoryCount());
+    // the namespace usage cached in the root must match the actual count
+    ContentSummary rootSummary = fs.getContentSummary(new Path("/"));
+    assertEquals(rootSummary.getDirectoryCount() + rootSummary.getFileCount(),
+        cluster.getNamesystem().getFSDirectory().totalInodes());
+
+    // the edits must replay in an order that recreates the same namespace
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertEquals(expectedDirs, fs.getContentSummary(base).getDirectoryCount());
+  }
+
+  @Test(timeout = 120000)
+  public void testConcurrentCreates() throws Exception {
+    final Path base = new Path("/createBase");
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < NUM_THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < DIRS_PER_THREAD; i++) {
+              // the shared files are created, then overwritten by the others
+              DFSTestUtil.createFile(fs, new Path(base, "shared/file" + i),
+                  0L, (short) 1, 0L);
+              DFSTestUtil.createFile(fs, new Path(base,
+                  "thread" + thread + "/file" + i), 0L, (short) 1, 0L);
+              assertTrue(fs.exists(new Path(base, "shared/file" + i)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // base, shared and threadN directories, their files
+    final long expectedFiles = DIRS_PER_THREAD * (1 + NUM_THREADS);
+    ContentSummary summary = fs.getContentSummary(base);
+    assertEquals(2 + NUM_THREADS, summary.getDirectoryCount());
+    assertEquals(expectedFiles, summary.getFileCount());
+    assertEquals(0, cluster.getNamesystem().getLeaseManager().countLease());
+
+    cluster.restartNameNode();
+    fs = cluster.getFileSystem();
+    assertEquals(expectedFiles, fs.getContentSummary(base).getFileCount());
+  }
+
+  @Test(timeout = 60000)
+  public void testMkdirsUnderFile() throws Exception {
+    DFSTestUtil.createFile(fs, new Path("/file"), 0L, (short) 1, 0L);
+    try {
+      fs.mkdirs(new Path("/file/dir"));
+      fail("mkdirs under a file should fail");
+    } catch (FileAlreadyExistsException e) {
+      GenericTestUtils.assertExceptionContains("/file", e);
+    }
+    assertTrue(fs.mkdirs(new Path("/dir/subdir")));
+    assertTrue(fs.getFileStatus(new Path("/dir/subdir")).isDirectory());
+  }
+}
@@ -38,6 +38,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
@@ -491,6 +492,36 @@ public void testConcatWithQuotaIncrease() throws IOException {
         summary.getSpaceConsumed());
   }
 
+  /**
+   * make sure the removed source files are not counted against the
+   * namespace quota after concat
+   */
+  @Test
+  public void testConcatWithNamespaceQuota() throws IOException {
+    final int srcNum = 10;
+    final Path foo = new Path("/foo");
+    final Path[] srcs = new Path[srcNum];
+    final Path target = new Path(foo, "target");
+    DFSTestUtil.createFile(dfs, target, blockSize, REPL_FACTOR, 0L);
+    for (int i = 0; i < srcNum; i++) {
+      srcs[i] = new Path(foo, "src" + i);
+      DFSTestUtil.createFile(dfs, srcs[i], blockSize, REPL_FACTOR, 0L);
+    }
+    // foo, the target and the sources
+    dfs.setQuota(foo, srcNum + 2, HdfsConstants.QUOTA_DONT_SET);
+
+    dfs.concat(target, srcs);
+    INodeDirectory fooNode = cluster.getNamesystem().getFSDirectory()
+        .getINode4Write(foo.toString()).asDirectory();
+    Assert.assertEquals(2, fooNode.getDirectoryWithQuotaFeature()
+        .getSpaceConsumed().getNameSpace());
+    // the namespace freed by the sources can be used again
+    for (int i = 0; i < srcNum; i++) {
+      DFSTestUtil.createFile(dfs, new Path(foo, "new" + i), blockSize,
+          REPL_FACTOR, 0L);
+    }
+  }
+
   @Test
   public void testConcatRelativeTargetPath() throws IOException {
     Path dir = new Path("/dir");
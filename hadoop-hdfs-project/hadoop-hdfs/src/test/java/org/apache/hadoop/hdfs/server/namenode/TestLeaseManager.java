@@ -18,8 +18,13 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
@@ -29,7 +34,10 @@
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 
 public class TestLeaseManager {
@@ -60,6 +68,149 @@ public void testRemoveLeaseWithPrefixPath() throws Exception {
     assertNull(lm.getLeaseByPath("/a/c"));
   }
 
+  /**
+   * Check that the leases of the paths under a directory are found without
+   * the paths of its siblings which share its name as a prefix.
+   */
+  @Test
+  public void testPrefixPathIgnoresSiblings() {
+    LeaseManager lm = new LeaseManager(Mockito.mock(FSNamesystem.class));
+    lm.addLease("holder1", "/a/b");
+    lm.addLease("holder1", "/a/b/c");
+    lm.addLease("holder2", "/a/b-1");
+    lm.addLease("holder2", "/a/bc");
+    lm.addLease("holder2", "/a/b0");
+
+    lm.changeLease("/a/b", "/x");
+    assertNotNull(lm.getLeaseByPath("/x"));
+    assertNotNull(lm.getLeaseByPath("/x/c"));
+    assertNull(lm.getLeaseByPath("/a/b"));
+    assertNull(lm.getLeaseByPath("/a/b/c"));
+    assertEquals(5, lm.countPath());
+
+    lm.removeLeaseWithPrefixPath("/x/");
+    assertNull(lm.getLeaseByPath("/x"));
+    assertNull(lm.getLeaseByPath("/x/c"));
+    assertNull(lm.getLease("holder1"));
+    assertNotNull(lm.getLeaseByPath("/a/b-1"));
+    assertNotNull(lm.getLeaseByPath("/a/bc"));
+    assertNotNull(lm.getLeaseByPath("/a/b0"));
+    assertEquals(3, lm.countPath());
+  }
+
+  /**
+   * Check that renewing a lease makes it the newest one, which is checked
+   * last.
+   */
+  @Test
+  public void testRenewedLeaseIsCheckedLast() throws Exception {
+    FSNamesystem fsn = mockNamesystem(Long.MAX_VALUE);
+    final LeaseManager lm = new LeaseManager(fsn);
+    lm.setLeasePeriod(0, 0);
+    lm.addLease("holder1", "src1");
+    lm.addLease("holder2", "src2");
+    lm.renewLease("holder1");
+    final LeaseManager.Lease[] checked = new LeaseManager.Lease[2];
+    Mockito.when(fsn.internalReleaseLease(Matchers.any(LeaseManager.Lease.class),
+        Matchers.anyString(), Matchers.any(INodesInPath.class),
+        Matchers.anyString())).thenAnswer(new Answer<Boolean>() {
+          @Override
+          public Boolean answer(InvocationOnMock invocation) {
+            LeaseManager.Lease lease =
+                (LeaseManager.Lease) invocation.getArguments()[0];
+            checked[checked[0] == null ? 0 : 1] = lease;
+            lm.removeLease(lease, (String) invocation.getArguments()[1]);
+            return true;
+          }
+        });
+    Thread.sleep(1);
+    assertFalse(lm.checkLeases());
+    assertNull(lm.getLeaseByPath("src1"));
+    assertEquals("holder2", checked[0].getHolder());
+    assertEquals("holder1", checked[1].getHolder());
+    assertEquals(0, lm.countLease());
+  }
+
+  /**
+   * Check that the release of the expired leases stops once the write lock
+   * was held for the configured time, and goes on at the next check.
+   */
+  @Test (timeout=10000)
+  public void testCheckLeasesYieldsLock() throws Exception {
+    FSNamesystem fsn = mockNamesystem(0);
+    final LeaseManager lm = new LeaseManager(fsn);
+    lm.setLeasePeriod(0, 0);
+    lm.addLease("holder1", "src1");
+    lm.addLease("holder1", "src2");
+    lm.addLease("holder2", "src3");
+    Mockito.when(fsn.internalReleaseLease(Matchers.any(LeaseManager.Lease.class),
+        Matchers.anyString(), Matchers.any(INodesInPath.class),
+        Matchers.anyString())).thenAnswer(new Answer<Boolean>() {
+          @Override
+          public Boolean answer(InvocationOnMock invocation)
+              throws InterruptedException {
+            // releasing a path takes longer than the limit
+            Thread.sleep(2);
+            lm.removeLease((LeaseManager.Lease) invocation.getArguments()[0],
+                (String) invocation.getArguments()[1]);
+            return true;
+          }
+        });
+    Thread.sleep(1);
+    for (int remaining = 2; remaining >= 0; remaining--) {
+      lm.checkLeases();
+      assertEquals(remaining, lm.countPath());
+    }
+    assertEquals(0, lm.countLease());
+  }
+
+  /**
+   * Check that each expired lease is checked once, even if it is still held
+   * after the check, and that a lease renewed meanwhile is not checked.
+   */
+  @Test
+  public void testExpiredLeasesCheckedOnce() throws Exception {
+    FSNamesystem fsn = mockNamesystem(Long.MAX_VALUE);
+    final LeaseManager lm = new LeaseManager(fsn);
+    // the renewed lease does not expire again during the check
+    lm.setLeasePeriod(0, 1000);
+    for (int i = 0; i < 10; i++) {
+      lm.addLease("holder" + i, "src" + i);
+    }
+    final List<String> checked = new ArrayList<String>();
+    Mockito.when(fsn.internalReleaseLease(Matchers.any(LeaseManager.Lease.class),
+        Matchers.anyString(), Matchers.any(INodesInPath.class),
+        Matchers.anyString())).thenAnswer(new Answer<Boolean>() {
+          @Override
+          public Boolean answer(InvocationOnMock invocation) {
+            LeaseManager.Lease lease =
+                (LeaseManager.Lease) invocation.getArguments()[0];
+            checked.add(lease.getHolder());
+            // the lease is kept, and the one of the next holder is renewed
+            if ("holder4".equals(lease.getHolder())) {
+              lm.renewLease("holder5");
+            }
+            return false;
+          }
+        });
+    Thread.sleep(1100);
+    assertTrue(lm.checkLeases());
+    assertEquals(9, checked.size());
+    assertFalse(checked.contains("holder5"));
+    assertEquals(10, lm.countLease());
+  }
+
+  private static FSNamesystem mockNamesystem(long maxLockHoldMs) {
+    FSDirectory dir = Mockito.mock(FSDirectory.class);
+    FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.when(fsn.isRunning()).thenReturn(true);
+    Mockito.when(fsn.hasWriteLock()).thenReturn(true);
+    Mockito.when(fsn.getFSDirectory()).thenReturn(dir);
+    Mockito.when(fsn.getMaxLockHoldToReleaseLeaseMs()).thenReturn(
+        maxLockHoldMs);
+    return fsn;
+  }
+
   /** Check that even if LeaseManager.checkLease is not able to relinquish
    * leases, the Namenode does't enter an infinite loop while holding the FSN
    * write lock and thus become unresponsive
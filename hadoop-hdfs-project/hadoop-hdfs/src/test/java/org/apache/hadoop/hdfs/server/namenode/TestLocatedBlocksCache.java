@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the cache of the block locations of closed files.
+ */
+public class TestLocatedBlocksCache {
+  private static final int BLOCK_SIZE = 1024;
+  private static final short REPLICATION = 3;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private FSNamesystem fsn;
+  private ClientProtocol nn;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_SIZE_KEY, 16);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LOCATED_BLOCKS_CACHE_EXPIRY_MS_KEY,
+        60000);
+    conf.setBoolean(DFSConfigKeys.DFS_BLOCK_ACCESS_TOKEN_ENABLE_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fsn = cluster.getNamesystem();
+    nn = fs.getClient().getNamenode();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testCachedLocations() throws Exception {
+    final Path file = new Path("/jar");
+    DFSTestUtil.createFile(fs, file, 2 * BLOCK_SIZE, REPLICATION, 0L);
+    DFSTestUtil.waitReplication(fs, file, REPLICATION);
+
+    LocatedBlocks first = nn.getBlockLocations(file.toString(), 0,
+        Long.MAX_VALUE);
+    long hits = fsn.getLocatedBlocksCacheHits();
+    LocatedBlocks second = nn.getBlockLocations(file.toString(), 0,
+        Long.MAX_VALUE);
+    assertEquals(hits + 1, fsn.getLocatedBlocksCacheHits());
+    assertEquals(first.getFileLength(), second.getFileLength());
+    assertEquals(first.locatedBlockCount(), second.locatedBlockCount());
+    for (int i = 0; i < first.locatedBlockCount(); i++) {
+      LocatedBlock expected = first.get(i);
+      LocatedBlock actual = second.get(i);
+      assertEquals(expected.getBlock(), actual.getBlock());
+      assertEquals(expected.getStartOffset(), actual.getStartOffset());
+      assertEquals(new HashSet<Object>(Arrays.asList(expected.getLocations())),
+          new HashSet<Object>(Arrays.asList(actual.getLocations())));
+      // each reader gets its own block tokens
+      assertTrue(actual.getBlockToken().getIdentifier().length > 0);
+    }
+    assertTrue(second.getLastLocatedBlock().getBlockToken()
+        .getIdentifier().length > 0);
+
+    // the file can still be read with the cached locations
+    DFSTestUtil.readFile(fs, file);
+
+    // another range of the file is not served from the cache
+    hits = fsn.getLocatedBlocksCacheHits();
+    nn.getBlockLocations(file.toString(), BLOCK_SIZE, BLOCK_SIZE);
+    assertEquals(hits, fsn.getLocatedBlocksCacheHits());
+  }
+
+  @Test(timeout = 60000)
+  public void testShuffledLocations() throws Exception {
+    final Path file = new Path("/jar");
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, REPLICATION, 0L);
+    DFSTestUtil.waitReplication(fs, file, REPLICATION);
+    final INodeFile inode =
+        fsn.getFSDirectory().getINode(file.toString()).asFile();
+    final LocatedBlocksCache cache = new LocatedBlocksCache(16, 60000);
+    final LocatedBlocksCache.Entry entry = cache.put(inode, BLOCK_SIZE, 0,
+        Long.MAX_VALUE, nn.getBlockLocations(file.toString(), 0,
+            Long.MAX_VALUE));
+
+    // the replicas are at the same distance from a client which is not a
+    // datanode, so the readers sharing the sorted locations do not all read
+    // from the same replica
+    final Set<Object> firstLocations = new HashSet<Object>();
+    for (int i = 0; i < 50; i++) {
+      LocatedBlocks blocks = cache.getSortedBlocks(entry, "1.2.3.4",
+          fsn.getBlockManager());
+      assertEquals(REPLICATION, blocks.get(0).getLocations().length);
+      firstLocations.add(blocks.get(0).getLocations()[0]);
+    }
+    assertTrue(firstLocations.size() > 1);
+    // the cached locations are not modified
+    assertEquals(REPLICATION,
+        entry.getBlocks().get(0).getLocations().length);
+  }
+
+  @Test(timeout = 60000)
+  public void testModifiedFile() throws Exception {
+    final Path file = new Path("/jar");
+    DFSTestUtil.createFile(fs, file, BLOCK_SIZE, REPLICATION, 0L);
+    nn.getBlockLocations(file.toString(), 0, Long.MAX_VALUE);
+    nn.getBlockLocations(file.toString(), 0, Long.MAX_VALUE);
+    assertEquals(1, fsn.getLocatedBlocksCacheHits());
+
+    // appending to the file invalidates its cached locations
+    DFSTestUtil.appendFile(fs, file, BLOCK_SIZE);
+    long misses = fsn.getLocatedBlocksCacheMisses();
+    LocatedBlocks blocks = nn.getBlockLocations(file.toString(), 0,
+        Long.MAX_VALUE);
+    assertEquals(1, fsn.getLocatedBlocksCacheHits());
+    assertEquals(misses + 1, fsn.getLocatedBlocksCacheMisses());
+    assertEquals(2 * BLOCK_SIZE, blocks.getFileLength());
+    assertEquals(2, blocks.locatedBlockCount());
+
+    // the locations of files being written are not cached
+    misses = fsn.getLocatedBlocksCacheMisses();
+    fs.append(file).close();
+    fs.create(new Path("/open")).hflush();
+    nn.getBlockLocations("/open", 0, Long.MAX_VALUE);
+    assertEquals(misses, fsn.getLocatedBlocksCacheMisses());
+  }
+}
@@ -56,6 +56,22 @@ public void testNNThroughput() throws Exception {
     NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op", "all"});
   }
 
+  /**
+   * This test runs the mkdirs scaling benchmark with fine-grained locking.
+   */
+  @Test(timeout = 120000)
+  public void testMkdirsScalingWithFineGrainedLocking() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_FINE_GRAINED_LOCKING_ENABLED_KEY, true);
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf, new String[] {
+        "-op", "mkdirsScaling", "-threads", "8", "-dirs", "400"});
+  }
+
   /**
    * This test runs all benchmarks defined in {@link NNThroughputBenchmark},
    * with explicit local -fs option.
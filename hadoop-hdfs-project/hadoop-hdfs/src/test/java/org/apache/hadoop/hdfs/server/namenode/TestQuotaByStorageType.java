@@ -688,6 +688,41 @@ public void testQuotaByStorageTypePersistenceInEditLog() throws IOException {
     assertEquals(file1Len, ssdConsumedAfterNNRestart);
   }
 
+  @Test
+  public void testQuotaByStorageTypeOfSiblingsAfterRestart()
+      throws IOException {
+    final String METHOD_NAME = GenericTestUtils.getMethodName();
+    final Path testDir = new Path(dir, METHOD_NAME);
+    final Path sub1 = new Path(testDir, "sub1");
+    final Path sub2 = new Path(testDir, "sub2");
+    dfs.mkdirs(sub1);
+    dfs.mkdirs(sub2);
+    dfs.setStoragePolicy(testDir, HdfsConstants.ONESSD_STORAGE_POLICY_NAME);
+    dfs.setQuotaByStorageType(sub1, StorageType.SSD, BLOCKSIZE * 10);
+    dfs.setQuotaByStorageType(sub2, StorageType.SSD, BLOCKSIZE * 10);
+
+    long file1Len = BLOCKSIZE * 2;
+    long file2Len = BLOCKSIZE;
+    DFSTestUtil.createFile(dfs, new Path(sub1, "file1"), file1Len,
+        REPLICATION, seed);
+    DFSTestUtil.createFile(dfs, new Path(sub2, "file2"), file2Len,
+        REPLICATION, seed);
+
+    // Restart the namenode, which computes the usage of both directories
+    cluster.restartNameNode(true);
+    refreshClusterState();
+
+    // The usage of sub2 does not include the usage of sub1
+    long ssdConsumed1 = fsdir.getINode4Write(sub1.toString()).asDirectory()
+        .getDirectoryWithQuotaFeature()
+        .getSpaceConsumed().getTypeSpaces().get(StorageType.SSD);
+    assertEquals(file1Len, ssdConsumed1);
+    long ssdConsumed2 = fsdir.getINode4Write(sub2.toString()).asDirectory()
+        .getDirectoryWithQuotaFeature()
+        .getSpaceConsumed().getTypeSpaces().get(StorageType.SSD);
+    assertEquals(file2Len, ssdConsumed2);
+  }
+
   @Test
   public void testQuotaByStorageTypePersistenceInFsImage() throws IOException {
     final String METHOD_NAME = GenericTestUtils.getMethodName();
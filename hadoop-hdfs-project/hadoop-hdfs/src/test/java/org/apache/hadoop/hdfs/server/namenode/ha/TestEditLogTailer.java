@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode.ha;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import static org.junit.Assert.fail;
@@ -36,6 +37,7 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.qjournal.MiniQJMHACluster;
 import org.apache.hadoop.hdfs.server.namenode.FSImage;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
@@ -108,6 +110,55 @@ public void testTailer() throws IOException, InterruptedException,
     }
   }
   
+  /**
+   * Test that the standby reads the edits of the in-progress segment from the
+   * edit caches of the JournalNodes, without waiting for a log roll.
+   */
+  @Test(timeout = 60000)
+  public void testTailInProgressEdits() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, "100ms");
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    // Don't roll the edit log
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, 3600);
+    HAUtil.setAllowStandbyReads(conf, true);
+
+    MiniQJMHACluster qjmCluster = new MiniQJMHACluster.Builder(conf).build();
+    try {
+      MiniDFSCluster cluster = qjmCluster.getDfsCluster();
+      cluster.transitionToActive(0);
+      NameNode nn1 = cluster.getNameNode(0);
+      final NameNode nn2 = cluster.getNameNode(1);
+
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        NameNodeAdapter.mkdirs(nn1, getDirPath(i),
+            new PermissionStatus("test","test", new FsPermission((short)00755)),
+            true);
+      }
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            return NameNodeAdapter.getFileInfo(nn2,
+                getDirPath(DIRS_TO_MAKE - 1), false) != null;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 100, 10000);
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        assertTrue(NameNodeAdapter.getFileInfo(nn2,
+            getDirPath(i), false).isDir());
+      }
+      // the edits were read from the segment that is still in progress
+      assertEquals(nn1.getNamesystem().getFSImage().getEditLog()
+          .getLastWrittenTxId(),
+          nn2.getNamesystem().getFSImage().getLastAppliedTxId());
+    } finally {
+      qjmCluster.shutdown();
+    }
+  }
+
   @Test
   public void testNN0TriggersLogRolls() throws Exception {
     testStandbyTriggersLogRolls(0);
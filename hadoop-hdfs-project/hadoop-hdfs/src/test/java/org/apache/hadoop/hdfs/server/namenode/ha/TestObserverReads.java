@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.io.retry.RetryInvocationHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.internal.util.reflection.Whitebox;
+
+/**
+ * Tests the reads served by the Standby NameNode with
+ * {@link ObserverReadProxyProvider}.
+ */
+public class TestObserverReads {
+  private static final long seed = 0L;
+  private static final int BLOCKSIZE = 1024;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_STATE_CONTEXT_ENABLED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_FAILOVER_MAX_ATTEMPTS_KEY, 2);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_FAILOVER_SLEEPTIME_BASE_KEY, 10);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_FAILOVER_SLEEPTIME_MAX_KEY, 100);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(1).build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+
+    final String logicalName = HATestUtil.getLogicalHostname(cluster);
+    HATestUtil.setFailoverConfigurations(cluster, conf, logicalName);
+    conf.set(DFSConfigKeys.DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX
+        + "." + logicalName, ObserverReadProxyProvider.class.getName());
+    fs = FileSystem.get(new URI("hdfs://" + logicalName), conf);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testReadFromStandby() throws Exception {
+    final Path file = new Path("/foo/file");
+    DFSTestUtil.createFile(fs, file, BLOCKSIZE * 2, (short) 1, seed);
+    final NameNode active = cluster.getNameNode(0);
+    HATestUtil.waitForStandbyToCatchUp(active, cluster.getNameNode(1));
+    // the block locations are always read from the active
+    assertEquals(BLOCKSIZE * 2, DFSTestUtil.readFile(fs, file).length());
+
+    // the reads are served by the standby, without failover
+    cluster.shutdownNameNode(0);
+    assertTrue(fs.getFileStatus(new Path("/foo")).isDirectory());
+    assertEquals(1, fs.listStatus(new Path("/foo")).length);
+    assertEquals(BLOCKSIZE * 2, fs.getContentSummary(file).getLength());
+
+    // but not the writes
+    try {
+      fs.mkdirs(new Path("/bar"));
+      fail("The standby should not accept writes");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testReadYourWrites() throws Exception {
+    // the standby lags behind, so the reads must go to the active
+    cluster.getNameNode(1).getNamesystem().getEditLogTailer().stop();
+    final Path dir = new Path("/dir");
+    for (int i = 0; i < 10; i++) {
+      final Path d = new Path(dir, "d" + i);
+      fs.mkdirs(d);
+      assertTrue(fs.getFileStatus(d).isDirectory());
+      assertNull(cluster.getNamesystem(1).getFSDirectory()
+          .getINode(d.toString()));
+    }
+    // the client has seen the transactions the standby has not applied
+    assertTrue(getProxyProvider().getAlignmentContext().getLastSeenStateId() >
+        cluster.getNamesystem(1).getFSImage().getLastAppliedTxId());
+  }
+
+  @Test(timeout = 120000)
+  public void testFirstReadFromActive() throws Exception {
+    final ObserverReadProxyProvider<?> provider = getProxyProvider();
+    assertEquals(0, provider.getAlignmentContext().getLastSeenStateId());
+    // the first read is served by the active, which seeds the state id
+    assertTrue(fs.exists(new Path("/")));
+    assertTrue(provider.getAlignmentContext().getLastSeenStateId() > 0);
+  }
+
+  @Test(timeout = 120000)
+  public void testFailover() throws Exception {
+    fs.mkdirs(new Path("/foo"));
+    cluster.transitionToStandby(0);
+    cluster.transitionToActive(1);
+    fs.mkdirs(new Path("/foo/bar"));
+    assertTrue(fs.exists(new Path("/foo/bar")));
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(1),
+        cluster.getNameNode(0));
+    cluster.shutdownNameNode(1);
+    // the former active serves the reads now
+    assertTrue(fs.exists(new Path("/foo/bar")));
+  }
+
+  private ObserverReadProxyProvider<?> getProxyProvider() {
+    final RetryInvocationHandler<?> handler = (RetryInvocationHandler<?>)
+        Proxy.getInvocationHandler(
+            ((DistributedFileSystem) fs).getClient().getNamenode());
+    return (ObserverReadProxyProvider<?>) Whitebox.getInternalState(handler,
+        "proxyProvider");
+  }
+}
@@ -146,6 +146,27 @@ public void testElapsedTime() throws Exception {
       loadingEditsFile));
   }
 
+  @Test(timeout=10000)
+  public void testRate() throws Exception {
+    startupProgress.beginPhase(LOADING_FSIMAGE);
+    startupProgress.endPhase(LOADING_FSIMAGE);
+    startupProgress.beginPhase(LOADING_EDITS);
+    Step loadingEditsFile = new Step("file", 1000L);
+    startupProgress.beginStep(LOADING_EDITS, loadingEditsFile);
+    incrementCounter(startupProgress, LOADING_EDITS, loadingEditsFile, 5000L);
+    Thread.sleep(50L); // brief sleep to fake elapsed time
+    startupProgress.endStep(LOADING_EDITS, loadingEditsFile);
+
+    StartupProgressView view = startupProgress.createView();
+    long elapsed = view.getElapsedTime(LOADING_EDITS, loadingEditsFile);
+    assertEquals(5000L * 1000 / elapsed,
+      view.getRate(LOADING_EDITS, loadingEditsFile), 1.0f);
+    assertTrue(view.getRate(LOADING_EDITS) > 0);
+    assertEquals(0.0f, view.getRate(SAVING_CHECKPOINT), 0.0f);
+    assertEquals(0.0f, view.getRate(SAVING_CHECKPOINT, new Step(INODES)),
+      0.0f);
+  }
+
   @Test(timeout=10000)
   public void testFrozenAfterStartupCompletes() {
     // Do some updates and counter increments.
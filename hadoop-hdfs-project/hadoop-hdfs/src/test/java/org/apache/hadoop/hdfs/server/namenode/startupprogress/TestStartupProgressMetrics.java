@@ -52,6 +52,7 @@ public void testInitialState() {
     assertCounter("LoadingEditsElapsedTime", 0L, builder);
     assertCounter("LoadingEditsTotal", 0L, builder);
     assertGauge("LoadingEditsPercentComplete", 0.0f, builder);
+    assertGauge("LoadingEditsRate", 0.0f, builder);
     assertCounter("SavingCheckpointCount", 0L, builder);
     assertCounter("SavingCheckpointElapsedTime", 0L, builder);
     assertCounter("SavingCheckpointTotal", 0L, builder);
@@ -20,19 +20,23 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.DatanodeInfoWithStorage;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
@@ -308,6 +312,70 @@ public void testChooseRandomExcludedRack() {
     }
   }
 
+  /**
+   * This test checks that the readers see the nodes added to and removed
+   * from the topology.
+   */
+  @Test
+  public void testChangedTopology() {
+    NetworkTopology topology = new NetworkTopology();
+    for (int i = 0; i < dataNodes.length; i++) {
+      topology.add(dataNodes[i]);
+    }
+    DatanodeDescriptor newNode =
+        DFSTestUtil.getDatanodeDescriptor("21.21.21.21", "/d5/r1");
+    assertEquals(4, topology.getDistance(dataNodes[0], dataNodes[3]));
+    topology.add(newNode);
+    assertTrue(topology.contains(newNode));
+    assertEquals(7, topology.getNumOfRacks());
+    assertEquals(dataNodes.length + 1, topology.getNumOfLeaves());
+    assertEquals(6, topology.getDistance(dataNodes[0], newNode));
+    assertFalse(topology.isOnSameRack(dataNodes[0], newNode));
+    assertEquals(newNode, topology.chooseRandom("/d5/r1"));
+    assertEquals(newNode, topology.chooseRandom("/d5"));
+
+    topology.remove(newNode);
+    assertFalse(topology.contains(newNode));
+    assertEquals(6, topology.getNumOfRacks());
+    assertEquals(dataNodes.length, topology.getNumOfLeaves());
+    assertEquals(Integer.MAX_VALUE,
+        topology.getDistance(dataNodes[0], newNode));
+    assertNull(topology.chooseRandom("/d5/r1"));
+
+    topology.remove(dataNodes[3]);
+    assertEquals(Arrays.<Node>asList(dataNodes[2], dataNodes[4]),
+        topology.getLeaves("/d1/r2"));
+    assertEquals(1, topology.countNumOfAvailableNodes("/d1/r2",
+        Arrays.<Node>asList(dataNodes[2], dataNodes[3])));
+  }
+
+  /**
+   * This test checks that isOnSameRack goes through isSameParents for the
+   * leaves of the tree, and also works for copies of the leaves.
+   */
+  @Test
+  public void testIsSameParents() {
+    NetworkTopology topology = new NetworkTopology() {
+      @Override
+      protected boolean isSameParents(Node node1, Node node2) {
+        // the racks of a data center are one rack
+        return node1.getParent().getParent() ==
+            node2.getParent().getParent();
+      }
+    };
+    for (int i = 0; i < dataNodes.length; i++) {
+      topology.add(dataNodes[i]);
+    }
+    assertTrue(topology.isOnSameRack(dataNodes[0], dataNodes[2]));
+    assertFalse(topology.isOnSameRack(dataNodes[0], dataNodes[5]));
+
+    // the locations of a block are copies of the datanodes
+    DatanodeInfo copy = new DatanodeInfoWithStorage(dataNodes[1], "s1",
+        StorageType.DEFAULT);
+    assertTrue(cluster.isOnSameRack(dataNodes[0], copy));
+    assertFalse(cluster.isOnSameRack(dataNodes[2], copy));
+  }
+
   @Test(timeout=180000)
   public void testInvalidNetworkTopologiesNotCachedInHdfs() throws Exception {
     // start a cluster
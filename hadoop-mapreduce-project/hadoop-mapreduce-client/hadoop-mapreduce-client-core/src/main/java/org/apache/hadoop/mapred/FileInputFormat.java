@@ -254,9 +254,19 @@ private List<FileStatus> singleThreadedListStatus(JobConf job, Path[] dirs,
       PathFilter inputFilter, boolean recursive) throws IOException {
     List<FileStatus> result = new ArrayList<FileStatus>();
     List<IOException> errors = new ArrayList<IOException>();
+    // the input paths without a glob pattern are looked up together; the
+    // ones that are not found go through the globber like the patterns
+    Map<Path, FileStatus> literalStatuses =
+        LocatedFileStatusFetcher.getLiteralPathStatuses(job, dirs);
     for (Path p: dirs) {
       FileSystem fs = p.getFileSystem(job); 
-      FileStatus[] matches = fs.globStatus(p, inputFilter);
+      FileStatus[] matches;
+      FileStatus literal = literalStatuses.get(p);
+      if (literal != null) {
+        matches = LocatedFileStatusFetcher.toMatches(literal, inputFilter);
+      } else {
+        matches = fs.globStatus(p, inputFilter);
+      }
       if (matches == null) {
         errors.add(new IOException("Input path does not exist: " + p));
       } else if (matches.length == 0) {
@@ -286,6 +296,9 @@ private List<FileStatus> singleThreadedListStatus(JobConf job, Path[] dirs,
     if (!errors.isEmpty()) {
       throw new InvalidInputException(errors);
     }
+    // fetch the block locations of the input files that were not listed
+    // with them
+    LocatedFileStatusFetcher.locateFiles(job, result);
     return result;
   }
 
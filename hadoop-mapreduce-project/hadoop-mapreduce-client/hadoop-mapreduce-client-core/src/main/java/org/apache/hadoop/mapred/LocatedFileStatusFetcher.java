@@ -19,8 +19,11 @@
 package org.apache.hadoop.mapred;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -32,6 +35,7 @@
 
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocatedFileStatus;
@@ -41,6 +45,7 @@
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -113,13 +118,27 @@ public LocatedFileStatusFetcher(Configuration conf, Path[] dirs,
    */
   public Iterable<FileStatus> getFileStatuses() throws InterruptedException,
       IOException {
+    // The input paths without a glob pattern are looked up up front, with
+    // one request for each file system. The ones that are not found go
+    // through the globber like the patterns.
+    Map<Path, FileStatus> literalStatuses =
+        getLiteralPathStatuses(conf, inputDirs);
+
     // Increment to make sure a race between the first thread completing and the
     // rest being scheduled does not lead to a termination.
     runningTasks.incrementAndGet();
     for (Path p : inputDirs) {
       runningTasks.incrementAndGet();
-      ListenableFuture<ProcessInitialInputPathCallable.Result> future = exec
-          .submit(new ProcessInitialInputPathCallable(p, conf, inputFilter));
+      ListenableFuture<ProcessInitialInputPathCallable.Result> future;
+      FileStatus literal = literalStatuses.get(p);
+      if (literal != null) {
+        future = Futures.immediateFuture(
+            ProcessInitialInputPathCallable.Result.of(p, conf,
+                toMatches(literal, inputFilter)));
+      } else {
+        future = exec.submit(
+            new ProcessInitialInputPathCallable(p, conf, inputFilter));
+      }
       Futures.addCallback(future, processInitialInputPathCallback);
     }
 
@@ -155,7 +174,118 @@ public Iterable<FileStatus> getFileStatuses() throws InterruptedException,
         throw new InvalidInputException(invalidInputErrors);
       }
     }
-    return Iterables.concat(resultQueue);
+    List<FileStatus> result = Lists.newArrayList(Iterables.concat(resultQueue));
+    locateFiles(conf, result);
+    return result;
+  }
+
+  /**
+   * Whether the path has to be expanded by
+   * {@link FileSystem#globStatus(Path, PathFilter)}.
+   */
+  private static boolean isGlobPattern(Path p) {
+    String path = p.toUri().getPath();
+    for (int i = 0; i < path.length(); i++) {
+      switch (path.charAt(i)) {
+      case '*': case '?': case '[': case '{': case '\\':
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Look up the input paths that are not glob patterns, with a single
+   * {@link FileSystem#getFileStatuses(Path[])} call for each file system.
+   * @param conf configuration for the job
+   * @param dirs the input paths
+   * @return the status of each input path that is not a glob pattern and
+   *         exists
+   * @throws IOException
+   */
+  public static Map<Path, FileStatus> getLiteralPathStatuses(
+      Configuration conf, Path[] dirs) throws IOException {
+    Map<FileSystem, List<Path>> pathsByFs =
+        new HashMap<FileSystem, List<Path>>();
+    for (Path p : dirs) {
+      if (!isGlobPattern(p)) {
+        FileSystem fs = p.getFileSystem(conf);
+        List<Path> paths = pathsByFs.get(fs);
+        if (paths == null) {
+          paths = new ArrayList<Path>();
+          pathsByFs.put(fs, paths);
+        }
+        paths.add(p);
+      }
+    }
+    Map<Path, FileStatus> statuses = new HashMap<Path, FileStatus>();
+    for (Map.Entry<FileSystem, List<Path>> e : pathsByFs.entrySet()) {
+      Path[] paths = e.getValue().toArray(new Path[e.getValue().size()]);
+      FileStatus[] stats = e.getKey().getFileStatuses(paths);
+      for (int i = 0; i < paths.length; i++) {
+        if (stats[i] != null) {
+          statuses.put(paths[i], stats[i]);
+        }
+      }
+    }
+    return statuses;
+  }
+
+  /**
+   * Convert the status of an existing input path that is not a glob pattern
+   * to the matches {@link FileSystem#globStatus(Path, PathFilter)} would
+   * return.
+   */
+  public static FileStatus[] toMatches(FileStatus status,
+      PathFilter inputFilter) {
+    if (!inputFilter.accept(status.getPath())) {
+      return new FileStatus[0];
+    }
+    return new FileStatus[] { status };
+  }
+
+  /**
+   * Replace the statuses of the files that are not
+   * {@link LocatedFileStatus} yet by ones with the block locations, which are
+   * fetched with a single
+   * {@link FileSystem#getFileBlockLocations(FileStatus[], long[], long[])}
+   * call for each file system.
+   * @param conf configuration for the job
+   * @param statuses the statuses to update in place
+   * @throws IOException
+   */
+  public static void locateFiles(Configuration conf, List<FileStatus> statuses)
+      throws IOException {
+    Map<FileSystem, List<Integer>> filesByFs =
+        new HashMap<FileSystem, List<Integer>>();
+    for (int i = 0; i < statuses.size(); i++) {
+      FileStatus stat = statuses.get(i);
+      if (!(stat instanceof LocatedFileStatus) && !stat.isDirectory()) {
+        FileSystem fs = stat.getPath().getFileSystem(conf);
+        List<Integer> files = filesByFs.get(fs);
+        if (files == null) {
+          files = new ArrayList<Integer>();
+          filesByFs.put(fs, files);
+        }
+        files.add(i);
+      }
+    }
+    for (Map.Entry<FileSystem, List<Integer>> e : filesByFs.entrySet()) {
+      List<Integer> indices = e.getValue();
+      FileStatus[] files = new FileStatus[indices.size()];
+      long[] starts = new long[files.length];
+      long[] lens = new long[files.length];
+      for (int i = 0; i < files.length; i++) {
+        files[i] = statuses.get(indices.get(i));
+        lens[i] = files[i].getLen();
+      }
+      BlockLocation[][] locations =
+          e.getKey().getFileBlockLocations(files, starts, lens);
+      for (int i = 0; i < files.length; i++) {
+        statuses.set(indices.get(i),
+            new LocatedFileStatus(files[i], locations[i]));
+      }
+    }
   }
 
   /**
@@ -304,19 +434,8 @@ public ProcessInitialInputPathCallable(Path path, Configuration conf,
 
     @Override
     public Result call() throws Exception {
-      Result result = new Result();
       FileSystem fs = path.getFileSystem(conf);
-      result.fs = fs;
-      FileStatus[] matches = fs.globStatus(path, inputFilter);
-      if (matches == null) {
-        result.addError(new IOException("Input path does not exist: " + path));
-      } else if (matches.length == 0) {
-        result.addError(new IOException("Input Pattern " + path
-            + " matches 0 files"));
-      } else {
-        result.matchedFileStatuses = matches;
-      }
-      return result;
+      return Result.of(path, conf, fs.globStatus(path, inputFilter));
     }
 
     private static class Result {
@@ -324,6 +443,22 @@ private static class Result {
       private FileStatus[] matchedFileStatuses;
       private FileSystem fs;
 
+      static Result of(Path path, Configuration conf, FileStatus[] matches)
+          throws IOException {
+        Result result = new Result();
+        result.fs = path.getFileSystem(conf);
+        if (matches == null) {
+          result.addError(
+              new IOException("Input path does not exist: " + path));
+        } else if (matches.length == 0) {
+          result.addError(new IOException("Input Pattern " + path
+              + " matches 0 files"));
+        } else {
+          result.matchedFileStatuses = matches;
+        }
+        return result;
+      }
+
       void addError(IOException ioe) {
         if (errors == null) {
           errors = new LinkedList<IOException>();
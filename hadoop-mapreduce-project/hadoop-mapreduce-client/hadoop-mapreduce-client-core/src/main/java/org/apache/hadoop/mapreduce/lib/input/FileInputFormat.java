@@ -21,6 +21,7 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
@@ -288,10 +289,20 @@ private List<FileStatus> singleThreadedListStatus(JobContext job, Path[] dirs,
       PathFilter inputFilter, boolean recursive) throws IOException {
     List<FileStatus> result = new ArrayList<FileStatus>();
     List<IOException> errors = new ArrayList<IOException>();
+    // the input paths without a glob pattern are looked up together; the
+    // ones that are not found go through the globber like the patterns
+    Map<Path, FileStatus> literalStatuses = LocatedFileStatusFetcher
+        .getLiteralPathStatuses(job.getConfiguration(), dirs);
     for (int i=0; i < dirs.length; ++i) {
       Path p = dirs[i];
       FileSystem fs = p.getFileSystem(job.getConfiguration()); 
-      FileStatus[] matches = fs.globStatus(p, inputFilter);
+      FileStatus[] matches;
+      FileStatus literal = literalStatuses.get(p);
+      if (literal != null) {
+        matches = LocatedFileStatusFetcher.toMatches(literal, inputFilter);
+      } else {
+        matches = fs.globStatus(p, inputFilter);
+      }
       if (matches == null) {
         errors.add(new IOException("Input path does not exist: " + p));
       } else if (matches.length == 0) {
@@ -322,6 +333,9 @@ private List<FileStatus> singleThreadedListStatus(JobContext job, Path[] dirs,
     if (!errors.isEmpty()) {
       throw new InvalidInputException(errors);
     }
+    // fetch the block locations of the input files that were not listed
+    // with them
+    LocatedFileStatusFetcher.locateFiles(job.getConfiguration(), result);
     return result;
   }
   
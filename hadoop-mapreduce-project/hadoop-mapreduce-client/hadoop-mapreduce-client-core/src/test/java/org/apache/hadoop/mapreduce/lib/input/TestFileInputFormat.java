@@ -204,6 +204,36 @@ public void testListStatusNestedNonRecursive() throws IOException {
     verifyFileStatuses(expectedPaths, statuses, localFs);
   }
 
+  @Test
+  public void testListStatusInputFiles() throws IOException {
+    Configuration conf = new Configuration();
+    conf.setInt(FileInputFormat.LIST_STATUS_NUM_THREADS, numThreads);
+
+    Path base = new Path(TEST_ROOT_DIR, "input");
+    Path file1 = new Path(base, "file1");
+    Path file2 = new Path(base, "file2");
+    Path dir = new Path(base, "dir");
+    Path dirFile = new Path(dir, "file3");
+    localFs.create(file1).close();
+    localFs.create(file2).close();
+    localFs.create(dirFile).close();
+    // files and directories named without a glob pattern, and a pattern
+    conf.set(FileInputFormat.INPUT_DIR, localFs.makeQualified(file1) + ","
+        + localFs.makeQualified(dir) + ","
+        + localFs.makeQualified(new Path(base, "file[2]")));
+
+    Job job  = Job.getInstance(conf);
+    FileInputFormat<?, ?> fif = new TextInputFormat();
+    List<FileStatus> statuses = fif.listStatus(job);
+
+    verifyFileStatuses(Lists.newArrayList(file1, dirFile, file2), statuses,
+        localFs);
+    for (FileStatus stat : statuses) {
+      Assert.assertTrue(stat.getPath() + " has no block locations",
+          stat instanceof LocatedFileStatus);
+    }
+  }
+
   @Test
   public void testListStatusErrorOnNonExistantDir() throws IOException {
     Configuration conf = new Configuration();
@@ -415,6 +445,11 @@ public FileStatus[] globStatus(Path pathPattern, PathFilter filter)
           pathPattern) };
     }
 
+    @Override
+    public FileStatus getFileStatus(Path f) throws IOException {
+      return new FileStatus(10, true, 1, 150, 150, f);
+    }
+
     @Override
     public FileStatus[] listStatus(Path f, PathFilter filter)
         throws FileNotFoundException, IOException {
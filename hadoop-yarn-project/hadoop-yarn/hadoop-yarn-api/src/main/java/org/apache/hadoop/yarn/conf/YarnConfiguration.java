@@ -389,6 +389,16 @@ private static void addDeprecatedKeys() {
   public static final int DEFAULT_RM_SYSTEM_METRICS_PUBLISHER_DISPATCHER_POOL_SIZE =
       10;
 
+  /** Whether the RM audit log is formatted and written asynchronously. */
+  public static final String RM_AUDIT_LOG_ASYNC_ENABLED =
+      RM_PREFIX + "audit-log.async.enabled";
+  public static final boolean DEFAULT_RM_AUDIT_LOG_ASYNC_ENABLED = false;
+
+  /** Max number of RM audit events waiting to be logged. */
+  public static final String RM_AUDIT_LOG_ASYNC_CAPACITY =
+      RM_PREFIX + "audit-log.async.capacity";
+  public static final int DEFAULT_RM_AUDIT_LOG_ASYNC_CAPACITY = 16384;
+
   //RM delegation token related keys
   public static final String RM_DELEGATION_KEY_UPDATE_INTERVAL_KEY =
     RM_PREFIX + "delegation.key.update-interval";
@@ -682,6 +692,16 @@ private static void addDeprecatedKeys() {
   public static final String NM_CONTAINER_MGR_THREAD_COUNT =
     NM_PREFIX + "container-manager.thread-count";
   public static final int DEFAULT_NM_CONTAINER_MGR_THREAD_COUNT = 20;
+
+  /** Whether the NM audit log is formatted and written asynchronously. */
+  public static final String NM_AUDIT_LOG_ASYNC_ENABLED =
+      NM_PREFIX + "audit-log.async.enabled";
+  public static final boolean DEFAULT_NM_AUDIT_LOG_ASYNC_ENABLED = false;
+
+  /** Max number of NM audit events waiting to be logged. */
+  public static final String NM_AUDIT_LOG_ASYNC_CAPACITY =
+      NM_PREFIX + "audit-log.async.capacity";
+  public static final int DEFAULT_NM_AUDIT_LOG_ASYNC_CAPACITY = 16384;
   
   /** Number of threads used in cleanup.*/
   public static final String NM_DELETE_THREAD_COUNT = 
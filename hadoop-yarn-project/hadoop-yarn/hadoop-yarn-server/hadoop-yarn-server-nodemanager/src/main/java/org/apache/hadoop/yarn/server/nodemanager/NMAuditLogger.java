@@ -21,9 +21,14 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.log.AsyncAuditPipeline;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import com.google.common.annotations.VisibleForTesting;
 
 /** 
  * Manages NodeManager audit logs.
@@ -33,6 +38,8 @@
 public class NMAuditLogger {
   private static final Log LOG = LogFactory.getLog(NMAuditLogger.class);
 
+  private static volatile AsyncAuditPipeline pipeline;
+
   static enum Keys {USER, OPERATION, TARGET, RESULT, IP, 
                     DESCRIPTION, APPID, CONTAINERID}
 
@@ -50,14 +57,88 @@ public static class AuditConstants {
     public static final String FINISH_KILLED_CONTAINER = "Container Finished - Killed";
   }
 
+  /**
+   * Format and log the audit events in a background thread if
+   * {@link YarnConfiguration#NM_AUDIT_LOG_ASYNC_ENABLED} is set.
+   */
+  public static synchronized void startAsyncLogging(Configuration conf) {
+    if (pipeline == null && conf.getBoolean(
+        YarnConfiguration.NM_AUDIT_LOG_ASYNC_ENABLED,
+        YarnConfiguration.DEFAULT_NM_AUDIT_LOG_ASYNC_ENABLED)) {
+      AsyncAuditPipeline p = new AsyncAuditPipeline("NodeManagerAuditLog",
+          conf.getInt(YarnConfiguration.NM_AUDIT_LOG_ASYNC_CAPACITY,
+              YarnConfiguration.DEFAULT_NM_AUDIT_LOG_ASYNC_CAPACITY));
+      p.start();
+      pipeline = p;
+    }
+  }
+
+  /**
+   * Log the pending audit events and go back to synchronous logging.
+   */
+  public static synchronized void stopAsyncLogging() {
+    if (pipeline != null) {
+      pipeline.stop();
+      pipeline = null;
+    }
+  }
+
+  @VisibleForTesting
+  static AsyncAuditPipeline getPipeline() {
+    return pipeline;
+  }
+
+  private static void logSuccessEvent(final String user,
+      final String operation, final String target, final ApplicationId appId,
+      final ContainerId containerId, final InetAddress ip) {
+    final AsyncAuditPipeline p = pipeline;
+    if (p == null || !p.isRunning()) {
+      LOG.info(createSuccessLog(user, operation, target, appId, containerId,
+          ip));
+      return;
+    }
+    p.offer(new Runnable() {
+      @Override
+      public void run() {
+        LOG.info(createSuccessLog(user, operation, target, appId, containerId,
+            ip));
+      }
+    });
+  }
+
+  private static void logFailureEvent(final String user,
+      final String operation, final String target, final String description,
+      final ApplicationId appId, final ContainerId containerId,
+      final InetAddress ip) {
+    final AsyncAuditPipeline p = pipeline;
+    if (p == null || !p.isRunning()) {
+      LOG.warn(createFailureLog(user, operation, target, description, appId,
+          containerId, ip));
+      return;
+    }
+    p.offer(new Runnable() {
+      @Override
+      public void run() {
+        LOG.warn(createFailureLog(user, operation, target, description, appId,
+            containerId, ip));
+      }
+    });
+  }
+
   /**
    * A helper api for creating an audit log for a successful event.
    */
   static String createSuccessLog(String user, String operation, String target, 
       ApplicationId appId, ContainerId containerId) {
+    return createSuccessLog(user, operation, target, appId, containerId,
+        Server.getRemoteIp());
+  }
+
+  static String createSuccessLog(String user, String operation, String target,
+      ApplicationId appId, ContainerId containerId, InetAddress ip) {
     StringBuilder b = new StringBuilder();
     start(Keys.USER, user, b);
-    addRemoteIP(b);
+    addRemoteIP(ip, b);
     add(Keys.OPERATION, operation, b);
     add(Keys.TARGET, target ,b);
     add(Keys.RESULT, AuditConstants.SUCCESS, b);
@@ -86,7 +167,8 @@ static String createSuccessLog(String user, String operation, String target,
   public static void logSuccess(String user, String operation, String target,
       ApplicationId appId, ContainerId containerId) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, appId, containerId));
+      logSuccessEvent(user, operation, target, appId, containerId,
+          Server.getRemoteIp());
     }
   }
 
@@ -103,7 +185,8 @@ public static void logSuccess(String user, String operation, String target,
    */
   public static void logSuccess(String user, String operation, String target) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, null, null));
+      logSuccessEvent(user, operation, target, null, null,
+          Server.getRemoteIp());
     }
   }
 
@@ -113,9 +196,16 @@ public static void logSuccess(String user, String operation, String target) {
    */
   static String createFailureLog(String user, String operation, String target, 
       String description, ApplicationId appId, ContainerId containerId) {
+    return createFailureLog(user, operation, target, description, appId,
+        containerId, Server.getRemoteIp());
+  }
+
+  static String createFailureLog(String user, String operation, String target,
+      String description, ApplicationId appId, ContainerId containerId,
+      InetAddress ip) {
     StringBuilder b = new StringBuilder();
     start(Keys.USER, user, b);
-    addRemoteIP(b);
+    addRemoteIP(ip, b);
     add(Keys.OPERATION, operation, b);
     add(Keys.TARGET, target ,b);
     add(Keys.RESULT, AuditConstants.FAILURE, b);
@@ -147,7 +237,8 @@ static String createFailureLog(String user, String operation, String target,
   public static void logFailure(String user, String operation, String target, 
       String description, ApplicationId appId, ContainerId containerId) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, target, description, appId, containerId));
+      logFailureEvent(user, operation, target, description, appId,
+          containerId, Server.getRemoteIp());
     }
   }
 
@@ -167,15 +258,15 @@ public static void logFailure(String user, String operation, String target,
   public static void logFailure(String user, String operation, 
                          String target, String description) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, target, description, null, null));
+      logFailureEvent(user, operation, target, description, null, null,
+          Server.getRemoteIp());
     }
   }
 
   /**
    * A helper api to add remote IP address
    */
-  static void addRemoteIP(StringBuilder b) {
-    InetAddress ip = Server.getRemoteIp();
+  static void addRemoteIP(InetAddress ip, StringBuilder b) {
     // ip address can be null for testcases
     if (ip != null) {
       add(Keys.IP, ip.getHostAddress(), b);
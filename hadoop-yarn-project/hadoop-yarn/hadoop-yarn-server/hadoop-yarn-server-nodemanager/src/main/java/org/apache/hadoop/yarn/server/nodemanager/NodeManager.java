@@ -269,6 +269,7 @@ protected void serviceStart() throws Exception {
     } catch (IOException e) {
       throw new YarnRuntimeException("Failed NodeManager login", e);
     }
+    NMAuditLogger.startAsyncLogging(getConfig());
     super.serviceStart();
   }
 
@@ -279,6 +280,7 @@ protected void serviceStop() throws Exception {
     }
     try {
       super.serviceStop();
+      NMAuditLogger.stopAsyncLogging();
       DefaultMetricsSystem.shutdown();
     } finally {
       // YARN-3641: NM's services stop get failed shouldn't block the
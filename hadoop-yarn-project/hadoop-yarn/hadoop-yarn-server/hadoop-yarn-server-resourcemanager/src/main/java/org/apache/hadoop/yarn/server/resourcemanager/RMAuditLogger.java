@@ -21,10 +21,15 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.log.AsyncAuditPipeline;
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId;
 import org.apache.hadoop.yarn.api.records.ApplicationId;
 import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import com.google.common.annotations.VisibleForTesting;
 
 /** 
  * Manages ResourceManager audit logs. 
@@ -34,6 +39,8 @@
 public class RMAuditLogger {
   private static final Log LOG = LogFactory.getLog(RMAuditLogger.class);
 
+  private static volatile AsyncAuditPipeline pipeline;
+
   static enum Keys {USER, OPERATION, TARGET, RESULT, IP, PERMISSIONS,
                     DESCRIPTION, APPID, APPATTEMPTID, CONTAINERID}
 
@@ -65,6 +72,76 @@ public static class AuditConstants {
     public static final String DELETE_RESERVATION_REQUEST = "Delete Reservation Request";
   }
 
+  /**
+   * Format and log the audit events in a background thread if
+   * {@link YarnConfiguration#RM_AUDIT_LOG_ASYNC_ENABLED} is set.
+   */
+  public static synchronized void startAsyncLogging(Configuration conf) {
+    if (pipeline == null && conf.getBoolean(
+        YarnConfiguration.RM_AUDIT_LOG_ASYNC_ENABLED,
+        YarnConfiguration.DEFAULT_RM_AUDIT_LOG_ASYNC_ENABLED)) {
+      AsyncAuditPipeline p = new AsyncAuditPipeline("ResourceManagerAuditLog",
+          conf.getInt(YarnConfiguration.RM_AUDIT_LOG_ASYNC_CAPACITY,
+              YarnConfiguration.DEFAULT_RM_AUDIT_LOG_ASYNC_CAPACITY));
+      p.start();
+      pipeline = p;
+    }
+  }
+
+  /**
+   * Log the pending audit events and go back to synchronous logging.
+   */
+  public static synchronized void stopAsyncLogging() {
+    if (pipeline != null) {
+      pipeline.stop();
+      pipeline = null;
+    }
+  }
+
+  @VisibleForTesting
+  static AsyncAuditPipeline getPipeline() {
+    return pipeline;
+  }
+
+  private static void logSuccessEvent(final String user,
+      final String operation, final String target, final ApplicationId appId,
+      final ApplicationAttemptId attemptId, final ContainerId containerId,
+      final InetAddress ip) {
+    final AsyncAuditPipeline p = pipeline;
+    if (p == null || !p.isRunning()) {
+      LOG.info(createSuccessLog(user, operation, target, appId, attemptId,
+          containerId, ip));
+      return;
+    }
+    p.offer(new Runnable() {
+      @Override
+      public void run() {
+        LOG.info(createSuccessLog(user, operation, target, appId, attemptId,
+            containerId, ip));
+      }
+    });
+  }
+
+  private static void logFailureEvent(final String user,
+      final String operation, final String perm, final String target,
+      final String description, final ApplicationId appId,
+      final ApplicationAttemptId attemptId, final ContainerId containerId,
+      final InetAddress ip) {
+    final AsyncAuditPipeline p = pipeline;
+    if (p == null || !p.isRunning()) {
+      LOG.warn(createFailureLog(user, operation, perm, target, description,
+          appId, attemptId, containerId, ip));
+      return;
+    }
+    p.offer(new Runnable() {
+      @Override
+      public void run() {
+        LOG.warn(createFailureLog(user, operation, perm, target, description,
+            appId, attemptId, containerId, ip));
+      }
+    });
+  }
+
   /**
    * A helper api for creating an audit log for a successful event.
    */
@@ -73,9 +150,7 @@ static String createSuccessLog(String user, String operation, String target,
       ContainerId containerId, InetAddress ip) {
     StringBuilder b = new StringBuilder();
     start(Keys.USER, user, b);
-    if (ip != null) {
-      add(Keys.IP, ip.getHostAddress(), b);
-    }
+    addRemoteIP(ip, b);
     add(Keys.OPERATION, operation, b);
     add(Keys.TARGET, target ,b);
     add(Keys.RESULT, AuditConstants.SUCCESS, b);
@@ -114,8 +189,8 @@ static String createSuccessLog(String user, String operation, String target,
   public static void logSuccess(String user, String operation, String target, 
       ApplicationId appId, ContainerId containerId) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, appId, null, 
-          containerId));
+      logSuccessEvent(user, operation, target, appId, null, containerId,
+          Server.getRemoteIp());
     }
   }
 
@@ -135,8 +210,8 @@ public static void logSuccess(String user, String operation, String target,
   public static void logSuccess(String user, String operation, String target, 
       ApplicationId appId, ApplicationAttemptId attemptId) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, appId, attemptId,
-          null));
+      logSuccessEvent(user, operation, target, appId, attemptId, null,
+          Server.getRemoteIp());
     }
   }
 
@@ -156,7 +231,8 @@ public static void logSuccess(String user, String operation, String target,
   public static void logSuccess(String user, String operation, String target,
       ApplicationId appId) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, appId, null, null));
+      logSuccessEvent(user, operation, target, appId, null, null,
+          Server.getRemoteIp());
     }
   }
 
@@ -173,7 +249,8 @@ public static void logSuccess(String user, String operation, String target,
    */
   public static void logSuccess(String user, String operation, String target) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(createSuccessLog(user, operation, target, null, null, null));
+      logSuccessEvent(user, operation, target, null, null, null,
+          Server.getRemoteIp());
     }
   }
 
@@ -200,8 +277,7 @@ public static void logSuccess(String user, String operation, String target) {
   public static void logSuccess(String user, String operation, String target,
       ApplicationId appId, InetAddress ip) {
     if (LOG.isInfoEnabled()) {
-      LOG.info(
-          createSuccessLog(user, operation, target, appId, null, null, ip));
+      logSuccessEvent(user, operation, target, appId, null, null, ip);
     }
   }
 
@@ -211,9 +287,17 @@ public static void logSuccess(String user, String operation, String target,
   static String createFailureLog(String user, String operation, String perm,
       String target, String description, ApplicationId appId,
       ApplicationAttemptId attemptId, ContainerId containerId) {
+    return createFailureLog(user, operation, perm, target, description, appId,
+        attemptId, containerId, Server.getRemoteIp());
+  }
+
+  static String createFailureLog(String user, String operation, String perm,
+      String target, String description, ApplicationId appId,
+      ApplicationAttemptId attemptId, ContainerId containerId,
+      InetAddress ip) {
     StringBuilder b = new StringBuilder();
     start(Keys.USER, user, b);
-    addRemoteIP(b);
+    addRemoteIP(ip, b);
     add(Keys.OPERATION, operation, b);
     add(Keys.TARGET, target ,b);
     add(Keys.RESULT, AuditConstants.FAILURE, b);
@@ -251,8 +335,8 @@ public static void logFailure(String user, String operation, String perm,
       String target, String description, ApplicationId appId, 
       ContainerId containerId) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, perm, target, description,
-          appId, null, containerId));
+      logFailureEvent(user, operation, perm, target, description, appId,
+          null, containerId, Server.getRemoteIp());
     }
   }
 
@@ -275,8 +359,8 @@ public static void logFailure(String user, String operation, String perm,
       String target, String description, ApplicationId appId, 
       ApplicationAttemptId attemptId) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, perm, target, description,
-          appId, attemptId, null));
+      logFailureEvent(user, operation, perm, target, description, appId,
+          attemptId, null, Server.getRemoteIp());
     }
   }
 
@@ -299,8 +383,8 @@ public static void logFailure(String user, String operation, String perm,
   public static void logFailure(String user, String operation, String perm,
       String target, String description, ApplicationId appId) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, perm, target, description,
-          appId, null, null));
+      logFailureEvent(user, operation, perm, target, description, appId,
+          null, null, Server.getRemoteIp());
     }
   }
 
@@ -321,8 +405,8 @@ public static void logFailure(String user, String operation, String perm,
   public static void logFailure(String user, String operation, String perm,
       String target, String description) {
     if (LOG.isWarnEnabled()) {
-      LOG.warn(createFailureLog(user, operation, perm, target, description,
-          null, null, null));
+      logFailureEvent(user, operation, perm, target, description, null,
+          null, null, Server.getRemoteIp());
     }
   }
 
@@ -330,7 +414,13 @@ public static void logFailure(String user, String operation, String perm,
    * A helper api to add remote IP address
    */
   static void addRemoteIP(StringBuilder b) {
-    InetAddress ip = Server.getRemoteIp();
+    addRemoteIP(Server.getRemoteIp(), b);
+  }
+
+  /**
+   * A helper api to add the given remote IP address
+   */
+  static void addRemoteIP(InetAddress ip, StringBuilder b) {
     // ip address can be null for testcases
     if (ip != null) {
       add(Keys.IP, ip.getHostAddress(), b);
@@ -1043,6 +1043,7 @@ synchronized void transitionToStandby(boolean initialize)
 
   @Override
   protected void serviceStart() throws Exception {
+    RMAuditLogger.startAsyncLogging(conf);
     if (this.rmContext.isHAEnabled()) {
       transitionToStandby(true);
     } else {
@@ -1083,6 +1084,7 @@ protected void serviceStop() throws Exception {
     super.serviceStop();
     transitionToStandby(false);
     rmContext.setHAServiceState(HAServiceState.STOPPING);
+    RMAuditLogger.stopAsyncLogging();
   }
   
   protected ResourceTrackerService createResourceTrackerService() {